@@ -0,0 +1,22 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the bytes a benchmark processes. JMH reports it next to the score, divided by the time, so in throughput mode it reads as bytes per second.
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+@AuxCounters
+@State(Scope.Thread)
+public class BenchmarkCounters {
+    public long bytes;
+
+    @Setup(Level.Iteration)
+    public void reset(){
+        bytes=0;
+    }
+}
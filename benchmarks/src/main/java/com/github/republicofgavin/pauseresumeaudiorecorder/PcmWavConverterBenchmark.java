@@ -0,0 +1,123 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder;
+
+import com.github.republicofgavin.pauseresumeaudiorecorder.conversion.PcmWavConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link PcmWavConverter#convertPCMToWav(PcmWavConverter.WaveHeader, String, String, ByteOrder)} on a PCM file in the temp directory, in every format it writes,
+ * and {@link PcmWavConverter#addWavHeader(PcmWavConverter.WaveHeader, String)} on the resulting wav file. The files are small enough to stay in the page cache,
+ * so the copy and conversion are measured rather than the disk. The bytes counter is the size of the PCM data converted.
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PcmWavConverterBenchmark {
+    @Param({"1048576", "16777216"})
+    public int pcmSizeInBytes;
+    @Param({"1", "2"})
+    public int channelCount;
+    @Param({"PCM_16BIT", "PCM_16BIT_BIG_ENDIAN", "PCM_8BIT", "PCM_24BIT", "PCM_FLOAT", "MULAW", "IMA_ADPCM"})
+    public String format;
+
+    private File directory;
+    private String pcmFilePath;
+    private String wavFilePath;
+    private PcmWavConverter.WaveHeader waveHeader;
+    private ByteOrder pcmByteOrder;
+    /**
+     * The size of the PCM file, cut down to whole frames.
+     */
+    private int pcmDataSizeInBytes;
+
+    @Setup(Level.Trial)
+    public void setup()throws IOException{
+        final short channelNum=(short) channelCount;
+        pcmByteOrder=ByteOrder.LITTLE_ENDIAN;
+        if ("PCM_16BIT".equals(format)){
+            waveHeader=new PcmWavConverter.WaveHeader(44100,channelNum,(short)16);
+        }
+        else if ("PCM_16BIT_BIG_ENDIAN".equals(format)){
+            waveHeader=new PcmWavConverter.WaveHeader(44100,channelNum,(short)16);
+            pcmByteOrder=ByteOrder.BIG_ENDIAN;
+        }
+        else if ("PCM_8BIT".equals(format)){
+            waveHeader=new PcmWavConverter.WaveHeader(44100,channelNum,(short)8);
+        }
+        else if ("PCM_24BIT".equals(format)){
+            waveHeader=new PcmWavConverter.WaveHeader(44100,channelNum,(short)24);
+        }
+        else if ("PCM_FLOAT".equals(format)){
+            waveHeader=new PcmWavConverter.WaveHeader(44100,channelNum,(short)32,-1,false,PcmWavConverter.WAVE_FORMAT_IEEE_FLOAT);
+        }
+        else if ("MULAW".equals(format)){
+            waveHeader=new PcmWavConverter.WaveHeader(44100,channelNum,(short)8,-1,false,PcmWavConverter.WAVE_FORMAT_MULAW);
+        }
+        else {
+            waveHeader=new PcmWavConverter.WaveHeader(44100,channelNum,(short)4,-1,false,PcmWavConverter.WAVE_FORMAT_IMA_ADPCM);
+        }
+
+        //The compressed formats are encoded from 16 bit PCM.
+        final int frameSizeInBytes=waveHeader.isCompressed() ? channelCount*2 : waveHeader.getBlockAlign();
+        pcmDataSizeInBytes=pcmSizeInBytes/frameSizeInBytes*frameSizeInBytes;
+
+        directory=File.createTempFile("PcmWavConverterBenchmark","");
+        if (!directory.delete() || !directory.mkdir()){
+            throw new IOException("Unable to create "+directory);
+        }
+        pcmFilePath=new File(directory,"benchmark.pcm").getAbsolutePath();
+        wavFilePath=new File(directory,"benchmark.wav").getAbsolutePath();
+        final byte[] pcmData=new byte[pcmDataSizeInBytes];
+        for (int i=0;i<pcmData.length;i++){
+            pcmData[i]=(byte)(Math.sin(i*0.01)*100);
+        }
+        final FileOutputStream fileOutputStream=new FileOutputStream(pcmFilePath);
+        try {
+            fileOutputStream.write(pcmData);
+        }
+        finally {
+            fileOutputStream.close();
+        }
+        PcmWavConverter.convertPCMToWav(waveHeader,pcmFilePath,wavFilePath,pcmByteOrder);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        new File(pcmFilePath).delete();
+        new File(wavFilePath).delete();
+        directory.delete();
+    }
+
+    @Benchmark
+    public void convertPcmToWav(final BenchmarkCounters benchmarkCounters)throws IOException{
+        PcmWavConverter.convertPCMToWav(waveHeader,pcmFilePath,wavFilePath,pcmByteOrder);
+        benchmarkCounters.bytes=benchmarkCounters.bytes+pcmDataSizeInBytes;
+    }
+
+    @Benchmark
+    public void addWavHeader()throws IOException{
+        PcmWavConverter.addWavHeader(waveHeader,wavFilePath);
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast the recording thread turns a read of 16 bit samples into a block: the little endian write loop, dithering down to 8 bit, and widening to 24 bit or float.
+ * One operation is one read, of bufferSizeInFrames frames. The bytes counter is the size of the blocks written.
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SampleWriteLoopBenchmark {
+    @Param({"256", "1024", "4096"})
+    public int bufferSizeInFrames;
+    @Param({"1", "2"})
+    public int channelCount;
+    @Param({"PCM_16BIT", "PCM_8BIT_DITHERED", "PCM_24BIT", "PCM_FLOAT"})
+    public String encoding;
+
+    private short[] samples;
+    private int sampleCount;
+    private ByteBuffer block;
+    private EightBitDitherer eightBitDitherer;
+    private WideSampleWriter wideSampleWriter;
+
+    @Setup
+    public void setup(){
+        sampleCount=bufferSizeInFrames*channelCount;
+        samples=new short[sampleCount];
+        for (int i=0;i<sampleCount;i++){
+            samples[i]=(short)(Math.sin(i*0.01)*20000);
+        }
+        final int bytesPerSample;
+        if ("PCM_16BIT".equals(encoding)){
+            bytesPerSample=2;
+        }
+        else if ("PCM_8BIT_DITHERED".equals(encoding)){
+            bytesPerSample=1;
+            eightBitDitherer=new EightBitDitherer();
+        }
+        else {
+            bytesPerSample="PCM_24BIT".equals(encoding) ? 3 : PcmSamples.FLOAT_BYTES_PER_SAMPLE;
+            wideSampleWriter=new WideSampleWriter(bytesPerSample);
+        }
+        block=ByteBuffer.allocate(sampleCount*bytesPerSample).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Benchmark
+    public int write(final BenchmarkCounters benchmarkCounters){
+        block.clear();
+        final int length;
+        if (eightBitDitherer!=null){
+            length=eightBitDitherer.convert(samples,sampleCount,block.array());
+        }
+        else if (wideSampleWriter!=null){
+            wideSampleWriter.write(samples,sampleCount,block);
+            length=block.position();
+        }
+        else {
+            length=PcmSamples.put16BitSamples(samples,sampleCount,block.array());
+        }
+        benchmarkCounters.bytes=benchmarkCounters.bytes+length;
+        return length;
+    }
+}
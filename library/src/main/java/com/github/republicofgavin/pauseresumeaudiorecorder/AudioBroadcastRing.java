@@ -0,0 +1,156 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free single-producer/multiple-consumer ring of preallocated audio blocks, where every consumer sees every block. Blocks are numbered with a sequence that starts at 0.
+ * The producer never waits on the consumers: once the ring is full it overwrites the oldest block, so a consumer that falls more than a ring behind is lapped and has to skip ahead.
+ * Every slot carries the sequence of the block in it, which consumers check before and after using the slot to find out whether it was overwritten in the meantime.
+ * Plain reads and writes of a slot can be reordered around a volatile read or write of its sequence, so both ends pair up atomic read-modify-writes instead: the producer marks a slot with getAndSet,
+ * which later stores into the slot cannot move ahead of, and consumers validate with a compareAndSet of the sequence onto itself, which earlier reads of the slot cannot move past.
+ * A successful validation is then ordered before the producer marking the slot, and so before anything it writes into it.
+ * All the consumers read the same slots, so a block is copied once no matter how many consumers there are.
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+final class AudioBroadcastRing {
+    /**
+     * Slot sequence of a slot the producer is writing into.
+     */
+    private static final long WRITING_SEQUENCE=-1;
+
+    private final ByteBuffer[] slots;
+    private final int[] slotLengths;
+    private final AtomicLongArray slotSequences;
+    private final int mask;
+    /**
+     * Number of blocks published so far, which is also the sequence of the next one. Only written by the producer thread.
+     */
+    private final AtomicLong publishedCount=new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * Default constructor. All the slots are allocated here.
+     * @param slotCount The number of blocks the ring holds. Rounded up to the next power of two. Must be greater than or equal to 2.
+     * @param slotSizeInBytes The size of every block in bytes. Must be greater than 0.
+     * @param direct True if the slots should be direct buffers, false for heap buffers. Either way they hold little endian data.
+     * @throws IllegalArgumentException If the slot count or size is invalid.
+     */
+    AudioBroadcastRing(final int slotCount,final int slotSizeInBytes,final boolean direct){
+        if (slotCount<2){
+            throw new IllegalArgumentException("Ring buffer needs at least 2 slots");
+        }
+        if (slotSizeInBytes<=0){
+            throw new IllegalArgumentException("Invalid slot size");
+        }
+        final int capacity=Integer.highestOneBit(slotCount-1)<<1;
+        slots=new ByteBuffer[capacity];
+        slotLengths=new int[capacity];
+        slotSequences=new AtomicLongArray(capacity);
+        for (int i=0;i<capacity;i++){
+            slots[i]=(direct ? ByteBuffer.allocateDirect(slotSizeInBytes) : ByteBuffer.allocate(slotSizeInBytes)).order(ByteOrder.LITTLE_ENDIAN);
+            slotSequences.set(i,WRITING_SEQUENCE);
+        }
+        mask=capacity-1;
+    }
+
+    /**
+     * Called by the producer to copy a block into the ring, overwriting the oldest one if the ring is full.
+     * @param block The data between its position and limit is copied. Its position is left untouched. Must not be bigger than the slot size.
+     */
+    void publish(final ByteBuffer block){
+        final long sequence=publishedCount.get();
+        final int index=(int)(sequence & mask);
+        //Consumers still reading the old block see the slot change under them when they validate. Unlike a plain volatile set, the getAndSet keeps the stores below from being seen first.
+        slotSequences.getAndSet(index,WRITING_SEQUENCE);
+        final ByteBuffer slot=slots[index];
+        final int blockPosition=block.position();
+        slot.clear();
+        slot.put(block);
+        block.position(blockPosition);
+        slotLengths[index]=slot.position();
+        slotSequences.lazySet(index,sequence);
+        publishedCount.lazySet(sequence+1);
+    }
+
+    /**
+     * @return The number of blocks published so far, which is also the sequence of the next one.
+     */
+    long publishedCount(){
+        return publishedCount.get();
+    }
+
+    /**
+     * @return The oldest sequence that is safe to start reading. Anything older may be overwritten at any moment.
+     */
+    long oldestReadableSequence(){
+        //The producer may already be writing the slot of the block one ring behind the next one, so that one is not readable either.
+        return Math.max(0,publishedCount.get()-slots.length+1);
+    }
+
+    /**
+     * @param sequence The sequence of a block.
+     * @return The index of the slot the block is in.
+     */
+    int indexOf(final long sequence){
+        return (int)(sequence & mask);
+    }
+
+    /**
+     * @param index The index of a slot.
+     * @return The slot itself, for consumers to make views of. Its position and limit mean nothing.
+     */
+    ByteBuffer slot(final int index){
+        return slots[index];
+    }
+
+    /**
+     * Only meaningful while {@link #isAvailable(long)} is true for the block in the slot.
+     * @param index The index of a slot.
+     * @return The length of the block in the slot.
+     */
+    int lengthOf(final int index){
+        return slotLengths[index];
+    }
+
+    /**
+     * Called by consumers before reading a block. Seeing the block here makes everything the producer copied into the slot for it visible.
+     * @param sequence The sequence of a block.
+     * @return True if the slot of the block holds it.
+     */
+    boolean isAvailable(final long sequence){
+        return slotSequences.get(indexOf(sequence))==sequence;
+    }
+
+    /**
+     * Called by consumers after reading a block that was available before they started. The compareAndSet writes the sequence back onto itself, which keeps the reads of the slot before it from being moved past the check.
+     * @param sequence The sequence of a block.
+     * @return True if the slot still holds the block, so what was read from it was the whole block and nothing but it.
+     */
+    boolean wasReadWhole(final long sequence){
+        return slotSequences.compareAndSet(indexOf(sequence),sequence,sequence);
+    }
+
+    /**
+     * @return The number of slots in the ring.
+     */
+    int capacity(){
+        return slots.length;
+    }
+
+    /**
+     * Marks the ring as closed. The producer will not publish any more blocks, but the ones already published can still be read.
+     */
+    void close(){
+        closed=true;
+    }
+
+    /**
+     * @return True if {@link #close()} has been called.
+     */
+    boolean isClosed(){
+        return closed;
+    }
+}
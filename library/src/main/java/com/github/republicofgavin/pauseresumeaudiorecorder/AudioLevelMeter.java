@@ -0,0 +1,139 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Measures the peak and RMS level of every channel over fixed windows of frames, as the recording thread reads them. Nothing is allocated once it is built.
+ * There is exactly one writing thread (the recording thread). Every finished window is published into an {@link AtomicLongArray} holding the latest levels, one slot per channel with
+ * the peak and the RMS packed together, so any thread can read a matching pair without locking and without ever blocking the recording thread.
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+final class AudioLevelMeter {
+    private static final float FULL_SCALE=32768f;
+
+    private final int channelCount;
+    private final int windowSizeInFrames;
+    private final AtomicLongArray levels;
+    private final int[] peaks;
+    private final long[] sumsOfSquares;
+    private int windowFrameCount;
+    private int channelIndex;
+
+    /**
+     * Default constructor.
+     * @param channelCount The number of interleaved channels in the data. Must be greater than 0.
+     * @param windowSizeInFrames The number of frames the levels are measured over. Must be greater than 0.
+     * @throws IllegalArgumentException If the parameters are invalid.
+     */
+    AudioLevelMeter(final int channelCount,final int windowSizeInFrames){
+        if (channelCount<1){
+            throw new IllegalArgumentException("channelCount must be greater than 0");
+        }
+        if (windowSizeInFrames<1){
+            throw new IllegalArgumentException("windowSizeInFrames must be greater than 0");
+        }
+        this.channelCount=channelCount;
+        this.windowSizeInFrames=windowSizeInFrames;
+        levels=new AtomicLongArray(channelCount);
+        peaks=new int[channelCount];
+        sumsOfSquares=new long[channelCount];
+    }
+
+    /**
+     * Measures samples read as shorts. Only called from the recording thread.
+     * @param samples The interleaved 16 bit samples.
+     * @param length The number of samples to measure, from the start of the array.
+     */
+    void process(final short[] samples,final int length){
+        for (int i=0;i<length;i++){
+            addSample(samples[i]);
+        }
+    }
+
+    /**
+     * Measures little endian PCM data between the position and the limit of a buffer, without moving its position. Only called from the recording thread.
+     * @param pcmData The interleaved PCM data.
+     * @param bytesPerSample 1 for unsigned 8 bit samples, 2 for signed 16 bit ones, 3 for packed 24 bit ones, 4 for 32 bit float ones.
+     */
+    void process(final ByteBuffer pcmData,final int bytesPerSample){
+        final int limit=pcmData.limit();
+        if (bytesPerSample==1){
+            for (int i=pcmData.position();i<limit;i++){
+                addSample(((pcmData.get(i) & 0xFF)-128)<<8);
+            }
+        }
+        else if (bytesPerSample==2){
+            for (int i=pcmData.position();i+1<limit;i=i+2){
+                addSample((pcmData.get(i) & 0xFF) | (pcmData.get(i+1)<<8));
+            }
+        }
+        else {
+            for (int i=pcmData.position();i+bytesPerSample<=limit;i=i+bytesPerSample){
+                addSample(PcmSamples.get16BitSample(pcmData,i,bytesPerSample));
+            }
+        }
+    }
+
+    /**
+     * Drops the window being measured, so levels measured before a pause are not mixed with the ones after it. The published levels are kept. Only called from the recording thread.
+     */
+    void resetWindow(){
+        windowFrameCount=0;
+        channelIndex=0;
+        for (int i=0;i<channelCount;i++){
+            peaks[i]=0;
+            sumsOfSquares[i]=0;
+        }
+    }
+
+    /**
+     * @return The number of channels measured.
+     */
+    int getChannelCount(){
+        return channelCount;
+    }
+
+    /**
+     * @param channel The channel, 0 for mono or left, 1 for right.
+     * @return The peak level of the channel over the last finished window, from 0 (silence) to 1 (full scale).
+     */
+    float getPeakLevel(final int channel){
+        return Float.intBitsToFloat((int)(levels.get(channel)>>>32));
+    }
+
+    /**
+     * @param channel The channel, 0 for mono or left, 1 for right.
+     * @return The RMS level of the channel over the last finished window, from 0 (silence) to 1 (full scale square wave).
+     */
+    float getRmsLevel(final int channel){
+        return Float.intBitsToFloat((int) levels.get(channel));
+    }
+
+    private void addSample(final int sample){
+        final int magnitude=sample<0 ? -sample : sample;
+        if (magnitude>peaks[channelIndex]){
+            peaks[channelIndex]=magnitude;
+        }
+        sumsOfSquares[channelIndex]=sumsOfSquares[channelIndex]+(long) sample*sample;
+        channelIndex++;
+        if (channelIndex==channelCount){
+            channelIndex=0;
+            windowFrameCount++;
+            if (windowFrameCount==windowSizeInFrames){
+                publish();
+            }
+        }
+    }
+
+    private void publish(){
+        for (int i=0;i<channelCount;i++){
+            final float peak=Math.min(peaks[i]/FULL_SCALE,1f);
+            final float rms=(float)(Math.sqrt((double) sumsOfSquares[i]/windowFrameCount)/FULL_SCALE);
+            levels.set(i,((long) Float.floatToIntBits(peak)<<32) | (Float.floatToIntBits(rms) & 0xFFFFFFFFL));
+            peaks[i]=0;
+            sumsOfSquares[i]=0;
+        }
+        windowFrameCount=0;
+    }
+}
@@ -0,0 +1,115 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free single-producer/single-consumer ring of preallocated audio blocks. The capture thread claims a slot, fills it and publishes it, while the writer thread polls the published slots and releases them once they are on disk.
+ * Nothing is allocated after construction, so the capture thread never waits on the garbage collector or on the writer unless every slot is still waiting to be written.
+ * Each slot is a {@link ByteBuffer} whose limit marks the end of the valid data.
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+final class AudioRingBuffer {
+    private final ByteBuffer[] slots;
+    private final int mask;
+    /**
+     * Number of slots published by the producer. Only written by the producer thread.
+     */
+    private final AtomicLong head=new AtomicLong();
+    /**
+     * Number of slots released by the consumer. Only written by the consumer thread.
+     */
+    private final AtomicLong tail=new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * Default constructor. All the slots are allocated here.
+     * @param slotCount The number of blocks the ring holds. Rounded up to the next power of two. Must be greater than or equal to 2.
+     * @param slotSizeInBytes The size of every block in bytes. Must be greater than 0.
+     * @param direct True if the slots should be direct, native ordered buffers (so an {@link android.media.AudioRecord} can read straight into them), false for heap buffers backed by an array.
+     * @throws IllegalArgumentException If the slot count or size is invalid.
+     */
+    AudioRingBuffer(final int slotCount,final int slotSizeInBytes,final boolean direct){
+        if (slotCount<2){
+            throw new IllegalArgumentException("Ring buffer needs at least 2 slots");
+        }
+        if (slotSizeInBytes<=0){
+            throw new IllegalArgumentException("Invalid slot size");
+        }
+        final int capacity=Integer.highestOneBit(slotCount-1)<<1;
+        slots=new ByteBuffer[capacity];
+        for (int i=0;i<capacity;i++){
+            slots[i]=direct ? ByteBuffer.allocateDirect(slotSizeInBytes).order(ByteOrder.nativeOrder()) : ByteBuffer.allocate(slotSizeInBytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        mask=capacity-1;
+    }
+
+    /**
+     * Called by the producer to get the next free slot. The slot is cleared before it is returned. It does not become visible to the consumer until {@link #publish()} is called.
+     * @return The next free slot or null if every slot is still waiting to be consumed.
+     */
+    ByteBuffer claim(){
+        final long currentHead=head.get();
+        if (currentHead-tail.get()>mask){
+            return null;
+        }
+        final ByteBuffer slot=slots[(int)(currentHead & mask)];
+        slot.clear();
+        return slot;
+    }
+
+    /**
+     * Called by the producer to hand the slot returned by the last {@link #claim()} over to the consumer.
+     */
+    void publish(){
+        head.lazySet(head.get()+1);
+    }
+
+    /**
+     * Called by the consumer to get the oldest published slot. The slot stays owned by the consumer until {@link #release()} is called.
+     * @return The oldest published slot or null if there is none.
+     */
+    ByteBuffer poll(){
+        final long currentTail=tail.get();
+        if (currentTail==head.get()){
+            return null;
+        }
+        return slots[(int)(currentTail & mask)];
+    }
+
+    /**
+     * Called by the consumer to give the slot returned by the last {@link #poll()} back to the producer.
+     */
+    void release(){
+        tail.lazySet(tail.get()+1);
+    }
+
+    /**
+     * @return The number of slots that are published but not released yet.
+     */
+    int size(){
+        return (int)(head.get()-tail.get());
+    }
+
+    /**
+     * @return The number of slots in the ring.
+     */
+    int capacity(){
+        return slots.length;
+    }
+
+    /**
+     * Marks the ring as closed. The producer will not publish any more slots, but the ones already published can still be polled.
+     */
+    void close(){
+        closed=true;
+    }
+
+    /**
+     * @return True if {@link #close()} has been called.
+     */
+    boolean isClosed(){
+        return closed;
+    }
+}
@@ -0,0 +1,34 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder;
+
+/**
+ * Converts 16 bit samples into unsigned 8 bit ones with triangular (TPDF) dither. Simply dropping the low byte turns quiet passages into distortion that follows the signal;
+ * adding two random values of up to one 8 bit step before rounding turns it into a constant, signal independent hiss instead, which is far less objectionable.
+ * Nothing is allocated once it is built. Only used from the recording thread.
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+final class EightBitDitherer {
+    /**
+     * State of the xorshift generator the dither comes from. Never 0.
+     */
+    private int randomState=0x9E3779B9;
+
+    /**
+     * Converts samples into 8 bit PCM data, ready to be written to a wav file.
+     * @param samples The 16 bit samples.
+     * @param length The number of samples to convert, from the start of the array.
+     * @param output Where the unsigned 8 bit samples are written, from its start. Must hold length bytes.
+     * @return The number of bytes written, which is length.
+     */
+    int convert(final short[] samples,final int length,final byte[] output){
+        for (int i=0;i<length;i++){
+            randomState^=randomState<<13;
+            randomState^=randomState>>>17;
+            randomState^=randomState<<5;
+            //Two independent values from 0 to 255, whose difference has a triangular distribution from -255 to 255.
+            final int dither=(randomState & 0xFF)-((randomState>>>8) & 0xFF);
+            final int rounded=(samples[i]+128+dither)>>8;
+            output[i]=(byte)((rounded>127 ? 127 : (rounded<-128 ? -128 : rounded))+128);
+        }
+        return length;
+    }
+}
@@ -0,0 +1,42 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The live histogram of how long a kind of call took, part of the {@link RecorderCounters} of a recording. Like them it has exactly one writing thread, so recording a call is a handful of plain stores
+ * (the buckets are only lazily set) and any thread can read it without locking.
+ * Consumers get a copy through {@link LatencyHistogram}, which reads the buckets, count and total one at a time, so they only agree with each other once the recording has stopped.
+ * Bucket 0 counts the calls that took under a microsecond and bucket i the calls that took from 2^(i-1) up to 2^i microseconds. The last bucket counts everything longer than that as well.
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+final class LatencyCounters {
+    static final int BUCKET_COUNT=24;
+
+    final AtomicLongArray bucketCounts=new AtomicLongArray(BUCKET_COUNT);
+    volatile long count;
+    volatile long totalNanos;
+    volatile long maxNanos;
+
+    /**
+     * Adds a call to the histogram. Must only be called by the thread that owns it.
+     * @param durationNanos How long the call took. Negative durations (a clock that went backwards) are counted as 0.
+     */
+    void record(final long durationNanos){
+        final long nanos=Math.max(durationNanos,0);
+        final int bucket=bucketOf(nanos/1000);
+        bucketCounts.lazySet(bucket,bucketCounts.get(bucket)+1);
+        totalNanos=totalNanos+nanos;
+        if (nanos>maxNanos){
+            maxNanos=nanos;
+        }
+        count++;
+    }
+
+    /**
+     * @param micros A duration in microseconds, at least 0.
+     * @return The bucket it is counted in.
+     */
+    static int bucketOf(final long micros){
+        return Math.min(64-Long.numberOfLeadingZeros(micros),BUCKET_COUNT-1);
+    }
+}
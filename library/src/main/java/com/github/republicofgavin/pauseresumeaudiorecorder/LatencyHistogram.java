@@ -0,0 +1,112 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder;
+
+/**
+ * A copy of how long a kind of call took over a recording, part of its {@link RecorderStats}. The durations are counted in buckets that double in width, so the histogram is coarse but costs the recording next to nothing.
+ * Bucket 0 counts the calls that took under a microsecond and bucket i the calls that took from 2^(i-1) up to 2^i microseconds, except for the last bucket, which also counts everything longer.
+ * The buckets are copied while the calls are still being counted, so the buckets, count and total time can be off from each other by the call that was being counted at the time.
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+public final class LatencyHistogram {
+    private final long[] bucketCounts;
+    private final long count;
+    private final long totalNanos;
+    private final long maxNanos;
+
+    /**
+     * Copies the current values of the counters.
+     * @param latencyCounters The live counters of a kind of call. Null for a recorder that has not recorded yet, in which case every value is 0.
+     */
+    LatencyHistogram(final LatencyCounters latencyCounters){
+        bucketCounts=new long[LatencyCounters.BUCKET_COUNT];
+        if (latencyCounters==null){
+            count=0;
+            totalNanos=0;
+            maxNanos=0;
+        }
+        else {
+            count=latencyCounters.count;
+            totalNanos=latencyCounters.totalNanos;
+            maxNanos=latencyCounters.maxNanos;
+            for (int i=0;i<bucketCounts.length;i++){
+                bucketCounts[i]=latencyCounters.bucketCounts.get(i);
+            }
+        }
+    }
+
+    /**
+     * @return The number of buckets.
+     */
+    public int getBucketCount(){
+        return bucketCounts.length;
+    }
+
+    /**
+     * @param bucket The bucket, from 0 to {@link #getBucketCount()}-1.
+     * @return The number of calls counted in the bucket.
+     * @throws IndexOutOfBoundsException If there is no such bucket.
+     */
+    public long getBucketCallCount(final int bucket){
+        return bucketCounts[bucket];
+    }
+
+    /**
+     * @param bucket The bucket, from 0 to {@link #getBucketCount()}-1.
+     * @return The duration, in microseconds, the calls counted in the bucket took less than. {@link Long#MAX_VALUE} for the last bucket.
+     * @throws IndexOutOfBoundsException If there is no such bucket.
+     */
+    public long getBucketUpperBoundInMicros(final int bucket){
+        if (bucket<0 || bucket>=bucketCounts.length){
+            throw new IndexOutOfBoundsException("No such bucket: "+bucket);
+        }
+        return (bucket==bucketCounts.length-1) ? Long.MAX_VALUE : 1L<<bucket;
+    }
+
+    /**
+     * @return The number of calls counted.
+     */
+    public long getCallCount(){
+        return count;
+    }
+
+    /**
+     * @return The average duration of the calls in microseconds, 0 if there were none.
+     */
+    public double getMeanInMicros(){
+        return (count==0) ? 0 : totalNanos/1000.0/count;
+    }
+
+    /**
+     * @return The longest duration of a call in microseconds, 0 if there were none.
+     */
+    public double getMaxInMicros(){
+        return maxNanos/1000.0;
+    }
+
+    /**
+     * Estimates a percentile from the buckets, for example 99 for the duration 99% of the calls took less than.
+     * @param percentile The percentile, from 0 to 100.
+     * @return The upper bound of the bucket the percentile falls in, in microseconds, or the longest duration if that is smaller. 0 if there were no calls.
+     * @throws IllegalArgumentException If the percentile is not from 0 to 100.
+     */
+    public double getPercentileInMicros(final double percentile){
+        if (!(percentile>=0 && percentile<=100)){
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        long bucketTotal=0;
+        for (final long bucketCount:bucketCounts){
+            bucketTotal=bucketTotal+bucketCount;
+        }
+        if (bucketTotal==0){
+            return 0;
+        }
+        final double rank=Math.max(1,Math.ceil(bucketTotal*percentile/100));
+        long callsSoFar=0;
+        for (int i=0;i<bucketCounts.length;i++){
+            callsSoFar=callsSoFar+bucketCounts[i];
+            if (callsSoFar>=rank){
+                return Math.min(getBucketUpperBoundInMicros(i),getMaxInMicros());
+            }
+        }
+        return getMaxInMicros();
+    }
+}
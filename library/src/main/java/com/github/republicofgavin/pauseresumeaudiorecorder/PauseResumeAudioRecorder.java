@@ -2,20 +2,35 @@ package com.github.republicofgavin.pauseresumeaudiorecorder;
 
 import android.media.AudioFormat;
 import android.media.AudioRecord;
-import android.media.MediaRecorder;
+import android.os.Build;
 import android.util.Log;
 
+import com.github.republicofgavin.pauseresumeaudiorecorder.conversion.CompressedWavEncoder;
+import com.github.republicofgavin.pauseresumeaudiorecorder.conversion.FlacEncoder;
 import com.github.republicofgavin.pauseresumeaudiorecorder.conversion.PcmWavConverter;
+import com.github.republicofgavin.pauseresumeaudiorecorder.conversion.PolyphaseResampler;
+import com.github.republicofgavin.pauseresumeaudiorecorder.source.AudioSource;
+import com.github.republicofgavin.pauseresumeaudiorecorder.source.MicAudioSource;
 
-import java.io.BufferedOutputStream;
-import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileFilter;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * An audio recorder that supports pause/resume functionality. All files are recorded as PCM files and then converted into WAV files upon stop being called. All recording and writing to the file is done on a separate thread with the configurations it had when recording started.
@@ -27,25 +42,91 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class PauseResumeAudioRecorder {
 
     private AtomicInteger currentAudioState;
+    /**
+     * The monitor the recording thread waits on while paused. It is notified whenever the state changes away from paused.
+     */
+    private final Object pauseLock=new Object();
     private AudioRecorderThread currentAudioRecordingThread;
+    private volatile RecorderCounters recorderCounters;
+    /**
+     * The level meter of the current (or last) recording, null if it is not metered.
+     */
+    private volatile AudioLevelMeter audioLevelMeter;
 
     private int sampleRateInHertz;
+    /**
+     * The rate the microphone is captured at, 0 to capture at sampleRateInHertz.
+     */
+    private int captureSampleRateInHertz;
     private int channelConfig;
     private int audioEncoding;
     private String audioFile;
+    private boolean directBufferRecordingEnabled;
+    private boolean eightBitDitheringEnabled;
+    private int ringBufferSize;
+    /**
+     * Where the audio is pulled from, null to record from the microphone.
+     */
+    private AudioSource audioSource;
+    /**
+     * The pool the recording is written on, null to give it threads of its own.
+     */
+    private RecorderIoPool recorderIoPool;
+    /**
+     * What the listeners are called on, null to call them on the shared default dispatcher.
+     */
+    private Executor listenerExecutor;
 
     private static final int DEFAULT_AUDIO_SAMPLE_RATE_HERTZ=44100;
+    private static final int MIN_SAMPLE_RATE_HERTZ=4000;
+    private static final int MAX_SAMPLE_RATE_HERTZ=192000;
+    private static final int DEFAULT_RING_BUFFER_SIZE=16;
+    private static final long DEFAULT_AUTO_PAUSE_HANGOVER_MILLIS=500;
+    private static final long DEFAULT_AUTO_PAUSE_PRE_ROLL_MILLIS=250;
+    /**
+     * Upper bound on how long an audio chunk subscriber thread parks before rechecking the ring on its own.
+     */
+    private static final long PARK_TIMEOUT_NANOS=100L*1000L*1000L;
+    /**
+     * How long the frames read are compared against the wall clock before overrun detection starts over. Keeps the clock drift that builds up small and the arithmetic far from overflowing.
+     */
+    private static final long OVERRUN_BASELINE_INTERVAL_NANOS=60L*1000L*1000L*1000L;
+    /**
+     * How far the clock of the audio source may run behind System.nanoTime, in parts per million, before it counts as lost audio. Real converters are off by tens to hundreds.
+     */
+    private static final long OVERRUN_CLOCK_DRIFT_PPM=1000;
+    /**
+     * How long the thread of the default dispatcher idles before dying off.
+     */
+    private static final long DISPATCHER_KEEP_ALIVE_SECONDS=5;
     private static final String TAG=PauseResumeAudioRecorder.class.getSimpleName();
+    /**
+     * The single thread every recorder without an executor of its own calls its listeners on, created on first use. See {@link #setListenerExecutor(Executor)}.
+     */
+    private static Executor defaultListenerExecutor;
 
     private OnFileSizeReachedListener onFileSizeReachedListener;
     private long maxFileSizeInBytes;
 
     private OnTimeCompletionListener onTimeCompletionListener;
-    private TimerTask onTimeCompletionTimerTask;
-    private Timer onTimeCompletedTimer;
     private long maxTimeInMillis;
-    private long recordingStartTimeMillis;
-    private long remainingMaxTimeInMillis;
+
+    private OnSegmentCompletedListener onSegmentCompletedListener;
+    private OnRecordingCompletedListener onRecordingCompletedListener;
+    private long segmentDurationInMillis;
+    private long segmentSizeInBytes;
+    private long headerCheckpointIntervalInMillis;
+    private int outputFormat;
+    private long levelMeteringWindowInMillis;
+    private float autoPauseThresholdLevel;
+    private long autoPauseHangoverInMillis;
+    private long autoPausePreRollInMillis;
+    /**
+     * True while the recording thread is skipping silence. Only the recording thread sets it.
+     */
+    private volatile boolean autoPaused;
+
+    private final List<OnAudioChunkListener> onAudioChunkListeners=new ArrayList<OnAudioChunkListener>();
     /**
      * The stopped state flag. At this point, the file should be made and in the right format.
      */
@@ -70,6 +151,34 @@ public class PauseResumeAudioRecorder {
      *The error occurred state flag. Something wrong occurred during recording on its thread. You may wish to check for this after calling stop on the recorder.
      */
     public static final int ERROR_STATE=-2;
+    /**
+     * The WAV output format flag. The recording is written as uncompressed PCM in a wav file. This is the default.
+     */
+    public static final int OUTPUT_FORMAT_WAV=0;
+    /**
+     * The FLAC output format flag. The recording is compressed losslessly into a flac file while it is being written, see {@link FlacEncoder}.
+     */
+    public static final int OUTPUT_FORMAT_FLAC=1;
+    /**
+     * The G.711 A-law output format flag. The recording is written as a wav file holding 8 bit A-law samples, half the size of 16 bit PCM. Meant for voice.
+     */
+    public static final int OUTPUT_FORMAT_WAV_ALAW=2;
+    /**
+     * The G.711 mu-law output format flag. The recording is written as a wav file holding 8 bit mu-law samples, half the size of 16 bit PCM. Meant for voice.
+     */
+    public static final int OUTPUT_FORMAT_WAV_MULAW=3;
+    /**
+     * The IMA ADPCM output format flag. The recording is written as a wav file holding 4 bit IMA ADPCM samples, a quarter of the size of 16 bit PCM. Meant for voice.
+     */
+    public static final int OUTPUT_FORMAT_WAV_IMA_ADPCM=4;
+    /**
+     * The 24 bit PCM output format flag. The recording is captured as float, where the device supports it, and written as a wav file holding packed 24 bit samples. Meant for further processing.
+     */
+    public static final int OUTPUT_FORMAT_WAV_PCM_24BIT=5;
+    /**
+     * Float capture was added in API 23 (Build.VERSION_CODES.M, which this library is not compiled against).
+     */
+    private static final int FLOAT_CAPTURE_MIN_SDK=23;
     /**
      * Default constructor (sets values to: 44100htz, MONO, and PCM_16BIT, {@link PcmWavConverter}.MAX_TIME_WAV_FILE_MILLIS and {@link PcmWavConverter}.MAX_SIZE_WAV_FILE_BYTES,  ). These are acceptable settings, so once you set the file path. It is an prepared state(starts off initialized).
      */
@@ -80,6 +189,9 @@ public class PauseResumeAudioRecorder {
         currentAudioState=new AtomicInteger(INITIALIZED_STATE);
         maxTimeInMillis=PcmWavConverter.MAX_TIME_WAV_FILE_MILLIS;
         maxFileSizeInBytes=PcmWavConverter.MAX_SIZE_WAV_FILE_BYTES;
+        ringBufferSize=DEFAULT_RING_BUFFER_SIZE;
+        autoPauseHangoverInMillis=DEFAULT_AUTO_PAUSE_HANGOVER_MILLIS;
+        autoPausePreRollInMillis=DEFAULT_AUTO_PAUSE_PRE_ROLL_MILLIS;
     }
 
     /**
@@ -95,11 +207,13 @@ public class PauseResumeAudioRecorder {
     }
 
     /**
-     * Sets the max file size (in bytes) default value is {@link PcmWavConverter}.MAX_SIZE_WAV_FILE_BYTES. Files will not go over that limit, but will stop slightly below it.
-     * @param maxFileSizeInBytes The maximum allowed file size in bytes. Must be greater than or equal to 1kb and less than or equal to {@link PcmWavConverter}.MAX_SIZE_WAV_FILE_BYTES
+     * Sets the max file size (in bytes) default value is {@link PcmWavConverter}.MAX_SIZE_WAV_FILE_BYTES. The limit counts the audio data as it is recorded (before any encoding into flac or a compressed wav format),
+     * and the recording stops on the last whole frame that fits, so the data comes out exactly at the limit or at most a frame short of it.
+     * Going over {@link PcmWavConverter}.MAX_SIZE_WAV_FILE_BYTES makes the recorder reserve room for an RF64 header, which the file is upgraded to if its data passes 4GB.
+     * @param maxFileSizeInBytes The maximum allowed file size in bytes. Must be greater than or equal to 1kb and less than or equal to {@link PcmWavConverter}.MAX_SIZE_RF64_FILE_BYTES
      */
     public void setMaxFileSizeInBytes(final long maxFileSizeInBytes){
-        if (maxFileSizeInBytes<1000 || maxFileSizeInBytes> PcmWavConverter.MAX_SIZE_WAV_FILE_BYTES){
+        if (maxFileSizeInBytes<1000 || maxFileSizeInBytes> PcmWavConverter.MAX_SIZE_RF64_FILE_BYTES){
             throw new IllegalArgumentException("Invalid max file size given");
         }
         if (currentAudioState.get()!=PREPARED_STATE && currentAudioState.get()!=INITIALIZED_STATE ){
@@ -108,7 +222,7 @@ public class PauseResumeAudioRecorder {
         this.maxFileSizeInBytes=maxFileSizeInBytes;
     }
     /**
-     * Sets the {@link com.github.republicofgavin.pauseresumeaudiorecorder.PauseResumeAudioRecorder.OnTimeCompletionListener}. Pausing the recorder effectively will pause the timer as well.
+     * Sets the {@link com.github.republicofgavin.pauseresumeaudiorecorder.PauseResumeAudioRecorder.OnTimeCompletionListener}. Time spent paused or auto paused does not count, as the max time is measured in frames written.
      * @param onTimeCompletionListener A method you want called when the recording has run out of time. Null if nothing should be called.
      * @throws IllegalStateException If this is called during a recording, paused, or error state.
      */
@@ -121,27 +235,220 @@ public class PauseResumeAudioRecorder {
 
     /**
      *Sets the maxmimum time the recording should last. Default value is {@link PcmWavConverter}.MAX_TIME_WAV_FILE_MILLIS
-     * @param maxTimeInMillis Sets the maximum time a recording should last. Must be greater than or equal to 1000 and less than or equal to {@link PcmWavConverter}.MAX_TIME_WAV_FILE_MILLIS
+     * The limit is counted by the recording thread in frames written at the sample rate of the recording, so the recording ends after exactly maxTimeInMillis*sampleRate/1000 frames, however long it took on the wall clock.
+     * Going over {@link PcmWavConverter}.MAX_TIME_WAV_FILE_MILLIS makes the recorder reserve room for an RF64 header, which the file is upgraded to if its data passes 4GB.
+     * @param maxTimeInMillis Sets the maximum time a recording should last. Must be greater than or equal to 1000 and less than or equal to {@link PcmWavConverter}.MAX_TIME_RF64_FILE_MILLIS
      */
     public void setMaxTimeInMillis(final long maxTimeInMillis){
-        if (maxTimeInMillis<1000 || maxTimeInMillis>PcmWavConverter.MAX_TIME_WAV_FILE_MILLIS){
+        if (maxTimeInMillis<1000 || maxTimeInMillis>PcmWavConverter.MAX_TIME_RF64_FILE_MILLIS){
             throw new IllegalArgumentException("Invalid max time given");
         }
         else if (currentAudioState.get()!=PREPARED_STATE && currentAudioState.get()!=INITIALIZED_STATE ){
             throw new IllegalStateException("Cannot modify maxTimeInMillis during a non-prepared and non-initialized state");
         }
         this.maxTimeInMillis=maxTimeInMillis;
-        this.remainingMaxTimeInMillis=maxTimeInMillis;
     }
 
     /**
-     * Sets the encoding for the audio file.
-     * @param audioEncoding Must be {@link AudioFormat}.ENCODING_PCM_8BIT or {@link AudioFormat}.ENCODING_PCM_16BIT.
-     * @throws IllegalArgumentException If the encoding is not {@link AudioFormat}.ENCODING_PCM_8BIT or {@link AudioFormat}.ENCODING_PCM_16BIT
+     * Splits the recording into consecutive wav files of the given duration. The segments are named after the audio file with an index appended (recording_000.wav, recording_001.wav, ...) and are cut on a frame boundary,
+     * so played back to back they hold exactly what a single file would. Every segment is finished (its header is final and it is renamed to .wav) as soon as it is full, while recording carries on into the next one.
+     * The max time and max file size still apply to the recording as a whole. Default value is 0.
+     * @param segmentDurationInMillis The duration of every segment. 0 to not limit segments by time. Otherwise must be greater than or equal to 1000 and less than or equal to {@link PcmWavConverter}.MAX_TIME_WAV_FILE_MILLIS
+     * @throws IllegalArgumentException If the duration is invalid.
+     * @throws IllegalStateException If it is being modified when it is not in INITIALIZED_STATE or PREPARED_STATE.
+     */
+    public void setSegmentDurationInMillis(final long segmentDurationInMillis){
+        if (segmentDurationInMillis!=0 && (segmentDurationInMillis<1000 || segmentDurationInMillis>PcmWavConverter.MAX_TIME_WAV_FILE_MILLIS)){
+            throw new IllegalArgumentException("Invalid segment duration given");
+        }
+        else if (currentAudioState.get()!=PREPARED_STATE && currentAudioState.get()!=INITIALIZED_STATE ){
+            throw new IllegalStateException("Cannot modify segment duration during a non-prepared and non-initialized state");
+        }
+        this.segmentDurationInMillis=segmentDurationInMillis;
+    }
+    /**
+     * Splits the recording into consecutive wav files of at most the given size, header included. See {@link #setSegmentDurationInMillis(long)} for how segments are named and finished.
+     * If both a duration and a size are set, a segment ends at whichever limit comes first. Default value is 0.
+     * @param segmentSizeInBytes The maximum file size of every segment. 0 to not limit segments by size. Otherwise must be greater than or equal to 1kb and less than or equal to {@link PcmWavConverter}.MAX_SIZE_WAV_FILE_BYTES
+     * @throws IllegalArgumentException If the size is invalid.
+     * @throws IllegalStateException If it is being modified when it is not in INITIALIZED_STATE or PREPARED_STATE.
+     */
+    public void setSegmentSizeInBytes(final long segmentSizeInBytes){
+        if (segmentSizeInBytes!=0 && (segmentSizeInBytes<1000 || segmentSizeInBytes>PcmWavConverter.MAX_SIZE_WAV_FILE_BYTES)){
+            throw new IllegalArgumentException("Invalid segment size given");
+        }
+        else if (currentAudioState.get()!=PREPARED_STATE && currentAudioState.get()!=INITIALIZED_STATE ){
+            throw new IllegalStateException("Cannot modify segment size during a non-prepared and non-initialized state");
+        }
+        this.segmentSizeInBytes=segmentSizeInBytes;
+    }
+    /**
+     * Adds an {@link com.github.republicofgavin.pauseresumeaudiorecorder.PauseResumeAudioRecorder.OnAudioChunkListener} that is handed every block of audio while it is being recorded. Every listener gets a thread of its own,
+     * and all of them read the blocks from a single ring the recording thread copies each block into once, so adding listeners does not add copies. The recording thread never waits on a listener:
+     * a listener that falls more than the ring size (see {@link #setRingBufferSize(int)}) behind skips the blocks it missed and is told about them.
+     * @param onAudioChunkListener The listener to add. Cannot be null.
+     * @throws IllegalArgumentException If the listener is null.
+     * @throws IllegalStateException If this is called during a recording, paused, or error state.
+     */
+    public void addOnAudioChunkListener(final OnAudioChunkListener onAudioChunkListener){
+        if (onAudioChunkListener==null){
+            throw new IllegalArgumentException("onAudioChunkListener cannot be null");
+        }
+        else if (currentAudioState.get()!=PREPARED_STATE && currentAudioState.get()!=INITIALIZED_STATE ){
+            throw new IllegalStateException("Cannot add an onAudioChunkListener during a non-prepared and non-initialized state");
+        }
+        onAudioChunkListeners.add(onAudioChunkListener);
+    }
+    /**
+     * Removes an {@link com.github.republicofgavin.pauseresumeaudiorecorder.PauseResumeAudioRecorder.OnAudioChunkListener} added with {@link #addOnAudioChunkListener(OnAudioChunkListener)}. Does nothing if it was never added.
+     * @param onAudioChunkListener The listener to remove.
+     * @throws IllegalStateException If this is called during a recording, paused, or error state.
+     */
+    public void removeOnAudioChunkListener(final OnAudioChunkListener onAudioChunkListener){
+        if (currentAudioState.get()!=PREPARED_STATE && currentAudioState.get()!=INITIALIZED_STATE ){
+            throw new IllegalStateException("Cannot remove an onAudioChunkListener during a non-prepared and non-initialized state");
+        }
+        onAudioChunkListeners.remove(onAudioChunkListener);
+    }
+    /**
+     * Sets the {@link com.github.republicofgavin.pauseresumeaudiorecorder.PauseResumeAudioRecorder.OnSegmentCompletedListener}. Only called when the recording is segmented.
+     * @param onSegmentCompletedListener A method you want called every time a segment has been finished. Null if nothing should be called.
+     * @throws IllegalStateException If this is called during a recording, paused, or error state.
+     */
+    public void setOnSegmentCompletedListener(final OnSegmentCompletedListener onSegmentCompletedListener){
+        if (currentAudioState.get()!=PREPARED_STATE && currentAudioState.get()!=INITIALIZED_STATE ){
+            throw new IllegalStateException("Cannot modify onSegmentCompletedListener during a non-prepared and non-initialized state");
+        }
+        this.onSegmentCompletedListener=onSegmentCompletedListener;
+    }
+    /**
+     * Sets the {@link com.github.republicofgavin.pauseresumeaudiorecorder.PauseResumeAudioRecorder.OnRecordingCompletedListener}, called once the recording has been stopped and its last file is finished and renamed.
+     * @param onRecordingCompletedListener A method you want called when the recording is complete. Null if nothing should be called.
+     * @throws IllegalStateException If this is called during a recording, paused, or error state.
+     */
+    public void setOnRecordingCompletedListener(final OnRecordingCompletedListener onRecordingCompletedListener){
+        if (currentAudioState.get()!=PREPARED_STATE && currentAudioState.get()!=INITIALIZED_STATE ){
+            throw new IllegalStateException("Cannot modify onRecordingCompletedListener during a non-prepared and non-initialized state");
+        }
+        this.onRecordingCompletedListener=onRecordingCompletedListener;
+    }
+
+    /**
+     * Makes the recording crash safe. Every interval, the writer thread patches the sizes in the header of the .temp file to match the data written so far and flushes the file to the storage device,
+     * so if the process dies the .temp file is a valid wav file up to its last checkpoint. Such files can be turned into wav files with {@link #recoverTempFiles(String)}. Default value is 0.
+     * @param headerCheckpointIntervalInMillis How often the header is patched. 0 to only write the real header once the recording is done. Otherwise must be greater than or equal to 100.
+     * @throws IllegalArgumentException If the interval is invalid.
+     * @throws IllegalStateException If it is being modified when it is not in INITIALIZED_STATE or PREPARED_STATE.
+     */
+    public void setHeaderCheckpointIntervalInMillis(final long headerCheckpointIntervalInMillis){
+        if (headerCheckpointIntervalInMillis!=0 && headerCheckpointIntervalInMillis<100){
+            throw new IllegalArgumentException("Invalid header checkpoint interval given");
+        }
+        else if (currentAudioState.get()!=PREPARED_STATE && currentAudioState.get()!=INITIALIZED_STATE ){
+            throw new IllegalStateException("Cannot modify header checkpoint interval during a non-prepared and non-initialized state");
+        }
+        this.headerCheckpointIntervalInMillis=headerCheckpointIntervalInMillis;
+    }
+
+    /**
+     * Makes the recording thread measure the peak and RMS level of every channel as it reads the audio, over windows of the given duration. The levels of the last finished window
+     * can be read from any thread with {@link #getPeakLevel(int)} and {@link #getRmsLevel(int)}, for example by a UI meter refreshing at 60Hz. Reading them never blocks the recording thread,
+     * and measuring them allocates nothing while recording. Default value is 0.
+     * @param levelMeteringWindowInMillis The duration the levels are measured over. 0 to not measure them. Otherwise must be greater than 0.
+     * @throws IllegalArgumentException If the window is invalid.
+     * @throws IllegalStateException If it is being modified when it is not in INITIALIZED_STATE or PREPARED_STATE.
+     */
+    public void setLevelMeteringWindowInMillis(final long levelMeteringWindowInMillis){
+        if (levelMeteringWindowInMillis<0){
+            throw new IllegalArgumentException("Invalid level metering window given");
+        }
+        else if (currentAudioState.get()!=PREPARED_STATE && currentAudioState.get()!=INITIALIZED_STATE ){
+            throw new IllegalStateException("Cannot modify level metering window during a non-prepared and non-initialized state");
+        }
+        this.levelMeteringWindowInMillis=levelMeteringWindowInMillis;
+    }
+
+    /**
+     * Makes the recording skip silence. A voice activity detector running on every block read (see {@link VoiceActivityDetector}) stops the blocks from being written once there has been no voice for the hangover,
+     * and starts writing again as soon as voice comes back, along with the pre-roll read just before it so the start of the first word is not clipped. While skipping silence the recorder is auto paused:
+     * the state stays RECORDING_STATE and the microphone keeps being read, but as in PAUSED_STATE nothing is written, so the max time only counts audio that is written. Default value is 0.
+     * @param autoPauseThresholdLevel The RMS level, from 0 to 1 (full scale), that counts as voice. 0 to never auto pause. Otherwise must be greater than 0 and less than or equal to 1. Around 0.01 suits speech close to the microphone.
+     * @throws IllegalArgumentException If the level is invalid.
+     * @throws IllegalStateException If it is being modified when it is not in INITIALIZED_STATE or PREPARED_STATE.
+     */
+    public void setAutoPauseThresholdLevel(final float autoPauseThresholdLevel){
+        if (!(autoPauseThresholdLevel>=0 && autoPauseThresholdLevel<=1)){
+            throw new IllegalArgumentException("Invalid auto pause threshold level given");
+        }
+        else if (currentAudioState.get()!=PREPARED_STATE && currentAudioState.get()!=INITIALIZED_STATE ){
+            throw new IllegalStateException("Cannot modify auto pause threshold level during a non-prepared and non-initialized state");
+        }
+        this.autoPauseThresholdLevel=autoPauseThresholdLevel;
+    }
+
+    /**
+     * Sets how long the recording keeps being written after voice stops, before it is auto paused. See {@link #setAutoPauseThresholdLevel(float)}. Default value is 500.
+     * @param autoPauseHangoverInMillis The hangover. Must be greater than or equal to 0.
+     * @throws IllegalArgumentException If the hangover is invalid.
+     * @throws IllegalStateException If it is being modified when it is not in INITIALIZED_STATE or PREPARED_STATE.
+     */
+    public void setAutoPauseHangoverInMillis(final long autoPauseHangoverInMillis){
+        if (autoPauseHangoverInMillis<0){
+            throw new IllegalArgumentException("Invalid auto pause hangover given");
+        }
+        else if (currentAudioState.get()!=PREPARED_STATE && currentAudioState.get()!=INITIALIZED_STATE ){
+            throw new IllegalStateException("Cannot modify auto pause hangover during a non-prepared and non-initialized state");
+        }
+        this.autoPauseHangoverInMillis=autoPauseHangoverInMillis;
+    }
+
+    /**
+     * Sets how much of the silence read just before voice comes back is written along with it, when the recording leaves auto pause. See {@link #setAutoPauseThresholdLevel(float)}.
+     * It is rounded up to whole blocks and capped by the ring buffer size. Default value is 250.
+     * @param autoPausePreRollInMillis The pre-roll. Must be greater than or equal to 0.
+     * @throws IllegalArgumentException If the pre-roll is invalid.
+     * @throws IllegalStateException If it is being modified when it is not in INITIALIZED_STATE or PREPARED_STATE.
+     */
+    public void setAutoPausePreRollInMillis(final long autoPausePreRollInMillis){
+        if (autoPausePreRollInMillis<0){
+            throw new IllegalArgumentException("Invalid auto pause pre-roll given");
+        }
+        else if (currentAudioState.get()!=PREPARED_STATE && currentAudioState.get()!=INITIALIZED_STATE ){
+            throw new IllegalStateException("Cannot modify auto pause pre-roll during a non-prepared and non-initialized state");
+        }
+        this.autoPausePreRollInMillis=autoPausePreRollInMillis;
+    }
+
+    /**
+     * Sets the format of the finished file. With {@link #OUTPUT_FORMAT_FLAC}, the writer thread encodes the audio into FLAC frames as it comes in, so the .temp file is already compressed and is renamed to .flac instead of .wav once the recording is done.
+     * The max file size still counts the uncompressed audio, so it is an upper bound on the size of a flac file. So does the segment size (plus a wav header). RF64 does not apply to flac files, and {@link #recoverTempFiles(String)} only recovers wav files.
+     * The compressed wav formats ({@link #OUTPUT_FORMAT_WAV_ALAW}, {@link #OUTPUT_FORMAT_WAV_MULAW} and {@link #OUTPUT_FORMAT_WAV_IMA_ADPCM}) are encoded the same way, with a table lookup or a few integer operations per sample, and cut the amount of data written 2 to 4 times.
+     * They are always captured as 16 bit PCM, whatever {@link #setAudioEncoding(int)} says. Their segment size counts the compressed data, while the max file size counts the uncompressed audio.
+     * {@link #OUTPUT_FORMAT_WAV_PCM_24BIT} captures float audio, whatever {@link #setAudioEncoding(int)} says, and converts it to 24 bit PCM as it is read. FLAC records float audio as 16 bit PCM.
+     * Default value is {@link #OUTPUT_FORMAT_WAV}.
+     * @param outputFormat {@link #OUTPUT_FORMAT_WAV}, {@link #OUTPUT_FORMAT_FLAC}, {@link #OUTPUT_FORMAT_WAV_ALAW}, {@link #OUTPUT_FORMAT_WAV_MULAW}, {@link #OUTPUT_FORMAT_WAV_IMA_ADPCM} or {@link #OUTPUT_FORMAT_WAV_PCM_24BIT}.
+     * @throws IllegalArgumentException If the output format is not one of the OUTPUT_FORMAT flags.
+     * @throws IllegalStateException If it is being modified when it is not in INITIALIZED_STATE or PREPARED_STATE.
+     */
+    public void setOutputFormat(final int outputFormat){
+        if (outputFormat<OUTPUT_FORMAT_WAV || outputFormat>OUTPUT_FORMAT_WAV_PCM_24BIT){
+            throw new IllegalArgumentException("Invalid output format");
+        }
+        else if (currentAudioState.get()!=PREPARED_STATE && currentAudioState.get()!=INITIALIZED_STATE ){
+            throw new IllegalStateException("Cannot modify output format during a non-prepared and non-initialized state");
+        }
+        this.outputFormat=outputFormat;
+    }
+
+    /**
+     * Sets the encoding for the audio file. 8 bit audio is read and written as single bytes, so it takes half the space and half the disk writes of 16 bit audio.
+     * Float audio is written as a 32 bit IEEE float wav file (in a WAVE_FORMAT_EXTENSIBLE header). It is captured as float from API 23 on; before that, 16 bit audio is captured and converted, which is exact.
+     * @param audioEncoding Must be {@link AudioFormat}.ENCODING_PCM_8BIT, {@link AudioFormat}.ENCODING_PCM_16BIT or {@link AudioFormat}.ENCODING_PCM_FLOAT.
+     * @throws IllegalArgumentException If the encoding is not {@link AudioFormat}.ENCODING_PCM_8BIT, {@link AudioFormat}.ENCODING_PCM_16BIT or {@link AudioFormat}.ENCODING_PCM_FLOAT
      * @throws IllegalStateException If it is being modified when it is not in INITIALIZED_STATE or PREPARED_STATE.
      */
     public void setAudioEncoding(final int audioEncoding){
-        if (audioEncoding !=AudioFormat.ENCODING_PCM_8BIT && audioEncoding !=AudioFormat.ENCODING_PCM_16BIT){
+        if (audioEncoding !=AudioFormat.ENCODING_PCM_8BIT && audioEncoding !=AudioFormat.ENCODING_PCM_16BIT && audioEncoding !=AudioFormat.ENCODING_PCM_FLOAT){
             throw new IllegalArgumentException("Invalid encoding");
         }
         else if (currentAudioState.get()!=PREPARED_STATE && currentAudioState.get()!=INITIALIZED_STATE ){
@@ -149,6 +456,48 @@ public class PauseResumeAudioRecorder {
         }
         this.audioEncoding=audioEncoding;
     }
+    /**
+     * Makes 8 bit recordings capture 16 bit audio and dither it down to 8 bit, instead of capturing 8 bit audio. Many devices do not capture 8 bit audio at all, and the ones that do
+     * usually just drop the low byte, which turns quiet passages into distortion. Dithering turns that into a faint, even hiss. The file is the same size either way.
+     * Only applies when the audio encoding is {@link AudioFormat}.ENCODING_PCM_8BIT and the output format is {@link #OUTPUT_FORMAT_WAV} or {@link #OUTPUT_FORMAT_FLAC}. Default value is false.
+     * @param eightBitDitheringEnabled True to dither 16 bit audio down to 8 bit, false to capture 8 bit audio.
+     * @throws IllegalStateException If it is being modified when it is not in INITIALIZED_STATE or PREPARED_STATE.
+     */
+    public void setEightBitDitheringEnabled(final boolean eightBitDitheringEnabled){
+        if (currentAudioState.get()!=PREPARED_STATE && currentAudioState.get()!=INITIALIZED_STATE ){
+            throw new IllegalStateException("Cannot modify 8 bit dithering during a non-prepared and non-initialized state");
+        }
+        this.eightBitDitheringEnabled=eightBitDitheringEnabled;
+    }
+    /**
+     * Enables the direct buffer recording mode. In this mode the {@link AudioRecord} reads straight into a direct, native ordered {@link ByteBuffer} which is then handed to the
+     * {@link FileChannel} of the .temp file, so no staging array or byte swapping is involved. Devices that are not little endian natively fall back to the default mode, as WAV data has to be little endian.
+     * Default value is false.
+     * @param directBufferRecordingEnabled True to record through a direct {@link ByteBuffer}, false to read into a short array and convert it.
+     * @throws IllegalStateException If it is being modified when it is not in INITIALIZED_STATE or PREPARED_STATE.
+     */
+    public void setDirectBufferRecordingEnabled(final boolean directBufferRecordingEnabled){
+        if (currentAudioState.get()!=PREPARED_STATE && currentAudioState.get()!=INITIALIZED_STATE ){
+            throw new IllegalStateException("Cannot modify direct buffer recording during a non-prepared and non-initialized state");
+        }
+        this.directBufferRecordingEnabled=directBufferRecordingEnabled;
+    }
+    /**
+     * Sets how many blocks read from the {@link AudioRecord} can be waiting to be written to the file. Recording and writing happen on separate threads, so this is how much of a disk stall can be absorbed
+     * before the recording thread has to wait on the disk. Every block is the size of {@link AudioRecord}.getMinBufferSize and all of them are allocated when recording starts. Default value is 16.
+     * @param ringBufferSize The number of blocks. Must be greater than or equal to 2. It is rounded up to the next power of two.
+     * @throws IllegalArgumentException If the size is less than 2.
+     * @throws IllegalStateException If it is being modified when it is not in INITIALIZED_STATE or PREPARED_STATE.
+     */
+    public void setRingBufferSize(final int ringBufferSize){
+        if (ringBufferSize<2){
+            throw new IllegalArgumentException("Invalid ring buffer size given");
+        }
+        else if (currentAudioState.get()!=PREPARED_STATE && currentAudioState.get()!=INITIALIZED_STATE ){
+            throw new IllegalStateException("Cannot modify ring buffer size during a non-prepared and non-initialized state");
+        }
+        this.ringBufferSize=ringBufferSize;
+    }
     /**
      * Setter for the audioFile. If the file does not contain a .wav suffix, it will be added. If the file has a suffix other than .wav, it will be removed. This API puts it in the prepared state.
      * NOTE: The .wav file does not exist until the stop recording (and subsequent conversion) is completed. Where the data is stored temporarily is the same path and name just with .temp instead of .wav.
@@ -176,14 +525,14 @@ public class PauseResumeAudioRecorder {
     }
 
     /**
-     * Sets the sample rate for the recording.
+     * Sets the sample rate for the recording. Any rate is allowed, not just the ones the device captures at: unless told otherwise by {@link #setCaptureSampleRate(int)}, the microphone is captured at this rate,
+     * which every device supports for 44100 but not necessarily for the others.
      * @param sampleRateInHertz The sample rate to record the audio with.
-     * @throws IllegalArgumentException If the sample rate is not: 44100,22050,16000, or 11025
+     * @throws IllegalArgumentException If the sample rate is not between 4000 and 192000
      * @throws IllegalStateException If the API is called while the recorder is not initialized or prepared.
      */
     public void setSampleRate(final int sampleRateInHertz){
-        if (sampleRateInHertz!=DEFAULT_AUDIO_SAMPLE_RATE_HERTZ && sampleRateInHertz !=22050
-                && sampleRateInHertz != 16000 && sampleRateInHertz !=11025){
+        if (sampleRateInHertz<MIN_SAMPLE_RATE_HERTZ || sampleRateInHertz>MAX_SAMPLE_RATE_HERTZ){
             throw new IllegalArgumentException("Invalid sample rate given");
         }
         else if (currentAudioState.get()!=PREPARED_STATE && currentAudioState.get()!=INITIALIZED_STATE ){
@@ -192,6 +541,68 @@ public class PauseResumeAudioRecorder {
         this.sampleRateInHertz=sampleRateInHertz;
     }
 
+    /**
+     * Sets the rate the microphone is captured at, when it differs from the sample rate of the recording. The audio is then resampled to the sample rate of the recording as it is read,
+     * with a polyphase filter that keeps the band below the lower of the two Nyquist frequencies and rejects what is above it.
+     * Capturing at the native rate of the device (AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE, usually 48000) avoids the resampling the platform would otherwise do, which is often of lower quality.
+     * Defaults to 0.
+     * @param captureSampleRateInHertz The rate to capture at, or 0 to capture at the sample rate of the recording.
+     * @throws IllegalArgumentException If the rate is not 0 or between 4000 and 192000
+     * @throws IllegalStateException If the API is called while the recorder is not initialized or prepared.
+     */
+    public void setCaptureSampleRate(final int captureSampleRateInHertz){
+        if (captureSampleRateInHertz!=0 && (captureSampleRateInHertz<MIN_SAMPLE_RATE_HERTZ || captureSampleRateInHertz>MAX_SAMPLE_RATE_HERTZ)){
+            throw new IllegalArgumentException("Invalid capture sample rate given");
+        }
+        else if (currentAudioState.get()!=PREPARED_STATE && currentAudioState.get()!=INITIALIZED_STATE ){
+            throw new IllegalStateException("Recorder cannot have its capture sample rate changed when it is not in an initialized or prepared state");
+        }
+        this.captureSampleRateInHertz=captureSampleRateInHertz;
+    }
+
+    /**
+     * Sets where the audio is recorded from. By default a {@link MicAudioSource} is made for every recording. Any other source, such as a {@link com.github.republicofgavin.pauseresumeaudiorecorder.source.ToneAudioSource}
+     * delivering audio as fast as it is read, drives the whole recording path (resampling, metering, auto pause, writing and finalizing the file) without a microphone.
+     * The source is opened when the recording starts with the capture rate, channel config and the encoding the recorder needs, which can differ from {@link #setAudioEncoding(int)}.
+     * A source is only good for a single recording. Defaults to null.
+     * @param audioSource The source to record from, or null to record from the microphone.
+     * @throws IllegalStateException If the API is called while the recorder is not initialized or prepared.
+     */
+    public void setAudioSource(final AudioSource audioSource){
+        if (currentAudioState.get()!=PREPARED_STATE && currentAudioState.get()!=INITIALIZED_STATE ){
+            throw new IllegalStateException("Recorder cannot have its audio source changed when it is not in an initialized or prepared state");
+        }
+        this.audioSource=audioSource;
+    }
+
+    /**
+     * Sets the {@link RecorderIoPool} the recording is written on, so many recorders running at once share a few writer threads instead of starting their own.
+     * The audio is still captured on a thread of the recorder's own. Defaults to null.
+     * @param recorderIoPool The pool to write on, or null to write on threads of the recorder's own.
+     * @throws IllegalStateException If the API is called while the recorder is not initialized or prepared.
+     */
+    public void setRecorderIoPool(final RecorderIoPool recorderIoPool){
+        if (currentAudioState.get()!=PREPARED_STATE && currentAudioState.get()!=INITIALIZED_STATE ){
+            throw new IllegalStateException("Recorder cannot have its io pool changed when it is not in an initialized or prepared state");
+        }
+        this.recorderIoPool=recorderIoPool;
+    }
+
+    /**
+     * Sets the {@link Executor} the time, file size, segment and recording completed listeners are called on, so they never run on (or hold up) the recording or writer threads.
+     * Defaults to null, which calls them on a single dispatcher thread shared by every recorder. With a single threaded executor, the listeners of a recording are called in the order their events happened:
+     * segments in order, the time or file size listener before the recording completed listener, and the recording completed listener last. The audio chunk listeners are not affected, as each has a thread of its own.
+     * If the executor rejects a call, the call is dropped and the recording carries on.
+     * @param listenerExecutor The executor to call the listeners on, for example one posting to the main looper. Null for the shared dispatcher.
+     * @throws IllegalStateException If the API is called while the recorder is not initialized or prepared.
+     */
+    public void setListenerExecutor(final Executor listenerExecutor){
+        if (currentAudioState.get()!=PREPARED_STATE && currentAudioState.get()!=INITIALIZED_STATE ){
+            throw new IllegalStateException("Recorder cannot have its listener executor changed when it is not in an initialized or prepared state");
+        }
+        this.listenerExecutor=listenerExecutor;
+    }
+
     /**
      * Sets the channel.
      * @param channelConfig {@link AudioFormat}.CHANNEL_IN_MONO, {@link AudioFormat}.CHANNEL_IN_DEFAULT, or {@link AudioFormat}.CHANNEL_IN_STEREO
@@ -215,21 +626,86 @@ public class PauseResumeAudioRecorder {
     public int getCurrentState(){
         return currentAudioState.get();
     }
+    /**
+     * Returns the counters of the current recording, or of the last one once the recorder is stopped. This can be called from any thread at any time.
+     * The read related counters tell whether the {@link AudioRecord} is keeping up: short reads, read errors, and overruns detected by comparing the frames read against the wall clock.
+     * The write related ones (latencies, ring buffer depth) tell whether the disk is, and the rest covers pauses and how long the file took to finish after stopping.
+     * @return A copy of the counters, each current as of when it was copied but not consistent with each other while recording (see {@link RecorderStats}). Every value is 0 if the recorder has not started recording yet.
+     */
+    public RecorderStats getRecorderStats(){
+        return new RecorderStats(recorderCounters);
+    }
+    /**
+     * Tells whether the recording is skipping silence, see {@link #setAutoPauseThresholdLevel(float)}. This can be called from any thread at any time.
+     * @return True if the recorder is in RECORDING_STATE but nothing is being written as there is no voice.
+     */
+    public boolean isAutoPaused(){
+        return autoPaused && currentAudioState.get()==RECORDING_STATE;
+    }
+    /**
+     * Returns the peak level of a channel over the last finished metering window of the current (or last) recording, see {@link #setLevelMeteringWindowInMillis(long)}. This can be called from any thread at any time and allocates nothing.
+     * @param channel The channel, 0 for mono or left, 1 for right.
+     * @return The peak level from 0 (silence) to 1 (full scale). 0 if the recording is not metered, no window has finished yet, or the channel is not recorded.
+     */
+    public float getPeakLevel(final int channel){
+        final AudioLevelMeter currentAudioLevelMeter=audioLevelMeter;
+        if (currentAudioLevelMeter==null || channel<0 || channel>=currentAudioLevelMeter.getChannelCount()){
+            return 0;
+        }
+        return currentAudioLevelMeter.getPeakLevel(channel);
+    }
+    /**
+     * Returns the RMS level of a channel over the last finished metering window of the current (or last) recording, see {@link #setLevelMeteringWindowInMillis(long)}. This can be called from any thread at any time and allocates nothing.
+     * @param channel The channel, 0 for mono or left, 1 for right.
+     * @return The RMS level from 0 (silence) to 1 (full scale square wave). 0 if the recording is not metered, no window has finished yet, or the channel is not recorded.
+     */
+    public float getRmsLevel(final int channel){
+        final AudioLevelMeter currentAudioLevelMeter=audioLevelMeter;
+        if (currentAudioLevelMeter==null || channel<0 || channel>=currentAudioLevelMeter.getChannelCount()){
+            return 0;
+        }
+        return currentAudioLevelMeter.getRmsLevel(channel);
+    }
     /**
      * Starts the recording if the recorder is in a prepared state. At this time, the complete file path should not have .temp file(as that is where the writing is taking place) and the specified .wav file should not exist as well(as that is where the .temp file will be converted to).
      * Does nothing if it is recorder is not in a prepared state.
-     * @throws IllegalArgumentException If the parameters passed into it are invalid according to {@link AudioRecord}.getMinBufferSize API.
+     * @throws IllegalArgumentException If the parameters passed into it are invalid according to the {@link AudioSource} (for the microphone, the {@link AudioRecord}.getMinBufferSize API).
      */
     public void startRecording(){
         if (currentAudioState.get() == PREPARED_STATE) {
-            currentAudioRecordingThread = new AudioRecorderThread(audioFile.replace(".wav",".temp"), MediaRecorder.AudioSource.MIC, sampleRateInHertz,channelConfig,audioEncoding,maxFileSizeInBytes);
+            recorderCounters = new RecorderCounters();
+            audioLevelMeter = null;
+            if (levelMeteringWindowInMillis>0){
+                audioLevelMeter = new AudioLevelMeter((channelConfig==AudioFormat.CHANNEL_IN_STEREO)?2:1,(int)Math.max(1,Math.min(levelMeteringWindowInMillis*sampleRateInHertz/1000,Integer.MAX_VALUE)));
+            }
+            //Plain wav headers are kept unless the limits allow the recording to outgrow them.
+            final boolean rf64Enabled=maxFileSizeInBytes>PcmWavConverter.MAX_SIZE_WAV_FILE_BYTES || maxTimeInMillis>PcmWavConverter.MAX_TIME_WAV_FILE_MILLIS;
+            //The compressed wav formats are encoded from 16 bit samples, and so is dithered 8 bit audio. Flac has no float samples, so it gets 16 bit ones.
+            final int wideCaptureAudioEncoding=(Build.VERSION.SDK_INT>=FLOAT_CAPTURE_MIN_SDK) ? AudioFormat.ENCODING_PCM_FLOAT : AudioFormat.ENCODING_PCM_16BIT;
+            int captureAudioEncoding=AudioFormat.ENCODING_PCM_16BIT;
+            int blockBytesPerSample=2;
+            if (outputFormat==OUTPUT_FORMAT_WAV_PCM_24BIT){
+                captureAudioEncoding=wideCaptureAudioEncoding;
+                blockBytesPerSample=3;
+            }
+            else if (outputFormat==OUTPUT_FORMAT_WAV && audioEncoding==AudioFormat.ENCODING_PCM_FLOAT){
+                captureAudioEncoding=wideCaptureAudioEncoding;
+                blockBytesPerSample=PcmSamples.FLOAT_BYTES_PER_SAMPLE;
+            }
+            else if ((outputFormat==OUTPUT_FORMAT_WAV || outputFormat==OUTPUT_FORMAT_FLAC) && audioEncoding==AudioFormat.ENCODING_PCM_8BIT){
+                captureAudioEncoding=eightBitDitheringEnabled ? AudioFormat.ENCODING_PCM_16BIT : AudioFormat.ENCODING_PCM_8BIT;
+                blockBytesPerSample=1;
+            }
+            autoPaused = false;
+            VoiceActivityDetector voiceActivityDetector = null;
+            if (autoPauseThresholdLevel>0){
+                voiceActivityDetector = new VoiceActivityDetector((channelConfig==AudioFormat.CHANNEL_IN_STEREO)?2:1,sampleRateInHertz,autoPauseThresholdLevel,autoPauseHangoverInMillis*sampleRateInHertz/1000);
+            }
+            final int captureRateInHertz=(captureSampleRateInHertz==0) ? sampleRateInHertz : captureSampleRateInHertz;
+            final AudioSource recordingAudioSource=(audioSource==null) ? new MicAudioSource() : audioSource;
+            currentAudioRecordingThread = new AudioRecorderThread(recorderCounters, audioFile.replace(".wav",".temp"), recordingAudioSource, sampleRateInHertz,captureRateInHertz,channelConfig,captureAudioEncoding,blockBytesPerSample,maxFileSizeInBytes,maxTimeInMillis,directBufferRecordingEnabled,ringBufferSize,rf64Enabled,segmentDurationInMillis,segmentSizeInBytes,headerCheckpointIntervalInMillis,outputFormat,audioLevelMeter,voiceActivityDetector,autoPausePreRollInMillis,onAudioChunkListeners.toArray(new OnAudioChunkListener[onAudioChunkListeners.size()]),recorderIoPool,(listenerExecutor==null) ? getDefaultListenerExecutor() : listenerExecutor);
             currentAudioState.set(RECORDING_STATE);
             currentAudioRecordingThread.start();
-            onTimeCompletedTimer=new Timer(true);
-            onTimeCompletionTimerTask=new MaxTimeTimerTask();
-            onTimeCompletedTimer.schedule(onTimeCompletionTimerTask,maxTimeInMillis);
-            remainingMaxTimeInMillis=maxTimeInMillis;
-            recordingStartTimeMillis=System.currentTimeMillis();
         }
         else{
             Log.w(TAG,"Audio recorder is not in prepared state. Ignoring call.");
@@ -237,13 +713,12 @@ public class PauseResumeAudioRecorder {
     }
 
     /**
-     * Pauses the recording if the recorder is in a recording state. Does nothing if in another state. Paused media recorder halts the max time countdown.
+     * Pauses the recording if the recorder is in a recording state. Does nothing if in another state. Nothing is written while paused, so the max time does not run down.
+     * The {@link AudioRecord} is stopped while paused, so the microphone is released and nothing captured in the meantime ends up in the file.
      */
     public void pauseRecording(){
         if (currentAudioState.get()==RECORDING_STATE){
             currentAudioState.getAndSet(PAUSED_STATE);
-            onTimeCompletedTimer.cancel();
-            remainingMaxTimeInMillis=remainingMaxTimeInMillis-(System.currentTimeMillis()-recordingStartTimeMillis);
         }
         else{
             Log.w(TAG,"Audio recording is not recording");
@@ -251,15 +726,12 @@ public class PauseResumeAudioRecorder {
     }
 
     /**
-     * Resumes the audio recording. Does nothing if the recorder is in a non-recording state.
+     * Resumes the audio recording. Does nothing if the recorder is in a non-recording state. The recording thread is woken up right away and restarts the {@link AudioRecord}.
      */
     public void resumeRecording(){
         if (currentAudioState.get()==PAUSED_STATE){
-            recordingStartTimeMillis=System.currentTimeMillis();
             currentAudioState.getAndSet(RECORDING_STATE);
-            onTimeCompletedTimer=new Timer(true);
-            onTimeCompletionTimerTask=new MaxTimeTimerTask();
-            onTimeCompletedTimer.schedule(onTimeCompletionTimerTask,remainingMaxTimeInMillis);
+            wakeUpPausedRecording();
         }
         else {
             Log.w(TAG,"Audio recording is not paused");
@@ -273,9 +745,7 @@ public class PauseResumeAudioRecorder {
     public void stopRecording(){
         if (currentAudioState.get()== PAUSED_STATE || currentAudioState.get()==RECORDING_STATE){
             currentAudioState.getAndSet(STOPPED_STATE);
-            onTimeCompletedTimer.cancel();
-            onTimeCompletedTimer=null;
-            onTimeCompletionTimerTask=null;
+            wakeUpPausedRecording();
         }
         else{
             Log.w(TAG,"Audio recording is not in a paused or recording state.");
@@ -284,130 +754,1051 @@ public class PauseResumeAudioRecorder {
     }
 
     /**
-     * This thread takes data from an {@link AudioRecord} and outputs it into the specified file. During the state of paused, it sleeps for a 100ms and rechecks to see if the state has changed.
-     * If the state has changed to error or stopped, the thread tries to convert the file into a wav file and delete the PCM one before dying off.
+     * Turns the .temp files left behind in a directory by recordings that never finished (for example because the process died) into wav files. The header of every .temp file is fixed from the actual length of the file
+     * (see {@link PcmWavConverter#repairWavHeader(FileChannel)}) and the file is renamed to .wav in place, so the audio data is never copied. Recordings made with {@link #setHeaderCheckpointIntervalInMillis(long)} lose at most their last interval,
+     * but any .temp file written by this class can be recovered. Files that cannot be recovered, or whose .wav file already exists, are left untouched.
+     * NOTE: Do not call this on a directory a recorder is still recording into, as its .temp file would be renamed from under it.
+     * @param directoryPath The directory to scan. It is not scanned recursively.
+     * @return The paths of the recovered wav files.
+     * @throws IllegalArgumentException If the path is null or not a directory.
      */
-    private class AudioRecorderThread extends Thread{
-        private AudioRecord currentAudioRecording;
-        private int bufferSizeInBytes;
-        private long threadMaxFileSizeInBytes;
-        private String threadAudioFile;
-        private int threadChannelConfig;
-        private int threadAudioEncoding;
-        private int threadSampleRateHertz;
-
-        /**
-         * Default constructor. Parameters are passed into the thread to keep the recorder(ultimately the user) from changing the values and thus altering the state of the thread.
-         * @param threadAudioFile The file path where the {@link AudioRecord} writes data to. Ultimately it will deleted when the data is converted.
-         * @param threadAudioSource The source of the audio data. Currently, only MIC is supported.
-         * @param threadSampleRateHertz The sample rate in Hz
-         * @param threadChannelConfig The channel config (MONO or STEREO).
-         * @param threadAudioEncoding The audio encoding (8 bit or 16 bit).
-         * @param maxFileSizeInBytes Maximum file size in bytes.
-         */
-        AudioRecorderThread(final String threadAudioFile,final int threadAudioSource, final int threadSampleRateHertz, final int threadChannelConfig, final int threadAudioEncoding,final long maxFileSizeInBytes){
-            this.threadAudioFile=threadAudioFile;
-            bufferSizeInBytes=AudioRecord.getMinBufferSize(threadSampleRateHertz,threadChannelConfig,threadAudioEncoding);
-            currentAudioRecording=new AudioRecord(threadAudioSource,threadSampleRateHertz,threadChannelConfig,threadAudioEncoding,bufferSizeInBytes);
-
-            this.threadSampleRateHertz=threadSampleRateHertz;
-            this.threadChannelConfig=threadChannelConfig;
-            this.threadAudioEncoding=threadAudioEncoding;
-            this.threadMaxFileSizeInBytes=maxFileSizeInBytes;
+    public static List<String> recoverTempFiles(final String directoryPath){
+        if (directoryPath==null || !new File(directoryPath).isDirectory()){
+            throw new IllegalArgumentException("directoryPath has to be a directory");
         }
-        @Override
-        public void run(){
-            currentAudioRecording.startRecording();
-            final short[] readingBuffer = new short[bufferSizeInBytes];
-            DataOutputStream dataOutputStream=null;
-            final short waveHeaderChannelConfig=(short)((threadChannelConfig==AudioFormat.CHANNEL_IN_MONO)?1:2);
-            final short waveHeaderBitrateConfig=(short)((AudioFormat.ENCODING_PCM_8BIT==threadAudioEncoding)?8:16);
-            try {
-                dataOutputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(threadAudioFile)));
-                int currentState = currentAudioState.getAndSet(currentAudioState.get());//This, unlike the normal get, does it atomically.
-                //we add a fake header to be a place holder for the real header, once the recording is complete.
-                PcmWavConverter.addWavHeader(new PcmWavConverter.WaveHeader(threadSampleRateHertz, waveHeaderChannelConfig, waveHeaderBitrateConfig),threadAudioFile);
-                long currentFileSizeInBytes=0;
-                while (currentState == RECORDING_STATE || currentState == PAUSED_STATE) {
-                    if (currentState == PAUSED_STATE) {
-                        sleep(100);
-                    }
-                    else {
-                        final int length = currentAudioRecording.read(readingBuffer, 0, bufferSizeInBytes);
-                        for (int i = 0; i < length; i++) {
-                            //write the data in Little Endian format;
-                            dataOutputStream.writeByte(readingBuffer[i] & 0xFF);
-                            dataOutputStream.writeByte((readingBuffer[i] >> 8) & 0xFF);
-                        }
-                        currentFileSizeInBytes=currentFileSizeInBytes+bufferSizeInBytes;
-                        //If the next input clip goes over, just stop the thread now.
-                        if (currentFileSizeInBytes+bufferSizeInBytes>threadMaxFileSizeInBytes){
-                            Log.d(TAG,"Max file size has been reached. Stopping recording thread.");
-                            currentAudioState.getAndSet(STOPPED_STATE);
-                            new Thread(new MaxSizeReachedRunnable()).run();
-                        }
-                    }
-                    currentState = currentAudioState.getAndSet(currentAudioState.get());
-                }
-                currentAudioRecording.stop();
-                currentAudioRecording.release();
-            }
-            catch(IOException ex){
-                currentAudioState.getAndSet(ERROR_STATE);
-                throw new RuntimeException("IOException has occurred while recording file: "+threadAudioFile,ex);
+        final File[] tempFiles=new File(directoryPath).listFiles(new FileFilter() {
+            @Override
+            public boolean accept(final File file) {
+                return file.isFile() && file.getName().endsWith(".temp");
             }
-            catch (InterruptedException ex){
-                currentAudioState.getAndSet(ERROR_STATE);
-                Log.d(TAG,"InterruptedException occurred for audioFile: "+ threadAudioFile);
+        });
+        final List<String> recoveredFilePaths=new ArrayList<String>();
+        if (tempFiles==null){
+            return recoveredFilePaths;
+        }
+        for (final File tempFile:tempFiles){
+            final String tempFilePath=tempFile.getAbsolutePath();
+            final File wavFile=new File(tempFilePath.substring(0,tempFilePath.length()-".temp".length())+".wav");
+            if (wavFile.exists()){
+                Log.w(TAG,"Not recovering "+tempFilePath+" as its wav file already exists.");
+                continue;
             }
-            finally{
+            try {
+                final RandomAccessFile randomAccessFile=new RandomAccessFile(tempFile,"rw");
                 try {
-                    if (dataOutputStream !=null) {
-                        dataOutputStream.flush();
-                        dataOutputStream.close();
-                        PcmWavConverter.addWavHeader(new PcmWavConverter.WaveHeader(threadSampleRateHertz, waveHeaderChannelConfig, waveHeaderBitrateConfig), threadAudioFile);
-
-                        if(!(new File(threadAudioFile).renameTo(new File(threadAudioFile.replace(".temp", ".wav"))))){
-                            Log.e(TAG,"PCM file was not renamed.");
-                            currentAudioState.getAndSet(ERROR_STATE);
-                        }
-                    }
+                    PcmWavConverter.repairWavHeader(randomAccessFile.getChannel());
                 }
-                catch (IOException ex){
-                    Log.e(TAG,"IOException occurred for audioFile"+audioFile);
-                    currentAudioState.getAndSet(ERROR_STATE);
+                finally {
+                    randomAccessFile.close();
                 }
             }
+            catch (IOException ex){
+                Log.w(TAG,"Unable to recover "+tempFilePath,ex);
+                continue;
+            }
+            if (tempFile.renameTo(wavFile)){
+                recoveredFilePaths.add(wavFile.getAbsolutePath());
+            }
+            else {
+                Log.w(TAG,"Recovered file was not renamed: "+tempFilePath);
+            }
         }
+        return recoveredFilePaths;
     }
+
     /**
-     * Interface that gets called when specified time limit has been reached.
+     * Wakes up the recording thread if it is blocked in the paused state. Has to be called after every state change that is made outside of the recording thread and moves the recorder out of the paused state.
      */
-    public interface OnTimeCompletionListener{
-        /**
-         * Called on the secondary thread when the specified time is elapsed. If you desire to run UI code, Use the looper's runonUIThread method.
-         * @param pauseResumeAudioRecorder The instance of the {@link PauseResumeAudioRecorder} that had the event.
-         */
-        void onTimeCompleted(final PauseResumeAudioRecorder pauseResumeAudioRecorder);
+    private void wakeUpPausedRecording(){
+        synchronized (pauseLock){
+            pauseLock.notifyAll();
+        }
     }
+
     /**
-     * Interface that gets called when specified file size been reached or exceeded(The recorder will put the last complete set of data on the file before quitting.
+     * This thread takes data from an {@link AudioSource} (the {@link AudioRecord} of a {@link MicAudioSource} unless told otherwise) and publishes it into the {@link AudioRingBuffer} shared with its {@link AudioWriter}. It never touches the file, so a slow disk cannot keep it from draining the microphone.
+     * Every read is checked for error codes, short reads and overruns, and the results are kept in the {@link RecorderCounters} of the recording.
+     * During the state of paused, it stops the {@link AudioSource} and blocks until the state changes. If the state has changed to error or stopped, it closes the ring so the writer can finish the file and dies off.
      */
-    public interface OnFileSizeReachedListener{
+    private class AudioRecorderThread extends Thread{
+        private AudioSource audioSource;
+        private int bufferSizeInBytes;
+        private long threadMaxFileSizeInBytes;
         /**
-         * Called on the secondary thread when the specified file size has been reached or exceeded. If you desire to run UI code, Use the looper's runonUIThread method.
-         * @param pauseResumeAudioRecorder The instance of the {@link PauseResumeAudioRecorder} that had the event.
+         * The max time of the recording, in frames at the rate it is written at.
          */
-        void onFileSizeReached(final PauseResumeAudioRecorder pauseResumeAudioRecorder);
-    }
-    /**
-     * {@link TimerTask} that sets the state to stopped and fires the interface
-     */
-    private class MaxTimeTimerTask extends TimerTask{
+        private long maxFrameCount;
+        /**
+         * What has been handed to the writer so far, which the limits are checked against.
+         */
+        private long publishedFrameCount;
+        private long publishedSizeInBytes;
+        /**
+         * The size of a frame of the blocks.
+         */
+        private int frameSizeInBytes;
+        private String threadAudioFile;
+        private boolean threadDirectBufferRecording;
+        private AudioRingBuffer ringBuffer;
+        private AudioWriter audioWriter;
+        /**
+         * The thread the {@link AudioWriter} is drained on, unparked whenever a block is published.
+         */
+        private Thread audioWriterThread;
+        /**
+         * Null if nobody listens to the blocks.
+         */
+        private AudioBroadcastRing broadcastRing;
+        private AudioChunkSubscriberThread[] audioChunkSubscriberThreads;
+        private RecorderCounters threadRecorderCounters;
+        private Executor threadListenerExecutor;
+        /**
+         * Null if the recording is not metered.
+         */
+        private AudioLevelMeter threadAudioLevelMeter;
+        /**
+         * Null if the recording is not auto paused on silence.
+         */
+        private VoiceActivityDetector threadVoiceActivityDetector;
+        /**
+         * While auto paused, the latest blocks read are kept here in order, oldest first from preRollStart, so they can be written ahead of the block voice comes back in.
+         */
+        private ByteBuffer[] preRollBlocks;
+        private int preRollStart;
+        private int preRollCount;
+        /**
+         * The rate the {@link AudioSource} captures at, which the frames read are counted in.
+         */
+        private int threadCaptureSampleRateHertz;
+        /**
+         * Null if the recording is captured at the rate it is written at.
+         */
+        private PolyphaseResampler resampler;
+        /**
+         * What the byte path reads into when resampling, as the slot receives the resampled data. Float audio that is converted is always read into it.
+         */
+        private ByteBuffer captureBuffer;
+        /**
+         * What float audio is resampled into before it is converted.
+         */
+        private ByteBuffer resampledCaptureBuffer;
+        /**
+         * Null unless the blocks hold 24 bit or float samples converted from what was captured.
+         */
+        private WideSampleWriter wideSampleWriter;
+        /**
+         * Null unless 16 bit samples are dithered down to 8 bit ones before being written.
+         */
+        private EightBitDitherer eightBitDitherer;
+        /**
+         * True if the {@link AudioSource} reads bytes that are written as they are: into a direct buffer in the format of the blocks, or 8 bit samples, which have no byte order to convert.
+         */
+        private boolean threadByteReading;
+        /**
+         * What the short path resamples into.
+         */
+        private short[] resampledBuffer;
+        private int threadChannelCount;
+        /**
+         * The size of the samples the {@link AudioSource} captures.
+         */
+        private int threadBytesPerSample;
+        /**
+         * The size of the samples in the blocks that are written.
+         */
+        private int slotBytesPerSample;
+        private long overrunToleranceInFrames;
+        /**
+         * When the frames used for overrun detection started being counted, -1 if they are not counted yet (the recording just started or resumed).
+         * Moved up to the current read after every overrun and every {@link #OVERRUN_BASELINE_INTERVAL_NANOS}.
+         */
+        private long overrunBaselineNanos=-1;
+        private long framesSinceOverrunBaseline;
+        /**
+         * When the read being checked was started.
+         */
+        private long readStartNanos;
+
+        /**
+         * Default constructor. Parameters are passed into the thread to keep the recorder(ultimately the user) from changing the values and thus altering the state of the thread.
+         * @param recorderCounters The counters of this recording.
+         * @param threadAudioFile The file path where the {@link AudioRecord} writes data to. Ultimately it will deleted when the data is converted.
+         * @param threadAudioSource The source of the audio data. It is opened here.
+         * @param threadSampleRateHertz The sample rate in Hz
+         * @param threadCaptureSampleRateHertz The sample rate the {@link AudioSource} captures at, in Hz. The audio is resampled to threadSampleRateHertz when they differ.
+         * @param threadChannelConfig The channel config (MONO or STEREO).
+         * @param threadAudioEncoding The encoding the {@link AudioSource} captures in: {@link AudioFormat}.ENCODING_PCM_8BIT, ENCODING_PCM_16BIT, or ENCODING_PCM_FLOAT for float and 24 bit recordings on devices that capture float.
+         * @param blockBytesPerSample The size of the samples written: 1 for 8 bit, 2 for 16 bit, 3 for packed 24 bit and 4 for 32 bit float. Captured samples of another size are converted, 16 bit ones to 8 bit with dither.
+         * @param maxFileSizeInBytes Maximum file size in bytes, counting the audio data as it is written to the blocks.
+         * @param maxTimeInMillis Maximum time in milliseconds, counted in frames written at threadSampleRateHertz.
+         * @param directBufferRecording True if the {@link AudioRecord} should read into a direct {@link ByteBuffer} that is written to the file as is.
+         * @param ringBufferSize The number of blocks the ring between this thread and the writer thread holds.
+         * @param rf64Enabled True if the header should reserve room for RF64, so the file can grow past 4GB.
+         * @param segmentDurationInMillis The duration of every segment, 0 if segments are not limited by time.
+         * @param segmentSizeInBytes The file size of every segment, 0 if segments are not limited by size.
+         * @param headerCheckpointIntervalInMillis How often the header of the .temp file is patched while recording, 0 to only patch it at the end.
+         * @param outputFormat The format of the finished file.
+         * @param audioLevelMeter The meter every block is measured by. Null if the recording is not metered.
+         * @param voiceActivityDetector The detector that decides which blocks are written. Null if every block is written.
+         * @param autoPausePreRollInMillis How much of the silence before voice is written along with it, when auto pausing.
+         * @param audioChunkListeners The listeners every block is handed to. Empty if there are none.
+         * @param recorderIoPool The pool the file is written on, null to write it on a thread of its own.
+         * @param listenerExecutor What the listeners are called on.
+         * @throws IllegalStateException If the pool is shut down.
+         */
+        AudioRecorderThread(final RecorderCounters recorderCounters,final String threadAudioFile,final AudioSource threadAudioSource, final int threadSampleRateHertz,final int threadCaptureSampleRateHertz, final int threadChannelConfig, final int threadAudioEncoding,final int blockBytesPerSample,final long maxFileSizeInBytes,final long maxTimeInMillis,final boolean directBufferRecording,final int ringBufferSize,final boolean rf64Enabled,final long segmentDurationInMillis,final long segmentSizeInBytes,final long headerCheckpointIntervalInMillis,final int outputFormat,final AudioLevelMeter audioLevelMeter,final VoiceActivityDetector voiceActivityDetector,final long autoPausePreRollInMillis,final OnAudioChunkListener[] audioChunkListeners,final RecorderIoPool recorderIoPool,final Executor listenerExecutor){
+            this.threadAudioFile=threadAudioFile;
+            this.threadAudioLevelMeter=audioLevelMeter;
+            audioSource=threadAudioSource;
+            bufferSizeInBytes=audioSource.open(threadCaptureSampleRateHertz,threadChannelConfig,threadAudioEncoding);
+
+            this.threadMaxFileSizeInBytes=maxFileSizeInBytes;
+            this.maxFrameCount=maxTimeInMillis*threadSampleRateHertz/1000;
+            this.threadRecorderCounters=recorderCounters;
+            this.threadListenerExecutor=listenerExecutor;
+            this.threadCaptureSampleRateHertz=threadCaptureSampleRateHertz;
+            this.threadChannelCount=(threadChannelConfig==AudioFormat.CHANNEL_IN_STEREO)?2:1;
+            threadBytesPerSample=(AudioFormat.ENCODING_PCM_8BIT==threadAudioEncoding) ? 1 : ((AudioFormat.ENCODING_PCM_FLOAT==threadAudioEncoding) ? PcmSamples.FLOAT_BYTES_PER_SAMPLE : 2);
+            slotBytesPerSample=blockBytesPerSample;
+            frameSizeInBytes=threadChannelCount*slotBytesPerSample;
+            //PCM from the AudioRecord is in native order, which only matches the WAV format on little endian devices.
+            this.threadDirectBufferRecording=directBufferRecording && ByteOrder.nativeOrder()==ByteOrder.LITTLE_ENDIAN;
+            threadByteReading=threadBytesPerSample==1 || (threadDirectBufferRecording && slotBytesPerSample==threadBytesPerSample);
+            final boolean floatReading=!threadByteReading && threadBytesPerSample==PcmSamples.FLOAT_BYTES_PER_SAMPLE;
+            if (slotBytesPerSample==1 && threadBytesPerSample==2){
+                eightBitDitherer=new EightBitDitherer();
+            }
+            if (slotBytesPerSample>2 && !threadByteReading){
+                wideSampleWriter=new WideSampleWriter(slotBytesPerSample);
+            }
+            //The short path reads bufferSizeInBytes samples.
+            final int readSizeInSamples=(threadByteReading || floatReading) ? bufferSizeInBytes/threadBytesPerSample : bufferSizeInBytes;
+            int slotSampleCount=readSizeInSamples;
+            if (floatReading){
+                //Float audio can only be read into a direct buffer, in native order.
+                captureBuffer=ByteBuffer.allocateDirect(bufferSizeInBytes).order(ByteOrder.nativeOrder());
+            }
+            if (threadCaptureSampleRateHertz!=threadSampleRateHertz){
+                resampler=new PolyphaseResampler(threadCaptureSampleRateHertz,threadSampleRateHertz,threadChannelCount);
+                //One frame more than a read holds, for the part of a frame carried over from the read before.
+                slotSampleCount=resampler.getMaxOutputFrames(readSizeInSamples/threadChannelCount+1)*threadChannelCount;
+                if (threadByteReading){
+                    captureBuffer=(threadDirectBufferRecording ? ByteBuffer.allocateDirect(bufferSizeInBytes) : ByteBuffer.allocate(bufferSizeInBytes)).order(ByteOrder.nativeOrder());
+                }
+                else if (floatReading){
+                    resampledCaptureBuffer=ByteBuffer.allocate(slotSampleCount*threadBytesPerSample).order(ByteOrder.nativeOrder());
+                }
+                else {
+                    resampledBuffer=new short[slotSampleCount];
+                }
+            }
+            final int slotSizeInBytes=slotSampleCount*slotBytesPerSample;
+            //Converted audio is written through the array of the slots.
+            final boolean directSlots=threadDirectBufferRecording && threadByteReading;
+            ringBuffer=new AudioRingBuffer(ringBufferSize,slotSizeInBytes,directSlots);
+            audioChunkSubscriberThreads=new AudioChunkSubscriberThread[audioChunkListeners.length];
+            if (audioChunkListeners.length>0){
+                broadcastRing=new AudioBroadcastRing(ringBufferSize,slotSizeInBytes,directSlots);
+                for (int i=0;i<audioChunkListeners.length;i++){
+                    audioChunkSubscriberThreads[i]=new AudioChunkSubscriberThread(broadcastRing,audioChunkListeners[i]);
+                }
+            }
+            //Falling behind by what the AudioRecord can buffer plus one read is normal scheduling jitter. Anything beyond that was lost.
+            final long audioRecordBufferInFrames=bufferSizeInBytes/(threadBytesPerSample*threadChannelCount);
+            final long readSizeInFrames=readSizeInSamples/threadChannelCount;
+            overrunToleranceInFrames=audioRecordBufferInFrames+readSizeInFrames;
+
+            threadVoiceActivityDetector=voiceActivityDetector;
+            if (voiceActivityDetector!=null){
+                //One more than the pre-roll, as the block voice comes back in goes through it as well. Allocated up front, so skipping silence allocates nothing.
+                final long preRollSizeInBytes=autoPausePreRollInMillis*threadSampleRateHertz/1000*threadChannelCount*slotBytesPerSample;
+                final int preRollBlockCount=(int)Math.min((preRollSizeInBytes+slotSizeInBytes-1)/slotSizeInBytes,ringBuffer.capacity()-1);
+                preRollBlocks=new ByteBuffer[preRollBlockCount+1];
+                for (int i=0;i<preRollBlocks.length;i++){
+                    preRollBlocks[i]=ByteBuffer.allocate(slotSizeInBytes);
+                }
+            }
+
+            final short waveHeaderChannelConfig=(short)((threadChannelConfig==AudioFormat.CHANNEL_IN_MONO)?1:2);
+            final short waveHeaderBitrateConfig=(short)(slotBytesPerSample*8);
+            final short waveHeaderFormatTag=(slotBytesPerSample==PcmSamples.FLOAT_BYTES_PER_SAMPLE) ? PcmWavConverter.WAVE_FORMAT_IEEE_FLOAT : PcmWavConverter.WAVE_FORMAT_PCM;
+            audioWriter=new AudioWriter(recorderCounters,threadAudioFile,ringBuffer,new PcmWavConverter.WaveHeader(threadSampleRateHertz, waveHeaderChannelConfig, waveHeaderBitrateConfig,-1,rf64Enabled,waveHeaderFormatTag),segmentDurationInMillis,segmentSizeInBytes,headerCheckpointIntervalInMillis,outputFormat,listenerExecutor);
+            if (recorderIoPool==null){
+                audioWriterThread=RecorderIoPool.startDedicatedThread(audioWriter);
+            }
+            else {
+                try {
+                    audioWriterThread=recorderIoPool.submit(audioWriter);
+                }
+                catch (IllegalStateException ex){
+                    audioSource.release();
+                    throw ex;
+                }
+            }
+        }
+        @Override
+        public void run(){
+            audioSource.start();
+            for (final AudioChunkSubscriberThread audioChunkSubscriberThread:audioChunkSubscriberThreads){
+                audioChunkSubscriberThread.start();
+            }
+            final short[] readingBuffer = (threadByteReading || threadBytesPerSample == PcmSamples.FLOAT_BYTES_PER_SAMPLE) ? null : new short[bufferSizeInBytes];
+            try {
+                int currentState = currentAudioState.getAndSet(currentAudioState.get());//This, unlike the normal get, does it atomically.
+                boolean waitingOnRingBuffer=false;
+                while (currentState == RECORDING_STATE || currentState == PAUSED_STATE) {
+                    if (currentState == PAUSED_STATE) {
+                        overrunBaselineNanos=-1;
+                        if (threadAudioLevelMeter != null) {
+                            threadAudioLevelMeter.resetWindow();
+                        }
+                        if (threadVoiceActivityDetector != null) {
+                            //Recording picks up again as if voice had just stopped.
+                            threadVoiceActivityDetector.reset();
+                            preRollCount = 0;
+                            autoPaused = false;
+                        }
+                        //Stopping drops whatever was buffered, so nothing captured while paused is written after resuming.
+                        audioSource.stop();
+                        final long pauseStartNanos = System.nanoTime();
+                        synchronized (pauseLock) {
+                            while (currentAudioState.get() == PAUSED_STATE) {
+                                pauseLock.wait();
+                            }
+                        }
+                        threadRecorderCounters.pausedNanos = threadRecorderCounters.pausedNanos + System.nanoTime() - pauseStartNanos;
+                        if (currentAudioState.get() == RECORDING_STATE) {
+                            threadRecorderCounters.pauseResumeCount++;
+                            audioSource.start();
+                        }
+                    }
+                    else {
+                        final ByteBuffer slot = ringBuffer.claim();
+                        if (slot == null) {
+                            //Every slot is waiting on the disk. Let the AudioRecord's own buffer absorb the stall for a moment.
+                            if (!waitingOnRingBuffer) {
+                                waitingOnRingBuffer = true;
+                                threadRecorderCounters.ringBufferFullCount++;
+                            }
+                            sleep(1);
+                        }
+                        else {
+                            waitingOnRingBuffer = false;
+                            if (threadByteReading) {
+                                if (resampler == null) {
+                                    readStartNanos = System.nanoTime();
+                                    final int length = readBytes(slot);
+                                    checkRead(length, bufferSizeInBytes, threadChannelCount*threadBytesPerSample);
+                                    slot.limit(Math.max(length, 0));
+                                }
+                                else {
+                                    readStartNanos = System.nanoTime();
+                                    final int length = readBytes(captureBuffer);
+                                    checkRead(length, bufferSizeInBytes, threadChannelCount*threadBytesPerSample);
+                                    captureBuffer.clear();
+                                    captureBuffer.limit(Math.max(length, 0));
+                                    resampler.process(captureBuffer, threadBytesPerSample, slot);
+                                    slot.flip();
+                                }
+                                if (threadAudioLevelMeter != null) {
+                                    threadAudioLevelMeter.process(slot, slotBytesPerSample);
+                                }
+                            }
+                            else if (readingBuffer == null) {
+                                //Float audio converted to the format of the blocks.
+                                readStartNanos = System.nanoTime();
+                                final int length = audioSource.read(captureBuffer, bufferSizeInBytes);
+                                checkRead(length, bufferSizeInBytes, threadChannelCount*threadBytesPerSample);
+                                captureBuffer.clear();
+                                captureBuffer.limit(Math.max(length, 0));
+                                ByteBuffer samples = captureBuffer;
+                                if (resampler != null) {
+                                    resampledCaptureBuffer.clear();
+                                    resampler.process(captureBuffer, threadBytesPerSample, resampledCaptureBuffer);
+                                    resampledCaptureBuffer.flip();
+                                    samples = resampledCaptureBuffer;
+                                }
+                                wideSampleWriter.write(samples, slot);
+                                slot.flip();
+                                if (threadAudioLevelMeter != null) {
+                                    threadAudioLevelMeter.process(slot, slotBytesPerSample);
+                                }
+                            }
+                            else {
+                                readStartNanos = System.nanoTime();
+                                final int length = audioSource.read(readingBuffer, 0, bufferSizeInBytes);
+                                checkRead(length, bufferSizeInBytes, threadChannelCount);
+                                short[] samples = readingBuffer;
+                                int sampleCount = length;
+                                if (resampler != null && length > 0) {
+                                    sampleCount = resampler.process(readingBuffer, length, resampledBuffer);
+                                    samples = resampledBuffer;
+                                }
+                                if (threadAudioLevelMeter != null && sampleCount > 0) {
+                                    threadAudioLevelMeter.process(samples, sampleCount);
+                                }
+                                if (eightBitDitherer != null) {
+                                    slot.limit(eightBitDitherer.convert(samples, Math.max(sampleCount, 0), slot.array()));
+                                }
+                                else if (wideSampleWriter != null) {
+                                    wideSampleWriter.write(samples, Math.max(sampleCount, 0), slot);
+                                    slot.flip();
+                                }
+                                else {
+                                    slot.limit(PcmSamples.put16BitSamples(samples, Math.max(sampleCount, 0), slot.array()));
+                                }
+                            }
+                            int writtenBlockCount = 0;
+                            //Without auto pause every block is written, so it is cut down to the limits before listeners get it as well.
+                            if (slot.hasRemaining() && (threadVoiceActivityDetector != null || fitToLimits(slot))) {
+                                //Has to come first, as the slot belongs to the writer once it is published. Listeners get every block, silence included.
+                                if (broadcastRing != null) {
+                                    broadcastRing.publish(slot);
+                                    wakeUpAudioChunkSubscribers();
+                                }
+                                if (threadVoiceActivityDetector == null) {
+                                    ringBuffer.publish();
+                                    writtenBlockCount = 1;
+                                }
+                                else {
+                                    writtenBlockCount = publishVoiceActivity(slot);
+                                }
+                                if (writtenBlockCount > 0) {
+                                    wakeUpAudioWriter();
+                                    final int ringBufferDepth = ringBuffer.size();
+                                    if (ringBufferDepth > threadRecorderCounters.maxRingBufferDepth) {
+                                        threadRecorderCounters.maxRingBufferDepth = ringBufferDepth;
+                                    }
+                                }
+                            }
+                            if (publishedFrameCount >= maxFrameCount) {
+                                Log.d(TAG,"Max time has been reached. Stopping recording thread.");
+                                currentAudioState.getAndSet(STOPPED_STATE);
+                                dispatchToListener(threadListenerExecutor, new MaxTimeReachedRunnable());
+                            }
+                            else if (threadMaxFileSizeInBytes - publishedSizeInBytes < frameSizeInBytes) {
+                                Log.d(TAG,"Max file size has been reached. Stopping recording thread.");
+                                currentAudioState.getAndSet(STOPPED_STATE);
+                                dispatchToListener(threadListenerExecutor, new MaxSizeReachedRunnable());
+                            }
+                        }
+                    }
+                    currentState = currentAudioState.getAndSet(currentAudioState.get());
+                }
+                audioSource.stop();
+                audioSource.release();
+            }
+            catch (InterruptedException ex){
+                currentAudioState.getAndSet(ERROR_STATE);
+                Log.d(TAG,"InterruptedException occurred for audioFile: "+ threadAudioFile);
+            }
+            finally{
+                threadRecorderCounters.stopNanos=System.nanoTime();
+                ringBuffer.close();
+                wakeUpAudioWriter();
+                if (broadcastRing != null) {
+                    broadcastRing.close();
+                    wakeUpAudioChunkSubscribers();
+                }
+            }
+        }
+
+        /**
+         * Publishes the block in the claimed slot only if the {@link VoiceActivityDetector} finds it active. Silent blocks are kept as pre-roll instead and the recorder is auto paused.
+         * Once voice comes back, the pre-roll is published ahead of the block. Every block published is cut down to the limits first, and once they are reached the rest is dropped.
+         * @param slot The claimed slot holding the block just read. It is left claimed (to be reused by the next read) if nothing is published.
+         * @return The number of blocks published.
+         * @throws InterruptedException If the thread is interrupted while waiting on the ring buffer.
+         */
+        private int publishVoiceActivity(final ByteBuffer slot)throws InterruptedException{
+            final boolean active=threadVoiceActivityDetector.isActive(slot, slotBytesPerSample);
+            if (active && !autoPaused){
+                if (!fitToLimits(slot)){
+                    return 0;
+                }
+                ringBuffer.publish();
+                return 1;
+            }
+            keepPreRollBlock(slot);
+            if (!active){
+                autoPaused=true;
+                return 0;
+            }
+            autoPaused=false;
+            int publishedCount=0;
+            while (preRollCount>0){
+                ByteBuffer preRollSlot=ringBuffer.claim();
+                while (preRollSlot==null){
+                    //Rarely happens, as the writer drains the ring while the recording is auto paused.
+                    wakeUpAudioWriter();
+                    sleep(1);
+                    preRollSlot=ringBuffer.claim();
+                }
+                final ByteBuffer preRollBlock=preRollBlocks[preRollStart];
+                preRollSlot.put(preRollBlock);
+                preRollSlot.flip();
+                preRollStart=(preRollStart+1)%preRollBlocks.length;
+                preRollCount--;
+                if (!fitToLimits(preRollSlot)){
+                    preRollCount=0;
+                    break;
+                }
+                ringBuffer.publish();
+                publishedCount++;
+            }
+            return publishedCount;
+        }
+
+        /**
+         * Cuts a block that is about to be published down to what is left of the max time and max file size, on a frame boundary, and counts it as written.
+         * @param block The block. Its limit is moved back if it does not fit.
+         * @return False if there is no room left for a single frame, in which case the block must not be published.
+         */
+        private boolean fitToLimits(final ByteBuffer block){
+            final long framesLeft=Math.min(maxFrameCount-publishedFrameCount,(threadMaxFileSizeInBytes-publishedSizeInBytes)/frameSizeInBytes);
+            if (framesLeft<=0){
+                return false;
+            }
+            if (block.remaining()/frameSizeInBytes>framesLeft){
+                block.limit(block.position()+(int)framesLeft*frameSizeInBytes);
+            }
+            publishedFrameCount=publishedFrameCount+block.remaining()/frameSizeInBytes;
+            publishedSizeInBytes=publishedSizeInBytes+block.remaining();
+            return true;
+        }
+
+        /**
+         * Copies a block into the pre-roll, dropping the oldest block kept if it is full. The position of the block is left as is.
+         */
+        private void keepPreRollBlock(final ByteBuffer block){
+            if (preRollCount==preRollBlocks.length){
+                preRollStart=(preRollStart+1)%preRollBlocks.length;
+                preRollCount--;
+            }
+            final ByteBuffer preRollBlock=preRollBlocks[(preRollStart+preRollCount)%preRollBlocks.length];
+            final int blockPosition=block.position();
+            preRollBlock.clear();
+            preRollBlock.put(block);
+            preRollBlock.flip();
+            block.position(blockPosition);
+            preRollCount++;
+        }
+
+        private void wakeUpAudioWriter(){
+            LockSupport.unpark(audioWriterThread);
+        }
+
+        private void wakeUpAudioChunkSubscribers(){
+            for (final AudioChunkSubscriberThread audioChunkSubscriberThread:audioChunkSubscriberThreads){
+                audioChunkSubscriberThread.wakeUp();
+            }
+        }
+
+        /**
+         * Reads a block of bytes from the {@link AudioSource}, from the start of the buffer. Only a direct buffer can be read into as is, a heap one is read into through its array.
+         * @param buffer The buffer to read into. Its position and limit are left untouched.
+         * @return The number of bytes read, or the {@link AudioRecord} error code of the {@link AudioSource}.
+         */
+        private int readBytes(final ByteBuffer buffer){
+            if (buffer.isDirect()){
+                return audioSource.read(buffer, bufferSizeInBytes);
+            }
+            return audioSource.read(buffer.array(), buffer.arrayOffset(), bufferSizeInBytes);
+        }
+        /**
+         * Updates the counters with the result and duration of a read, which was started at readStartNanos. Error codes and short reads are counted as is. Overruns are detected by comparing the frames read since a baseline
+         * against the frames the sample rate says should have arrived in the same wall clock time, allowing for a read, what the source buffers and the drift between its clock and the wall clock.
+         * The baseline starts over after every overrun and at a fixed interval, so neither an old gap nor the drift of a long recording is counted again and again.
+         * @param length The value returned by the read. Negative values are {@link AudioRecord} error codes.
+         * @param requestedLength The amount of data the read asked for, in the same unit as length.
+         * @param unitsPerFrame How many units of length make up a single frame.
+         */
+        private void checkRead(final int length,final int requestedLength,final int unitsPerFrame){
+            final long nowNanos=System.nanoTime();
+            threadRecorderCounters.readLatencyCounters.record(nowNanos-readStartNanos);
+            threadRecorderCounters.readCount++;
+            if (length<0){
+                threadRecorderCounters.readErrorCount++;
+                threadRecorderCounters.lastReadErrorCode=length;
+                Log.w(TAG,"Audio source read failed with error code: "+length);
+                return;
+            }
+            if (length<requestedLength){
+                threadRecorderCounters.shortReadCount++;
+            }
+            final long frames=length/unitsPerFrame;
+            threadRecorderCounters.framesRead=threadRecorderCounters.framesRead+frames;
+
+            if (overrunBaselineNanos<0){
+                //The first read after a (re)start returns whatever was buffered, so counting starts after it.
+                overrunBaselineNanos=nowNanos;
+                framesSinceOverrunBaseline=0;
+                return;
+            }
+            framesSinceOverrunBaseline=framesSinceOverrunBaseline+frames;
+            //Never more than a minute and a read, so this cannot overflow even at the highest sample rate.
+            final long elapsedNanos=nowNanos-overrunBaselineNanos;
+            final long expectedFrames=elapsedNanos*threadCaptureSampleRateHertz/1000000000L;
+            final long missingFrames=expectedFrames-framesSinceOverrunBaseline-overrunToleranceInFrames-expectedFrames*OVERRUN_CLOCK_DRIFT_PPM/1000000L;
+            if (missingFrames>0){
+                threadRecorderCounters.overrunCount++;
+                threadRecorderCounters.droppedFrameCount=threadRecorderCounters.droppedFrameCount+missingFrames;
+                Log.w(TAG,"Audio source overrun detected, about "+missingFrames+" frames were dropped.");
+            }
+            //Starting over from this read, rather than counting the lost frames as read, leaves the full tolerance for what comes next.
+            if (missingFrames>0 || elapsedNanos>=OVERRUN_BASELINE_INTERVAL_NANOS){
+                overrunBaselineNanos=nowNanos;
+                framesSinceOverrunBaseline=0;
+            }
+        }
+    }
+
+    /**
+     * This drains the {@link AudioRingBuffer} filled by an {@link AudioRecorderThread} into the .temp file. It is drained on a thread of its own, or on a shared writer thread of a {@link RecorderIoPool}, which parks while there is nothing to write and is woken up whenever a block is published.
+     * Once the ring has been closed and drained, it patches the sizes of the header written at the start through the same channel (turning it into an RF64 header if the data has outgrown a wav file) and renames the file into a wav file before dying off.
+     * When segmenting, every segment is a file of its own that is finished the same way as soon as it is full, and the next block (or the rest of the current one) goes into the next segment, so no frame is lost or repeated at the boundary.
+     * For flac output, the blocks go through a {@link FlacEncoder} on their way to the file and the FLAC stream header takes the place of the wav header.
+     * For the compressed wav formats, they go through a {@link CompressedWavEncoder} and segments end on the boundary of an encoded block.
+     */
+    private class AudioWriter implements PooledWriter{
+        private String threadAudioFile;
+        private AudioRingBuffer ringBuffer;
+        /**
+         * The header of the files, which describes the blocks unless they are encoded into a compressed wav format.
+         */
+        private PcmWavConverter.WaveHeader waveHeader;
+        private ByteBuffer waveHeaderBuffer;
+        /**
+         * The amount of PCM data taken from the ring into the current segment.
+         */
+        private long dataSizeInBytes;
+        /**
+         * The size of the data chunk of the current segment, which is smaller than dataSizeInBytes if the data is encoded.
+         */
+        private long fileDataSizeInBytes;
+        /**
+         * The most PCM data a segment can hold, always a whole number of frames (and of encoded blocks). {@link Long#MAX_VALUE} if the recording is not segmented.
+         */
+        private long segmentLimitInBytes;
+        private int segmentIndex;
+        private String segmentFilePath;
+        private FileOutputStream fileOutputStream;
+        /**
+         * 0 if the header is only patched once the segment is done.
+         */
+        private long checkpointIntervalNanos;
+        private long checkpointNanos;
+        private long checkpointDataSizeInBytes;
+        /**
+         * Null unless the output format is flac. Reset and reused for every segment.
+         */
+        private FlacEncoder flacEncoder;
+        /**
+         * Null unless the output format is a compressed wav format. Reset and reused for every segment.
+         */
+        private CompressedWavEncoder compressedWavEncoder;
+        private String outputFileExtension;
+        private boolean started;
+        private boolean finished;
+        private RecorderCounters threadRecorderCounters;
+        /**
+         * The size of a frame of the blocks, before any encoding.
+         */
+        private int frameSizeInBytes;
+        private Executor threadListenerExecutor;
+        /**
+         * The last file that was finished and renamed, handed to the {@link OnRecordingCompletedListener}. Null until then.
+         */
+        private String finishedFilePath;
+
+        /**
+         * Default constructor.
+         * @param recorderCounters The counters of this recording. This thread keeps the ones about what is written.
+         * @param threadAudioFile The .temp file the blocks are written to. When segmenting, it is the base name of the segments.
+         * @param ringBuffer The ring the blocks are taken from.
+         * @param pcmWaveHeader The header describing the format of the blocks.
+         * @param segmentDurationInMillis The duration of every segment, 0 if segments are not limited by time.
+         * @param segmentSizeInBytes The file size of every segment, 0 if segments are not limited by size.
+         * @param headerCheckpointIntervalInMillis How often the header is patched while recording, 0 to only patch it once the segment is done.
+         * @param outputFormat The format of the finished files.
+         * @param listenerExecutor What the segment and recording completed listeners are called on.
+         */
+        AudioWriter(final RecorderCounters recorderCounters,final String threadAudioFile,final AudioRingBuffer ringBuffer,final PcmWavConverter.WaveHeader pcmWaveHeader,final long segmentDurationInMillis,final long segmentSizeInBytes,final long headerCheckpointIntervalInMillis,final int outputFormat,final Executor listenerExecutor){
+            this.threadRecorderCounters=recorderCounters;
+            this.threadListenerExecutor=listenerExecutor;
+            this.threadAudioFile=threadAudioFile;
+            frameSizeInBytes=pcmWaveHeader.getChannelNum()*pcmWaveHeader.getBitRate()/8;
+            this.ringBuffer=ringBuffer;
+            waveHeader=pcmWaveHeader;
+            outputFileExtension=".wav";
+            if (outputFormat==OUTPUT_FORMAT_FLAC){
+                flacEncoder=new FlacEncoder(pcmWaveHeader);
+                outputFileExtension=".flac";
+            }
+            else if (outputFormat==OUTPUT_FORMAT_WAV_ALAW || outputFormat==OUTPUT_FORMAT_WAV_MULAW || outputFormat==OUTPUT_FORMAT_WAV_IMA_ADPCM){
+                final short formatTag=(outputFormat==OUTPUT_FORMAT_WAV_ALAW) ? PcmWavConverter.WAVE_FORMAT_ALAW : (outputFormat==OUTPUT_FORMAT_WAV_MULAW) ? PcmWavConverter.WAVE_FORMAT_MULAW : PcmWavConverter.WAVE_FORMAT_IMA_ADPCM;
+                waveHeader=new PcmWavConverter.WaveHeader(pcmWaveHeader.getSampleRateInHertz(),pcmWaveHeader.getChannelNum(),(short)(formatTag==PcmWavConverter.WAVE_FORMAT_IMA_ADPCM ? 4 : 8),-1,pcmWaveHeader.isRf64Enabled(),formatTag);
+                compressedWavEncoder=new CompressedWavEncoder(waveHeader);
+            }
+            //Built up front so starting the file is a single write. Its sizes are patched in place once recording is done.
+            this.waveHeaderBuffer=PcmWavConverter.createWavHeader(waveHeader,0);
+
+            segmentLimitInBytes=Long.MAX_VALUE;
+            if (segmentDurationInMillis>0 || segmentSizeInBytes>0){
+                final int samplesPerBlock=waveHeader.getSamplesPerBlock();
+                long segmentLimitInFrames=Long.MAX_VALUE;
+                if (segmentDurationInMillis>0){
+                    segmentLimitInFrames=segmentDurationInMillis*waveHeader.getSampleRateInHertz()/1000;
+                }
+                if (segmentSizeInBytes>0){
+                    segmentLimitInFrames=Math.min(segmentLimitInFrames,(segmentSizeInBytes-waveHeader.getHeaderSizeInBytes())/waveHeader.getBlockAlign()*samplesPerBlock);
+                }
+                //A segment always holds at least one block, otherwise the recording could never move forward.
+                segmentLimitInFrames=Math.max(segmentLimitInFrames/samplesPerBlock*samplesPerBlock,samplesPerBlock);
+                segmentLimitInBytes=segmentLimitInFrames*pcmWaveHeader.getChannelNum()*pcmWaveHeader.getBitRate()/8;
+            }
+            checkpointIntervalNanos=headerCheckpointIntervalInMillis*1000L*1000L;
+        }
+
+        /**
+         * Writes every block waiting in the ring. The first call starts the first file, so a recording without any data still ends up as a valid (empty) audio file.
+         * Once the ring has been closed and drained, or the file cannot be written, the last segment is finished.
+         * @return True once the recording is finished.
+         */
+        @Override
+        public boolean writeAvailable(){
+            if (finished){
+                return true;
+            }
+            try {
+                if (!started){
+                    started=true;
+                    openSegment();
+                }
+                while (true) {
+                    //Checked on every pass, including after parking, so the data written right before a pause gets checkpointed as well.
+                    if (checkpointIntervalNanos>0 && fileOutputStream!=null && dataSizeInBytes!=checkpointDataSizeInBytes && System.nanoTime()-checkpointNanos>=checkpointIntervalNanos){
+                        checkpoint();
+                    }
+                    final ByteBuffer slot = ringBuffer.poll();
+                    if (slot != null) {
+                        final long writeStartNanos = System.nanoTime();
+                        final int slotSizeInBytes = slot.remaining();
+                        writeSlot(slot);
+                        threadRecorderCounters.writeLatencyCounters.record(System.nanoTime() - writeStartNanos);
+                        threadRecorderCounters.bytesWritten = threadRecorderCounters.bytesWritten + slotSizeInBytes;
+                        threadRecorderCounters.framesWritten = threadRecorderCounters.bytesWritten / frameSizeInBytes;
+                        ringBuffer.release();
+                    }
+                    else if (ringBuffer.isClosed()) {
+                        //The producer may have published right before closing, so only stop once the ring is empty after the close was seen.
+                        if (ringBuffer.size() == 0) {
+                            finish(true);
+                            return true;
+                        }
+                    }
+                    else {
+                        return false;
+                    }
+                }
+            }
+            catch(IOException ex){
+                currentAudioState.getAndSet(ERROR_STATE);
+                wakeUpPausedRecording();
+                Log.e(TAG,"IOException has occurred while recording file: "+segmentFilePath,ex);
+                finish(false);
+                return true;
+            }
+        }
+
+        /**
+         * Finishes the segment that is still open, if any, as a recording that failed is still turned into an audio file.
+         * @param drained True if every block of the recording was written.
+         */
+        private void finish(final boolean drained){
+            finished=true;
+            try {
+                if (fileOutputStream !=null) {
+                    finishSegment();
+                }
+                if (drained) {
+                    //The ring is only closed once the recording thread has noted when it stopped.
+                    threadRecorderCounters.finalizationNanos=System.nanoTime()-threadRecorderCounters.stopNanos;
+                    //The ring is also only closed once the limit listeners were dispatched, so this always comes after them.
+                    if (finishedFilePath!=null && currentAudioState.get()!=ERROR_STATE){
+                        dispatchToListener(threadListenerExecutor, new RecordingCompletedRunnable(finishedFilePath));
+                    }
+                }
+            }
+            catch (IOException ex){
+                Log.e(TAG,"IOException occurred for audioFile"+audioFile);
+                currentAudioState.getAndSet(ERROR_STATE);
+            }
+        }
+
+        /**
+         * Writes a block to the current segment, rolling over to the next one whenever the current one is full. Segments are only opened once there is data for them.
+         * @param slot The block to write. Its position is moved to its limit.
+         * @throws IOException If a segment cannot be written, finished or opened.
+         */
+        private void writeSlot(final ByteBuffer slot)throws IOException{
+            final int slotLimit=slot.limit();
+            while (slot.hasRemaining()){
+                if (fileOutputStream==null){
+                    openSegment();
+                }
+                final long segmentSpaceInBytes=segmentLimitInBytes-dataSizeInBytes;
+                slot.limit((int) Math.min(slotLimit,slot.position()+segmentSpaceInBytes));
+                dataSizeInBytes = dataSizeInBytes + slot.remaining();
+                if (flacEncoder!=null){
+                    flacEncoder.encode(slot, fileOutputStream.getChannel());
+                }
+                else if (compressedWavEncoder!=null){
+                    fileDataSizeInBytes = fileDataSizeInBytes + compressedWavEncoder.encode(slot, fileOutputStream.getChannel());
+                }
+                else {
+                    fileDataSizeInBytes = fileDataSizeInBytes + slot.remaining();
+                    writeFully(fileOutputStream.getChannel(), slot);
+                }
+                slot.limit(slotLimit);
+                if (dataSizeInBytes==segmentLimitInBytes){
+                    finishSegment();
+                }
+            }
+        }
+
+        /**
+         * Starts the next file and writes the place holder header into it.
+         * @throws IOException If the file cannot be created or written to.
+         */
+        private void openSegment()throws IOException{
+            if (segmentLimitInBytes==Long.MAX_VALUE){
+                segmentFilePath=threadAudioFile;
+            }
+            else {
+                segmentFilePath=threadAudioFile.substring(0,threadAudioFile.lastIndexOf(".temp"))+String.format(Locale.US,"_%03d",segmentIndex)+".temp";
+            }
+            dataSizeInBytes=0;
+            fileDataSizeInBytes=0;
+            checkpointDataSizeInBytes=0;
+            checkpointNanos=System.nanoTime();
+            fileOutputStream = new FileOutputStream(segmentFilePath);
+            //we add a header for an empty file as a place holder for the real header, once the segment is complete.
+            if (flacEncoder!=null){
+                flacEncoder.reset();
+                writeFully(fileOutputStream.getChannel(), flacEncoder.createStreamHeader());
+            }
+            else {
+                if (compressedWavEncoder!=null){
+                    compressedWavEncoder.reset();
+                }
+                waveHeaderBuffer.rewind();
+                writeFully(fileOutputStream.getChannel(), waveHeaderBuffer);
+            }
+        }
+
+        /**
+         * Patches the header of the current file to match the data written so far and forces both to the storage device, so the file stays valid if the process dies before the segment is finished.
+         * A flac file is only valid up to its last full frame, as the rest of the data is still waiting in the encoder.
+         * @throws IOException If the file cannot be written to.
+         */
+        private void checkpoint()throws IOException{
+            final FileChannel fileChannel=fileOutputStream.getChannel();
+            updateHeader(fileChannel);
+            fileChannel.force(false);
+            checkpointDataSizeInBytes=dataSizeInBytes;
+            checkpointNanos=System.nanoTime();
+        }
+
+        /**
+         * Patches the header of the current file, closes it and renames it into a wav (or flac) file. When segmenting, the {@link OnSegmentCompletedListener} is then told about it through the listener executor.
+         * @throws IOException If the header cannot be written or the file cannot be closed.
+         */
+        private void finishSegment()throws IOException{
+            final FileOutputStream finishedOutputStream=fileOutputStream;
+            fileOutputStream=null;
+            try {
+                if (flacEncoder!=null){
+                    flacEncoder.finish(finishedOutputStream.getChannel());
+                }
+                else if (compressedWavEncoder!=null){
+                    fileDataSizeInBytes = fileDataSizeInBytes + compressedWavEncoder.finish(finishedOutputStream.getChannel());
+                }
+                if (flacEncoder==null && fileDataSizeInBytes%2!=0){
+                    //8 bit mono data can end on an odd byte, which RIFF requires to be followed by a pad byte. The header already counts it.
+                    writeFully(finishedOutputStream.getChannel(), ByteBuffer.allocate(1));
+                }
+                updateHeader(finishedOutputStream.getChannel());
+            }
+            finally {
+                finishedOutputStream.close();
+            }
+
+            final String renamedFilePath=segmentFilePath.replace(".temp", outputFileExtension);
+            if(!(new File(segmentFilePath).renameTo(new File(renamedFilePath)))){
+                Log.e(TAG,"PCM file was not renamed.");
+                currentAudioState.getAndSet(ERROR_STATE);
+            }
+            else {
+                finishedFilePath=renamedFilePath;
+                if (segmentLimitInBytes!=Long.MAX_VALUE){
+                    //Dispatched, so a slow listener cannot hold up the writing of the next segment.
+                    dispatchToListener(threadListenerExecutor, new SegmentCompletedRunnable(renamedFilePath,segmentIndex));
+                }
+            }
+            segmentIndex++;
+        }
+
+        /**
+         * Rewrites the header at the start of the file to describe what has been written so far. The FLAC stream header only gets its MD5 once the encoder is finished.
+         * @param fileChannel The channel of the .temp file.
+         * @throws IOException If the channel cannot be written to.
+         */
+        private void updateHeader(final FileChannel fileChannel)throws IOException{
+            if (flacEncoder!=null){
+                final ByteBuffer streamHeader=flacEncoder.createStreamHeader();
+                long position=0;
+                while (streamHeader.hasRemaining()){
+                    position=position+fileChannel.write(streamHeader,position);
+                }
+            }
+            else if (compressedWavEncoder!=null){
+                //Only the encoder knows how many of the samples in the data are padding.
+                PcmWavConverter.updateWavHeader(fileChannel, waveHeader, fileDataSizeInBytes, compressedWavEncoder.getEncodedFrameCount());
+            }
+            else {
+                PcmWavConverter.updateWavHeader(fileChannel, waveHeader, fileDataSizeInBytes);
+            }
+        }
+
+        /**
+         * Writes everything between the buffer's position and limit to the channel, as a single write call is allowed to write less than that.
+         * @param fileChannel The channel of the .temp file.
+         * @param buffer The data to write.
+         * @throws IOException If the channel cannot be written to.
+         */
+        private void writeFully(final FileChannel fileChannel, final ByteBuffer buffer)throws IOException{
+            while (buffer.hasRemaining()){
+                fileChannel.write(buffer);
+            }
+        }
+    }
+    /**
+     * This thread hands the blocks of an {@link AudioBroadcastRing} to a single {@link OnAudioChunkListener}, in order. It parks while there is nothing new and is woken up whenever a block is published.
+     * If it has fallen so far behind that the blocks it was going to read have been overwritten, it skips to the oldest block still in the ring and tells the listener how many it missed.
+     * Once the ring has been closed and every block in it was handed over, it dies off.
+     */
+    private class AudioChunkSubscriberThread extends Thread{
+        private AudioBroadcastRing broadcastRing;
+        private OnAudioChunkListener onAudioChunkListener;
+        /**
+         * Read only views of the slots, made up front so handing a block over allocates nothing.
+         */
+        private ByteBuffer[] slotViews;
+
+        /**
+         * Default constructor.
+         * @param broadcastRing The ring the blocks are read from.
+         * @param onAudioChunkListener The listener the blocks are handed to.
+         */
+        AudioChunkSubscriberThread(final AudioBroadcastRing broadcastRing,final OnAudioChunkListener onAudioChunkListener){
+            this.broadcastRing=broadcastRing;
+            this.onAudioChunkListener=onAudioChunkListener;
+            slotViews=new ByteBuffer[broadcastRing.capacity()];
+            for (int i=0;i<slotViews.length;i++){
+                slotViews[i]=broadcastRing.slot(i).asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+
+        /**
+         * Wakes the thread up if it is parked waiting for blocks. Cheap enough to be called after every block.
+         */
+        void wakeUp(){
+            LockSupport.unpark(this);
+        }
+        @Override
+        public void run(){
+            long nextSequence=0;
+            while (true){
+                if (nextSequence==broadcastRing.publishedCount()){
+                    if (!broadcastRing.isClosed()){
+                        LockSupport.parkNanos(this, PARK_TIMEOUT_NANOS);
+                    }
+                    //Blocks are published before the ring is closed, so none can show up once it is closed and drained.
+                    else if (nextSequence==broadcastRing.publishedCount()){
+                        break;
+                    }
+                    continue;
+                }
+                final long oldestReadableSequence=broadcastRing.oldestReadableSequence();
+                if (nextSequence<oldestReadableSequence){
+                    onAudioChunkListener.onAudioChunksMissed(PauseResumeAudioRecorder.this,oldestReadableSequence-nextSequence);
+                    nextSequence=oldestReadableSequence;
+                }
+                final int index=broadcastRing.indexOf(nextSequence);
+                if (broadcastRing.isAvailable(nextSequence)){
+                    final ByteBuffer slotView=slotViews[index];
+                    slotView.clear();
+                    slotView.limit(broadcastRing.lengthOf(index));
+                    onAudioChunkListener.onAudioChunk(PauseResumeAudioRecorder.this,slotView,nextSequence);
+                    //The recording thread does not wait for anyone, so the block may have been overwritten while the listener was reading it.
+                    if (!broadcastRing.wasReadWhole(nextSequence)){
+                        onAudioChunkListener.onAudioChunksMissed(PauseResumeAudioRecorder.this,1);
+                    }
+                }
+                else {
+                    onAudioChunkListener.onAudioChunksMissed(PauseResumeAudioRecorder.this,1);
+                }
+                nextSequence++;
+            }
+        }
+    }
+    /**
+     * Interface that gets called with every block of audio while recording. See {@link #addOnAudioChunkListener(OnAudioChunkListener)}.
+     */
+    public interface OnAudioChunkListener{
+        /**
+         * Called on a secondary thread dedicated to this listener for every block of audio recorded, in order. The block is shared with every other listener and is only valid until this method returns,
+         * so copy whatever you need to keep. If the recording thread laps this listener while it is still reading, {@link #onAudioChunksMissed(PauseResumeAudioRecorder, long)} is called right after this method returns,
+         * as the block may have been overwritten in the meantime.
+         * @param pauseResumeAudioRecorder The instance of the {@link PauseResumeAudioRecorder} that had the event.
+         * @param audioChunk The PCM data, as written to the wav file (little endian), between its position and limit. Read only.
+         * @param sequenceNumber The position of the block in the recording, starting at 0. Blocks that were missed leave a gap in the numbers.
+         */
+        void onAudioChunk(final PauseResumeAudioRecorder pauseResumeAudioRecorder,final ByteBuffer audioChunk,final long sequenceNumber);
+        /**
+         * Called on the same thread as {@link #onAudioChunk(PauseResumeAudioRecorder, ByteBuffer, long)} when this listener fell too far behind and blocks were overwritten before it could read them.
+         * @param pauseResumeAudioRecorder The instance of the {@link PauseResumeAudioRecorder} that had the event.
+         * @param missedChunkCount How many blocks were missed.
+         */
+        void onAudioChunksMissed(final PauseResumeAudioRecorder pauseResumeAudioRecorder,final long missedChunkCount);
+    }
+    /**
+     * Interface that gets called when specified time limit has been reached.
+     */
+    public interface OnTimeCompletionListener{
+        /**
+         * Called on the listener executor (see {@link #setListenerExecutor(Executor)}) when the specified time is elapsed. If you desire to run UI code, Use the looper's runonUIThread method.
+         * @param pauseResumeAudioRecorder The instance of the {@link PauseResumeAudioRecorder} that had the event.
+         */
+        void onTimeCompleted(final PauseResumeAudioRecorder pauseResumeAudioRecorder);
+    }
+    /**
+     * Interface that gets called when specified file size been reached or exceeded(The recorder will put the last complete set of data on the file before quitting.
+     */
+    public interface OnFileSizeReachedListener{
+        /**
+         * Called on the listener executor (see {@link #setListenerExecutor(Executor)}) when the specified file size has been reached. If you desire to run UI code, Use the looper's runonUIThread method.
+         * @param pauseResumeAudioRecorder The instance of the {@link PauseResumeAudioRecorder} that had the event.
+         */
+        void onFileSizeReached(final PauseResumeAudioRecorder pauseResumeAudioRecorder);
+    }
+    /**
+     * Runnable that fires when the max time has been reached.
+     */
+    private class MaxTimeReachedRunnable implements Runnable{
         @Override
         public void run(){
-            Log.i(TAG, "Max time has been reached for recording.");
-            currentAudioState.getAndSet(STOPPED_STATE);
             if (onTimeCompletionListener != null) {
                 onTimeCompletionListener.onTimeCompleted(PauseResumeAudioRecorder.this);
             }
@@ -415,7 +1806,20 @@ public class PauseResumeAudioRecorder {
     }
 
     /**
-     * Runnable that fires when the max file size has been reached approximately.
+     * Interface that gets called when a segment of a segmented recording has been finished. See {@link #setSegmentDurationInMillis(long)} and {@link #setSegmentSizeInBytes(long)}.
+     */
+    public interface OnSegmentCompletedListener{
+        /**
+         * Called on the listener executor (see {@link #setListenerExecutor(Executor)}) once a segment is a complete wav file, while the recording carries on into the next segment. The last segment is handed over as well once the recording stops.
+         * If you desire to run UI code, Use the looper's runonUIThread method.
+         * @param pauseResumeAudioRecorder The instance of the {@link PauseResumeAudioRecorder} that had the event.
+         * @param segmentFilePath The path of the finished wav file. It will not be written to again.
+         * @param segmentIndex The position of the segment in the recording, starting at 0.
+         */
+        void onSegmentCompleted(final PauseResumeAudioRecorder pauseResumeAudioRecorder,final String segmentFilePath,final int segmentIndex);
+    }
+    /**
+     * Runnable that fires when the max file size has been reached.
      */
     private class MaxSizeReachedRunnable implements Runnable{
         @Override
@@ -425,4 +1829,85 @@ public class PauseResumeAudioRecorder {
             }
         }
     }
+
+    /**
+     * Interface that gets called once a recording has been stopped and its file is complete. See {@link #setOnRecordingCompletedListener(OnRecordingCompletedListener)}.
+     */
+    public interface OnRecordingCompletedListener{
+        /**
+         * Called on the listener executor (see {@link #setListenerExecutor(Executor)}) once the last file of the recording has been finished and renamed, after any other listener of the recording.
+         * Not called if the recording ended in the error state. If you desire to run UI code, Use the looper's runonUIThread method.
+         * @param pauseResumeAudioRecorder The instance of the {@link PauseResumeAudioRecorder} that had the event.
+         * @param filePath The path of the finished wav (or flac) file. When segmenting, the path of the last segment.
+         */
+        void onRecordingCompleted(final PauseResumeAudioRecorder pauseResumeAudioRecorder,final String filePath);
+    }
+    /**
+     * Runnable that fires when a segment has been finished.
+     */
+    private class SegmentCompletedRunnable implements Runnable{
+        private final String segmentFilePath;
+        private final int segmentIndex;
+
+        SegmentCompletedRunnable(final String segmentFilePath,final int segmentIndex){
+            this.segmentFilePath=segmentFilePath;
+            this.segmentIndex=segmentIndex;
+        }
+        @Override
+        public void run() {
+            if (onSegmentCompletedListener !=null){
+                onSegmentCompletedListener.onSegmentCompleted(PauseResumeAudioRecorder.this,segmentFilePath,segmentIndex);
+            }
+        }
+    }
+
+    /**
+     * Runnable that fires when the recording has been finished.
+     */
+    private class RecordingCompletedRunnable implements Runnable{
+        private final String filePath;
+
+        RecordingCompletedRunnable(final String filePath){
+            this.filePath=filePath;
+        }
+        @Override
+        public void run() {
+            if (onRecordingCompletedListener !=null){
+                onRecordingCompletedListener.onRecordingCompleted(PauseResumeAudioRecorder.this,filePath);
+            }
+        }
+    }
+
+    /**
+     * Hands a listener call to an executor. A rejected call is dropped, as a listener must never be able to stop a recording.
+     * @param executor The listener executor of the recording.
+     * @param listenerRunnable The call to make.
+     */
+    private static void dispatchToListener(final Executor executor,final Runnable listenerRunnable){
+        try {
+            executor.execute(listenerRunnable);
+        }
+        catch (RejectedExecutionException ex){
+            Log.e(TAG,"Listener executor rejected a listener call, dropping it",ex);
+        }
+    }
+
+    /**
+     * @return The single threaded executor shared by every recorder without an executor of its own. Its thread is a daemon thread that dies off while there is nothing to call.
+     */
+    private static synchronized Executor getDefaultListenerExecutor(){
+        if (defaultListenerExecutor==null){
+            final ThreadPoolExecutor threadPoolExecutor=new ThreadPoolExecutor(1,1,DISPATCHER_KEEP_ALIVE_SECONDS,TimeUnit.SECONDS,new LinkedBlockingQueue<Runnable>(),new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread=new Thread(runnable,TAG+"-listeners");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            threadPoolExecutor.allowCoreThreadTimeOut(true);
+            defaultListenerExecutor=threadPoolExecutor;
+        }
+        return defaultListenerExecutor;
+    }
 }
@@ -0,0 +1,57 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads single samples out of the little endian blocks the recording thread writes, whatever their sample format, so they can be analysed on a common 16 bit scale, and writes 16 bit samples into them.
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+final class PcmSamples {
+    /**
+     * The size of a 32 bit float sample, which is what 4 bytes per sample means for a block.
+     */
+    static final int FLOAT_BYTES_PER_SAMPLE=4;
+
+    private PcmSamples(){
+    }
+
+    /**
+     * Writes 16 bit samples in little endian order, the way the recording thread turns what it read into a block.
+     * @param samples The samples.
+     * @param length The number of samples to write, from the start of the array.
+     * @param output Where the bytes are written, from its start. Must hold 2 bytes per sample.
+     * @return The number of bytes written.
+     */
+    static int put16BitSamples(final short[] samples,final int length,final byte[] output){
+        int byteIndex=0;
+        for (int i=0;i<length;i++){
+            final short sample=samples[i];
+            output[byteIndex++]=(byte) sample;
+            output[byteIndex++]=(byte)(sample>>8);
+        }
+        return byteIndex;
+    }
+
+    /**
+     * Reads a sample without moving the position of the buffer.
+     * @param pcmData The little endian PCM data.
+     * @param index The index of the first byte of the sample.
+     * @param bytesPerSample 1 for unsigned 8 bit samples, 2 for signed 16 bit ones, 3 for packed signed 24 bit ones, {@link #FLOAT_BYTES_PER_SAMPLE} for 32 bit float ones.
+     * @return The sample scaled to 16 bits, from -32768 to 32767.
+     */
+    static int get16BitSample(final ByteBuffer pcmData,final int index,final int bytesPerSample){
+        if (bytesPerSample==1){
+            return ((pcmData.get(index) & 0xFF)-128)<<8;
+        }
+        if (bytesPerSample==2){
+            return (pcmData.get(index) & 0xFF) | (pcmData.get(index+1)<<8);
+        }
+        //The low byte of a 24 bit sample is below what 16 bits can hold.
+        if (bytesPerSample==3){
+            return (pcmData.get(index+1) & 0xFF) | (pcmData.get(index+2)<<8);
+        }
+        final float sample=Float.intBitsToFloat((pcmData.get(index) & 0xFF) | (pcmData.get(index+1) & 0xFF)<<8 | (pcmData.get(index+2) & 0xFF)<<16 | pcmData.get(index+3)<<24);
+        final int scaled=Math.round(sample*32768f);
+        return scaled>Short.MAX_VALUE ? Short.MAX_VALUE : (scaled<Short.MIN_VALUE ? Short.MIN_VALUE : scaled);
+    }
+}
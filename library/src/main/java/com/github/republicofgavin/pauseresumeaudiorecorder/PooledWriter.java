@@ -0,0 +1,14 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder;
+
+/**
+ * The file writing side of a recording, drained by a writer thread of a {@link RecorderIoPool} (or by a thread of its own). A writer is only ever drained by a single thread,
+ * which is woken up (unparked) by the recording whenever there is something new to write.
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+interface PooledWriter {
+    /**
+     * Writes everything that is waiting to be written and returns without blocking. Errors are handled by the writer itself, so a failing recording cannot take down a thread shared with others.
+     * @return True once the writer is finished and will never have anything to write again, at which point the thread drops it.
+     */
+    boolean writeAvailable();
+}
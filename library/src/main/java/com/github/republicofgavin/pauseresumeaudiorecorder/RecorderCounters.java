@@ -0,0 +1,34 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder;
+
+/**
+ * The live counters of a single recording. Every counter has exactly one writing thread (the recording thread, or the writer thread for what is written to the file), so plain volatile fields are enough and any thread can read them without locking.
+ * Consumers get a copy through {@link RecorderStats}, which reads the counters one at a time, so the values only agree with each other once the recording has stopped.
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+final class RecorderCounters {
+    volatile long readCount;
+    volatile long framesRead;
+    volatile long shortReadCount;
+    volatile long readErrorCount;
+    volatile int lastReadErrorCode;
+    volatile long overrunCount;
+    volatile long droppedFrameCount;
+    volatile long ringBufferFullCount;
+    final LatencyCounters readLatencyCounters=new LatencyCounters();
+    volatile int maxRingBufferDepth;
+    volatile long pausedNanos;
+    volatile long pauseResumeCount;
+    /**
+     * When the recording thread left its loop, set before the ring buffer is closed so the writer thread sees it once it has drained the ring.
+     */
+    volatile long stopNanos;
+
+    //Written by the writer thread.
+    volatile long bytesWritten;
+    volatile long framesWritten;
+    final LatencyCounters writeLatencyCounters=new LatencyCounters();
+    /**
+     * -1 until the last file of the recording has been finished.
+     */
+    volatile long finalizationNanos=-1;
+}
@@ -0,0 +1,175 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A small fixed set of threads shared by many {@link PauseResumeAudioRecorder}s recording at once, see {@link PauseResumeAudioRecorder#setRecorderIoPool(RecorderIoPool)}.
+ * Every recording still captures on a thread of its own, but its file is written by one of the writer threads of the pool, which drains every recording handed to it in a single pass whenever any of them has new audio.
+ * Each recording is handed to the writer thread with the fewest recordings at the time and stays on it until its file is finished.
+ * The threads are started when they are first needed and are daemon threads, so a pool that is never shut down does not keep the process alive.
+ * NOTE: Recordings sharing a writer thread share its disk time, so one very slow file (for example on removable storage) delays the others. Size the ring buffers of the recorders (setRingBufferSize) with that in mind.
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+public final class RecorderIoPool {
+    /**
+     * Upper bound on how long a writer thread parks before rechecking its recordings on its own.
+     */
+    private static final long PARK_TIMEOUT_NANOS=100L*1000L*1000L;
+    private static final String TAG=RecorderIoPool.class.getSimpleName();
+
+    private final WriterThread[] writerThreads;
+    private boolean shutdown;
+
+    /**
+     * Default constructor. No thread is started until a recording is handed to the pool.
+     * @param writerThreadCount The number of writer threads. Must be at least 1.
+     * @throws IllegalArgumentException If the thread count is invalid.
+     */
+    public RecorderIoPool(final int writerThreadCount){
+        if (writerThreadCount<1){
+            throw new IllegalArgumentException("writerThreadCount must be at least 1");
+        }
+        writerThreads=new WriterThread[writerThreadCount];
+    }
+
+    /**
+     * @return The number of writer threads of the pool.
+     */
+    public int getWriterThreadCount(){
+        return writerThreads.length;
+    }
+
+    /**
+     * @return True once {@link #shutdown()} has been called.
+     */
+    public synchronized boolean isShutdown(){
+        return shutdown;
+    }
+
+    /**
+     * Shuts the pool down. Recordings can no longer be started with it, and the writer threads finish the files they are still writing (including those of recordings still running) and die off.
+     * Does nothing if the pool is already shut down.
+     */
+    public synchronized void shutdown(){
+        if (shutdown){
+            return;
+        }
+        shutdown=true;
+        for (final WriterThread writerThread:writerThreads){
+            if (writerThread!=null){
+                writerThread.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Hands a writer to the writer thread with the fewest writers, starting that thread if it has not been started yet.
+     * @param pooledWriter The writer of a recording that is starting.
+     * @return The thread the writer is drained on, which has to be unparked whenever there is something new to write.
+     * @throws IllegalStateException If the pool is shut down.
+     */
+    synchronized Thread submit(final PooledWriter pooledWriter){
+        if (shutdown){
+            throw new IllegalStateException("RecorderIoPool is shut down");
+        }
+        int leastBusyIndex=0;
+        for (int i=0;i<writerThreads.length;i++){
+            if (writerThreads[i]==null){
+                writerThreads[i]=new WriterThread(false);
+                writerThreads[i].setName(TAG+"-writer-"+i);
+                writerThreads[i].start();
+            }
+            if (writerThreads[i].getWriterCount()<writerThreads[leastBusyIndex].getWriterCount()){
+                leastBusyIndex=i;
+            }
+        }
+        writerThreads[leastBusyIndex].add(pooledWriter);
+        return writerThreads[leastBusyIndex];
+    }
+
+    /**
+     * Starts a thread of its own for a writer, for recordings that are not pooled. The thread dies off once the writer is finished.
+     * @param pooledWriter The writer of a recording that is starting.
+     * @return The thread the writer is drained on, which has to be unparked whenever there is something new to write.
+     */
+    static Thread startDedicatedThread(final PooledWriter pooledWriter){
+        final WriterThread writerThread=new WriterThread(true);
+        writerThread.add(pooledWriter);
+        writerThread.start();
+        return writerThread;
+    }
+
+    /**
+     * A thread that drains its writers in turn, writing everything each of them has waiting, and parks once a pass is done until one of the recordings wakes it up.
+     * Recordings unpark it after they publish something, so a wake up that comes in during a pass is never lost: it makes the next park return right away.
+     */
+    private static final class WriterThread extends Thread{
+        private final ConcurrentLinkedQueue<PooledWriter> addedWriters=new ConcurrentLinkedQueue<PooledWriter>();
+        /**
+         * Only touched by this thread.
+         */
+        private final List<PooledWriter> writers=new ArrayList<PooledWriter>();
+        private final AtomicInteger writerCount=new AtomicInteger();
+        /**
+         * True if the thread dies off as soon as it has no writers left.
+         */
+        private volatile boolean exitWhenIdle;
+
+        WriterThread(final boolean exitWhenIdle){
+            this.exitWhenIdle=exitWhenIdle;
+            setDaemon(true);
+        }
+
+        void add(final PooledWriter pooledWriter){
+            writerCount.incrementAndGet();
+            addedWriters.add(pooledWriter);
+            LockSupport.unpark(this);
+        }
+
+        int getWriterCount(){
+            return writerCount.get();
+        }
+
+        void shutdown(){
+            exitWhenIdle=true;
+            LockSupport.unpark(this);
+        }
+
+        @Override
+        public void run(){
+            while (true){
+                PooledWriter addedWriter=addedWriters.poll();
+                while (addedWriter!=null){
+                    writers.add(addedWriter);
+                    addedWriter=addedWriters.poll();
+                }
+                for (int i=writers.size()-1;i>=0;i--){
+                    boolean finished;
+                    try {
+                        finished=writers.get(i).writeAvailable();
+                    }
+                    catch (RuntimeException ex){
+                        //Dropped so the other recordings on this thread carry on.
+                        Log.e(TAG,"Writer failed, dropping it",ex);
+                        finished=true;
+                    }
+                    if (finished){
+                        writers.remove(i);
+                        writerCount.decrementAndGet();
+                    }
+                }
+                //Writers are only added while the pool is running, so none can show up once it is shut down and this thread is idle.
+                if (exitWhenIdle && writerCount.get()==0){
+                    break;
+                }
+                LockSupport.parkNanos(this, PARK_TIMEOUT_NANOS);
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder;
+
+/**
+ * A copy of the counters of a {@link PauseResumeAudioRecorder}'s current (or last) recording. The values are cumulative from the start of the recording, and this object never changes once it is made.
+ * The counters are copied one at a time while the recording threads keep updating them, without a lock, so each value is current as of when it was copied but they are not consistent with each other:
+ * during a recording, framesWritten and bytesWritten, framesRead and the read count, or a histogram and its total can disagree by the read or write that was in progress. Once the recording is over they stop changing and agree.
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+public final class RecorderStats {
+    private final long readCount;
+    private final long framesRead;
+    private final long shortReadCount;
+    private final long readErrorCount;
+    private final int lastReadErrorCode;
+    private final long overrunCount;
+    private final long droppedFrameCount;
+    private final long ringBufferFullCount;
+    private final LatencyHistogram readLatencyHistogram;
+    private final int maxRingBufferDepth;
+    private final long pausedNanos;
+    private final long pauseResumeCount;
+    private final long bytesWritten;
+    private final long framesWritten;
+    private final LatencyHistogram writeLatencyHistogram;
+    private final long finalizationNanos;
+
+    /**
+     * Copies the current value of every counter, one after the other, so values are not taken at the same instant.
+     * @param recorderCounters The live counters of a recording. Null for a recorder that has not recorded yet, in which case every value is 0.
+     */
+    RecorderStats(final RecorderCounters recorderCounters){
+        if (recorderCounters==null){
+            readCount=0;
+            framesRead=0;
+            shortReadCount=0;
+            readErrorCount=0;
+            lastReadErrorCode=0;
+            overrunCount=0;
+            droppedFrameCount=0;
+            ringBufferFullCount=0;
+            maxRingBufferDepth=0;
+            pausedNanos=0;
+            pauseResumeCount=0;
+            bytesWritten=0;
+            framesWritten=0;
+            finalizationNanos=-1;
+            readLatencyHistogram=new LatencyHistogram(null);
+            writeLatencyHistogram=new LatencyHistogram(null);
+        }
+        else {
+            readCount=recorderCounters.readCount;
+            framesRead=recorderCounters.framesRead;
+            shortReadCount=recorderCounters.shortReadCount;
+            readErrorCount=recorderCounters.readErrorCount;
+            lastReadErrorCode=recorderCounters.lastReadErrorCode;
+            overrunCount=recorderCounters.overrunCount;
+            droppedFrameCount=recorderCounters.droppedFrameCount;
+            ringBufferFullCount=recorderCounters.ringBufferFullCount;
+            maxRingBufferDepth=recorderCounters.maxRingBufferDepth;
+            pausedNanos=recorderCounters.pausedNanos;
+            pauseResumeCount=recorderCounters.pauseResumeCount;
+            bytesWritten=recorderCounters.bytesWritten;
+            framesWritten=recorderCounters.framesWritten;
+            finalizationNanos=recorderCounters.finalizationNanos;
+            readLatencyHistogram=new LatencyHistogram(recorderCounters.readLatencyCounters);
+            writeLatencyHistogram=new LatencyHistogram(recorderCounters.writeLatencyCounters);
+        }
+    }
+
+    /**
+     * @return The number of read calls made on the {@link android.media.AudioRecord}.
+     */
+    public long getReadCount() {
+        return readCount;
+    }
+
+    /**
+     * @return The number of frames (one sample for every channel) successfully read.
+     */
+    public long getFramesRead() {
+        return framesRead;
+    }
+
+    /**
+     * @return The number of reads that returned less data than was asked for.
+     */
+    public long getShortReadCount() {
+        return shortReadCount;
+    }
+
+    /**
+     * @return The number of reads that returned an error code instead of data. Nothing is written for those reads.
+     */
+    public long getReadErrorCount() {
+        return readErrorCount;
+    }
+
+    /**
+     * @return The last error code returned by a read (for example {@link android.media.AudioRecord}.ERROR_INVALID_OPERATION), 0 if there was none.
+     */
+    public int getLastReadErrorCode() {
+        return lastReadErrorCode;
+    }
+
+    /**
+     * @return The number of times the recording fell behind the wall clock by more than the {@link android.media.AudioRecord}'s buffer, meaning the device buffer overflowed.
+     */
+    public long getOverrunCount() {
+        return overrunCount;
+    }
+
+    /**
+     * @return The estimated number of frames lost to overruns. This is the difference between the frames expected for the elapsed wall clock time and the frames actually read.
+     */
+    public long getDroppedFrameCount() {
+        return droppedFrameCount;
+    }
+
+    /**
+     * @return The number of times the recording thread found every block of the ring buffer still waiting to be written and had to wait on the disk.
+     */
+    public long getRingBufferFullCount() {
+        return ringBufferFullCount;
+    }
+
+    /**
+     * @return How long the reads from the {@link com.github.republicofgavin.pauseresumeaudiorecorder.source.AudioSource} took. A microphone read blocks until its audio has been captured, so reads taking much longer than the audio they return point at a device that is not delivering in time.
+     */
+    public LatencyHistogram getReadLatencyHistogram() {
+        return readLatencyHistogram;
+    }
+
+    /**
+     * @return The most blocks that were ever waiting in the ring buffer to be written, counting the one just published. Getting close to the size of the ring buffer means the disk nearly held up the recording.
+     */
+    public int getMaxRingBufferDepth() {
+        return maxRingBufferDepth;
+    }
+
+    /**
+     * @return How long the recording spent paused through {@link PauseResumeAudioRecorder#pauseRecording()}, in milliseconds. Only pauses that are over are counted.
+     */
+    public long getPausedTimeInMillis() {
+        return pausedNanos/1000000L;
+    }
+
+    /**
+     * @return The number of times the recording was paused and then resumed.
+     */
+    public long getPauseResumeCount() {
+        return pauseResumeCount;
+    }
+
+    /**
+     * @return The number of bytes of audio written to the file (or files, when segmenting), before any encoding. Headers are not counted.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return The number of frames (one sample for every channel) written to the file (or files, when segmenting).
+     */
+    public long getFramesWritten() {
+        return framesWritten;
+    }
+
+    /**
+     * @return How long the writes of blocks to the file took, including encoding them and starting and finishing segments on the way.
+     */
+    public LatencyHistogram getWriteLatencyHistogram() {
+        return writeLatencyHistogram;
+    }
+
+    /**
+     * @return The time from the recording thread seeing the recording stop to the last file being finished and renamed, in milliseconds. This covers writing out what was still waiting in the ring buffer. -1 until the file is finished.
+     */
+    public long getFinalizationTimeInMillis() {
+        return (finalizationNanos<0) ? -1 : finalizationNanos/1000000L;
+    }
+}
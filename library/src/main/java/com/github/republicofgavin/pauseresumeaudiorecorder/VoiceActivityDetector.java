@@ -0,0 +1,99 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decides, a block at a time, whether the audio read by the recording thread holds voice. It measures the energy of the block and the zero crossing rate of its first channel:
+ * a block is voiced if its RMS level reaches the threshold, or if it reaches a quarter of it while crossing zero as often as unvoiced consonants (s, f, sh) do, since those are quiet but noisy.
+ * Once voice stops, blocks keep being reported as active for the hangover, so the end of words and short gaps between them are kept. Nothing is allocated once it is built.
+ * Only used from the recording thread.
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+final class VoiceActivityDetector {
+    /**
+     * Unvoiced consonants cross zero several thousand times a second, while hum and room tone cross it far less often.
+     */
+    private static final int FRICATIVE_CROSSINGS_PER_SECOND=3000;
+    private static final double FULL_SCALE=32768.0;
+
+    private final int channelCount;
+    private final int sampleRateInHertz;
+    private final double thresholdSquared;
+    private final long hangoverInFrames;
+    private long framesUntilSilence;
+
+    /**
+     * Default constructor. The detector starts out within the hangover, so the start of a recording is not dropped while it settles.
+     * @param channelCount The number of interleaved channels in the data. Must be greater than 0.
+     * @param sampleRateInHertz The sample rate of the data. Must be greater than 0.
+     * @param thresholdLevel The RMS level, from 0 to 1 (full scale), a block needs to be voiced. Must be greater than 0.
+     * @param hangoverInFrames How long blocks stay active after the last voiced one. Must be greater than or equal to 0.
+     * @throws IllegalArgumentException If the parameters are invalid.
+     */
+    VoiceActivityDetector(final int channelCount,final int sampleRateInHertz,final float thresholdLevel,final long hangoverInFrames){
+        if (channelCount<1 || sampleRateInHertz<1){
+            throw new IllegalArgumentException("channelCount and sampleRateInHertz must be greater than 0");
+        }
+        if (thresholdLevel<=0){
+            throw new IllegalArgumentException("thresholdLevel must be greater than 0");
+        }
+        if (hangoverInFrames<0){
+            throw new IllegalArgumentException("hangoverInFrames cannot be negative");
+        }
+        this.channelCount=channelCount;
+        this.sampleRateInHertz=sampleRateInHertz;
+        final double threshold=thresholdLevel*FULL_SCALE;
+        thresholdSquared=threshold*threshold;
+        this.hangoverInFrames=hangoverInFrames;
+        reset();
+    }
+
+    /**
+     * Makes the detector active again, as if voice had just stopped. Called when the recording is resumed.
+     */
+    void reset(){
+        framesUntilSilence=hangoverInFrames;
+    }
+
+    /**
+     * Analyses a block of little endian PCM data between the position and the limit of a buffer, without moving its position.
+     * @param pcmData The interleaved PCM data.
+     * @param bytesPerSample 1 for unsigned 8 bit samples, 2 for signed 16 bit ones, 3 for packed 24 bit ones, 4 for 32 bit float ones.
+     * @return True if the block is voiced or within the hangover of a voiced block, false if it is silence that does not need to be written.
+     */
+    boolean isActive(final ByteBuffer pcmData,final int bytesPerSample){
+        final int position=pcmData.position();
+        final int sampleCount=(pcmData.limit()-position)/bytesPerSample;
+        final int frameCount=sampleCount/channelCount;
+        if (frameCount==0){
+            return framesUntilSilence>0;
+        }
+        long sumOfSquares=0;
+        int crossingCount=0;
+        boolean previousNegative=false;
+        for (int i=0;i<sampleCount;i++){
+            final int index=position+i*bytesPerSample;
+            final int sample=PcmSamples.get16BitSample(pcmData,index,bytesPerSample);
+            sumOfSquares=sumOfSquares+(long) sample*sample;
+            if (i%channelCount==0){
+                final boolean negative=sample<0;
+                if (i>0 && negative!=previousNegative){
+                    crossingCount++;
+                }
+                previousNegative=negative;
+            }
+        }
+        final double meanSquare=(double) sumOfSquares/sampleCount;
+        final boolean voiced=meanSquare>=thresholdSquared
+                || (meanSquare>=thresholdSquared/16 && (long) crossingCount*sampleRateInHertz>=(long) FRICATIVE_CROSSINGS_PER_SECOND*frameCount);
+        if (voiced){
+            framesUntilSilence=hangoverInFrames;
+            return true;
+        }
+        if (framesUntilSilence>0){
+            framesUntilSilence=framesUntilSilence-frameCount;
+            return true;
+        }
+        return false;
+    }
+}
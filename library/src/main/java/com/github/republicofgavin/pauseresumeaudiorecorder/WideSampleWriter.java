@@ -0,0 +1,68 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes captured samples into a block as packed 24 bit or 32 bit float samples, little endian. Samples are converted one at a time straight into the block, so there is no boxing,
+ * no stream in between and nothing is allocated once it is built. Only used from the recording thread.
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+final class WideSampleWriter {
+    private static final float FULL_SCALE_24_BIT=8388608f;
+    private static final float FULL_SCALE_16_BIT=32768f;
+
+    private final boolean floatOutput;
+
+    /**
+     * Default constructor.
+     * @param bytesPerSample 3 for packed 24 bit samples, {@link PcmSamples#FLOAT_BYTES_PER_SAMPLE} for 32 bit float ones.
+     * @throws IllegalArgumentException If the sample size is neither.
+     */
+    WideSampleWriter(final int bytesPerSample){
+        if (bytesPerSample!=3 && bytesPerSample!=PcmSamples.FLOAT_BYTES_PER_SAMPLE){
+            throw new IllegalArgumentException("bytesPerSample must be 3 or 4");
+        }
+        floatOutput=bytesPerSample==PcmSamples.FLOAT_BYTES_PER_SAMPLE;
+    }
+
+    /**
+     * Writes 16 bit samples, for when float capture is not available. Widening them is exact.
+     * @param samples The samples.
+     * @param length The number of samples to write, from the start of the array.
+     * @param block Where the samples are written, from its position. Must be little endian.
+     */
+    void write(final short[] samples,final int length,final ByteBuffer block){
+        for (int i=0;i<length;i++){
+            if (floatOutput){
+                block.putFloat(samples[i]/FULL_SCALE_16_BIT);
+            }
+            else {
+                put24BitSample(block,samples[i]<<8);
+            }
+        }
+    }
+
+    /**
+     * Writes float samples, nominally between -1 and 1. Floats are written as they are; 24 bit samples are rounded and clipped to full scale.
+     * @param samples The float samples between the position and the limit of the buffer, in its byte order. They are all consumed.
+     * @param block Where the samples are written, from its position. Must be little endian.
+     */
+    void write(final ByteBuffer samples,final ByteBuffer block){
+        while (samples.remaining()>=PcmSamples.FLOAT_BYTES_PER_SAMPLE){
+            final float sample=samples.getFloat();
+            if (floatOutput){
+                block.putFloat(sample);
+            }
+            else {
+                final int rounded=Math.round(sample*FULL_SCALE_24_BIT);
+                put24BitSample(block,rounded>8388607 ? 8388607 : (rounded<-8388608 ? -8388608 : rounded));
+            }
+        }
+    }
+
+    private static void put24BitSample(final ByteBuffer block,final int sample){
+        block.put((byte) sample);
+        block.put((byte)(sample>>8));
+        block.put((byte)(sample>>16));
+    }
+}
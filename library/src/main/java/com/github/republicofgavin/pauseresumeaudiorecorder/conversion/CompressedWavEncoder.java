@@ -0,0 +1,317 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder.conversion;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A streaming encoder from 16 bit little endian PCM to the compressed data of a WAV file: G.711 A-law and mu-law (2:1) or IMA ADPCM (4:1), see {@link PcmWavConverter#WAVE_FORMAT_ALAW},
+ * {@link PcmWavConverter#WAVE_FORMAT_MULAW} and {@link PcmWavConverter#WAVE_FORMAT_IMA_ADPCM}. G.711 is a single table lookup per sample and IMA ADPCM a handful of integer operations.
+ * PCM is fed in as it arrives and the encoded data is written out right away, except for the IMA ADPCM block being filled, which is written once it is full.
+ * Every buffer is allocated up front, so encoding does not allocate. This class is not thread safe.
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+public final class CompressedWavEncoder {
+    private static final int OUTPUT_BUFFER_SIZE_BYTES=4096;
+    /**
+     * G.711 works on 14 bit (mu-law) and 13 bit (A-law) samples, so every possible input of either has its code in a table.
+     */
+    private static final byte[] MULAW_TABLE=new byte[1<<14];
+    private static final byte[] ALAW_TABLE=new byte[1<<13];
+    private static final int[] IMA_STEP_TABLE={
+            7, 8, 9, 10, 11, 12, 13, 14, 16, 17, 19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+            50, 55, 60, 66, 73, 80, 88, 97, 107, 118, 130, 143, 157, 173, 190, 209, 230, 253, 279, 307,
+            337, 371, 408, 449, 494, 544, 598, 658, 724, 796, 876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066,
+            2272, 2499, 2749, 3024, 3327, 3660, 4026, 4428, 4871, 5358, 5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487, 12635, 13899,
+            15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767};
+    private static final int[] IMA_INDEX_TABLE={-1, -1, -1, -1, 2, 4, 6, 8};
+    static {
+        for (int i=0;i<MULAW_TABLE.length;i++){
+            MULAW_TABLE[i]=linearToMuLaw(i<<18>>18);
+        }
+        for (int i=0;i<ALAW_TABLE.length;i++){
+            ALAW_TABLE[i]=linearToALaw(i<<19>>19);
+        }
+    }
+
+    private final short formatTag;
+    private final int channelNum;
+    private final int blockAlign;
+    private final int samplesPerBlock;
+    private final byte[] outputBytes;
+    private final ByteBuffer outputBuffer;
+    private final byte[] carryBytes;
+    private int carryLength;
+    private int outputLength;
+    /**
+     * IMA ADPCM state, per channel: the value the decoder will have predicted and where it is in the step table.
+     */
+    private final int[] predictors;
+    private final int[] stepIndexes;
+    /**
+     * How many samples (per channel) of the IMA ADPCM block being filled are encoded, the channel of the next sample and the last sample of every channel.
+     */
+    private int blockSampleCount;
+    private int imaChannelIndex;
+    private final short[] lastSamples;
+    /**
+     * How many of the frames fed in have had their encoded data written out, not counting the padding of a short last IMA ADPCM block.
+     */
+    private long encodedFrameCount;
+
+    /**
+     * Default constructor. All the buffers are allocated here.
+     * @param waveHeader The format of the WAV file, which has to be A-law, mu-law or IMA ADPCM. The PCM data it is encoded from is 16 bit with the same sample rate and channels. Cannot be null.
+     * @throws IllegalArgumentException If the waveHeader is null or not a compressed format.
+     */
+    public CompressedWavEncoder(final PcmWavConverter.WaveHeader waveHeader){
+        if (waveHeader==null){
+            throw new IllegalArgumentException("waveHeader cannot be null");
+        }
+        formatTag=waveHeader.getFormatTag();
+        if (formatTag!=PcmWavConverter.WAVE_FORMAT_ALAW && formatTag!=PcmWavConverter.WAVE_FORMAT_MULAW && formatTag!=PcmWavConverter.WAVE_FORMAT_IMA_ADPCM){
+            throw new IllegalArgumentException("waveHeader is not a compressed format");
+        }
+        channelNum=waveHeader.getChannelNum();
+        blockAlign=waveHeader.getBlockAlign();
+        samplesPerBlock=waveHeader.getSamplesPerBlock();
+        //IMA ADPCM data is written a block at a time, G.711 data in chunks.
+        outputBytes=new byte[formatTag==PcmWavConverter.WAVE_FORMAT_IMA_ADPCM ? blockAlign : OUTPUT_BUFFER_SIZE_BYTES];
+        outputBuffer=ByteBuffer.wrap(outputBytes);
+        carryBytes=new byte[2*channelNum];
+        predictors=new int[channelNum];
+        stepIndexes=new int[channelNum];
+        lastSamples=new short[channelNum];
+    }
+
+    /**
+     * Gets the encoder ready for a new file, dropping whatever was fed to it so far. The buffers are kept.
+     */
+    public void reset(){
+        carryLength=0;
+        encodedFrameCount=0;
+        outputLength=0;
+        blockSampleCount=0;
+        imaChannelIndex=0;
+        for (int i=0;i<channelNum;i++){
+            predictors[i]=0;
+            stepIndexes[i]=0;
+            lastSamples[i]=0;
+        }
+    }
+
+    /**
+     * Feeds PCM data to the encoder. A frame split across calls is kept until the rest of it arrives.
+     * @param pcmData 16 bit little endian PCM data between its position and limit, with samples interleaved. It is consumed entirely.
+     * @param channel Where the encoded data is written.
+     * @return The number of bytes written to the channel.
+     * @throws IOException If the channel cannot be written to.
+     */
+    public int encode(final ByteBuffer pcmData,final WritableByteChannel channel)throws IOException{
+        int writtenBytes=0;
+        //G.711 frames are all written out by the end of the call. IMA ADPCM ones are counted a block at a time, as the blocks are written.
+        long g711FrameCount=0;
+        if (carryLength>0){
+            while (carryLength<carryBytes.length && pcmData.hasRemaining()){
+                carryBytes[carryLength++]=pcmData.get();
+            }
+            if (carryLength<carryBytes.length){
+                return 0;
+            }
+            for (int i=0;i<carryBytes.length;i=i+2){
+                writtenBytes=writtenBytes+encodeSample((short)((carryBytes[i] & 0xFF) | (carryBytes[i+1]<<8)),channel);
+            }
+            carryLength=0;
+            g711FrameCount++;
+        }
+        final int frameSizeInBytes=carryBytes.length;
+        while (pcmData.remaining()>=frameSizeInBytes){
+            for (int i=0;i<channelNum;i++){
+                final int low=pcmData.get() & 0xFF;
+                writtenBytes=writtenBytes+encodeSample((short)((pcmData.get()<<8) | low),channel);
+            }
+            g711FrameCount++;
+        }
+        while (pcmData.hasRemaining()){
+            carryBytes[carryLength++]=pcmData.get();
+        }
+        if (formatTag!=PcmWavConverter.WAVE_FORMAT_IMA_ADPCM){
+            writtenBytes=writtenBytes+flush(channel);
+            encodedFrameCount=encodedFrameCount+g711FrameCount;
+        }
+        return writtenBytes;
+    }
+
+    /**
+     * Writes out whatever is still waiting in the encoder. An IMA ADPCM block that is not full is written as a shorter block, its last group of 8 samples padded by repeating the last sample. A partial PCM frame left over is dropped.
+     * @param channel Where the encoded data is written.
+     * @return The number of bytes written to the channel.
+     * @throws IOException If the channel cannot be written to.
+     */
+    public int finish(final WritableByteChannel channel)throws IOException{
+        carryLength=0;
+        if (formatTag==PcmWavConverter.WAVE_FORMAT_IMA_ADPCM && blockSampleCount>0){
+            encodedFrameCount=encodedFrameCount+blockSampleCount;
+            while ((blockSampleCount-1)%8!=0){
+                for (int i=0;i<channelNum;i++){
+                    encodeImaAdpcmSample(lastSamples[i],i);
+                }
+                blockSampleCount++;
+            }
+            outputLength=4*channelNum*(1+(blockSampleCount-1)/8);
+            blockSampleCount=0;
+        }
+        return flush(channel);
+    }
+
+    /**
+     * The number of samples (per channel) in the data written out so far, which is what the fact chunk of the file has to hold. Frames still waiting in the IMA ADPCM block being filled are not counted until it is written,
+     * and the samples {@link #finish(WritableByteChannel)} pads a short last block with are never counted, so the count is exactly the number of frames recorded.
+     * @return The number of whole frames fed in since the encoder was made or reset whose encoded data has been written.
+     */
+    public long getEncodedFrameCount(){
+        return encodedFrameCount;
+    }
+
+    /**
+     * Encodes a sample of the next channel in turn. Channels have to be fed in order, a whole frame at a time.
+     * @return The number of bytes written to the channel, if the output buffer had to be flushed.
+     */
+    private int encodeSample(final short sample,final WritableByteChannel channel)throws IOException{
+        if (formatTag==PcmWavConverter.WAVE_FORMAT_MULAW){
+            outputBytes[outputLength++]=MULAW_TABLE[(sample>>2) & 0x3FFF];
+        }
+        else if (formatTag==PcmWavConverter.WAVE_FORMAT_ALAW){
+            outputBytes[outputLength++]=ALAW_TABLE[(sample>>3) & 0x1FFF];
+        }
+        else {
+            final int channelIndex=imaChannelIndex;
+            imaChannelIndex=(imaChannelIndex+1)%channelNum;
+            if (blockSampleCount==0){
+                //Every block starts with the first sample of every channel, uncompressed, along with the state the decoder starts from.
+                predictors[channelIndex]=sample;
+                final int headerIndex=4*channelIndex;
+                outputBytes[headerIndex]=(byte) sample;
+                outputBytes[headerIndex+1]=(byte)(sample>>8);
+                outputBytes[headerIndex+2]=(byte) stepIndexes[channelIndex];
+                outputBytes[headerIndex+3]=0;
+            }
+            else {
+                encodeImaAdpcmSample(sample,channelIndex);
+            }
+            lastSamples[channelIndex]=sample;
+            if (imaChannelIndex==0){
+                blockSampleCount++;
+                if (blockSampleCount==samplesPerBlock){
+                    blockSampleCount=0;
+                    encodedFrameCount=encodedFrameCount+samplesPerBlock;
+                    outputLength=blockAlign;
+                    return flush(channel);
+                }
+            }
+            return 0;
+        }
+        if (outputLength==outputBytes.length){
+            return flush(channel);
+        }
+        return 0;
+    }
+
+    /**
+     * Encodes a sample of the current block after its header. Every channel has its samples in groups of 8, packed 2 to a byte with the first one in the low nibble, and the groups of the channels alternate.
+     */
+    private void encodeImaAdpcmSample(final short sample,final int channelIndex){
+        int step=IMA_STEP_TABLE[stepIndexes[channelIndex]];
+        int difference=sample-predictors[channelIndex];
+        int code=0;
+        if (difference<0){
+            code=8;
+            difference=-difference;
+        }
+        //The difference is approximated the same way the decoder rebuilds it, so both keep the same predictor.
+        int predictedDifference=step>>3;
+        if (difference>=step){
+            code=code | 4;
+            difference=difference-step;
+            predictedDifference=predictedDifference+step;
+        }
+        step=step>>1;
+        if (difference>=step){
+            code=code | 2;
+            difference=difference-step;
+            predictedDifference=predictedDifference+step;
+        }
+        step=step>>1;
+        if (difference>=step){
+            code=code | 1;
+            predictedDifference=predictedDifference+step;
+        }
+        int predictor=predictors[channelIndex]+(((code & 8)!=0) ? -predictedDifference : predictedDifference);
+        predictor=Math.max(Short.MIN_VALUE,Math.min(Short.MAX_VALUE,predictor));
+        predictors[channelIndex]=predictor;
+        stepIndexes[channelIndex]=Math.max(0,Math.min(IMA_STEP_TABLE.length-1,stepIndexes[channelIndex]+IMA_INDEX_TABLE[code & 7]));
+
+        final int sampleIndex=blockSampleCount-1;
+        final int byteIndex=4*channelNum*(1+sampleIndex/8)+4*channelIndex+(sampleIndex%8)/2;
+        if ((sampleIndex & 1)==0){
+            outputBytes[byteIndex]=(byte) code;
+        }
+        else {
+            outputBytes[byteIndex]=(byte)(outputBytes[byteIndex] | (code<<4));
+        }
+    }
+
+    private int flush(final WritableByteChannel channel)throws IOException{
+        final int length=outputLength;
+        outputBuffer.clear();
+        outputBuffer.limit(length);
+        while (outputBuffer.hasRemaining()){
+            channel.write(outputBuffer);
+        }
+        outputLength=0;
+        return length;
+    }
+
+    /**
+     * The classic G.711 mu-law encoder, on a 14 bit sample. Only used to build the table.
+     */
+    private static byte linearToMuLaw(final int sample){
+        int value=sample;
+        int mask=0xFF;
+        if (value<0){
+            value=-value;
+            mask=0x7F;
+        }
+        //Clipped to the largest magnitude mu-law can hold, then biased so every segment starts on a power of two.
+        value=Math.min(value,8159)+0x21;
+        int segment=0;
+        while (segment<8 && value>(0x40<<segment)-1){
+            segment++;
+        }
+        if (segment>=8){
+            return (byte)(0x7F ^ mask);
+        }
+        return (byte)(((segment<<4) | ((value>>(segment+1)) & 0xF)) ^ mask);
+    }
+
+    /**
+     * The classic G.711 A-law encoder, on a 13 bit sample. Only used to build the table.
+     */
+    private static byte linearToALaw(final int sample){
+        int value=sample;
+        int mask=0xD5;
+        if (value<0){
+            value=-value-1;
+            mask=0x55;
+        }
+        int segment=0;
+        while (segment<8 && value>(0x20<<segment)-1){
+            segment++;
+        }
+        if (segment>=8){
+            return (byte)(0x7F ^ mask);
+        }
+        final int mantissa=(segment<2) ? (value>>1) & 0xF : (value>>segment) & 0xF;
+        return (byte)(((segment<<4) | mantissa) ^ mask);
+    }
+}
@@ -0,0 +1,594 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder.conversion;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A streaming FLAC (https://xiph.org/flac/format.html) encoder for little endian PCM data, as found in WAV files. PCM is fed in as it arrives and every full block of {@link #BLOCK_SIZE} samples is encoded
+ * into a frame and written out right away. Frames use fixed predictors with Rice coded residuals, and stereo blocks pick whichever of the independent, left/side, right/side and mid/side layouts is smallest.
+ * Every buffer is allocated up front, so encoding does not allocate.
+ * The stream starts with a header of {@link #STREAM_HEADER_SIZE_BYTES} bytes (see {@link #createStreamHeader()}) whose sample count, frame sizes and MD5 are only known once encoding is finished.
+ * Like the WAV header written by {@link PcmWavConverter}, it is meant to be written as a place holder first and patched in place at the end.
+ * This class is not thread safe.
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+public final class FlacEncoder {
+    /**
+     * The number of samples (per channel) in every frame but the last.
+     */
+    public static final int BLOCK_SIZE=4096;
+    /**
+     * The size of the stream marker and the STREAMINFO metadata block, which is all the metadata this encoder writes. The first frame starts right after it.
+     */
+    public static final int STREAM_HEADER_SIZE_BYTES=42;
+    private static final int STREAMINFO_SIZE_BYTES=34;
+    private static final int MAX_SAMPLE_RATE_HERTZ=0xFFFFF;
+    private static final int MAX_FIXED_ORDER=4;
+    private static final int MAX_PARTITION_ORDER=8;
+    private static final int MAX_RICE_PARAMETER=14;
+    private static final int CHANNEL_ASSIGNMENT_LEFT_SIDE=8;
+    private static final int CHANNEL_ASSIGNMENT_RIGHT_SIDE=9;
+    private static final int CHANNEL_ASSIGNMENT_MID_SIDE=10;
+    private static final byte[] STREAM_MARKER={'f','L','a','C'};
+    private static final int[] CRC8_TABLE=new int[256];
+    private static final int[] CRC16_TABLE=new int[256];
+    static {
+        for (int i=0;i<256;i++){
+            int crc8=i;
+            int crc16=i<<8;
+            for (int bit=0;bit<8;bit++){
+                crc8=((crc8 & 0x80)!=0) ? (crc8<<1)^0x07 : crc8<<1;
+                crc16=((crc16 & 0x8000)!=0) ? (crc16<<1)^0x8005 : crc16<<1;
+            }
+            CRC8_TABLE[i]=crc8 & 0xFF;
+            CRC16_TABLE[i]=crc16 & 0xFFFF;
+        }
+    }
+
+    private final int sampleRateInHertz;
+    private final int channelNum;
+    private final int bitsPerSample;
+    private final int bytesPerFrame;
+    private final int sampleRateCode;
+    private final int sampleSizeCode;
+    /**
+     * The samples of the block being filled, per channel. Stereo blocks also use the 2 spare rows for mid and side.
+     */
+    private final int[][] samples;
+    private final int[] residuals;
+    private final long[] partitionSums;
+    private final int[] riceParameters;
+    private final int[] bestRiceParameters;
+    private final byte[] frameBytes;
+    private final ByteBuffer frameBuffer;
+    private final byte[] md5Bytes;
+    private final byte[] carryBytes;
+    private final ByteBuffer carryBuffer;
+    private final MessageDigest md5;
+
+    private int carryLength;
+    private int blockFill;
+    private long frameNumber;
+    private long totalSamples;
+    private int minFrameSizeInBytes;
+    private int maxFrameSizeInBytes;
+    private byte[] md5Digest;
+    /**
+     * The estimated size of the residuals, partition parameters included, for the partitioning picked by the last {@link #chooseRicePartitions(int, int)}.
+     * It never underestimates, as the Rice quotients are estimated from the sum of the values instead of summed one by one.
+     */
+    private long lastRiceCostInBits;
+    private long bitBuffer;
+    private int bitCount;
+    private int byteCount;
+
+    /**
+     * Default constructor. All the buffers are allocated here.
+     * @param waveHeader The format of the PCM data, which has to be 8 or 16 bit PCM. Its byte number is ignored. Cannot be null, and its sample rate has to fit the 20 bits STREAMINFO has for it.
+     * @throws IllegalArgumentException If the waveHeader is null, not 8 or 16 bit PCM, or its sample rate is too high for FLAC.
+     */
+    public FlacEncoder(final PcmWavConverter.WaveHeader waveHeader){
+        if (waveHeader==null){
+            throw new IllegalArgumentException("waveHeader cannot be null");
+        }
+        if (waveHeader.getFormatTag()!=PcmWavConverter.WAVE_FORMAT_PCM || waveHeader.getBitRate()>16){
+            throw new IllegalArgumentException("FLAC is only encoded from 8 or 16 bit PCM");
+        }
+        if (waveHeader.getSampleRateInHertz()>MAX_SAMPLE_RATE_HERTZ){
+            throw new IllegalArgumentException("Sample rate is too high for FLAC: "+waveHeader.getSampleRateInHertz());
+        }
+        sampleRateInHertz=waveHeader.getSampleRateInHertz();
+        channelNum=waveHeader.getChannelNum();
+        bitsPerSample=waveHeader.getBitRate();
+        bytesPerFrame=channelNum*bitsPerSample/8;
+        sampleRateCode=toSampleRateCode(sampleRateInHertz);
+        sampleSizeCode=(bitsPerSample==8) ? 1 : 4;
+        samples=new int[channelNum==2 ? 4 : channelNum][BLOCK_SIZE];
+        residuals=new int[BLOCK_SIZE];
+        partitionSums=new long[1<<MAX_PARTITION_ORDER];
+        riceParameters=new int[1<<MAX_PARTITION_ORDER];
+        bestRiceParameters=new int[1<<MAX_PARTITION_ORDER];
+        //A frame never gets bigger than its samples stored verbatim (with the extra bit of a side channel) plus its headers.
+        frameBytes=new byte[channelNum*((BLOCK_SIZE*(bitsPerSample+1)+7)/8+1)+32];
+        frameBuffer=ByteBuffer.wrap(frameBytes);
+        md5Bytes=new byte[BLOCK_SIZE*bytesPerFrame];
+        carryBytes=new byte[bytesPerFrame];
+        carryBuffer=ByteBuffer.wrap(carryBytes);
+        try {
+            md5=MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException ex){
+            throw new IllegalStateException("MD5 is not available",ex);
+        }
+        reset();
+    }
+
+    /**
+     * Gets the encoder ready for a new stream, dropping whatever was fed to it so far. The buffers are kept.
+     */
+    public void reset(){
+        carryLength=0;
+        blockFill=0;
+        frameNumber=0;
+        totalSamples=0;
+        minFrameSizeInBytes=Integer.MAX_VALUE;
+        maxFrameSizeInBytes=0;
+        md5Digest=null;
+        md5.reset();
+    }
+
+    /**
+     * Builds the stream marker and STREAMINFO block as of now. Before {@link #finish(WritableByteChannel)} is called, the sample count and frame sizes only cover the frames written so far and the MD5 is left unset (all zeros),
+     * which is valid FLAC, so this can be used to checkpoint a stream that is still being written.
+     * @return A buffer of {@link #STREAM_HEADER_SIZE_BYTES} bytes, positioned at 0.
+     */
+    public ByteBuffer createStreamHeader(){
+        final ByteBuffer header=ByteBuffer.allocate(STREAM_HEADER_SIZE_BYTES).order(ByteOrder.BIG_ENDIAN);
+        header.put(STREAM_MARKER);
+        //Last metadata block flag and type 0 (STREAMINFO), followed by a 24 bit length.
+        header.putInt(0x80000000 | STREAMINFO_SIZE_BYTES);
+        header.putShort((short) BLOCK_SIZE);
+        header.putShort((short) BLOCK_SIZE);
+        putInt24(header, frameNumber==0 ? 0 : minFrameSizeInBytes);
+        putInt24(header, maxFrameSizeInBytes);
+        header.putLong(((long) sampleRateInHertz<<44) | ((long)(channelNum-1)<<41) | ((long)(bitsPerSample-1)<<36) | totalSamples);
+        if (md5Digest!=null){
+            header.put(md5Digest);
+        }
+        header.position(STREAM_HEADER_SIZE_BYTES);
+        header.flip();
+        return header;
+    }
+
+    /**
+     * Feeds PCM data to the encoder. Every block that gets full is encoded and written to the channel before this returns. A frame split across calls is kept until the rest of it arrives.
+     * @param pcmData Little endian PCM data between its position and limit, with samples interleaved and 8 bit samples unsigned, as in a WAV file. It is consumed entirely.
+     * @param channel Where the encoded frames are written.
+     * @throws IOException If the channel cannot be written to.
+     */
+    public void encode(final ByteBuffer pcmData,final WritableByteChannel channel)throws IOException{
+        if (carryLength>0){
+            while (carryLength<bytesPerFrame && pcmData.hasRemaining()){
+                carryBytes[carryLength++]=pcmData.get();
+            }
+            if (carryLength<bytesPerFrame){
+                return;
+            }
+            carryBuffer.clear();
+            readFrame(carryBuffer);
+            carryLength=0;
+            writeFrameIfFull(channel);
+        }
+        while (pcmData.remaining()>=bytesPerFrame){
+            readFrame(pcmData);
+            writeFrameIfFull(channel);
+        }
+        while (pcmData.hasRemaining()){
+            carryBytes[carryLength++]=pcmData.get();
+        }
+    }
+
+    /**
+     * Encodes whatever is left as a final, shorter frame and completes the STREAMINFO, including the MD5 of the audio. A partial PCM frame left over is dropped.
+     * Write {@link #createStreamHeader()} to the start of the stream afterwards.
+     * @param channel Where the last frame is written.
+     * @throws IOException If the channel cannot be written to.
+     */
+    public void finish(final WritableByteChannel channel)throws IOException{
+        if (blockFill>0){
+            writeFrame(channel);
+        }
+        carryLength=0;
+        md5Digest=md5.digest();
+    }
+
+    /**
+     * @return The number of samples (per channel) written out in frames so far.
+     */
+    public long getTotalSamples(){
+        return totalSamples;
+    }
+
+    private void readFrame(final ByteBuffer pcmData){
+        for (int channel=0;channel<channelNum;channel++){
+            if (bitsPerSample==8){
+                samples[channel][blockFill]=(pcmData.get() & 0xFF)-128;
+            }
+            else {
+                final int low=pcmData.get() & 0xFF;
+                samples[channel][blockFill]=(pcmData.get()<<8) | low;
+            }
+        }
+        blockFill++;
+    }
+
+    private void writeFrameIfFull(final WritableByteChannel channel)throws IOException{
+        if (blockFill==BLOCK_SIZE){
+            writeFrame(channel);
+        }
+    }
+
+    private void writeFrame(final WritableByteChannel channel)throws IOException{
+        final int blockSize=blockFill;
+        updateMd5(blockSize);
+        bitBuffer=0;
+        bitCount=0;
+        byteCount=0;
+
+        int channelAssignment=channelNum-1;
+        if (channelNum==2){
+            channelAssignment=chooseStereoAssignment(blockSize);
+        }
+        //Frame header: sync code and fixed block size strategy, then the block size, sample rate, channels and sample size codes.
+        writeBits(0xFFF8,16);
+        writeBits(blockSize==BLOCK_SIZE ? 12 : 7,4);
+        writeBits(sampleRateCode,4);
+        writeBits(channelAssignment,4);
+        writeBits(sampleSizeCode,3);
+        writeBits(0,1);
+        writeFrameNumber(frameNumber);
+        if (blockSize!=BLOCK_SIZE){
+            writeBits(blockSize-1,16);
+        }
+        writeBits(crc8(frameBytes,byteCount),8);
+
+        switch (channelAssignment){
+            case CHANNEL_ASSIGNMENT_LEFT_SIDE:
+                writeSubframe(samples[0],blockSize,bitsPerSample);
+                writeSubframe(samples[3],blockSize,bitsPerSample+1);
+                break;
+            case CHANNEL_ASSIGNMENT_RIGHT_SIDE:
+                writeSubframe(samples[3],blockSize,bitsPerSample+1);
+                writeSubframe(samples[1],blockSize,bitsPerSample);
+                break;
+            case CHANNEL_ASSIGNMENT_MID_SIDE:
+                writeSubframe(samples[2],blockSize,bitsPerSample);
+                writeSubframe(samples[3],blockSize,bitsPerSample+1);
+                break;
+            default:
+                for (int i=0;i<channelNum;i++){
+                    writeSubframe(samples[i],blockSize,bitsPerSample);
+                }
+        }
+        if (bitCount>0){
+            writeBits(0,8-bitCount);
+        }
+        writeBits(crc16(frameBytes,byteCount),16);
+
+        frameBuffer.clear();
+        frameBuffer.limit(byteCount);
+        while (frameBuffer.hasRemaining()){
+            channel.write(frameBuffer);
+        }
+        minFrameSizeInBytes=Math.min(minFrameSizeInBytes,byteCount);
+        maxFrameSizeInBytes=Math.max(maxFrameSizeInBytes,byteCount);
+        frameNumber++;
+        totalSamples=totalSamples+blockSize;
+        blockFill=0;
+    }
+
+    /**
+     * The MD5 in STREAMINFO covers the samples as signed, little endian, interleaved values, which only differs from WAV data for 8 bit samples.
+     */
+    private void updateMd5(final int blockSize){
+        int index=0;
+        for (int i=0;i<blockSize;i++){
+            for (int channel=0;channel<channelNum;channel++){
+                final int sample=samples[channel][i];
+                md5Bytes[index++]=(byte) sample;
+                if (bitsPerSample==16){
+                    md5Bytes[index++]=(byte)(sample>>8);
+                }
+            }
+        }
+        md5.update(md5Bytes,0,index);
+    }
+
+    /**
+     * Fills in the mid and side rows and picks the pair of channels that is cheapest to encode, going by the residuals of their best fixed predictors.
+     * @return The channel assignment of the frame.
+     */
+    private int chooseStereoAssignment(final int blockSize){
+        final int[] left=samples[0];
+        final int[] right=samples[1];
+        final int[] mid=samples[2];
+        final int[] side=samples[3];
+        for (int i=0;i<blockSize;i++){
+            mid[i]=(left[i]+right[i])>>1;
+            side[i]=left[i]-right[i];
+        }
+        final long leftCost=bestFixedResidualSum(left,blockSize);
+        final long rightCost=bestFixedResidualSum(right,blockSize);
+        final long midCost=bestFixedResidualSum(mid,blockSize);
+        final long sideCost=bestFixedResidualSum(side,blockSize);
+
+        int channelAssignment=1;
+        long bestCost=leftCost+rightCost;
+        if (leftCost+sideCost<bestCost){
+            channelAssignment=CHANNEL_ASSIGNMENT_LEFT_SIDE;
+            bestCost=leftCost+sideCost;
+        }
+        if (rightCost+sideCost<bestCost){
+            channelAssignment=CHANNEL_ASSIGNMENT_RIGHT_SIDE;
+            bestCost=rightCost+sideCost;
+        }
+        if (midCost+sideCost<bestCost){
+            channelAssignment=CHANNEL_ASSIGNMENT_MID_SIDE;
+        }
+        return channelAssignment;
+    }
+
+    private long bestFixedResidualSum(final int[] data,final int blockSize){
+        return fixedResidualSum(data,blockSize,bestFixedOrder(data,blockSize));
+    }
+
+    /**
+     * @return The fixed predictor order whose residuals have the smallest sum of absolute values.
+     */
+    private int bestFixedOrder(final int[] data,final int blockSize){
+        int bestOrder=0;
+        long bestSum=Long.MAX_VALUE;
+        for (int order=0;order<=MAX_FIXED_ORDER && order<blockSize;order++){
+            final long sum=fixedResidualSum(data,blockSize,order);
+            if (sum<bestSum){
+                bestSum=sum;
+                bestOrder=order;
+            }
+        }
+        return bestOrder;
+    }
+
+    private long fixedResidualSum(final int[] data,final int blockSize,final int order){
+        long sum=0;
+        for (int i=order;i<blockSize;i++){
+            sum=sum+Math.abs(fixedResidual(data,i,order));
+        }
+        return sum;
+    }
+
+    private static int fixedResidual(final int[] data,final int i,final int order){
+        switch (order){
+            case 0:
+                return data[i];
+            case 1:
+                return data[i]-data[i-1];
+            case 2:
+                return data[i]-2*data[i-1]+data[i-2];
+            case 3:
+                return data[i]-3*data[i-1]+3*data[i-2]-data[i-3];
+            default:
+                return data[i]-4*data[i-1]+6*data[i-2]-4*data[i-3]+data[i-4];
+        }
+    }
+
+    /**
+     * Writes a channel as a constant, fixed or verbatim subframe, whichever is smallest.
+     */
+    private void writeSubframe(final int[] data,final int blockSize,final int sampleSizeInBits){
+        boolean constant=true;
+        for (int i=1;i<blockSize && constant;i++){
+            constant=data[i]==data[0];
+        }
+        if (constant){
+            writeBits(0,8);
+            writeBits(data[0],sampleSizeInBits);
+            return;
+        }
+
+        final long verbatimBits=(long) blockSize*sampleSizeInBits;
+        final int order=bestFixedOrder(data,blockSize);
+        long residualBits=Long.MAX_VALUE;
+        int partitionOrder=0;
+        if (blockSize>MAX_FIXED_ORDER){
+            for (int i=order;i<blockSize;i++){
+                residuals[i]=fixedResidual(data,i,order);
+            }
+            partitionOrder=chooseRicePartitions(blockSize,order);
+            residualBits=lastRiceCostInBits+(long) order*sampleSizeInBits;
+        }
+        if (residualBits>=verbatimBits){
+            writeBits(0x02,8);
+            for (int i=0;i<blockSize;i++){
+                writeBits(data[i],sampleSizeInBits);
+            }
+            return;
+        }
+
+        writeBits((0x08 | order)<<1,8);
+        for (int i=0;i<order;i++){
+            writeBits(data[i],sampleSizeInBits);
+        }
+        //Residual coding method 0: partitioned Rice with 4 bit parameters.
+        writeBits(0,2);
+        writeBits(partitionOrder,4);
+        final int partitionCount=1<<partitionOrder;
+        final int partitionSize=blockSize>>partitionOrder;
+        int i=order;
+        for (int partition=0;partition<partitionCount;partition++){
+            final int riceParameter=bestRiceParameters[partition];
+            writeBits(riceParameter,4);
+            final int end=(partition+1)*partitionSize;
+            for (;i<end;i++){
+                writeRice(residuals[i],riceParameter);
+            }
+        }
+    }
+
+    /**
+     * Picks the partition order and the Rice parameter of every partition that minimize the size of the residuals. The parameters end up in bestRiceParameters.
+     * @return The partition order.
+     */
+    private int chooseRicePartitions(final int blockSize,final int order){
+        int maxPartitionOrder=0;
+        while (maxPartitionOrder<MAX_PARTITION_ORDER && (blockSize & ((2<<maxPartitionOrder)-1))==0 && (blockSize>>(maxPartitionOrder+1))>order){
+            maxPartitionOrder++;
+        }
+        int partitionCount=1<<maxPartitionOrder;
+        int partitionSize=blockSize>>maxPartitionOrder;
+        int i=order;
+        for (int partition=0;partition<partitionCount;partition++){
+            long sum=0;
+            final int end=(partition+1)*partitionSize;
+            for (;i<end;i++){
+                sum=sum+zigZag(residuals[i]);
+            }
+            partitionSums[partition]=sum;
+        }
+
+        long bestCost=Long.MAX_VALUE;
+        int bestPartitionOrder=0;
+        for (int partitionOrder=maxPartitionOrder;partitionOrder>=0;partitionOrder--){
+            partitionCount=1<<partitionOrder;
+            partitionSize=blockSize>>partitionOrder;
+            long cost=6;
+            for (int partition=0;partition<partitionCount;partition++){
+                final long sampleCount=(partition==0) ? partitionSize-order : partitionSize;
+                final long sum=partitionSums[partition];
+                long partitionCost=Long.MAX_VALUE;
+                for (int riceParameter=0;riceParameter<=MAX_RICE_PARAMETER;riceParameter++){
+                    final long riceCost=sampleCount*(riceParameter+1)+(sum>>riceParameter);
+                    if (riceCost<partitionCost){
+                        partitionCost=riceCost;
+                        riceParameters[partition]=riceParameter;
+                    }
+                }
+                cost=cost+4+partitionCost;
+            }
+            if (cost<bestCost){
+                bestCost=cost;
+                bestPartitionOrder=partitionOrder;
+                System.arraycopy(riceParameters,0,bestRiceParameters,0,partitionCount);
+            }
+            //Merge neighbouring partitions for the next order down.
+            for (int partition=0;partition<partitionCount/2;partition++){
+                partitionSums[partition]=partitionSums[2*partition]+partitionSums[2*partition+1];
+            }
+        }
+        lastRiceCostInBits=bestCost;
+        return bestPartitionOrder;
+    }
+
+    private static long zigZag(final int value){
+        return ((long) value<<1) ^ (value>>31);
+    }
+
+    private void writeRice(final int value,final int riceParameter){
+        final long folded=zigZag(value);
+        long quotient=folded>>>riceParameter;
+        while (quotient>31){
+            writeBits(0,31);
+            quotient=quotient-31;
+        }
+        //The quotient in unary (zeros ended by a one), then the low bits.
+        writeBits((1L<<riceParameter) | (folded & ((1L<<riceParameter)-1)),(int) quotient+1+riceParameter);
+    }
+
+    /**
+     * Frame numbers are written with the same variable length scheme UTF-8 uses for characters.
+     */
+    private void writeFrameNumber(final long number){
+        if (number<0x80){
+            writeBits(number,8);
+            return;
+        }
+        int extraByteCount=1;
+        while (extraByteCount<5 && number>=(1L<<(5*extraByteCount+6))){
+            extraByteCount++;
+        }
+        final int leadingOnes=(0xFF00>>(extraByteCount+1)) & 0xFF;
+        writeBits(leadingOnes | (number>>(6*extraByteCount)),8);
+        for (int i=extraByteCount-1;i>=0;i--){
+            writeBits(0x80 | ((number>>(6*i)) & 0x3F),8);
+        }
+    }
+
+    /**
+     * Appends the low bits of value to the frame, most significant bit first. Up to 56 bits can be written at once.
+     */
+    private void writeBits(final long value,final int bits){
+        bitBuffer=(bitBuffer<<bits) | (value & ((1L<<bits)-1));
+        bitCount=bitCount+bits;
+        while (bitCount>=8){
+            bitCount=bitCount-8;
+            frameBytes[byteCount++]=(byte)(bitBuffer>>>bitCount);
+        }
+    }
+
+    private static int crc8(final byte[] data,final int length){
+        int crc=0;
+        for (int i=0;i<length;i++){
+            crc=CRC8_TABLE[(crc ^ data[i]) & 0xFF];
+        }
+        return crc;
+    }
+
+    private static int crc16(final byte[] data,final int length){
+        int crc=0;
+        for (int i=0;i<length;i++){
+            crc=((crc<<8) ^ CRC16_TABLE[((crc>>8) ^ data[i]) & 0xFF]) & 0xFFFF;
+        }
+        return crc;
+    }
+
+    private static void putInt24(final ByteBuffer buffer,final int value){
+        buffer.put((byte)(value>>16));
+        buffer.put((byte)(value>>8));
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Rates without a code of their own are taken from STREAMINFO (code 0).
+     */
+    private static int toSampleRateCode(final int sampleRateInHertz){
+        switch (sampleRateInHertz){
+            case 88200:
+                return 1;
+            case 176400:
+                return 2;
+            case 192000:
+                return 3;
+            case 8000:
+                return 4;
+            case 16000:
+                return 5;
+            case 22050:
+                return 6;
+            case 24000:
+                return 7;
+            case 32000:
+                return 8;
+            case 44100:
+                return 9;
+            case 48000:
+                return 10;
+            case 96000:
+                return 11;
+            default:
+                return 0;
+        }
+    }
+}
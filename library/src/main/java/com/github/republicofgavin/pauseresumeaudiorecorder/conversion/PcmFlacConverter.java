@@ -0,0 +1,92 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder.conversion;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Converts PCM (Big Endian format by default) files to FLAC files with a {@link FlacEncoder}. The counterpart of {@link PcmWavConverter} for when the lossless compression is worth the encoding time.
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+public class PcmFlacConverter {
+    private static final int CONVERSION_BUFFER_SIZE_BYTES=256*1024;
+
+    /**
+     * Converts a PCM file made of 16 bit Big Endian words into a FLAC file.
+     * @param waveHeader A {@link PcmWavConverter.WaveHeader} composed of the format of data location at the pcmFilePath. Its byte number and RF64 flag are ignored. Cannot be null.
+     * @param pcmFilePath The absolute path to the PCM file. Cannot be: null, empty, blank. It is recommended that the file have a .pcm suffix.
+     * @param flacFilePath The absolute path to where the FLAC file will be created. Directory path should already be created. String cannot be: null, empty, blank. It is recommended that the file have a .flac suffix.
+     * @throws IOException If there is a problem reading/writing between the PCM and FLAC files. Such as the PCM file not existing. Or if one of them is a directory.
+     * @throws IllegalArgumentException If the parameters are invalid.
+     */
+    public static void convertPCMToFlac(final PcmWavConverter.WaveHeader waveHeader,final String pcmFilePath,final String flacFilePath)throws IOException{
+        convertPCMToFlac(waveHeader,pcmFilePath,flacFilePath,ByteOrder.BIG_ENDIAN);
+    }
+    /**
+     * Converts a PCM file into a FLAC file. The whole file is encoded, a trailing partial frame aside. The stream header is written as a place holder first and completed once the data is encoded.
+     * @param waveHeader A {@link PcmWavConverter.WaveHeader} composed of the format of data location at the pcmFilePath. Its byte number and RF64 flag are ignored. Cannot be null.
+     * @param pcmFilePath The absolute path to the PCM file. Cannot be: null, empty, blank. It is recommended that the file have a .pcm suffix.
+     * @param flacFilePath The absolute path to where the FLAC file will be created. Directory path should already be created. String cannot be: null, empty, blank. It is recommended that the file have a .flac suffix.
+     * @param pcmByteOrder The byte order of the 16 bit words in the PCM file. Ignored for 8 bit samples. Cannot be null.
+     * @throws IOException If there is a problem reading/writing between the PCM and FLAC files. Such as the PCM file not existing. Or if one of them is a directory.
+     * @throws IllegalArgumentException If the parameters are invalid.
+     */
+    public static void convertPCMToFlac(final PcmWavConverter.WaveHeader waveHeader,final String pcmFilePath,final String flacFilePath,final ByteOrder pcmByteOrder)throws IOException{
+        if (waveHeader==null){
+            throw new IllegalArgumentException("waveHeader cannot be null");
+        }
+        if (pcmFilePath==null || pcmFilePath.trim().isEmpty()){
+            throw new IllegalArgumentException("pcmFilePath cannot be null, empty, blank");
+        }
+        if (flacFilePath==null || flacFilePath.trim().isEmpty()){
+            throw new IllegalArgumentException("flacFilePath cannot be null, empty, blank");
+        }
+        if (pcmByteOrder==null){
+            throw new IllegalArgumentException("pcmByteOrder cannot be null");
+        }
+        final boolean swapped=pcmByteOrder==ByteOrder.BIG_ENDIAN && waveHeader.getBitRate()==16;
+        final FlacEncoder flacEncoder=new FlacEncoder(waveHeader);
+        final FileInputStream fileInputStream=new FileInputStream(new File(pcmFilePath));
+        RandomAccessFile flacFile=null;
+        try {
+            flacFile=new RandomAccessFile(flacFilePath,"rw");
+            final FileChannel pcmChannel=fileInputStream.getChannel();
+            final FileChannel flacChannel=flacFile.getChannel();
+            flacChannel.truncate(0);
+            final ByteBuffer header=flacEncoder.createStreamHeader();
+            while (header.hasRemaining()){
+                flacChannel.write(header);
+            }
+            final ByteBuffer buffer=ByteBuffer.allocate(CONVERSION_BUFFER_SIZE_BYTES);
+            while (pcmChannel.read(buffer)!=-1){
+                buffer.flip();
+                //A word split between two reads waits in the buffer for its second byte.
+                final int length=swapped ? buffer.remaining() & ~1 : buffer.remaining();
+                if (swapped){
+                    PcmWavConverter.swapWords(buffer,length);
+                }
+                final int limit=buffer.limit();
+                buffer.limit(length);
+                flacEncoder.encode(buffer,flacChannel);
+                buffer.limit(limit);
+                buffer.compact();
+            }
+            flacEncoder.finish(flacChannel);
+            final ByteBuffer finalHeader=flacEncoder.createStreamHeader();
+            long position=0;
+            while (finalHeader.hasRemaining()){
+                position=position+flacChannel.write(finalHeader,position);
+            }
+        }
+        finally {
+            if (flacFile!=null){
+                flacFile.close();
+            }
+            fileInputStream.close();
+        }
+    }
+}
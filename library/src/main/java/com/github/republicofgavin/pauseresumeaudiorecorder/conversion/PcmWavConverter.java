@@ -1,23 +1,119 @@
 package com.github.republicofgavin.pauseresumeaudiorecorder.conversion;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutput;
-import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Converts PCM (Big Endian format) files to WAV (Little Endian format).
+ * Converts PCM (Big Endian format by default) files to WAV (Little Endian format).
+ * Plain WAV files cannot hold more than 4GB. Headers created with RF64 enabled reserve room for a ds64 chunk (https://tech.ebu.ch/docs/tech/tech3306v1_1.pdf), and turn into RF64 headers once the data outgrows that limit.
  * @author (Gavin)republicofgavin@gmail.com
  */
 public class PcmWavConverter {
 
-    private static final short PCM_FORMAT=1;
+    private static final int RIFF_SIZE_OFFSET=4;
+    /**
+     * The size of the body of a ds64 chunk without a table: RIFF size, data size and sample count (8 bytes each) plus the table length.
+     */
+    private static final int DS64_CHUNK_BODY_SIZE=28;
+    private static final long MAX_UNSIGNED_INT=0xFFFFFFFFL;
+    /**
+     * Only used for its layout by the methods that predate RF64, which always work on plain headers.
+     */
+    private static final WaveHeader PLAIN_HEADER_LAYOUT=new WaveHeader(44100,(short)1,(short)16);
+    /**
+     * How much PCM data is read, converted and written at a time. A multiple of 8 so whole longs can be swapped.
+     */
+    private static final int CONVERSION_BUFFER_SIZE_BYTES=256*1024;
+    /**
+     * Selects the low byte of every 16 bit lane of a long.
+     */
+    private static final long LOW_BYTES_MASK=0x00FF00FF00FF00FFL;
+    private static final String PCM_EXTENSION=".pcm";
+    private static final byte[] RIFF_CHUNK_ID={'R','I','F','F'};
+    private static final byte[] RF64_CHUNK_ID={'R','F','6','4'};
+    private static final byte[] JUNK_CHUNK_ID={'J','U','N','K'};
+    private static final byte[] DS64_CHUNK_ID={'d','s','6','4'};
+    private static final byte[] WAVE_FORMAT_ID={'W','A','V','E'};
+    private static final byte[] FMT_CHUNK_ID={'f','m','t',' '};
+    private static final byte[] DATA_CHUNK_ID={'d','a','t','a'};
+    private static final byte[] FACT_CHUNK_ID={'f','a','c','t'};
+    /**
+     * The fact chunk compressed formats need: its header and the number of samples (per channel) in the file.
+     */
+    private static final int FACT_CHUNK_SIZE=12;
+    /**
+     * The bytes per channel of an IMA ADPCM block, by sample rate: the usual 256 at 11025 hertz and below, doubled every time the rate is.
+     */
+    private static final int IMA_ADPCM_BLOCK_SIZE_BYTES=256;
+    /**
+     * How much longer the fmt chunk of WAVE_FORMAT_EXTENSIBLE is than a plain one: the extension size, the valid bits per sample, the channel mask and the sub format GUID.
+     */
+    private static final int EXTENSIBLE_FMT_EXTENSION_SIZE=24;
+    /**
+     * The sub format GUID of WAVE_FORMAT_EXTENSIBLE after its first two bytes, which hold the format tag of the data (KSDATAFORMAT_SUBTYPE_PCM and KSDATAFORMAT_SUBTYPE_IEEE_FLOAT share the rest).
+     */
+    private static final byte[] EXTENSIBLE_SUB_FORMAT_GUID_TAIL={0x00,0x00,0x00,0x00,0x10,0x00,(byte)0x80,0x00,0x00,(byte)0xAA,0x00,0x38,(byte)0x9B,0x71};
+    private static final int SPEAKER_FRONT_LEFT=0x1;
+    private static final int SPEAKER_FRONT_RIGHT=0x2;
+    private static final int SPEAKER_FRONT_CENTER=0x4;
+
+    /**
+     * Format tag of uncompressed PCM data.
+     */
+    public static final short WAVE_FORMAT_PCM=1;
+    /**
+     * Format tag of 32 bit IEEE float data, nominally between -1 and 1.
+     */
+    public static final short WAVE_FORMAT_IEEE_FLOAT=3;
+    /**
+     * Format tag of G.711 A-law data, 8 bits per sample.
+     */
+    public static final short WAVE_FORMAT_ALAW=6;
+    /**
+     * Format tag of G.711 mu-law data, 8 bits per sample.
+     */
+    public static final short WAVE_FORMAT_MULAW=7;
+    /**
+     * Format tag of IMA (DVI) ADPCM data, 4 bits per sample in blocks that start with an uncompressed sample.
+     */
+    public static final short WAVE_FORMAT_IMA_ADPCM=0x11;
+    /**
+     * Format tag of the fmt chunk that carries the real format tag in its sub format GUID, along with the valid bits per sample and the speaker positions.
+     * Data with more than 16 bits per sample is written with it, as the format requires. It is never the format tag of a {@link WaveHeader}.
+     */
+    public static final short WAVE_FORMAT_EXTENSIBLE=(short)0xFFFE;
+
+    /**
+     * The size of the header written by this class. The audio data starts right after it.
+     */
+    public static final int WAV_HEADER_SIZE_BYTES=44;
+    /**
+     * The size of the header written by this class when RF64 is enabled. It holds a JUNK chunk that becomes the ds64 chunk if the file is upgraded to RF64.
+     */
+    public static final int RF64_HEADER_SIZE_BYTES=WAV_HEADER_SIZE_BYTES+8+DS64_CHUNK_BODY_SIZE;
+    /**
+     * The size of the ranges a big file is split into by the batch conversion. A multiple of 8, so only the last range of a file can end in the middle of a word.
+     */
+    public static final long PARALLEL_RANGE_SIZE_BYTES=16L*1024L*1024L;
 
     /**
      * 6 hours, 47 minutes, and 59 seconds (1 second less than max allowed in header).
@@ -27,6 +123,14 @@ public class PcmWavConverter {
      * 2GB size limit. Supported by all formats(https://en.wikipedia.org/wiki/WAV).
      */
     public static final long MAX_SIZE_WAV_FILE_BYTES=2L*1073741824L;
+    /**
+     * 7 days. A practical limit for recordings with RF64 enabled, the format itself has none worth mentioning.
+     */
+    public static final long MAX_TIME_RF64_FILE_MILLIS=1000L*60L*60L*24L*7L;
+    /**
+     * 1TB. A practical limit for recordings with RF64 enabled, the format itself has none worth mentioning.
+     */
+    public static final long MAX_SIZE_RF64_FILE_BYTES=1024L*1073741824L;
 
     /**
      * This method appends the passed in {@link com.github.republicofgavin.pauseresumeaudiorecorder.conversion.PcmWavConverter.WaveHeader} to the beginning of the passed in
@@ -43,13 +147,352 @@ public class PcmWavConverter {
         if (wavFilePath==null || wavFilePath.trim().isEmpty()){
             throw new IllegalArgumentException("wavFilePath cannot be null, empty, blank");
         }
-        RandomAccessFile randomAccessFile=new RandomAccessFile(new File(wavFilePath),"rw");
-        randomAccessFile.seek(0L);
-        writeWavHeader(waveHeader,randomAccessFile,new File(wavFilePath));
-        randomAccessFile.close();
+        final File wavFile=new File(wavFilePath);
+        final RandomAccessFile randomAccessFile=new RandomAccessFile(wavFile,"rw");
+        try {
+            final ByteBuffer header=createWavHeader(waveHeader,(waveHeader.byteNumber == -1) ? wavFile.length() : waveHeader.byteNumber);
+            writeFully(randomAccessFile.getChannel(),header,0L);
+        }
+        finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Converts many PCM files into WAV files concurrently on a bounded pool of threads. Every WAV file is created next to its PCM file, with the extension replaced by .wav.
+     * Big Endian 16 bit files bigger than {@link #PARALLEL_RANGE_SIZE_BYTES} are also split into ranges that are swapped in parallel, so a single huge file uses every thread as well.
+     * A failure only affects its own file, the other files are still converted.
+     * @param waveHeaderTemplate The format every PCM file is in. Its byte number is ignored, the size of every file is used instead. Cannot be null.
+     * @param pcmFilePaths The absolute paths of the PCM files. Cannot be null or contain null, empty or blank paths.
+     * @param pcmByteOrder The byte order of the 16 bit words in the PCM files. Ignored for 8 bit samples. Cannot be null, and has to be {@link ByteOrder}.LITTLE_ENDIAN for samples of more than 16 bits.
+     * @param threadCount The number of threads converting files at once. Must be greater than 0, {@link Runtime}.availableProcessors is a good choice.
+     * @return One {@link ConversionResult} for every PCM file, in the same order as pcmFilePaths.
+     * @throws InterruptedException If the calling thread is interrupted while waiting for the conversions. The conversions still running are cancelled.
+     * @throws IllegalArgumentException If the parameters are invalid.
+     */
+    public static List<ConversionResult> convertPCMToWav(final WaveHeader waveHeaderTemplate,final List<String> pcmFilePaths,final ByteOrder pcmByteOrder,final int threadCount)throws InterruptedException{
+        if (waveHeaderTemplate ==null){
+            throw new IllegalArgumentException("waveHeaderTemplate cannot be null");
+        }
+        if (pcmFilePaths==null){
+            throw new IllegalArgumentException("pcmFilePaths cannot be null");
+        }
+        for (final String pcmFilePath:pcmFilePaths){
+            if (pcmFilePath==null || pcmFilePath.trim().isEmpty()){
+                throw new IllegalArgumentException("pcmFilePaths cannot contain null, empty, blank paths");
+            }
+        }
+        if (pcmByteOrder==null){
+            throw new IllegalArgumentException("pcmByteOrder cannot be null");
+        }
+        if (threadCount<1){
+            throw new IllegalArgumentException("threadCount must be greater than 0");
+        }
+        if (waveHeaderTemplate.isCompressed()){
+            throw new IllegalArgumentException("Batch conversion only writes PCM and float wav files");
+        }
+        checkByteOrder(waveHeaderTemplate,pcmByteOrder);
+        final WaveHeader waveHeader=new WaveHeader(waveHeaderTemplate.sampleRateInHertz,waveHeaderTemplate.channelNum,waveHeaderTemplate.bitRate,-1,waveHeaderTemplate.rf64Enabled,waveHeaderTemplate.formatTag);
+        final List<BatchConversion> conversions=new ArrayList<BatchConversion>(pcmFilePaths.size());
+        final List<Callable<Void>> tasks=new ArrayList<Callable<Void>>();
+        final List<BatchConversion> taskConversions=new ArrayList<BatchConversion>();
+        for (final String pcmFilePath:pcmFilePaths){
+            final BatchConversion conversion=new BatchConversion(pcmFilePath,toWavFilePath(pcmFilePath));
+            conversions.add(conversion);
+            final long pcmSizeInBytes=new File(pcmFilePath).length();
+            if (isSwapped(waveHeader,pcmByteOrder) && pcmSizeInBytes>PARALLEL_RANGE_SIZE_BYTES){
+                try {
+                    conversion.open(waveHeader);
+                    for (long start=0;start<pcmSizeInBytes;start=start+PARALLEL_RANGE_SIZE_BYTES){
+                        tasks.add(new RangeConversionTask(conversion,start,Math.min(PARALLEL_RANGE_SIZE_BYTES,pcmSizeInBytes-start)));
+                        taskConversions.add(conversion);
+                    }
+                }
+                catch (IOException ex){
+                    conversion.fail(ex);
+                }
+            }
+            else {
+                tasks.add(new FileConversionTask(waveHeader,conversion,pcmByteOrder));
+                taskConversions.add(conversion);
+            }
+        }
+
+        final ExecutorService executorService=Executors.newFixedThreadPool(threadCount,new ConverterThreadFactory());
+        try {
+            final List<Future<Void>> futures=executorService.invokeAll(tasks);
+            for (int i=0;i<futures.size();i++){
+                try {
+                    futures.get(i).get();
+                }
+                catch (ExecutionException ex){
+                    taskConversions.get(i).fail(ex.getCause());
+                }
+            }
+        }
+        finally {
+            executorService.shutdownNow();
+            for (final BatchConversion conversion:conversions){
+                conversion.close();
+            }
+        }
+        final List<ConversionResult> results=new ArrayList<ConversionResult>(conversions.size());
+        for (final BatchConversion conversion:conversions){
+            results.add(new ConversionResult(conversion.pcmFilePath,conversion.wavFilePath,conversion.error));
+        }
+        return results;
+    }
+    /**
+     * Converts every file with a .pcm extension (case insensitive) in a directory. See {@link #convertPCMToWav(WaveHeader, List, ByteOrder, int)}.
+     * @param waveHeaderTemplate The format every PCM file is in. Cannot be null.
+     * @param pcmDirectoryPath The absolute path to the directory holding the PCM files. Sub directories are not scanned. Cannot be: null, empty, blank or a path that is not a directory.
+     * @param pcmByteOrder The byte order of the 16 bit words in the PCM files. Cannot be null.
+     * @param threadCount The number of threads converting files at once. Must be greater than 0.
+     * @return One {@link ConversionResult} for every PCM file, sorted by PCM file path.
+     * @throws InterruptedException If the calling thread is interrupted while waiting for the conversions.
+     * @throws IllegalArgumentException If the parameters are invalid.
+     */
+    public static List<ConversionResult> convertPCMDirectoryToWav(final WaveHeader waveHeaderTemplate,final String pcmDirectoryPath,final ByteOrder pcmByteOrder,final int threadCount)throws InterruptedException{
+        if (pcmDirectoryPath==null || pcmDirectoryPath.trim().isEmpty()){
+            throw new IllegalArgumentException("pcmDirectoryPath cannot be null, empty, blank");
+        }
+        final File[] pcmFiles=new File(pcmDirectoryPath).listFiles(new FileFilter() {
+            @Override
+            public boolean accept(final File file) {
+                return file.isFile() && file.getName().toLowerCase(Locale.US).endsWith(PCM_EXTENSION);
+            }
+        });
+        if (pcmFiles==null){
+            throw new IllegalArgumentException("pcmDirectoryPath is not a directory: "+pcmDirectoryPath);
+        }
+        final List<String> pcmFilePaths=new ArrayList<String>(pcmFiles.length);
+        for (final File pcmFile:pcmFiles){
+            pcmFilePaths.add(pcmFile.getAbsolutePath());
+        }
+        Collections.sort(pcmFilePaths);
+        return convertPCMToWav(waveHeaderTemplate,pcmFilePaths,pcmByteOrder,threadCount);
+    }
+    /**
+     * Builds the complete header of a WAV file in a single buffer, so it can be written with one call and kept around to be rewritten later.
+     * If RF64 is enabled on the waveHeader, the header holds a JUNK chunk, or an RF64 header with a ds64 chunk if the data is too big for a plain WAV file.
+     * Compressed formats get the longer fmt chunk and the fact chunk they require, with the sample count worked out from the data size. So does float data.
+     * The data size cannot tell how many samples pad a short last IMA ADPCM block, so that count includes them. Use {@link #createWavHeader(WaveHeader, long, long)} when the real count is known.
+     * Data with more than 16 bits per sample gets a WAVE_FORMAT_EXTENSIBLE fmt chunk.
+     * @param waveHeader A {@link PcmWavConverter.WaveHeader} composed of the format of the audio data. Its byte number is ignored in favour of dataSizeInBytes. Cannot be null.
+     * @param dataSizeInBytes The number of bytes of audio data following the header. Must be 0 or greater and, unless RF64 is enabled, less than 4GB minus the header size.
+     * @return A little endian buffer of {@link WaveHeader#getHeaderSizeInBytes()} bytes, positioned at 0.
+     * @throws IllegalArgumentException If the parameters are invalid.
+     */
+    public static ByteBuffer createWavHeader(final WaveHeader waveHeader,final long dataSizeInBytes){
+        if (waveHeader ==null){
+            throw new IllegalArgumentException("waveHeader cannot be null");
+        }
+        return createWavHeader(waveHeader,dataSizeInBytes,sampleCount(waveHeader,dataSizeInBytes));
+    }
+    /**
+     * Builds the complete header of a WAV file like {@link #createWavHeader(WaveHeader, long)}, with the given sample count in the fact chunk (and in the ds64 chunk of an RF64 file).
+     * @param waveHeader A {@link PcmWavConverter.WaveHeader} composed of the format of the audio data. Its byte number is ignored in favour of dataSizeInBytes. Cannot be null.
+     * @param dataSizeInBytes The number of bytes of audio data following the header. Must be 0 or greater and, unless RF64 is enabled, less than 4GB minus the header size.
+     * @param sampleCount The number of samples (per channel) in the data, for example {@link CompressedWavEncoder#getEncodedFrameCount()}. Must be 0 or greater.
+     * @return A little endian buffer of {@link WaveHeader#getHeaderSizeInBytes()} bytes, positioned at 0.
+     * @throws IllegalArgumentException If the parameters are invalid.
+     */
+    public static ByteBuffer createWavHeader(final WaveHeader waveHeader,final long dataSizeInBytes,final long sampleCount){
+        if (waveHeader ==null){
+            throw new IllegalArgumentException("waveHeader cannot be null");
+        }
+        if (sampleCount<0){
+            throw new IllegalArgumentException("sampleCount cannot be negative");
+        }
+        checkDataSize(waveHeader,dataSizeInBytes);
+        final long riffSize=riffSize(waveHeader,dataSizeInBytes);
+        final boolean rf64=riffSize>MAX_UNSIGNED_INT;
+        final ByteBuffer header=ByteBuffer.allocate(waveHeader.getHeaderSizeInBytes()).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(rf64 ? RF64_CHUNK_ID : RIFF_CHUNK_ID);
+        //The sizes are unsigned 32 bit values, the cast keeps the low 32 bits. RF64 files have them all set and use the ds64 chunk instead.
+        header.putInt(rf64 ? -1 : (int) riffSize);
+        header.put(WAVE_FORMAT_ID);
+
+        if (waveHeader.rf64Enabled){
+            header.put(rf64 ? DS64_CHUNK_ID : JUNK_CHUNK_ID);
+            header.putInt(DS64_CHUNK_BODY_SIZE);
+            if (rf64){
+                header.putLong(riffSize);
+                header.putLong(dataSizeInBytes);
+                header.putLong(sampleCount);
+                header.putInt(0);
+            }
+            else {
+                header.position(header.position()+DS64_CHUNK_BODY_SIZE);
+            }
+        }
+
+        final boolean imaAdpcm=waveHeader.formatTag==WAVE_FORMAT_IMA_ADPCM;
+        final boolean extensible=waveHeader.isExtensible();
+        header.put(FMT_CHUNK_ID);
+        //Formats other than PCM add the size of their extra format information, which only IMA ADPCM and WAVE_FORMAT_EXTENSIBLE have.
+        header.putInt(extensible ? 16+EXTENSIBLE_FMT_EXTENSION_SIZE : (waveHeader.formatTag==WAVE_FORMAT_PCM ? 16 : (imaAdpcm ? 20 : 18)));
+        header.putShort(extensible ? WAVE_FORMAT_EXTENSIBLE : waveHeader.formatTag);
+        header.putShort(waveHeader.channelNum);
+        header.putInt(waveHeader.sampleRateInHertz);
+        header.putInt((int)((long) waveHeader.sampleRateInHertz * waveHeader.getBlockAlign() / waveHeader.getSamplesPerBlock()));
+        header.putShort((short) waveHeader.getBlockAlign());
+        header.putShort(waveHeader.bitRate);
+        if (extensible){
+            header.putShort((short)(EXTENSIBLE_FMT_EXTENSION_SIZE-2));
+            header.putShort(waveHeader.bitRate);
+            header.putInt(waveHeader.channelNum==1 ? SPEAKER_FRONT_CENTER : SPEAKER_FRONT_LEFT | SPEAKER_FRONT_RIGHT);
+            header.putShort(waveHeader.formatTag);
+            header.put(EXTENSIBLE_SUB_FORMAT_GUID_TAIL);
+        }
+        else if (waveHeader.formatTag!=WAVE_FORMAT_PCM){
+            header.putShort((short)(imaAdpcm ? 2 : 0));
+            if (imaAdpcm){
+                header.putShort((short) waveHeader.getSamplesPerBlock());
+            }
+        }
+        if (waveHeader.formatTag!=WAVE_FORMAT_PCM){
+            header.put(FACT_CHUNK_ID);
+            header.putInt(4);
+            header.putInt(rf64 ? -1 : (int) sampleCount);
+        }
+
+        header.put(DATA_CHUNK_ID);
+        header.putInt(rf64 ? -1 : (int) dataSizeInBytes);
+        header.flip();
+        return header;
+    }
+
+    /**
+     * Patches the RIFF and data size fields of a plain {@link #WAV_HEADER_SIZE_BYTES} byte header written by {@link #createWavHeader(WaveHeader, long)} in place. See {@link #updateWavHeader(FileChannel, WaveHeader, long)}.
+     * @param fileChannel A writable channel to the WAV file. Cannot be null.
+     * @param dataSizeInBytes The number of bytes of audio data following the header. Must be between 0 and 4GB minus the header size.
+     * @throws IOException If the channel cannot be written to.
+     * @throws IllegalArgumentException If the parameters are invalid.
+     */
+    public static void updateWavHeader(final FileChannel fileChannel,final long dataSizeInBytes)throws IOException{
+        updateWavHeader(fileChannel,PLAIN_HEADER_LAYOUT,dataSizeInBytes);
+    }
+    /**
+     * Patches the sizes of a header written by {@link #createWavHeader(WaveHeader, long)} in place. For a plain header only the RIFF and data size fields are written, through positional writes,
+     * so the channel's position is left untouched and the rest of the file is not read or rewritten. A header with RF64 enabled is rewritten as a whole with a single positional write, turning it into an RF64 header if the data has outgrown 4GB.
+     * So is the header of a compressed (or float) format, whose fact chunk holds the sample count worked out from the data size, see {@link #createWavHeader(WaveHeader, long)}.
+     * This is meant for a recorder that keeps the channel open while writing the audio data.
+     * @param fileChannel A writable channel to the WAV file. Cannot be null.
+     * @param waveHeader The {@link PcmWavConverter.WaveHeader} the header was created from. Cannot be null.
+     * @param dataSizeInBytes The number of bytes of audio data following the header. Must be 0 or greater and, unless RF64 is enabled, less than 4GB minus the header size.
+     * @throws IOException If the channel cannot be written to.
+     * @throws IllegalArgumentException If the parameters are invalid.
+     */
+    public static void updateWavHeader(final FileChannel fileChannel,final WaveHeader waveHeader,final long dataSizeInBytes)throws IOException{
+        if (waveHeader==null){
+            throw new IllegalArgumentException("waveHeader cannot be null");
+        }
+        updateWavHeader(fileChannel,waveHeader,dataSizeInBytes,sampleCount(waveHeader,dataSizeInBytes));
     }
     /**
-     *
+     * Patches the sizes of a header written by {@link #createWavHeader(WaveHeader, long)} in place like {@link #updateWavHeader(FileChannel, WaveHeader, long)}, with the given sample count in the fact chunk.
+     * Meant for a recorder encoding into a compressed format, which knows how many frames it has written.
+     * @param fileChannel A writable channel to the WAV file. Cannot be null.
+     * @param waveHeader The {@link PcmWavConverter.WaveHeader} the header was created from. Cannot be null.
+     * @param dataSizeInBytes The number of bytes of audio data following the header. Must be 0 or greater and, unless RF64 is enabled, less than 4GB minus the header size.
+     * @param sampleCount The number of samples (per channel) in the data, for example {@link CompressedWavEncoder#getEncodedFrameCount()}. Must be 0 or greater.
+     * @throws IOException If the channel cannot be written to.
+     * @throws IllegalArgumentException If the parameters are invalid.
+     */
+    public static void updateWavHeader(final FileChannel fileChannel,final WaveHeader waveHeader,final long dataSizeInBytes,final long sampleCount)throws IOException{
+        if (fileChannel==null){
+            throw new IllegalArgumentException("fileChannel cannot be null");
+        }
+        if (waveHeader==null){
+            throw new IllegalArgumentException("waveHeader cannot be null");
+        }
+        if (waveHeader.rf64Enabled || waveHeader.formatTag!=WAVE_FORMAT_PCM){
+            writeFully(fileChannel,createWavHeader(waveHeader,dataSizeInBytes,sampleCount),0L);
+            return;
+        }
+        checkDataSize(waveHeader,dataSizeInBytes);
+        final ByteBuffer size=ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        size.putInt(0,(int) riffSize(waveHeader,dataSizeInBytes));
+        writeFully(fileChannel,size,RIFF_SIZE_OFFSET);
+        size.clear();
+        size.putInt(0,(int) dataSizeInBytes);
+        writeFully(fileChannel,size,waveHeader.getHeaderSizeInBytes()-4);
+    }
+    /**
+     * Fixes the sizes in the header of a WAV file written by this class (or by a recorder using {@link #createWavHeader(WaveHeader, long)}) whose writer never finalized it, for example because the process died mid-recording.
+     * The format is read back from the fmt chunk and the data size is taken from the actual length of the file. A partial frame (or IMA ADPCM block) at the end of the file is cut off. The audio data itself is not read or copied.
+     * @param fileChannel A readable and writable channel to the WAV file. Cannot be null.
+     * @return The number of bytes of audio data in the repaired file.
+     * @throws IOException If the file cannot be read or written, or if its header is not one this class could have written.
+     * @throws IllegalArgumentException If the parameters are invalid.
+     */
+    public static long repairWavHeader(final FileChannel fileChannel)throws IOException{
+        if (fileChannel==null){
+            throw new IllegalArgumentException("fileChannel cannot be null");
+        }
+        final ByteBuffer chunk=ByteBuffer.allocate(16+EXTENSIBLE_FMT_EXTENSION_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(fileChannel,chunk,0L,12);
+        if ((!hasChunkId(chunk,0,RIFF_CHUNK_ID) && !hasChunkId(chunk,0,RF64_CHUNK_ID)) || !hasChunkId(chunk,8,WAVE_FORMAT_ID)){
+            throw new IOException("Not a wav file");
+        }
+        long offset=12;
+        boolean rf64Layout=false;
+        int sampleRateInHertz=0;
+        short channelNum=0;
+        short bitRate=0;
+        short formatTag=0;
+        int blockAlign=0;
+        while (true){
+            readFully(fileChannel,chunk,offset,8);
+            final long chunkSizeInBytes=chunk.getInt(4) & MAX_UNSIGNED_INT;
+            if (hasChunkId(chunk,0,DATA_CHUNK_ID)){
+                break;
+            }
+            else if (hasChunkId(chunk,0,FMT_CHUNK_ID)){
+                readFully(fileChannel,chunk,offset+8,16);
+                formatTag=chunk.getShort(0);
+                channelNum=chunk.getShort(2);
+                sampleRateInHertz=chunk.getInt(4);
+                blockAlign=chunk.getShort(12);
+                bitRate=chunk.getShort(14);
+                if (formatTag==WAVE_FORMAT_EXTENSIBLE){
+                    //The real format tag starts the sub format GUID.
+                    readFully(fileChannel,chunk,offset+8,16+EXTENSIBLE_FMT_EXTENSION_SIZE);
+                    formatTag=chunk.getShort(24);
+                }
+            }
+            else if (offset==12 && chunkSizeInBytes==DS64_CHUNK_BODY_SIZE && (hasChunkId(chunk,0,JUNK_CHUNK_ID) || hasChunkId(chunk,0,DS64_CHUNK_ID))){
+                rf64Layout=true;
+            }
+            offset=offset+8+chunkSizeInBytes+(chunkSizeInBytes & 1);
+        }
+
+        final WaveHeader waveHeader;
+        try {
+            waveHeader=new WaveHeader(sampleRateInHertz,channelNum,bitRate,-1,rf64Layout,formatTag);
+        }
+        catch (IllegalArgumentException ex){
+            throw new IOException("Unsupported wav format",ex);
+        }
+        if (blockAlign!=waveHeader.getBlockAlign()){
+            throw new IOException("Unsupported block alignment: "+blockAlign);
+        }
+        final long dataOffset=offset+8;
+        if (dataOffset!=waveHeader.getHeaderSizeInBytes()){
+            //Also catches data of more than 16 bits per sample that was not written with WAVE_FORMAT_EXTENSIBLE.
+            throw new IOException("Unsupported wav header layout");
+        }
+        final long dataSizeInBytes=(fileChannel.size()-dataOffset)/blockAlign*blockAlign;
+        if (!rf64Layout && riffSize(waveHeader,dataSizeInBytes)>MAX_UNSIGNED_INT){
+            throw new IOException("Too much data for a wav file without RF64: "+dataSizeInBytes);
+        }
+        fileChannel.truncate(dataOffset+dataSizeInBytes);
+        updateWavHeader(fileChannel,waveHeader,dataSizeInBytes);
+        return dataSizeInBytes;
+    }
+    /**
+     * Converts a PCM file made of 16 bit Big Endian words into a WAV file.
      * @param waveHeader A {@link PcmWavConverter.WaveHeader} composed of the format of data location at the pcmFilePath. Cannot be null.
      * @param pcmFilePath The absolute path to the PCM file. Cannot be: null, empty, blank. It is recommended that the file have a .pcm suffix.
      * @param wavFilePath The absolute path to where the WAV file will be created. Directory path should already be created. String cannot be: null, empty, blank. It is recommended that the file have a .wav suffix.
@@ -57,6 +500,21 @@ public class PcmWavConverter {
      * @throws IllegalArgumentException If the parameters are invalid.
      */
     public static void convertPCMToWav(WaveHeader waveHeader,final String pcmFilePath, final String wavFilePath)throws IOException{
+        convertPCMToWav(waveHeader,pcmFilePath,wavFilePath,ByteOrder.BIG_ENDIAN);
+    }
+    /**
+     * Converts a PCM file into a WAV file. Data too big for a plain WAV file is written as RF64. The data is processed in large chunks: Big Endian 16 bit data is byte swapped a whole long at a time, and Little Endian or 8 bit data is copied as is by the file system through {@link FileChannel}.transferTo.
+     * If the data has an odd number of bytes, the trailing byte is copied unchanged and followed by the pad byte the RIFF format requires.
+     * If the waveHeader has a compressed format, the PCM file has to hold 16 bit samples, which are encoded with a {@link CompressedWavEncoder} on their way to the WAV file.
+     * Float and 24 bit data is copied as is, so it has to be Little Endian already.
+     * @param waveHeader A {@link PcmWavConverter.WaveHeader} composed of the format of data location at the pcmFilePath. Cannot be null.
+     * @param pcmFilePath The absolute path to the PCM file. Cannot be: null, empty, blank. It is recommended that the file have a .pcm suffix.
+     * @param wavFilePath The absolute path to where the WAV file will be created. Directory path should already be created. String cannot be: null, empty, blank. It is recommended that the file have a .wav suffix.
+     * @param pcmByteOrder The byte order of the 16 bit words in the PCM file. {@link ByteOrder}.BIG_ENDIAN words are swapped, {@link ByteOrder}.LITTLE_ENDIAN data is copied without any change. Ignored for 8 bit samples, which have no byte order. Cannot be null, and has to be {@link ByteOrder}.LITTLE_ENDIAN for samples of more than 16 bits.
+     * @throws IOException If there is a problem reading/writing between the PCM and WAV files. Such as the WAV file already existing or the PCM file not existing. Or if one of them is a directory.
+     * @throws IllegalArgumentException If the parameters are invalid.
+     */
+    public static void convertPCMToWav(WaveHeader waveHeader,final String pcmFilePath, final String wavFilePath,final ByteOrder pcmByteOrder)throws IOException{
         if (waveHeader ==null){
             throw new IllegalArgumentException("waveHeader cannot be null");
         }
@@ -69,49 +527,374 @@ public class PcmWavConverter {
         if (wavFilePath==null || wavFilePath.trim().isEmpty()){
             throw new IllegalArgumentException("wavFilePath cannot be null, empty, blank");
         }
-        final DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(wavFilePath)));
-        final DataInputStream dataInputStream=new DataInputStream(new BufferedInputStream(new FileInputStream(pcmFile)));
+        if (pcmByteOrder==null){
+            throw new IllegalArgumentException("pcmByteOrder cannot be null");
+        }
+        checkByteOrder(waveHeader,pcmByteOrder);
+        final FileInputStream fileInputStream=new FileInputStream(pcmFile);
+        FileOutputStream fileOutputStream=null;
         try {
-            writeWavHeader(waveHeader,dataOutputStream,new File(pcmFilePath));
-            writePCMData(dataOutputStream, dataInputStream);
+            fileOutputStream=new FileOutputStream(wavFilePath);
+            final FileChannel pcmChannel=fileInputStream.getChannel();
+            final FileChannel wavChannel=fileOutputStream.getChannel();
+            final long pcmSizeInBytes=pcmChannel.size();
+            if (waveHeader.isCompressed()){
+                //The encoded data is never bigger than the PCM data, so the header is picked for the latter and completed once the size is known.
+                final WaveHeader encodedWaveHeader=headerForDataSize(waveHeader,pcmSizeInBytes);
+                writeFully(wavChannel,createWavHeader(encodedWaveHeader,0),0L);
+                wavChannel.position(encodedWaveHeader.getHeaderSizeInBytes());
+                final CompressedWavEncoder encoder=new CompressedWavEncoder(encodedWaveHeader);
+                final long encodedSizeInBytes=writeEncodedPCMData(pcmChannel,wavChannel,encoder,pcmByteOrder);
+                if ((encodedSizeInBytes & 1)!=0){
+                    writeFully(wavChannel,ByteBuffer.allocate(1),wavChannel.position());
+                }
+                //The padding of a short last IMA ADPCM block is not part of the recording, so the fact chunk gets the frames that were really encoded.
+                writeFully(wavChannel,createWavHeader(encodedWaveHeader,encodedSizeInBytes,encoder.getEncodedFrameCount()),0L);
+            }
+            else {
+                final long dataSizeInBytes=(waveHeader.byteNumber == -1) ? pcmSizeInBytes : waveHeader.byteNumber;
+                final ByteBuffer header=createWavHeader(headerForDataSize(waveHeader,dataSizeInBytes),dataSizeInBytes);
+                while (header.hasRemaining()){
+                    wavChannel.write(header);
+                }
+                if (isSwapped(waveHeader,pcmByteOrder)){
+                    writeSwappedPCMData(pcmChannel,wavChannel);
+                }
+                else {
+                    transferFully(pcmChannel,wavChannel,pcmSizeInBytes);
+                }
+                if ((pcmSizeInBytes & 1)!=0){
+                    writeFully(wavChannel,ByteBuffer.allocate(1),wavChannel.position());
+                }
+            }
         }
         finally {
-            dataOutputStream.flush();
-            dataOutputStream.close();
-            dataInputStream.close();
+            if (fileOutputStream!=null) {
+                fileOutputStream.close();
+            }
+            fileInputStream.close();
         }
         final File partWavFile=new File(wavFilePath);
         if (!partWavFile.renameTo(new File(wavFilePath))){
             throw new IOException("Unable to rename file to:"+wavFilePath);
         }
     }
-    private static void writeWavHeader(final WaveHeader waveHeader,final DataOutput dataOutputStream,final File pcmFile)throws IOException{
-        //NOTE: The PCM data recording format data as Big Endian. However, WAV files require it in Little Endian, so, it is inverted.
-        //Has to be integer (http://www.topherlee.com/software/pcm-tut-wavformat.html), so if cast fails, it is too big to be a wav file.
-        final int numberOfBytes = (waveHeader.byteNumber == -1) ? ((int) pcmFile.length()) : waveHeader.byteNumber;
+    /**
+     * The RIFF size counts everything after its own field, including the pad byte that follows an odd sized data chunk.
+     */
+    private static long riffSize(final WaveHeader waveHeader,final long dataSizeInBytes){
+        return waveHeader.getHeaderSizeInBytes()-8+dataSizeInBytes+(dataSizeInBytes & 1);
+    }
+    /**
+     * The number of samples (per channel) in the data, which compressed formats write in their fact chunk. A short last IMA ADPCM block holds its header sample and whole groups of 8 samples.
+     */
+    private static long sampleCount(final WaveHeader waveHeader,final long dataSizeInBytes){
+        final int blockAlign=waveHeader.getBlockAlign();
+        long sampleCount=dataSizeInBytes/blockAlign*waveHeader.getSamplesPerBlock();
+        final long lastBlockSizeInBytes=dataSizeInBytes%blockAlign;
+        if (waveHeader.formatTag==WAVE_FORMAT_IMA_ADPCM && lastBlockSizeInBytes>=4*waveHeader.channelNum){
+            sampleCount=sampleCount+1+(lastBlockSizeInBytes-4*waveHeader.channelNum)/(4*waveHeader.channelNum)*8;
+        }
+        return sampleCount;
+    }
+    /**
+     * Big Endian data is swapped as 16 bit words, which only suits 16 bit samples. 8 bit samples have no byte order and are copied as they are (see {@link #isSwapped(WaveHeader, ByteOrder)}).
+     */
+    private static void checkByteOrder(final WaveHeader waveHeader,final ByteOrder pcmByteOrder){
+        if (pcmByteOrder==ByteOrder.BIG_ENDIAN && waveHeader.bitRate>16){
+            throw new IllegalArgumentException("Big endian data can only be converted from samples of 16 bits or less");
+        }
+    }
+    /**
+     * @return True if the PCM data has to be swapped as 16 bit words on its way to the WAV file.
+     */
+    private static boolean isSwapped(final WaveHeader waveHeader,final ByteOrder pcmByteOrder){
+        return pcmByteOrder==ByteOrder.BIG_ENDIAN && waveHeader.bitRate==16;
+    }
+    private static void checkDataSize(final WaveHeader waveHeader,final long dataSizeInBytes){
+        //Has to fit an unsigned 32 bit integer (http://www.topherlee.com/software/pcm-tut-wavformat.html), otherwise it is too big to be a wav file.
+        if (dataSizeInBytes<0 || (!waveHeader.rf64Enabled && riffSize(waveHeader,dataSizeInBytes)>MAX_UNSIGNED_INT)){
+            throw new IllegalArgumentException("Invalid data size for a wav file: "+dataSizeInBytes);
+        }
+    }
+    /**
+     * Used by the conversions, which know the data size before writing anything and upgrade to RF64 on their own when a plain WAV file would be too small.
+     * @return The waveHeader itself if it can describe dataSizeInBytes, otherwise the same header with RF64 enabled.
+     */
+    private static WaveHeader headerForDataSize(final WaveHeader waveHeader,final long dataSizeInBytes){
+        if (waveHeader.rf64Enabled || riffSize(waveHeader,dataSizeInBytes)<=MAX_UNSIGNED_INT){
+            return waveHeader;
+        }
+        return new WaveHeader(waveHeader.sampleRateInHertz,waveHeader.channelNum,waveHeader.bitRate,waveHeader.byteNumber,true,waveHeader.formatTag);
+    }
+    private static void writeFully(final FileChannel fileChannel,final ByteBuffer buffer,final long position)throws IOException{
+        long currentPosition=position;
+        while (buffer.hasRemaining()){
+            currentPosition=currentPosition+fileChannel.write(buffer,currentPosition);
+        }
+    }
+    /**
+     * Reads exactly length bytes at the given position into the start of the buffer, which is left with its position at 0 and its limit at length.
+     * @throws java.io.EOFException If the file ends first.
+     */
+    private static void readFully(final FileChannel fileChannel,final ByteBuffer buffer,final long position,final int length)throws IOException{
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()){
+            if (fileChannel.read(buffer,position+buffer.position())==-1){
+                throw new EOFException("File ended in the middle of the wav header");
+            }
+        }
+        buffer.flip();
+    }
+    private static boolean hasChunkId(final ByteBuffer buffer,final int index,final byte[] chunkId){
+        for (int i=0;i<chunkId.length;i++){
+            if (buffer.get(index+i)!=chunkId[i]){
+                return false;
+            }
+        }
+        return true;
+    }
+    private static void transferFully(final FileChannel pcmChannel,final FileChannel wavChannel,final long sizeInBytes)throws IOException{
+        long position=0;
+        while (position<sizeInBytes){
+            position=position+pcmChannel.transferTo(position,sizeInBytes-position,wavChannel);
+        }
+    }
+    private static void writeSwappedPCMData(final FileChannel pcmChannel,final FileChannel wavChannel)throws IOException{
+        final ByteBuffer buffer=ByteBuffer.allocateDirect(CONVERSION_BUFFER_SIZE_BYTES);
+        boolean endOfFile=false;
+        while (!endOfFile){
+            endOfFile=pcmChannel.read(buffer)==-1;
+            buffer.flip();
+            final int evenLength=buffer.remaining() & ~1;
+            swapWords(buffer,evenLength);
+            //A word split between two reads waits in the buffer for its second byte, unless there is nothing left to read.
+            final int limit=buffer.limit();
+            buffer.limit(endOfFile ? limit : evenLength);
+            while (buffer.hasRemaining()){
+                wavChannel.write(buffer);
+            }
+            buffer.limit(limit);
+            buffer.compact();
+        }
+    }
+    /**
+     * Feeds the whole PCM file through the encoder, swapping Big Endian words on the way as the encoder takes Little Endian data.
+     * @return The number of encoded bytes written.
+     */
+    private static long writeEncodedPCMData(final FileChannel pcmChannel,final FileChannel wavChannel,final CompressedWavEncoder encoder,final ByteOrder pcmByteOrder)throws IOException{
+        final ByteBuffer buffer=ByteBuffer.allocate(CONVERSION_BUFFER_SIZE_BYTES);
+        long encodedSizeInBytes=0;
+        while (pcmChannel.read(buffer)!=-1){
+            buffer.flip();
+            final int evenLength=buffer.remaining() & ~1;
+            if (pcmByteOrder==ByteOrder.BIG_ENDIAN){
+                swapWords(buffer,evenLength);
+            }
+            //A word split between two reads waits in the buffer for its second byte.
+            final int limit=buffer.limit();
+            buffer.limit(evenLength);
+            encodedSizeInBytes=encodedSizeInBytes+encoder.encode(buffer,wavChannel);
+            buffer.limit(limit);
+            buffer.compact();
+        }
+        return encodedSizeInBytes+encoder.finish(wavChannel);
+    }
+    /**
+     * Swaps the bytes of every 16 bit word in the buffer between 0 and length, four words at a time.
+     * @param buffer The buffer to swap in place. Its position and limit are not changed.
+     * @param length The number of bytes to swap. Must be even.
+     */
+    static void swapWords(final ByteBuffer buffer,final int length){
+        final int longLength=length & ~7;
+        for (int i=0;i<longLength;i=i+8){
+            final long words=buffer.getLong(i);
+            buffer.putLong(i,((words & LOW_BYTES_MASK)<<8) | ((words>>>8) & LOW_BYTES_MASK));
+        }
+        for (int i=longLength;i<length;i=i+2){
+            buffer.putShort(i,Short.reverseBytes(buffer.getShort(i)));
+        }
+    }
+
+    private static String toWavFilePath(final String pcmFilePath){
+        final int extensionIndex=pcmFilePath.lastIndexOf('.');
+        final int nameIndex=pcmFilePath.lastIndexOf(File.separatorChar);
+        return ((extensionIndex>nameIndex) ? pcmFilePath.substring(0,extensionIndex) : pcmFilePath)+".wav";
+    }
+    /**
+     * Swaps the words of a range of the PCM file into the same range of the WAV file's data chunk with positional reads and writes, so several ranges of one file can be converted at the same time.
+     * @param pcmChannel The channel of the PCM file.
+     * @param wavChannel The channel of the WAV file, with its header already written.
+     * @param headerSizeInBytes The size of the WAV file's header.
+     * @param start The offset of the range in the PCM file. Must be even.
+     * @param length The length of the range. Only the last range of a file may be odd.
+     */
+    private static void writeSwappedPCMRange(final FileChannel pcmChannel,final FileChannel wavChannel,final int headerSizeInBytes,final long start,final long length)throws IOException{
+        final ByteBuffer buffer=ByteBuffer.allocateDirect((int)Math.min(CONVERSION_BUFFER_SIZE_BYTES,length));
+        long position=start;
+        final long end=start+length;
+        while (position<end){
+            buffer.clear();
+            buffer.limit((int)Math.min(buffer.capacity(),end-position));
+            while (buffer.hasRemaining()){
+                if (pcmChannel.read(buffer,position+buffer.position())==-1){
+                    throw new IOException("PCM file is shorter than expected");
+                }
+            }
+            buffer.flip();
+            swapWords(buffer,buffer.remaining() & ~1);
+            writeFully(wavChannel,buffer,headerSizeInBytes+position);
+            position=position+buffer.limit();
+        }
+    }
+
+    /**
+     * The result of converting one file in a batch.
+     */
+    public static class ConversionResult{
+        private final String pcmFilePath;
+        private final String wavFilePath;
+        private final Throwable error;
+
+        ConversionResult(final String pcmFilePath,final String wavFilePath,final Throwable error){
+            this.pcmFilePath=pcmFilePath;
+            this.wavFilePath=wavFilePath;
+            this.error=error;
+        }
+
+        /**
+         * @return The path of the PCM file that was converted.
+         */
+        public String getPcmFilePath() {
+            return pcmFilePath;
+        }
+
+        /**
+         * @return The path of the WAV file. It may be incomplete if the conversion failed.
+         */
+        public String getWavFilePath() {
+            return wavFilePath;
+        }
+
+        /**
+         * @return The reason the conversion failed (usually an {@link IOException}), null if it succeeded.
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        /**
+         * @return True if the WAV file was written completely.
+         */
+        public boolean isSuccessful() {
+            return error==null;
+        }
+    }
 
-        dataOutputStream.writeBytes("RIFF");
-        dataOutputStream.writeInt(Integer.reverseBytes(36+numberOfBytes));
-        dataOutputStream.writeBytes("WAVE");
+    /**
+     * The state of one file of a batch. Split files share their channels between the range tasks, which only use positional reads and writes on them.
+     */
+    private static class BatchConversion{
+        private final String pcmFilePath;
+        private final String wavFilePath;
+        private volatile Throwable error;
+        private FileInputStream pcmInputStream;
+        private RandomAccessFile wavFile;
+        private int headerSizeInBytes;
 
-        dataOutputStream.writeBytes("fmt ");
-        dataOutputStream.writeInt(Integer.reverseBytes(16));
-        dataOutputStream.writeShort(Short.reverseBytes(PCM_FORMAT));
-        dataOutputStream.writeShort(Short.reverseBytes(waveHeader.channelNum));
-        dataOutputStream.writeInt(Integer.reverseBytes(waveHeader.sampleRateInHertz));
-        dataOutputStream.writeInt(Integer.reverseBytes(waveHeader.channelNum * waveHeader.sampleRateInHertz * waveHeader.bitRate / 8));
+        BatchConversion(final String pcmFilePath,final String wavFilePath){
+            this.pcmFilePath=pcmFilePath;
+            this.wavFilePath=wavFilePath;
+        }
 
-        dataOutputStream.writeShort(Short.reverseBytes((short) (waveHeader.channelNum * waveHeader.bitRate / 8)));
-        dataOutputStream.writeShort(Short.reverseBytes(waveHeader.bitRate));
+        /**
+         * Opens both files and writes the header and the pad byte, so the range tasks only have to fill in the data.
+         */
+        void open(final WaveHeader waveHeader)throws IOException{
+            pcmInputStream=new FileInputStream(pcmFilePath);
+            final long pcmSizeInBytes=pcmInputStream.getChannel().size();
+            wavFile=new RandomAccessFile(wavFilePath,"rw");
+            wavFile.setLength(0);
+            final WaveHeader fileWaveHeader=headerForDataSize(waveHeader,pcmSizeInBytes);
+            headerSizeInBytes=fileWaveHeader.getHeaderSizeInBytes();
+            writeFully(wavFile.getChannel(),createWavHeader(fileWaveHeader,pcmSizeInBytes),0L);
+            if ((pcmSizeInBytes & 1)!=0){
+                writeFully(wavFile.getChannel(),ByteBuffer.allocate(1),headerSizeInBytes+pcmSizeInBytes);
+            }
+        }
+        synchronized void fail(final Throwable throwable){
+            if (error==null){
+                error=throwable;
+            }
+        }
+        void close(){
+            try {
+                if (pcmInputStream!=null){
+                    pcmInputStream.close();
+                }
+                if (wavFile!=null){
+                    wavFile.close();
+                }
+            }
+            catch (IOException ex){
+                fail(ex);
+            }
+        }
+    }
+    private static class FileConversionTask implements Callable<Void>{
+        private final WaveHeader waveHeader;
+        private final BatchConversion conversion;
+        private final ByteOrder pcmByteOrder;
 
-        dataOutputStream.writeBytes("data");
-        dataOutputStream.writeInt(Integer.reverseBytes(numberOfBytes));
+        FileConversionTask(final WaveHeader waveHeader,final BatchConversion conversion,final ByteOrder pcmByteOrder){
+            this.waveHeader=waveHeader;
+            this.conversion=conversion;
+            this.pcmByteOrder=pcmByteOrder;
+        }
+        @Override
+        public Void call()throws IOException{
+            convertPCMToWav(waveHeader,conversion.pcmFilePath,conversion.wavFilePath,pcmByteOrder);
+            return null;
+        }
     }
-    private static void writePCMData(final DataOutputStream out, final DataInputStream in)throws IOException{
-        while (in.available()>0) {
-            final short data=in.readShort();
-            out.writeByte(data & 0xFF);
-            out.writeByte((data >> 8) & 0xFF);
+    private static class RangeConversionTask implements Callable<Void>{
+        private final BatchConversion conversion;
+        private final long start;
+        private final long length;
+
+        RangeConversionTask(final BatchConversion conversion,final long start,final long length){
+            this.conversion=conversion;
+            this.start=start;
+            this.length=length;
+        }
+        @Override
+        public Void call()throws IOException{
+            //Once one range of the file has failed, the file is lost anyway, so the failure is recorded right away for the ranges still to come to skip.
+            if (conversion.error==null){
+                try {
+                    writeSwappedPCMRange(conversion.pcmInputStream.getChannel(),conversion.wavFile.getChannel(),conversion.headerSizeInBytes,start,length);
+                }
+                catch (IOException ex){
+                    conversion.fail(ex);
+                    throw ex;
+                }
+                catch (RuntimeException ex){
+                    conversion.fail(ex);
+                    throw ex;
+                }
+            }
+            return null;
+        }
+    }
+    private static class ConverterThreadFactory implements ThreadFactory{
+        private final AtomicInteger threadNumber=new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread=new Thread(runnable,PcmWavConverter.class.getSimpleName()+"-"+threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
         }
     }
 
@@ -124,12 +907,14 @@ public class PcmWavConverter {
         private int sampleRateInHertz;
         private short channelNum;
         private short bitRate;
+        private boolean rf64Enabled;
+        private short formatTag;
 
         /**
          *
-         * @param sampleRateInHertz The rate at which the recording samples audio data. Valid values are: 44100, 22050, 16000, 11025 hertz.
+         * @param sampleRateInHertz The rate at which the recording samples audio data. Any rate greater than 0 hertz.
          * @param channelNum The type of audio channel the .PCM file uses (Mono(1) or Stereo(2))
-         * @param bitRate The bit rate of the PCM file (8 or 16).
+         * @param bitRate The bit rate of the PCM file (8, 16, 24 or 32).
          * @throws IllegalArgumentException If any parameters are invalid.
          */
         public WaveHeader(final int sampleRateInHertz, final short channelNum, final short bitRate){
@@ -138,33 +923,81 @@ public class PcmWavConverter {
 
         /**
          *
-         * @param sampleRateInHertz The rate at which the recording samples audio data. Valid values are: 44100, 22050, 16000, 11025 hertz.
+         * @param sampleRateInHertz The rate at which the recording samples audio data. Any rate greater than 0 hertz.
          * @param channelNum The type of audio channel the .PCM file uses (Mono(1) or Stereo(2))
-         * @param bitRate The bit rate of the PCM file (8 or 16).
+         * @param bitRate The bit rate of the PCM file (8, 16, 24 or 32).
          * @param byteNumber The number of bytes in the PCM file. -1 for the converter to find the file size for you. Anything lower than -1 not allowed.
          * @throws IllegalArgumentException If any parameters are invalid.
          */
         public WaveHeader(final int sampleRateInHertz, final short channelNum, final short bitRate,final int byteNumber){
+            this(sampleRateInHertz, channelNum, bitRate, byteNumber, false);
+        }
+
+        /**
+         *
+         * @param sampleRateInHertz The rate at which the recording samples audio data. Any rate greater than 0 hertz.
+         * @param channelNum The type of audio channel the .PCM file uses (Mono(1) or Stereo(2))
+         * @param bitRate The bit rate of the PCM file (8, 16, 24 or 32).
+         * @param byteNumber The number of bytes in the PCM file. -1 for the converter to find the file size for you. Anything lower than -1 not allowed.
+         * @param rf64Enabled True to reserve room for an RF64 ds64 chunk in the header, so it can describe more than 4GB of data. The header is {@link #RF64_HEADER_SIZE_BYTES} bytes instead of {@link #WAV_HEADER_SIZE_BYTES}.
+         * @throws IllegalArgumentException If any parameters are invalid.
+         */
+        public WaveHeader(final int sampleRateInHertz, final short channelNum, final short bitRate,final int byteNumber,final boolean rf64Enabled){
+            this(sampleRateInHertz, channelNum, bitRate, byteNumber, rf64Enabled, WAVE_FORMAT_PCM);
+        }
+
+        /**
+         *
+         * @param sampleRateInHertz The rate at which the recording samples audio data. Any rate greater than 0 hertz.
+         * @param channelNum The type of audio channel the .PCM file uses (Mono(1) or Stereo(2))
+         * @param bitRate The bits per sample of the data in the WAV file: 8, 16, 24 or 32 for PCM, 32 for IEEE float, 8 for A-law and mu-law, 4 for IMA ADPCM.
+         * @param byteNumber The number of bytes in the PCM file. -1 for the converter to find the file size for you. Anything lower than -1 not allowed. Ignored by compressed formats, whose size is only known once encoded.
+         * @param rf64Enabled True to reserve room for an RF64 ds64 chunk in the header, so it can describe more than 4GB of data.
+         * @param formatTag The format of the data in the WAV file: {@link #WAVE_FORMAT_PCM}, {@link #WAVE_FORMAT_IEEE_FLOAT}, {@link #WAVE_FORMAT_ALAW}, {@link #WAVE_FORMAT_MULAW} or {@link #WAVE_FORMAT_IMA_ADPCM}. Compressed formats are encoded from 16 bit PCM.
+         * @throws IllegalArgumentException If any parameters are invalid.
+         */
+        public WaveHeader(final int sampleRateInHertz, final short channelNum, final short bitRate,final int byteNumber,final boolean rf64Enabled,final short formatTag){
             if (channelNum!=1 && channelNum !=2){
                 throw new IllegalArgumentException("Channel number must be 1(mono) or 2(stereo)");
             }
             this.channelNum=channelNum;
 
-            if (sampleRateInHertz!=44100 && sampleRateInHertz !=22050
-                    && sampleRateInHertz != 16000 && sampleRateInHertz !=11025){
+            if (sampleRateInHertz<=0){
                 throw new IllegalArgumentException("Invalid sample rate given");
             }
             this.sampleRateInHertz=sampleRateInHertz;
 
-            if (bitRate !=8 && bitRate !=16){
-                throw new IllegalArgumentException("Invalid bit rate (must be 8 or 16)");
+            if (formatTag==WAVE_FORMAT_PCM){
+                if (bitRate !=8 && bitRate !=16 && bitRate !=24 && bitRate !=32){
+                    throw new IllegalArgumentException("Invalid bit rate (must be 8, 16, 24 or 32)");
+                }
+            }
+            else if (formatTag==WAVE_FORMAT_IEEE_FLOAT){
+                if (bitRate !=32){
+                    throw new IllegalArgumentException("Invalid bit rate (must be 32 for IEEE float)");
+                }
+            }
+            else if (formatTag==WAVE_FORMAT_ALAW || formatTag==WAVE_FORMAT_MULAW){
+                if (bitRate !=8){
+                    throw new IllegalArgumentException("Invalid bit rate (must be 8 for G.711)");
+                }
+            }
+            else if (formatTag==WAVE_FORMAT_IMA_ADPCM){
+                if (bitRate !=4){
+                    throw new IllegalArgumentException("Invalid bit rate (must be 4 for IMA ADPCM)");
+                }
+            }
+            else {
+                throw new IllegalArgumentException("Unsupported format tag: "+formatTag);
             }
             this.bitRate=bitRate;
+            this.formatTag=formatTag;
 
             if (byteNumber<-1){
                 throw new IllegalArgumentException("Invalid number of bytes for file.");
             }
             this.byteNumber=byteNumber;
+            this.rf64Enabled=rf64Enabled;
         }
 
         /**
@@ -177,7 +1010,7 @@ public class PcmWavConverter {
 
         /**
          * The rate at which the recording samples audio data.
-         * @return 44100, 22050, 16000, or 11025
+         * @return The sample rate in hertz, any rate greater than 0.
          */
         public int getSampleRateInHertz() {
             return sampleRateInHertz;
@@ -192,11 +1025,87 @@ public class PcmWavConverter {
         }
 
         /**
-         * bitRate The bit rate of the PCM file.
-         * @return 8 or 16
+         * bitRate The bits per sample of the data in the WAV file.
+         * @return 8, 16, 24 or 32 for PCM, 32 for IEEE float, 8 for A-law and mu-law, 4 for IMA ADPCM.
          */
         public short getBitRate() {
             return bitRate;
         }
+
+        /**
+         * Whether the header reserves room for an RF64 ds64 chunk.
+         * @return True if the header can describe more than 4GB of data.
+         */
+        public boolean isRf64Enabled() {
+            return rf64Enabled;
+        }
+
+        /**
+         * The format of the data in the WAV file.
+         * @return {@link #WAVE_FORMAT_PCM}, {@link #WAVE_FORMAT_IEEE_FLOAT}, {@link #WAVE_FORMAT_ALAW}, {@link #WAVE_FORMAT_MULAW} or {@link #WAVE_FORMAT_IMA_ADPCM}.
+         */
+        public short getFormatTag() {
+            return formatTag;
+        }
+
+        /**
+         * Whether the data is encoded from 16 bit PCM by a {@link CompressedWavEncoder}.
+         * @return True for A-law, mu-law and IMA ADPCM, false for PCM and IEEE float, which are written as they are.
+         */
+        public boolean isCompressed() {
+            return formatTag==WAVE_FORMAT_ALAW || formatTag==WAVE_FORMAT_MULAW || formatTag==WAVE_FORMAT_IMA_ADPCM;
+        }
+
+        /**
+         * Whether the header is written with a WAVE_FORMAT_EXTENSIBLE fmt chunk.
+         * @return True if there are more than 16 bits per sample.
+         */
+        public boolean isExtensible() {
+            return bitRate>16;
+        }
+
+        /**
+         * The size of the smallest unit of data in the WAV file: a frame, or an IMA ADPCM block.
+         * @return The block alignment in bytes.
+         */
+        public int getBlockAlign() {
+            if (formatTag==WAVE_FORMAT_IMA_ADPCM){
+                return channelNum*IMA_ADPCM_BLOCK_SIZE_BYTES*Math.max(1,sampleRateInHertz/11025);
+            }
+            return channelNum*bitRate/8;
+        }
+
+        /**
+         * The number of samples (per channel) a block of {@link #getBlockAlign()} bytes holds.
+         * @return 1, unless the format is IMA ADPCM.
+         */
+        public int getSamplesPerBlock() {
+            if (formatTag==WAVE_FORMAT_IMA_ADPCM){
+                //The header of every channel holds a sample, and then every byte holds 2.
+                return (getBlockAlign()/channelNum-4)*2+1;
+            }
+            return 1;
+        }
+
+        /**
+         * The size of the header described by this object. The audio data starts right after it.
+         * @return {@link #WAV_HEADER_SIZE_BYTES} for PCM, plus the fact chunk and the longer fmt chunk of other formats, plus the room reserved for RF64 if it is enabled ({@link #RF64_HEADER_SIZE_BYTES} for PCM).
+         */
+        public int getHeaderSizeInBytes() {
+            int headerSizeInBytes=rf64Enabled ? RF64_HEADER_SIZE_BYTES : WAV_HEADER_SIZE_BYTES;
+            if (isExtensible()){
+                headerSizeInBytes=headerSizeInBytes+EXTENSIBLE_FMT_EXTENSION_SIZE;
+            }
+            else if (formatTag!=WAVE_FORMAT_PCM){
+                headerSizeInBytes=headerSizeInBytes+2;
+            }
+            if (formatTag!=WAVE_FORMAT_PCM){
+                headerSizeInBytes=headerSizeInBytes+FACT_CHUNK_SIZE;
+            }
+            if (formatTag==WAVE_FORMAT_IMA_ADPCM){
+                headerSizeInBytes=headerSizeInBytes+2;
+            }
+            return headerSizeInBytes;
+        }
     }
 }
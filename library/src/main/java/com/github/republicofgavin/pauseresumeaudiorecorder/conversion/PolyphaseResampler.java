@@ -0,0 +1,253 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder.conversion;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts interleaved PCM from one sample rate to another as it streams through, one block at a time, with a polyphase windowed-sinc filter.
+ * The ratio between the rates is reduced to L/M. Every output frame sits at a fraction of an input frame that is a multiple of 1/L, so the filter only has to be evaluated at L phases, which are all
+ * computed up front (ratios that need more than {@link #MAX_PHASES} phases use the closest one below). The filter is a Kaiser windowed sinc, its cutoff set just under the lower of the two Nyquist frequencies,
+ * so downsampling does not alias. The state carries over between blocks (partial frames included), so blocks can be of any size. Nothing is allocated once it is built.
+ * The output lags the input by half the length of the filter, a few milliseconds at most.
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+public final class PolyphaseResampler {
+    /**
+     * The most filter phases kept. Enough for every ratio between the common rates, from 8000 to 192000 in both the 44100 and 48000 families, to be exact:
+     * the most phases are needed going from 11025 to 192000, which reduces to 2560/147. That table takes about 370KB, and only ratios that need it get one that big.
+     */
+    public static final int MAX_PHASES=2560;
+    /**
+     * The number of zero crossings of the sinc on each side of its center, at the cutoff. Sets the steepness of the filter.
+     */
+    private static final int ZERO_CROSSINGS=16;
+    /**
+     * Where the cutoff sits, as a fraction of the lower Nyquist frequency. The rest is the transition band.
+     */
+    private static final double ROLLOFF=0.94;
+    private static final double KAISER_BETA=8.0;
+
+    private final int channelCount;
+    private final int upFactor;
+    private final int downFactor;
+    private final int phaseCount;
+    private final int tapCount;
+    /**
+     * The filter for every phase, taps ordered from the oldest input frame to the newest.
+     */
+    private final float[][] filters;
+    /**
+     * The last tapCount frames of every channel, stored twice in a row so the taps can always be read without wrapping.
+     */
+    private final float[][] history;
+    private int historyIndex;
+    private final float[] inputFrame;
+    private int inputChannelIndex;
+    /**
+     * The output frames completed by the last input frame, unrounded.
+     */
+    private final float[] outputFrames;
+    private int phase;
+    private int framesUntilOutput;
+
+    /**
+     * Default constructor. The filter tables are computed here.
+     * @param inputSampleRateInHertz The sample rate of the data fed in. Must be greater than 0.
+     * @param outputSampleRateInHertz The sample rate of the data coming out. Must be greater than 0.
+     * @param channelCount The number of interleaved channels. Must be greater than 0.
+     * @throws IllegalArgumentException If the parameters are invalid.
+     */
+    public PolyphaseResampler(final int inputSampleRateInHertz,final int outputSampleRateInHertz,final int channelCount){
+        if (inputSampleRateInHertz<=0 || outputSampleRateInHertz<=0){
+            throw new IllegalArgumentException("Sample rates must be greater than 0");
+        }
+        if (channelCount<=0){
+            throw new IllegalArgumentException("channelCount must be greater than 0");
+        }
+        this.channelCount=channelCount;
+        final int divisor=greatestCommonDivisor(inputSampleRateInHertz,outputSampleRateInHertz);
+        upFactor=outputSampleRateInHertz/divisor;
+        downFactor=inputSampleRateInHertz/divisor;
+        phaseCount=Math.min(upFactor,MAX_PHASES);
+
+        //The cutoff, in cycles per input frame times 2, is the lower of the two Nyquist frequencies. The filter widens as it narrows to keep its steepness.
+        final double cutoff=Math.min(1.0,(double) upFactor/downFactor)*ROLLOFF;
+        final int halfTapCount=(int)Math.ceil(ZERO_CROSSINGS/cutoff);
+        tapCount=2*halfTapCount;
+        filters=new float[phaseCount][tapCount];
+        final double windowNormalization=besselI0(KAISER_BETA);
+        for (int p=0;p<phaseCount;p++){
+            final double fraction=(double) p/phaseCount;
+            double sum=0;
+            final double[] taps=new double[tapCount];
+            for (int k=0;k<tapCount;k++){
+                //Distance from the output frame to the input frame under this tap, the oldest being the furthest back.
+                final double distance=fraction+halfTapCount-1-k;
+                final double windowPosition=distance/halfTapCount;
+                final double window=(Math.abs(windowPosition)>=1) ? 0 : besselI0(KAISER_BETA*Math.sqrt(1-windowPosition*windowPosition))/windowNormalization;
+                taps[k]=cutoff*sinc(cutoff*distance)*window;
+                sum=sum+taps[k];
+            }
+            //Every phase passes DC at exactly unity gain, so silence and offsets stay as they are.
+            for (int k=0;k<tapCount;k++){
+                filters[p][k]=(float)(taps[k]/sum);
+            }
+        }
+        history=new float[channelCount][2*tapCount];
+        inputFrame=new float[channelCount];
+        outputFrames=new float[channelCount*((upFactor+downFactor-1)/downFactor)];
+        reset();
+    }
+
+    /**
+     * Drops everything fed in so far, as if the resampler was just built. The tables are kept.
+     */
+    public void reset(){
+        for (final float[] channelHistory:history){
+            for (int i=0;i<channelHistory.length;i++){
+                channelHistory[i]=0;
+            }
+        }
+        historyIndex=0;
+        inputChannelIndex=0;
+        phase=0;
+        //The first output frame is centered on the first input frame, which needs the newer half of the filter to be filled.
+        framesUntilOutput=tapCount/2+1;
+    }
+
+    /**
+     * @param inputFrameCount The number of frames fed in by a single call.
+     * @return The most frames that call can produce.
+     */
+    public int getMaxOutputFrames(final int inputFrameCount){
+        return (int)(((long) inputFrameCount*upFactor+downFactor-1)/downFactor)+1;
+    }
+
+    /**
+     * Resamples 16 bit samples.
+     * @param input The interleaved samples.
+     * @param length The number of samples to take from the start of input. Does not have to be a whole number of frames.
+     * @param output Where the interleaved samples are written, from its start. Must hold {@link #getMaxOutputFrames(int)} frames for the frames fed in.
+     * @return The number of samples written.
+     */
+    public int process(final short[] input,final int length,final short[] output){
+        int outputLength=0;
+        for (int i=0;i<length;i++){
+            final int frameSampleCount=addSample(input[i]);
+            for (int j=0;j<frameSampleCount;j++){
+                output[outputLength++]=toShort(outputFrames[j]);
+            }
+        }
+        return outputLength;
+    }
+
+    /**
+     * Resamples PCM data between the position and the limit of a buffer, which is consumed entirely.
+     * @param input The interleaved PCM data.
+     * @param bytesPerSample 1 for unsigned 8 bit samples, 2 for signed little endian 16 bit ones, 4 for 32 bit float ones in the byte order of the buffers. The output is written in the same format.
+     * @param output Where the PCM data is written, from its position. Must have room for {@link #getMaxOutputFrames(int)} frames for the frames fed in.
+     */
+    public void process(final ByteBuffer input,final int bytesPerSample,final ByteBuffer output){
+        while (input.remaining()>=bytesPerSample){
+            final float sample;
+            if (bytesPerSample==1){
+                sample=((input.get() & 0xFF)-128)<<8;
+            }
+            else if (bytesPerSample==2){
+                final int low=input.get() & 0xFF;
+                sample=(input.get()<<8) | low;
+            }
+            else {
+                sample=input.getFloat();
+            }
+            final int frameSampleCount=addSample(sample);
+            for (int i=0;i<frameSampleCount;i++){
+                if (bytesPerSample==4){
+                    //Float samples are not clipped, so a filter overshoot past full scale is kept.
+                    output.putFloat(outputFrames[i]);
+                    continue;
+                }
+                final short outputSample=toShort(outputFrames[i]);
+                if (bytesPerSample==1){
+                    output.put((byte)((outputSample>>8)+128));
+                }
+                else {
+                    output.put((byte) outputSample);
+                    output.put((byte)(outputSample>>8));
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes the sample of the next channel in turn. Once a frame is complete it goes into the history, and every output frame it completes is computed into outputFrames.
+     * @return The number of samples written to outputFrames.
+     */
+    private int addSample(final float sample){
+        inputFrame[inputChannelIndex++]=sample;
+        if (inputChannelIndex<channelCount){
+            return 0;
+        }
+        inputChannelIndex=0;
+        for (int c=0;c<channelCount;c++){
+            history[c][historyIndex]=inputFrame[c];
+            history[c][historyIndex+tapCount]=inputFrame[c];
+        }
+        historyIndex=(historyIndex+1)%tapCount;
+
+        int outputLength=0;
+        framesUntilOutput--;
+        while (framesUntilOutput==0){
+            //The filter is centered between the two middle frames of the history, at the fraction of a frame the phase stands for.
+            final float[] filter=filters[(int)((long) phase*phaseCount/upFactor)];
+            for (int c=0;c<channelCount;c++){
+                final float[] channelHistory=history[c];
+                float sum=0;
+                for (int k=0;k<tapCount;k++){
+                    sum=sum+channelHistory[historyIndex+k]*filter[k];
+                }
+                outputFrames[outputLength++]=sum;
+            }
+            phase=phase+downFactor;
+            framesUntilOutput=phase/upFactor;
+            phase=phase%upFactor;
+        }
+        return outputLength;
+    }
+
+    private static short toShort(final float sample){
+        final int rounded=Math.round(sample);
+        return (short)(rounded>Short.MAX_VALUE ? Short.MAX_VALUE : (rounded<Short.MIN_VALUE ? Short.MIN_VALUE : rounded));
+    }
+
+    private static double sinc(final double x){
+        if (x==0){
+            return 1;
+        }
+        return Math.sin(Math.PI*x)/(Math.PI*x);
+    }
+
+    /**
+     * The zeroth order modified Bessel function of the first kind, summed from its power series.
+     */
+    private static double besselI0(final double x){
+        double sum=1;
+        double term=1;
+        final double halfX=x/2;
+        for (int k=1;k<50 && term>sum*1e-12;k++){
+            term=term*(halfX/k)*(halfX/k);
+            sum=sum+term;
+        }
+        return sum;
+    }
+
+    private static int greatestCommonDivisor(final int a,final int b){
+        int x=a;
+        int y=b;
+        while (y!=0){
+            final int remainder=x%y;
+            x=y;
+            y=remainder;
+        }
+        return x;
+    }
+}
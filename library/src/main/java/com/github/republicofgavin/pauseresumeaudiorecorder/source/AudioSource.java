@@ -0,0 +1,66 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder.source;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Where a recorder pulls its audio from. It mirrors the part of {@link AudioRecord} the recording thread uses, so the microphone ({@link MicAudioSource}) is just one implementation
+ * and the whole write, pause and finalize path can be driven by synthetic audio ({@link ToneAudioSource}, {@link NoiseAudioSource}, {@link WavFileAudioSource}) on a plain JVM.
+ * Every method is called from the recording thread only, so implementations do not have to be thread safe. A source is opened once and released once.
+ * Data is read the way {@link AudioRecord} delivers it: interleaved, 8 bit samples unsigned, 16 bit and float samples in native byte order, floats nominally between -1 and 1.
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+public interface AudioSource {
+    /**
+     * Prepares the source to deliver audio in the given format. Called once, before anything else.
+     * @param sampleRateInHertz The sample rate in Hz.
+     * @param channelConfig {@link AudioFormat#CHANNEL_IN_MONO} or {@link AudioFormat#CHANNEL_IN_STEREO}.
+     * @param audioEncoding {@link AudioFormat#ENCODING_PCM_8BIT}, {@link AudioFormat#ENCODING_PCM_16BIT} or {@link AudioFormat#ENCODING_PCM_FLOAT}.
+     * @return The size of a read in bytes, a whole number of frames. The recorder sizes its blocks from it.
+     * @throws IllegalArgumentException If the source cannot deliver audio in that format.
+     */
+    int open(int sampleRateInHertz,int channelConfig,int audioEncoding);
+
+    /**
+     * Starts delivering audio. Called when the recording starts and every time it is resumed.
+     */
+    void start();
+
+    /**
+     * Stops delivering audio, dropping whatever was buffered. Called when the recording is paused or stopped.
+     */
+    void stop();
+
+    /**
+     * Frees what the source holds. Called once, after the last {@link #stop()}.
+     */
+    void release();
+
+    /**
+     * Reads 8 bit or 16 bit samples. See {@link AudioRecord#read(short[], int, int)}.
+     * @param audioData The array to read into.
+     * @param offsetInShorts Where to start writing in the array.
+     * @param sizeInShorts The number of samples to read.
+     * @return The number of samples read, or a negative {@link AudioRecord} error code.
+     */
+    int read(short[] audioData,int offsetInShorts,int sizeInShorts);
+
+    /**
+     * Reads samples as bytes. See {@link AudioRecord#read(byte[], int, int)}.
+     * @param audioData The array to read into.
+     * @param offsetInBytes Where to start writing in the array.
+     * @param sizeInBytes The number of bytes to read.
+     * @return The number of bytes read, or a negative {@link AudioRecord} error code.
+     */
+    int read(byte[] audioData,int offsetInBytes,int sizeInBytes);
+
+    /**
+     * Reads samples into a direct buffer, from its start. Its position and limit are left untouched. See {@link AudioRecord#read(ByteBuffer, int)}.
+     * @param audioBuffer The direct buffer to read into.
+     * @param sizeInBytes The number of bytes to read.
+     * @return The number of bytes read, or a negative {@link AudioRecord} error code.
+     */
+    int read(ByteBuffer audioBuffer,int sizeInBytes);
+}
@@ -0,0 +1,74 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder.source;
+
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The {@link AudioSource} backed by an {@link AudioRecord}, which is what a recorder records from unless told otherwise. The AudioRecord is created by {@link #open(int, int, int)}
+ * with the smallest buffer the device allows, and every other call is passed straight through to it.
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+public class MicAudioSource implements AudioSource {
+    private final int audioSource;
+    private AudioRecord audioRecord;
+
+    /**
+     * Default constructor. Records from {@link MediaRecorder.AudioSource#MIC}.
+     */
+    public MicAudioSource(){
+        this(MediaRecorder.AudioSource.MIC);
+    }
+
+    /**
+     * Records from another input, such as {@link MediaRecorder.AudioSource#VOICE_RECOGNITION}.
+     * @param audioSource One of the {@link MediaRecorder.AudioSource} constants. It is checked by the {@link AudioRecord} when the source is opened.
+     */
+    public MicAudioSource(final int audioSource){
+        this.audioSource=audioSource;
+    }
+
+    @Override
+    public int open(final int sampleRateInHertz,final int channelConfig,final int audioEncoding){
+        if (audioRecord!=null){
+            throw new IllegalStateException("MicAudioSource is already open");
+        }
+        final int bufferSizeInBytes=AudioRecord.getMinBufferSize(sampleRateInHertz,channelConfig,audioEncoding);
+        if (bufferSizeInBytes<=0){
+            throw new IllegalArgumentException("The device cannot record at "+sampleRateInHertz+" Hz in that channel config and encoding");
+        }
+        audioRecord=new AudioRecord(audioSource,sampleRateInHertz,channelConfig,audioEncoding,bufferSizeInBytes);
+        return bufferSizeInBytes;
+    }
+
+    @Override
+    public void start(){
+        audioRecord.startRecording();
+    }
+
+    @Override
+    public void stop(){
+        audioRecord.stop();
+    }
+
+    @Override
+    public void release(){
+        audioRecord.release();
+    }
+
+    @Override
+    public int read(final short[] audioData,final int offsetInShorts,final int sizeInShorts){
+        return audioRecord.read(audioData,offsetInShorts,sizeInShorts);
+    }
+
+    @Override
+    public int read(final byte[] audioData,final int offsetInBytes,final int sizeInBytes){
+        return audioRecord.read(audioData,offsetInBytes,sizeInBytes);
+    }
+
+    @Override
+    public int read(final ByteBuffer audioBuffer,final int sizeInBytes){
+        return audioRecord.read(audioBuffer,sizeInBytes);
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder.source;
+
+/**
+ * A {@link SyntheticAudioSource} that generates white noise, uniformly distributed and independent on every channel. The same seed always generates the same noise, so recordings can be reproduced.
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+public class NoiseAudioSource extends SyntheticAudioSource {
+    private final float amplitude;
+    /**
+     * State of the xorshift generator the noise comes from. Never 0.
+     */
+    private long randomState;
+
+    /**
+     * Default constructor.
+     * @param amplitude The peak level of the noise, from 0 to 1 (full scale).
+     * @param seed The seed of the noise.
+     * @param realTimePaced True if reads should block to deliver audio in real time, false to deliver it as fast as it is read.
+     * @throws IllegalArgumentException If the amplitude is invalid.
+     */
+    public NoiseAudioSource(final float amplitude,final long seed,final boolean realTimePaced){
+        super(realTimePaced);
+        if (!(amplitude>=0 && amplitude<=1)){
+            throw new IllegalArgumentException("amplitude must be between 0 and 1");
+        }
+        this.amplitude=amplitude;
+        randomState=(seed==0) ? 0x9E3779B97F4A7C15L : seed;
+    }
+
+    @Override
+    protected void generate(final float[] samples,final int frameCount){
+        for (int i=0;i<frameCount*getChannelCount();i++){
+            randomState^=randomState<<13;
+            randomState^=randomState>>>7;
+            randomState^=randomState<<17;
+            //The top 24 bits, from -2^23 to 2^23-1, scaled to -1 up to just under 1.
+            samples[i]=amplitude*((int)(randomState>>>40)-8388608)/8388608f;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder.source;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Base of the {@link AudioSource}s that make up their audio instead of capturing it. Subclasses generate float samples, which are converted here to whatever encoding the recorder reads.
+ * A source is either paced in real time, where every read blocks until the audio it returns would have been captured (like an {@link AudioRecord}), or delivers audio as fast as it is read,
+ * so a recording can be pushed through at many times real time. Every buffer is allocated when the source is opened, so reading allocates nothing.
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+public abstract class SyntheticAudioSource implements AudioSource {
+    /**
+     * How much audio a read is sized for, about what a microphone buffers.
+     */
+    private static final int READ_DURATION_MILLIS=20;
+    private static final boolean BIG_ENDIAN=ByteOrder.nativeOrder()==ByteOrder.BIG_ENDIAN;
+
+    private final boolean realTimePaced;
+    private int sampleRateInHertz;
+    private int channelCount;
+    private int bytesPerSample;
+    /**
+     * Interleaved samples of a read, as generated.
+     */
+    private float[] samples;
+    private long startNanos;
+    private long framesSinceStart;
+
+    /**
+     * Default constructor.
+     * @param realTimePaced True if reads should block to deliver audio in real time, false to deliver it as fast as it is read.
+     */
+    protected SyntheticAudioSource(final boolean realTimePaced){
+        this.realTimePaced=realTimePaced;
+    }
+
+    /**
+     * Generates the next frames.
+     * @param samples Where the interleaved samples are written, from its start, nominally between -1 and 1. Values beyond that are clipped unless the recording is float.
+     * @param frameCount The number of frames to generate. The array holds at least that many.
+     * @throws IOException If the audio cannot be read. The read fails with {@link AudioRecord#ERROR}.
+     */
+    protected abstract void generate(float[] samples,int frameCount)throws IOException;
+
+    /**
+     * Called by {@link #open(int, int, int)} once the format is known, before anything is generated. Does nothing by default.
+     * @throws IllegalArgumentException If the source cannot generate audio in that format.
+     */
+    protected void onOpen(){
+    }
+
+    /**
+     * Called by {@link #release()}. Does nothing by default.
+     */
+    protected void onRelease(){
+    }
+
+    /**
+     * @return The sample rate the source was opened with, in Hz.
+     */
+    protected int getSampleRateInHertz(){
+        return sampleRateInHertz;
+    }
+
+    /**
+     * @return The number of channels the source was opened with, 1 or 2.
+     */
+    protected int getChannelCount(){
+        return channelCount;
+    }
+
+    /**
+     * @return True if reads block to deliver audio in real time.
+     */
+    public boolean isRealTimePaced(){
+        return realTimePaced;
+    }
+
+    @Override
+    public int open(final int sampleRateInHertz,final int channelConfig,final int audioEncoding){
+        if (samples!=null){
+            throw new IllegalStateException("Audio source is already open");
+        }
+        if (sampleRateInHertz<=0){
+            throw new IllegalArgumentException("Invalid sample rate given");
+        }
+        if (channelConfig!=AudioFormat.CHANNEL_IN_MONO && channelConfig!=AudioFormat.CHANNEL_IN_STEREO){
+            throw new IllegalArgumentException("Invalid channel given");
+        }
+        if (audioEncoding==AudioFormat.ENCODING_PCM_8BIT){
+            bytesPerSample=1;
+        }
+        else if (audioEncoding==AudioFormat.ENCODING_PCM_16BIT){
+            bytesPerSample=2;
+        }
+        else if (audioEncoding==AudioFormat.ENCODING_PCM_FLOAT){
+            bytesPerSample=4;
+        }
+        else {
+            throw new IllegalArgumentException("Invalid audio encoding given");
+        }
+        this.sampleRateInHertz=sampleRateInHertz;
+        channelCount=(channelConfig==AudioFormat.CHANNEL_IN_STEREO) ? 2 : 1;
+        onOpen();
+        final int framesPerRead=Math.max(1,sampleRateInHertz*READ_DURATION_MILLIS/1000);
+        samples=new float[framesPerRead*channelCount];
+        return framesPerRead*channelCount*bytesPerSample;
+    }
+
+    @Override
+    public void start(){
+        startNanos=System.nanoTime();
+        framesSinceStart=0;
+    }
+
+    @Override
+    public void stop(){
+    }
+
+    @Override
+    public void release(){
+        onRelease();
+    }
+
+    @Override
+    public int read(final short[] audioData,final int offsetInShorts,final int sizeInShorts){
+        if (bytesPerSample!=2){
+            return AudioRecord.ERROR_INVALID_OPERATION;
+        }
+        if (audioData==null || offsetInShorts<0 || sizeInShorts<0 || offsetInShorts+sizeInShorts>audioData.length){
+            return AudioRecord.ERROR_BAD_VALUE;
+        }
+        final int frameCount=sizeInShorts/channelCount;
+        int index=offsetInShorts;
+        int framesLeft=frameCount;
+        while (framesLeft>0){
+            final int chunkFrames=Math.min(framesLeft,samples.length/channelCount);
+            if (!generateChunk(chunkFrames)){
+                return AudioRecord.ERROR;
+            }
+            for (int i=0;i<chunkFrames*channelCount;i++){
+                audioData[index++]=(short) to16Bit(samples[i]);
+            }
+            framesLeft=framesLeft-chunkFrames;
+        }
+        pace(frameCount);
+        return frameCount*channelCount;
+    }
+
+    @Override
+    public int read(final byte[] audioData,final int offsetInBytes,final int sizeInBytes){
+        if (bytesPerSample==4){
+            return AudioRecord.ERROR_INVALID_OPERATION;
+        }
+        if (audioData==null || offsetInBytes<0 || sizeInBytes<0 || offsetInBytes+sizeInBytes>audioData.length){
+            return AudioRecord.ERROR_BAD_VALUE;
+        }
+        final int frameCount=sizeInBytes/(channelCount*bytesPerSample);
+        int index=offsetInBytes;
+        int framesLeft=frameCount;
+        while (framesLeft>0){
+            final int chunkFrames=Math.min(framesLeft,samples.length/channelCount);
+            if (!generateChunk(chunkFrames)){
+                return AudioRecord.ERROR;
+            }
+            for (int i=0;i<chunkFrames*channelCount;i++){
+                final int sample=to16Bit(samples[i]);
+                if (bytesPerSample==1){
+                    audioData[index++]=(byte)((sample>>8)+128);
+                }
+                else {
+                    audioData[index++]=(byte)(BIG_ENDIAN ? sample>>8 : sample);
+                    audioData[index++]=(byte)(BIG_ENDIAN ? sample : sample>>8);
+                }
+            }
+            framesLeft=framesLeft-chunkFrames;
+        }
+        pace(frameCount);
+        return frameCount*channelCount*bytesPerSample;
+    }
+
+    @Override
+    public int read(final ByteBuffer audioBuffer,final int sizeInBytes){
+        if (audioBuffer==null || sizeInBytes<0 || sizeInBytes>audioBuffer.capacity()){
+            return AudioRecord.ERROR_BAD_VALUE;
+        }
+        final int frameCount=sizeInBytes/(channelCount*bytesPerSample);
+        int index=0;
+        int framesLeft=frameCount;
+        while (framesLeft>0){
+            final int chunkFrames=Math.min(framesLeft,samples.length/channelCount);
+            if (!generateChunk(chunkFrames)){
+                return AudioRecord.ERROR;
+            }
+            for (int i=0;i<chunkFrames*channelCount;i++){
+                if (bytesPerSample==1){
+                    audioBuffer.put(index++,(byte)((to16Bit(samples[i])>>8)+128));
+                }
+                else {
+                    //Written a byte at a time, as the samples are in native order whatever the order of the buffer.
+                    final int sample=(bytesPerSample==2) ? to16Bit(samples[i]) : Float.floatToRawIntBits(samples[i]);
+                    for (int b=0;b<bytesPerSample;b++){
+                        final int shift=BIG_ENDIAN ? 8*(bytesPerSample-1-b) : 8*b;
+                        audioBuffer.put(index++,(byte)(sample>>shift));
+                    }
+                }
+            }
+            framesLeft=framesLeft-chunkFrames;
+        }
+        pace(frameCount);
+        return frameCount*channelCount*bytesPerSample;
+    }
+
+    private boolean generateChunk(final int frameCount){
+        try {
+            generate(samples,frameCount);
+            return true;
+        }
+        catch (IOException ex){
+            return false;
+        }
+    }
+
+    /**
+     * Counts the frames delivered and, if paced, blocks until they are due.
+     */
+    private void pace(final int frameCount){
+        framesSinceStart=framesSinceStart+frameCount;
+        if (!realTimePaced){
+            return;
+        }
+        final long waitNanos=startNanos+framesSinceStart*1000000000L/sampleRateInHertz-System.nanoTime();
+        if (waitNanos>0){
+            try {
+                Thread.sleep(waitNanos/1000000L,(int)(waitNanos%1000000L));
+            }
+            catch (InterruptedException ex){
+                //The audio is already generated, so it is returned. The recording thread sees the interrupt on its next wait.
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static int to16Bit(final float sample){
+        final int scaled=Math.round(sample*32768f);
+        return scaled>Short.MAX_VALUE ? Short.MAX_VALUE : (scaled<Short.MIN_VALUE ? Short.MIN_VALUE : scaled);
+    }
+}
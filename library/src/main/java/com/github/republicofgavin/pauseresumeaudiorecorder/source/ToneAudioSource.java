@@ -0,0 +1,52 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder.source;
+
+/**
+ * A {@link SyntheticAudioSource} that generates a sine tone, the same on every channel. The phase carries on across pauses, as if the tone never stopped.
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+public class ToneAudioSource extends SyntheticAudioSource {
+    private final double frequencyInHertz;
+    private final float amplitude;
+    private double phase;
+    private double phaseIncrement;
+
+    /**
+     * Default constructor.
+     * @param frequencyInHertz The frequency of the tone. Must be greater than 0.
+     * @param amplitude The peak level of the tone, from 0 to 1 (full scale).
+     * @param realTimePaced True if reads should block to deliver audio in real time, false to deliver it as fast as it is read.
+     * @throws IllegalArgumentException If the frequency or amplitude are invalid.
+     */
+    public ToneAudioSource(final double frequencyInHertz,final float amplitude,final boolean realTimePaced){
+        super(realTimePaced);
+        if (!(frequencyInHertz>0)){
+            throw new IllegalArgumentException("frequencyInHertz must be greater than 0");
+        }
+        if (!(amplitude>=0 && amplitude<=1)){
+            throw new IllegalArgumentException("amplitude must be between 0 and 1");
+        }
+        this.frequencyInHertz=frequencyInHertz;
+        this.amplitude=amplitude;
+    }
+
+    @Override
+    protected void onOpen(){
+        phaseIncrement=2*Math.PI*frequencyInHertz/getSampleRateInHertz();
+    }
+
+    @Override
+    protected void generate(final float[] samples,final int frameCount){
+        final int channelCount=getChannelCount();
+        int index=0;
+        for (int i=0;i<frameCount;i++){
+            final float sample=(float)(amplitude*Math.sin(phase));
+            for (int channel=0;channel<channelCount;channel++){
+                samples[index++]=sample;
+            }
+            phase=phase+phaseIncrement;
+            if (phase>=2*Math.PI){
+                phase=phase-2*Math.PI;
+            }
+        }
+    }
+}
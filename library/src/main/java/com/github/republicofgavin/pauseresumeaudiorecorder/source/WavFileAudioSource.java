@@ -0,0 +1,226 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder.source;
+
+import com.github.republicofgavin.pauseresumeaudiorecorder.conversion.PcmWavConverter;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link SyntheticAudioSource} that plays back a wav file: 8, 16 or 24 bit PCM, or 32 bit float, plain or WAVE_FORMAT_EXTENSIBLE, as written by this library.
+ * The file has to be at the sample rate of the recording, so a file at another rate is recorded by capturing at its rate (PauseResumeAudioRecorder.setCaptureSampleRate).
+ * Stereo files are mixed down for mono recordings and mono files copied to both channels of stereo ones. Once the end of the data is reached, playback either loops or goes silent.
+ * The file is read a block at a time through a buffer allocated when the source is opened.
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+public class WavFileAudioSource extends SyntheticAudioSource {
+    private static final int READ_BUFFER_SIZE_FRAMES=4096;
+
+    private final String wavFilePath;
+    private final boolean looping;
+    private RandomAccessFile randomAccessFile;
+    private FileChannel fileChannel;
+    private ByteBuffer readBuffer;
+    private int fileChannelCount;
+    private int fileBytesPerSample;
+    private boolean fileFloat;
+    private long dataOffset;
+    /**
+     * The size of the data chunk, cut down to whole frames.
+     */
+    private long dataSizeInBytes;
+    /**
+     * How much of the data chunk has been read into the buffer.
+     */
+    private long dataPosition;
+    private volatile boolean finished;
+
+    /**
+     * Default constructor. The file is opened by {@link #open(int, int, int)}.
+     * @param wavFilePath The path of the wav file.
+     * @param looping True to play the file again from its start every time it ends, false to go silent.
+     * @param realTimePaced True if reads should block to deliver audio in real time, false to deliver it as fast as it is read.
+     * @throws IllegalArgumentException If the path is null, empty or blank.
+     */
+    public WavFileAudioSource(final String wavFilePath,final boolean looping,final boolean realTimePaced){
+        super(realTimePaced);
+        if (wavFilePath==null || wavFilePath.trim().isEmpty()){
+            throw new IllegalArgumentException("wavFilePath cannot be null, empty, blank");
+        }
+        this.wavFilePath=wavFilePath;
+        this.looping=looping;
+    }
+
+    /**
+     * Tells whether the whole file has been played, for sources that do not loop. This can be called from any thread at any time.
+     * @return True once the end of the data has been reached. Every read since then has been silence.
+     */
+    public boolean isFinished(){
+        return finished;
+    }
+
+    @Override
+    protected void onOpen(){
+        try {
+            randomAccessFile=new RandomAccessFile(wavFilePath,"r");
+            fileChannel=randomAccessFile.getChannel();
+            readHeader();
+        }
+        catch (IOException ex){
+            onRelease();
+            throw new IllegalArgumentException("Unable to play wav file: "+wavFilePath,ex);
+        }
+        catch (IllegalArgumentException ex){
+            onRelease();
+            throw ex;
+        }
+        readBuffer=ByteBuffer.allocate(READ_BUFFER_SIZE_FRAMES*fileChannelCount*fileBytesPerSample).order(ByteOrder.LITTLE_ENDIAN);
+        readBuffer.flip();
+    }
+
+    @Override
+    protected void onRelease(){
+        if (randomAccessFile!=null){
+            try {
+                randomAccessFile.close();
+            }
+            catch (IOException ex){
+                //Only ever read from, so there is nothing to lose.
+            }
+            randomAccessFile=null;
+            fileChannel=null;
+        }
+    }
+
+    @Override
+    protected void generate(final float[] samples,final int frameCount)throws IOException{
+        final int channelCount=getChannelCount();
+        int index=0;
+        for (int i=0;i<frameCount;i++){
+            if (!readBuffer.hasRemaining() && !fillReadBuffer()){
+                for (int channel=0;channel<channelCount;channel++){
+                    samples[index++]=0;
+                }
+                continue;
+            }
+            if (fileChannelCount==channelCount){
+                for (int channel=0;channel<channelCount;channel++){
+                    samples[index++]=nextFileSample();
+                }
+            }
+            else if (fileChannelCount==2){
+                samples[index++]=(nextFileSample()+nextFileSample())/2;
+            }
+            else {
+                final float sample=nextFileSample();
+                samples[index++]=sample;
+                samples[index++]=sample;
+            }
+        }
+    }
+
+    /**
+     * Reads the next part of the data chunk into the buffer, starting over from the start of the data if looping.
+     * @return False if there is no more data to play.
+     */
+    private boolean fillReadBuffer()throws IOException{
+        if (dataPosition==dataSizeInBytes){
+            if (!looping || dataSizeInBytes==0){
+                finished=true;
+                return false;
+            }
+            dataPosition=0;
+        }
+        readBuffer.clear();
+        readBuffer.limit((int)Math.min(readBuffer.capacity(),dataSizeInBytes-dataPosition));
+        while (readBuffer.hasRemaining()){
+            if (fileChannel.read(readBuffer,dataOffset+dataPosition+readBuffer.position())<0){
+                throw new IOException("Wav file ended before its data chunk did");
+            }
+        }
+        dataPosition=dataPosition+readBuffer.limit();
+        readBuffer.flip();
+        return true;
+    }
+
+    private float nextFileSample(){
+        if (fileFloat){
+            return readBuffer.getFloat();
+        }
+        if (fileBytesPerSample==1){
+            return ((readBuffer.get() & 0xFF)-128)/128f;
+        }
+        if (fileBytesPerSample==2){
+            return readBuffer.getShort()/32768f;
+        }
+        final int sample=(readBuffer.get() & 0xFF) | (readBuffer.get() & 0xFF)<<8 | readBuffer.get()<<16;
+        return sample/8388608f;
+    }
+
+    /**
+     * Finds the format and the data of the file.
+     * @throws IOException If the file cannot be read or is not a wav file.
+     * @throws IllegalArgumentException If the wav file cannot be played into the recording.
+     */
+    private void readHeader()throws IOException{
+        final ByteBuffer chunk=ByteBuffer.allocate(40).order(ByteOrder.LITTLE_ENDIAN);
+        readChunk(chunk,0,12);
+        final int riffId=chunk.getInt(0);
+        //"RIFF", "RF64" and "WAVE", little endian.
+        if ((riffId!=0x46464952 && riffId!=0x34364652) || chunk.getInt(8)!=0x45564157){
+            throw new IOException("Not a wav file");
+        }
+        long offset=12;
+        short formatTag=0;
+        while (true){
+            readChunk(chunk,offset,8);
+            final int chunkId=chunk.getInt(0);
+            final long chunkSizeInBytes=chunk.getInt(4) & 0xFFFFFFFFL;
+            //"data"
+            if (chunkId==0x61746164){
+                dataOffset=offset+8;
+                //RF64 and unfinished (.temp) files leave the size unset (-1 or 0), in which case the data runs to the end of the file.
+                final long dataLeft=fileChannel.size()-dataOffset;
+                dataSizeInBytes=(chunkSizeInBytes==0 || chunkSizeInBytes==0xFFFFFFFFL || chunkSizeInBytes>dataLeft) ? dataLeft : chunkSizeInBytes;
+                break;
+            }
+            //"fmt "
+            else if (chunkId==0x20746D66){
+                readChunk(chunk,offset+8,16);
+                formatTag=chunk.getShort(0);
+                fileChannelCount=chunk.getShort(2);
+                if (chunk.getInt(4)!=getSampleRateInHertz()){
+                    throw new IllegalArgumentException("The wav file is at "+chunk.getInt(4)+" Hz, not at the "+getSampleRateInHertz()+" Hz of the recording");
+                }
+                fileBytesPerSample=chunk.getShort(14)/8;
+                if (formatTag==PcmWavConverter.WAVE_FORMAT_EXTENSIBLE){
+                    //The real format tag starts the sub format GUID.
+                    readChunk(chunk,offset+8,40);
+                    formatTag=chunk.getShort(24);
+                }
+            }
+            offset=offset+8+chunkSizeInBytes+(chunkSizeInBytes & 1);
+        }
+        if (fileChannelCount!=1 && fileChannelCount!=2){
+            throw new IllegalArgumentException("Only mono and stereo wav files can be played");
+        }
+        fileFloat=formatTag==PcmWavConverter.WAVE_FORMAT_IEEE_FLOAT && fileBytesPerSample==4;
+        if (!fileFloat && (formatTag!=PcmWavConverter.WAVE_FORMAT_PCM || fileBytesPerSample<1 || fileBytesPerSample>3)){
+            throw new IllegalArgumentException("Only 8, 16 and 24 bit PCM and 32 bit float wav files can be played");
+        }
+        final int frameSizeInBytes=fileChannelCount*fileBytesPerSample;
+        dataSizeInBytes=dataSizeInBytes/frameSizeInBytes*frameSizeInBytes;
+    }
+
+    private void readChunk(final ByteBuffer chunk,final long offset,final int length)throws IOException{
+        chunk.clear();
+        chunk.limit(length);
+        while (chunk.hasRemaining()){
+            if (fileChannel.read(chunk,offset+chunk.position())<0){
+                throw new IOException("Unexpected end of wav file");
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Tests {@link AudioBroadcastRing}
+ * @author Gavin(republicofgavin@gmail.com)
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, emulateSdk = 18)
+public class AudioBroadcastRingTest {
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testConstructorBadSlotCount(){new AudioBroadcastRing(1,100,false);}
+    @Test(expected=IllegalArgumentException.class)
+    public void testConstructorBadSlotSize(){new AudioBroadcastRing(4,0,false);}
+    @Test
+    public void testCapacityRoundedUp(){
+        Assert.assertEquals("Capacity is not a power of two", 8, new AudioBroadcastRing(5, 100, false).capacity());
+        Assert.assertEquals("Capacity changed for a power of two", 4, new AudioBroadcastRing(4, 100, true).capacity());
+    }
+    @Test
+    public void testPublish(){
+        final AudioBroadcastRing broadcastRing=new AudioBroadcastRing(2,4,false);
+        Assert.assertEquals("Empty ring has blocks", 0, broadcastRing.publishedCount());
+        Assert.assertFalse("Unpublished block is available", broadcastRing.isAvailable(0));
+
+        final ByteBuffer block=ByteBuffer.wrap(new byte[]{1, 2, 3});
+        broadcastRing.publish(block);
+
+        Assert.assertEquals("Block was not published", 1, broadcastRing.publishedCount());
+        Assert.assertEquals("Block position was moved", 0, block.position());
+        Assert.assertTrue("Published block is not available", broadcastRing.isAvailable(0));
+        final int index=broadcastRing.indexOf(0);
+        Assert.assertEquals("Wrong length", 3, broadcastRing.lengthOf(index));
+        Assert.assertEquals("Wrong data", 3, broadcastRing.slot(index).get(2));
+    }
+    @Test
+    public void testLapping(){
+        final AudioBroadcastRing broadcastRing=new AudioBroadcastRing(2,4,false);
+        for (byte i=0;i<5;i++){
+            broadcastRing.publish(ByteBuffer.wrap(new byte[]{i}));
+        }
+
+        //Only the newest block is safe to start reading, the slot of the other one is the next to be overwritten.
+        Assert.assertEquals("Wrong oldest readable block", 4, broadcastRing.oldestReadableSequence());
+        Assert.assertFalse("Overwritten block is available", broadcastRing.isAvailable(2));
+        Assert.assertTrue("Block is not available", broadcastRing.isAvailable(3));
+        Assert.assertTrue("Newest block is not available", broadcastRing.isAvailable(4));
+        Assert.assertEquals("Wrong data", 4, broadcastRing.slot(broadcastRing.indexOf(4)).get(0));
+    }
+    @Test
+    public void testClose(){
+        final AudioBroadcastRing broadcastRing=new AudioBroadcastRing(2,4,false);
+        broadcastRing.publish(ByteBuffer.wrap(new byte[]{1}));
+        broadcastRing.close();
+
+        Assert.assertTrue("Ring is not closed", broadcastRing.isClosed());
+        Assert.assertTrue("Published block was lost", broadcastRing.isAvailable(0));
+    }
+    @Test
+    public void testWasReadWhole(){
+        final AudioBroadcastRing broadcastRing=new AudioBroadcastRing(2,4,false);
+        broadcastRing.publish(ByteBuffer.wrap(new byte[]{1}));
+        Assert.assertTrue("Untouched block was not read whole", broadcastRing.wasReadWhole(0));
+        Assert.assertTrue("Validating changed the block", broadcastRing.isAvailable(0));
+
+        broadcastRing.publish(ByteBuffer.wrap(new byte[]{2}));
+        broadcastRing.publish(ByteBuffer.wrap(new byte[]{3}));
+        Assert.assertFalse("Overwritten block was read whole", broadcastRing.wasReadWhole(0));
+    }
+    @Test
+    public void testSlowConsumerIsToldAboutOverwrittenBlocks()throws InterruptedException{
+        final int blockCount=200000;
+        final int intsPerBlock=64;
+        final AudioBroadcastRing broadcastRing=new AudioBroadcastRing(4,intsPerBlock*4,false);
+        final Thread producerThread=new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final ByteBuffer block=ByteBuffer.allocate(intsPerBlock*4).order(ByteOrder.LITTLE_ENDIAN);
+                for (int sequence=0;sequence<blockCount;sequence++){
+                    block.clear();
+                    while (block.hasRemaining()){
+                        block.putInt(sequence);
+                    }
+                    block.flip();
+                    broadcastRing.publish(block);
+                }
+                broadcastRing.close();
+            }
+        });
+        producerThread.start();
+
+        //Mirrors the audio chunk subscriber thread of the recorder, reading slowly enough to be lapped all the time.
+        long nextSequence=0;
+        long deliveredCount=0;
+        long missedCount=0;
+        long corruptBlockCount=0;
+        final int[] copy=new int[intsPerBlock];
+        while (!broadcastRing.isClosed() || nextSequence<broadcastRing.publishedCount()){
+            if (nextSequence==broadcastRing.publishedCount()){
+                Thread.yield();
+                continue;
+            }
+            nextSequence=Math.max(nextSequence,broadcastRing.oldestReadableSequence());
+            if (broadcastRing.isAvailable(nextSequence)){
+                final ByteBuffer slot=broadcastRing.slot(broadcastRing.indexOf(nextSequence));
+                for (int i=0;i<intsPerBlock;i++){
+                    copy[i]=slot.getInt(i*4);
+                    if (i%16==0){
+                        Thread.yield();
+                    }
+                }
+                if (broadcastRing.wasReadWhole(nextSequence)){
+                    deliveredCount++;
+                    for (int i=0;i<intsPerBlock;i++){
+                        if (copy[i]!=(int)nextSequence){
+                            corruptBlockCount++;
+                            break;
+                        }
+                    }
+                }
+                else {
+                    missedCount++;
+                }
+            }
+            nextSequence++;
+        }
+        producerThread.join();
+
+        Assert.assertEquals("Blocks were handed over torn or overwritten without being reported", 0, corruptBlockCount);
+        Assert.assertTrue("No block was read whole", deliveredCount>0);
+        Assert.assertTrue("Consumer was never lapped mid read", missedCount>0);
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Tests {@link AudioLevelMeter}
+ * @author Gavin(republicofgavin@gmail.com)
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, emulateSdk = 18)
+public class AudioLevelMeterTest {
+    private static final float DELTA=0.0001f;
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testConstructorBadChannelCount(){new AudioLevelMeter(0,100);}
+    @Test(expected=IllegalArgumentException.class)
+    public void testConstructorBadWindowSize(){new AudioLevelMeter(1,0);}
+    @Test
+    public void testLevelsOnlyPublishedForFullWindows(){
+        final AudioLevelMeter audioLevelMeter=new AudioLevelMeter(1,4);
+        audioLevelMeter.process(new short[]{16384,-16384,16384},3);
+        Assert.assertEquals("Peak published before the window was full", 0f, audioLevelMeter.getPeakLevel(0), DELTA);
+
+        audioLevelMeter.process(new short[]{-16384,32767},1);
+        Assert.assertEquals("Peak incorrect", 0.5f, audioLevelMeter.getPeakLevel(0), DELTA);
+        Assert.assertEquals("RMS incorrect", 0.5f, audioLevelMeter.getRmsLevel(0), DELTA);
+    }
+    @Test
+    public void testStereoShorts(){
+        final AudioLevelMeter audioLevelMeter=new AudioLevelMeter(2,2);
+        audioLevelMeter.process(new short[]{-32768,0,-32768,8192},4);
+
+        Assert.assertEquals("Left peak incorrect", 1f, audioLevelMeter.getPeakLevel(0), DELTA);
+        Assert.assertEquals("Left RMS incorrect", 1f, audioLevelMeter.getRmsLevel(0), DELTA);
+        Assert.assertEquals("Right peak incorrect", 0.25f, audioLevelMeter.getPeakLevel(1), DELTA);
+        Assert.assertEquals("Right RMS incorrect", (float)(0.25/Math.sqrt(2)), audioLevelMeter.getRmsLevel(1), DELTA);
+    }
+    @Test
+    public void testLittleEndianBytes(){
+        final AudioLevelMeter audioLevelMeter=new AudioLevelMeter(1,2);
+        //16384 and -16384.
+        final ByteBuffer pcmData=ByteBuffer.wrap(new byte[]{0,64,0,-64});
+        audioLevelMeter.process(pcmData,2);
+
+        Assert.assertEquals("Position was moved", 0, pcmData.position());
+        Assert.assertEquals("Peak incorrect", 0.5f, audioLevelMeter.getPeakLevel(0), DELTA);
+        Assert.assertEquals("RMS incorrect", 0.5f, audioLevelMeter.getRmsLevel(0), DELTA);
+    }
+    @Test
+    public void testUnsignedEightBitBytes(){
+        final AudioLevelMeter audioLevelMeter=new AudioLevelMeter(1,2);
+        audioLevelMeter.process(ByteBuffer.wrap(new byte[]{(byte)128,0}),1);
+
+        Assert.assertEquals("Peak incorrect", 1f, audioLevelMeter.getPeakLevel(0), DELTA);
+        Assert.assertEquals("RMS incorrect", (float)(1/Math.sqrt(2)), audioLevelMeter.getRmsLevel(0), DELTA);
+    }
+    @Test
+    public void testResetWindow(){
+        final AudioLevelMeter audioLevelMeter=new AudioLevelMeter(1,2);
+        audioLevelMeter.process(new short[]{16384,16384},2);
+        audioLevelMeter.process(new short[]{32767},1);
+        audioLevelMeter.resetWindow();
+        Assert.assertEquals("Published levels were dropped", 0.5f, audioLevelMeter.getPeakLevel(0), DELTA);
+
+        audioLevelMeter.process(new short[]{8192,8192},2);
+        Assert.assertEquals("Window was not reset", 0.25f, audioLevelMeter.getPeakLevel(0), DELTA);
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Tests {@link AudioRingBuffer}
+ * @author Gavin(republicofgavin@gmail.com)
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, emulateSdk = 18)
+public class AudioRingBufferTest {
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testConstructorBadSlotCount(){new AudioRingBuffer(1,100,false);}
+    @Test(expected=IllegalArgumentException.class)
+    public void testConstructorBadSlotSize(){new AudioRingBuffer(4,0,false);}
+    @Test
+    public void testCapacityRoundedUp(){
+        Assert.assertEquals("Capacity is not a power of two", 8, new AudioRingBuffer(5, 100, false).capacity());
+        Assert.assertEquals("Capacity changed for a power of two", 4, new AudioRingBuffer(4, 100, true).capacity());
+    }
+    @Test
+    public void testPublishAndPollInOrder(){
+        final AudioRingBuffer ringBuffer=new AudioRingBuffer(2,4,false);
+        Assert.assertNull("Empty ring returned a slot", ringBuffer.poll());
+
+        ringBuffer.claim().put((byte) 1).flip();
+        ringBuffer.publish();
+        ringBuffer.claim().put((byte) 2).flip();
+        ringBuffer.publish();
+
+        Assert.assertNull("Full ring returned a free slot", ringBuffer.claim());
+        Assert.assertEquals("Wrong size", 2, ringBuffer.size());
+
+        ByteBuffer slot=ringBuffer.poll();
+        Assert.assertEquals("Slots are out of order", 1, slot.get(0));
+        Assert.assertEquals("Slot limit was not kept", 1, slot.remaining());
+        ringBuffer.release();
+
+        Assert.assertNotNull("Released slot was not reusable", ringBuffer.claim());
+        slot=ringBuffer.poll();
+        Assert.assertEquals("Slots are out of order", 2, slot.get(0));
+        ringBuffer.release();
+        Assert.assertNull("Drained ring returned a slot", ringBuffer.poll());
+    }
+    @Test
+    public void testClose(){
+        final AudioRingBuffer ringBuffer=new AudioRingBuffer(2,4,false);
+        ringBuffer.claim().put((byte) 1).flip();
+        ringBuffer.publish();
+        ringBuffer.close();
+
+        Assert.assertTrue("Ring is not closed", ringBuffer.isClosed());
+        Assert.assertNotNull("Published slot was lost on close", ringBuffer.poll());
+    }
+}
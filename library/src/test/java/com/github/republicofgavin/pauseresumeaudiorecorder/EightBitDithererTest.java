@@ -0,0 +1,69 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Tests {@link EightBitDitherer}
+ * @author Gavin(republicofgavin@gmail.com)
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, emulateSdk = 18)
+public class EightBitDithererTest {
+    @Test
+    public void testConvertLength(){
+        final byte[] output=new byte[4];
+        Assert.assertEquals("Length incorrect", 3, new EightBitDitherer().convert(new short[]{0,0,0,0},3,output));
+        Assert.assertEquals("Byte past the length was written", 0, output[3]);
+    }
+    @Test
+    public void testFullScaleIsClamped(){
+        final short[] samples=new short[1000];
+        for (int i=0;i<samples.length;i++){
+            samples[i]=(short)((i%2==0) ? Short.MAX_VALUE : Short.MIN_VALUE);
+        }
+        final byte[] output=new byte[samples.length];
+        new EightBitDitherer().convert(samples,samples.length,output);
+        for (int i=0;i<output.length;i++){
+            //The dither can pull full scale down by one step, but never wrap it around.
+            if (i%2==0){
+                Assert.assertTrue("Positive full scale wrapped at "+i, (output[i] & 0xFF)>=254);
+            }
+            else {
+                Assert.assertTrue("Negative full scale wrapped at "+i, (output[i] & 0xFF)<=1);
+            }
+        }
+    }
+    @Test
+    public void testErrorIsWithinOneStep(){
+        final short[] samples=new short[5000];
+        for (int i=0;i<samples.length;i++){
+            samples[i]=(short)(i*13-30000);
+        }
+        final byte[] output=new byte[samples.length];
+        new EightBitDitherer().convert(samples,samples.length,output);
+        for (int i=0;i<output.length;i++){
+            final int error=((output[i] & 0xFF)-128)*256-samples[i];
+            Assert.assertTrue("Error too large at "+i+": "+error, Math.abs(error)<512);
+        }
+    }
+    @Test
+    public void testLevelsBelowOneStepArePreserved(){
+        //Truncating would turn a level of a quarter step into silence. Dithered, it survives on average.
+        final short[] samples=new short[100000];
+        for (int i=0;i<samples.length;i++){
+            samples[i]=64;
+        }
+        final byte[] output=new byte[samples.length];
+        new EightBitDitherer().convert(samples,samples.length,output);
+        long sum=0;
+        for (final byte sample:output){
+            sum=sum+(sample & 0xFF)-128;
+        }
+        Assert.assertEquals("Average level incorrect", 0.25, (double) sum/samples.length, 0.02);
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Tests {@link LatencyHistogram} and the {@link LatencyCounters} it is taken from.
+ * @author Gavin(republicofgavin@gmail.com)
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, emulateSdk = 18)
+public class LatencyHistogramTest {
+    private static final double DELTA=0.0001;
+
+    @Test
+    public void testEmpty(){
+        final LatencyHistogram latencyHistogram=new LatencyHistogram(null);
+        Assert.assertEquals("Wrong bucket count", LatencyCounters.BUCKET_COUNT, latencyHistogram.getBucketCount());
+        Assert.assertEquals("Calls were counted", 0, latencyHistogram.getCallCount());
+        Assert.assertEquals("Mean incorrect", 0, latencyHistogram.getMeanInMicros(), DELTA);
+        Assert.assertEquals("Max incorrect", 0, latencyHistogram.getMaxInMicros(), DELTA);
+        Assert.assertEquals("Percentile incorrect", 0, latencyHistogram.getPercentileInMicros(99), DELTA);
+    }
+    @Test
+    public void testBuckets(){
+        final LatencyCounters latencyCounters=new LatencyCounters();
+        latencyCounters.record(500);
+        latencyCounters.record(1000);
+        latencyCounters.record(3999);
+        latencyCounters.record(4000);
+        latencyCounters.record(-5);
+        final LatencyHistogram latencyHistogram=new LatencyHistogram(latencyCounters);
+
+        Assert.assertEquals("Call count incorrect", 5, latencyHistogram.getCallCount());
+        Assert.assertEquals("Under a microsecond not in bucket 0", 2, latencyHistogram.getBucketCallCount(0));
+        Assert.assertEquals("1 microsecond not in bucket 1", 1, latencyHistogram.getBucketCallCount(1));
+        Assert.assertEquals("3 microseconds not in bucket 2", 1, latencyHistogram.getBucketCallCount(2));
+        Assert.assertEquals("4 microseconds not in bucket 3", 1, latencyHistogram.getBucketCallCount(3));
+        Assert.assertEquals("Upper bound incorrect", 8, latencyHistogram.getBucketUpperBoundInMicros(3));
+        Assert.assertEquals("Mean incorrect", 1.8998, latencyHistogram.getMeanInMicros(), DELTA);
+        Assert.assertEquals("Max incorrect", 4, latencyHistogram.getMaxInMicros(), DELTA);
+    }
+    @Test
+    public void testLastBucketCountsEverythingLonger(){
+        final LatencyCounters latencyCounters=new LatencyCounters();
+        latencyCounters.record(60L*1000*1000*1000);
+        final LatencyHistogram latencyHistogram=new LatencyHistogram(latencyCounters);
+
+        Assert.assertEquals("Long call not in the last bucket", 1, latencyHistogram.getBucketCallCount(LatencyCounters.BUCKET_COUNT-1));
+        Assert.assertEquals("Last bucket is not open ended", Long.MAX_VALUE, latencyHistogram.getBucketUpperBoundInMicros(LatencyCounters.BUCKET_COUNT-1));
+        Assert.assertEquals("Percentile should be capped by the max", 60000000.0, latencyHistogram.getPercentileInMicros(50), DELTA);
+    }
+    @Test
+    public void testPercentile(){
+        final LatencyCounters latencyCounters=new LatencyCounters();
+        for (int i=0;i<99;i++){
+            latencyCounters.record(1500);
+        }
+        latencyCounters.record(100000);
+        final LatencyHistogram latencyHistogram=new LatencyHistogram(latencyCounters);
+
+        Assert.assertEquals("Median incorrect", 2, latencyHistogram.getPercentileInMicros(50), DELTA);
+        Assert.assertEquals("99th percentile incorrect", 2, latencyHistogram.getPercentileInMicros(99), DELTA);
+        Assert.assertEquals("100th percentile incorrect", 100, latencyHistogram.getPercentileInMicros(100), DELTA);
+    }
+    @Test
+    public void testSnapshotDoesNotChange(){
+        final LatencyCounters latencyCounters=new LatencyCounters();
+        latencyCounters.record(1000);
+        final LatencyHistogram latencyHistogram=new LatencyHistogram(latencyCounters);
+        latencyCounters.record(1000);
+
+        Assert.assertEquals("Snapshot changed", 1, latencyHistogram.getCallCount());
+        Assert.assertEquals("Snapshot bucket changed", 1, latencyHistogram.getBucketCallCount(1));
+    }
+    @Test(expected=IllegalArgumentException.class)
+    public void testPercentileTooLarge(){new LatencyHistogram(null).getPercentileInMicros(100.5);}
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testUpperBoundNoSuchBucket(){new LatencyHistogram(null).getBucketUpperBoundInMicros(LatencyCounters.BUCKET_COUNT);}
+}
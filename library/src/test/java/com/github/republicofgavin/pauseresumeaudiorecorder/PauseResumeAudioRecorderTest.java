@@ -7,22 +7,31 @@ import android.os.Environment;
 
 import com.github.republicofgavin.pauseresumeaudiorecorder.conversion.PcmWavConverter;
 import com.github.republicofgavin.pauseresumeaudiorecorder.shadows.ShadowAudioRecord;
+import com.github.republicofgavin.pauseresumeaudiorecorder.source.AudioSource;
+import com.github.republicofgavin.pauseresumeaudiorecorder.source.MicAudioSource;
+import com.github.republicofgavin.pauseresumeaudiorecorder.source.ToneAudioSource;
 
 import junit.framework.Assert;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.Mock;
-import org.mockito.Mockito;
-import org.mockito.MockitoAnnotations;
 import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.lang.reflect.Field;
-import java.util.Timer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -39,25 +48,32 @@ public class PauseResumeAudioRecorderTest {
     private Field channelConfigField;
     private Field audioEncodingField;
     private Field audioFileField;
+    private Field directBufferRecordingEnabledField;
+    private Field ringBufferSizeField;
     private Field currentAudioStateField;
     private Field currentAudioRecordingThreadField;
 
-    private Field recordingStartTimeMillisField;
-    private Field remainingMaxTimeInMillisField;
-    private Field onTimeCompletedTimerField;
-    private Field onTimeCompletionTimerTaskField;
     private Field onTimeCompletionListenerField;
     private Field maxTimeInMillisField;
 
     private Field onFileSizeReachedListenerField;
     private Field maxFileSizeInBytesField;
+
+    private Field onSegmentCompletedListenerField;
+    private Field onRecordingCompletedListenerField;
+    private Field segmentDurationInMillisField;
+    private Field segmentSizeInBytesField;
+    private Field headerCheckpointIntervalInMillisField;
+    private Field onAudioChunkListenersField;
+    private Field outputFormatField;
+    private Field levelMeteringWindowInMillisField;
+    private Field autoPauseThresholdLevelField;
+    private Field autoPauseHangoverInMillisField;
+    private Field autoPausePreRollInMillisField;
     //thread fields
     private Field audioRecordThreadField;
-    @Mock
-    private Timer mockTimer;
     @Before
     public void setup()throws NoSuchFieldException,IllegalAccessException{
-        MockitoAnnotations.initMocks(this);
         pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
         failTest=true;
 
@@ -73,27 +89,21 @@ public class PauseResumeAudioRecorderTest {
         audioFileField=PauseResumeAudioRecorder.class.getDeclaredField("audioFile");
         audioFileField.setAccessible(true);
 
+        directBufferRecordingEnabledField=PauseResumeAudioRecorder.class.getDeclaredField("directBufferRecordingEnabled");
+        directBufferRecordingEnabledField.setAccessible(true);
+
+        ringBufferSizeField=PauseResumeAudioRecorder.class.getDeclaredField("ringBufferSize");
+        ringBufferSizeField.setAccessible(true);
+
         currentAudioStateField=PauseResumeAudioRecorder.class.getDeclaredField("currentAudioState");
         currentAudioStateField.setAccessible(true);
 
         currentAudioRecordingThreadField=PauseResumeAudioRecorder.class.getDeclaredField("currentAudioRecordingThread");
         currentAudioRecordingThreadField.setAccessible(true);
 
-        recordingStartTimeMillisField=PauseResumeAudioRecorder.class.getDeclaredField("recordingStartTimeMillis");
-        recordingStartTimeMillisField.setAccessible(true);
-
-        onTimeCompletedTimerField=PauseResumeAudioRecorder.class.getDeclaredField("onTimeCompletedTimer");
-        onTimeCompletedTimerField.setAccessible(true);
-
-        onTimeCompletionTimerTaskField=PauseResumeAudioRecorder.class.getDeclaredField("onTimeCompletionTimerTask");
-        onTimeCompletionTimerTaskField.setAccessible(true);
-
         onTimeCompletionListenerField=PauseResumeAudioRecorder.class.getDeclaredField("onTimeCompletionListener");
         onTimeCompletionListenerField.setAccessible(true);
 
-        remainingMaxTimeInMillisField=PauseResumeAudioRecorder.class.getDeclaredField("remainingMaxTimeInMillis");
-        remainingMaxTimeInMillisField.setAccessible(true);
-
         maxTimeInMillisField=PauseResumeAudioRecorder.class.getDeclaredField("maxTimeInMillis");
         maxTimeInMillisField.setAccessible(true);
 
@@ -102,6 +112,30 @@ public class PauseResumeAudioRecorderTest {
 
         maxFileSizeInBytesField=PauseResumeAudioRecorder.class.getDeclaredField("maxFileSizeInBytes");
         maxFileSizeInBytesField.setAccessible(true);
+
+        onSegmentCompletedListenerField=PauseResumeAudioRecorder.class.getDeclaredField("onSegmentCompletedListener");
+        onSegmentCompletedListenerField.setAccessible(true);
+
+        onRecordingCompletedListenerField=PauseResumeAudioRecorder.class.getDeclaredField("onRecordingCompletedListener");
+        onRecordingCompletedListenerField.setAccessible(true);
+        segmentDurationInMillisField=PauseResumeAudioRecorder.class.getDeclaredField("segmentDurationInMillis");
+        segmentDurationInMillisField.setAccessible(true);
+        segmentSizeInBytesField=PauseResumeAudioRecorder.class.getDeclaredField("segmentSizeInBytes");
+        segmentSizeInBytesField.setAccessible(true);
+        headerCheckpointIntervalInMillisField=PauseResumeAudioRecorder.class.getDeclaredField("headerCheckpointIntervalInMillis");
+        headerCheckpointIntervalInMillisField.setAccessible(true);
+        onAudioChunkListenersField=PauseResumeAudioRecorder.class.getDeclaredField("onAudioChunkListeners");
+        onAudioChunkListenersField.setAccessible(true);
+        outputFormatField=PauseResumeAudioRecorder.class.getDeclaredField("outputFormat");
+        outputFormatField.setAccessible(true);
+        levelMeteringWindowInMillisField=PauseResumeAudioRecorder.class.getDeclaredField("levelMeteringWindowInMillis");
+        levelMeteringWindowInMillisField.setAccessible(true);
+        autoPauseThresholdLevelField=PauseResumeAudioRecorder.class.getDeclaredField("autoPauseThresholdLevel");
+        autoPauseThresholdLevelField.setAccessible(true);
+        autoPauseHangoverInMillisField=PauseResumeAudioRecorder.class.getDeclaredField("autoPauseHangoverInMillis");
+        autoPauseHangoverInMillisField.setAccessible(true);
+        autoPausePreRollInMillisField=PauseResumeAudioRecorder.class.getDeclaredField("autoPausePreRollInMillis");
+        autoPausePreRollInMillisField.setAccessible(true);
     }
     @Test
     public void testConstructor()throws IllegalAccessException{
@@ -123,6 +157,10 @@ public class PauseResumeAudioRecorderTest {
         pauseResumeAudioRecorder.setAudioEncoding(AudioFormat.ENCODING_PCM_16BIT);
 
         Assert.assertEquals("audio encoding is incorrect", AudioFormat.ENCODING_PCM_16BIT, audioEncodingField.get(pauseResumeAudioRecorder));
+
+        pauseResumeAudioRecorder.setAudioEncoding(AudioFormat.ENCODING_PCM_FLOAT);
+
+        Assert.assertEquals("audio encoding is incorrect", AudioFormat.ENCODING_PCM_FLOAT, audioEncodingField.get(pauseResumeAudioRecorder));
     }
     @Test(expected=IllegalArgumentException.class)
     public void testSetAudioEncodingInvalidInput(){pauseResumeAudioRecorder.setAudioEncoding(0);}
@@ -133,6 +171,52 @@ public class PauseResumeAudioRecorderTest {
         pauseResumeAudioRecorder.setAudioEncoding(AudioFormat.ENCODING_PCM_8BIT);
     }
     @Test
+    public void testSetDirectBufferRecordingEnabled()throws IllegalAccessException{
+        Assert.assertFalse("Direct buffer recording is enabled by default", (boolean) directBufferRecordingEnabledField.get(pauseResumeAudioRecorder));
+
+        pauseResumeAudioRecorder.setDirectBufferRecordingEnabled(true);
+
+        Assert.assertTrue("Direct buffer recording was not enabled", (boolean) directBufferRecordingEnabledField.get(pauseResumeAudioRecorder));
+    }
+    @Test(expected = IllegalStateException.class)
+    public void testSetDirectBufferRecordingEnabledInvalidState()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        currentAudioStateField.set(pauseResumeAudioRecorder, new AtomicInteger(PauseResumeAudioRecorder.RECORDING_STATE));
+        pauseResumeAudioRecorder.setDirectBufferRecordingEnabled(true);
+    }
+    @Test
+    public void testSetRingBufferSize()throws IllegalAccessException{
+        Assert.assertEquals("Default ring buffer size is incorrect", 16, ringBufferSizeField.get(pauseResumeAudioRecorder));
+
+        pauseResumeAudioRecorder.setRingBufferSize(4);
+
+        Assert.assertEquals("Ring buffer size is incorrect", 4, ringBufferSizeField.get(pauseResumeAudioRecorder));
+    }
+    @Test(expected=IllegalArgumentException.class)
+    public void testSetRingBufferSizeInvalidInput(){pauseResumeAudioRecorder.setRingBufferSize(1);}
+    @Test(expected = IllegalStateException.class)
+    public void testSetRingBufferSizeInvalidState()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        currentAudioStateField.set(pauseResumeAudioRecorder, new AtomicInteger(PauseResumeAudioRecorder.RECORDING_STATE));
+        pauseResumeAudioRecorder.setRingBufferSize(4);
+    }
+    @Test
+    public void testStopRecordingDirectBuffer()throws InterruptedException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        pauseResumeAudioRecorder.setDirectBufferRecordingEnabled(true);
+        pauseResumeAudioRecorder.startRecording();
+        Thread.sleep(100);
+
+        pauseResumeAudioRecorder.stopRecording();
+        Thread.sleep(1000);//Give it time to convert the file to wav.
+
+        Assert.assertEquals("Wrong state was set", PauseResumeAudioRecorder.STOPPED_STATE, pauseResumeAudioRecorder.getCurrentState());
+        final File wavFile=new File(Environment.getExternalStorageDirectory() + "/recording.wav");
+        Assert.assertTrue("WAV file does not exist", wavFile.exists());
+        wavFile.delete();
+    }
+    @Test
     public void testSetMaxFileSizeInBytes()throws IllegalAccessException{
         PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
         pauseResumeAudioRecorder.setMaxFileSizeInBytes(2000L);
@@ -142,7 +226,14 @@ public class PauseResumeAudioRecorderTest {
     @Test(expected=IllegalArgumentException.class)
     public void testSetMaxFileSizeInBytesMin(){new PauseResumeAudioRecorder().setMaxFileSizeInBytes(999);}
     @Test(expected=IllegalArgumentException.class)
-    public void testSetMaxFileSizeInBytesMax(){new PauseResumeAudioRecorder().setMaxFileSizeInBytes(PcmWavConverter.MAX_SIZE_WAV_FILE_BYTES + 1);}
+    public void testSetMaxFileSizeInBytesMax(){new PauseResumeAudioRecorder().setMaxFileSizeInBytes(PcmWavConverter.MAX_SIZE_RF64_FILE_BYTES + 1);}
+    @Test
+    public void testSetMaxFileSizeInBytesPastWavLimit()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setMaxFileSizeInBytes(PcmWavConverter.MAX_SIZE_RF64_FILE_BYTES);
+
+        Assert.assertEquals("maxFileSize incorrect", PcmWavConverter.MAX_SIZE_RF64_FILE_BYTES, (long) maxFileSizeInBytesField.get(pauseResumeAudioRecorder));
+    }
     @Test(expected=IllegalStateException.class)
     public void testSetMaxFileSizeInBytesBadState()throws IllegalAccessException{
         PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
@@ -192,13 +283,19 @@ public class PauseResumeAudioRecorderTest {
         PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
         pauseResumeAudioRecorder.setMaxTimeInMillis(2000);
 
-        Assert.assertEquals("remainingMaxTime incorrect", 2000, (long) remainingMaxTimeInMillisField.get(pauseResumeAudioRecorder));
         Assert.assertEquals("maxTime incorrect", 2000, (long) maxTimeInMillisField.get(pauseResumeAudioRecorder));
     }
     @Test(expected=IllegalArgumentException.class)
     public void testSetMaxTimeInMillisMin(){new PauseResumeAudioRecorder().setMaxTimeInMillis(999);}
     @Test(expected=IllegalArgumentException.class)
-    public void testSetMaxTimeInMillisMax(){new PauseResumeAudioRecorder().setMaxTimeInMillis(PcmWavConverter.MAX_TIME_WAV_FILE_MILLIS+1);}
+    public void testSetMaxTimeInMillisMax(){new PauseResumeAudioRecorder().setMaxTimeInMillis(PcmWavConverter.MAX_TIME_RF64_FILE_MILLIS+1);}
+    @Test
+    public void testSetMaxTimeInMillisPastWavLimit()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setMaxTimeInMillis(PcmWavConverter.MAX_TIME_RF64_FILE_MILLIS);
+
+        Assert.assertEquals("maxTime incorrect", PcmWavConverter.MAX_TIME_RF64_FILE_MILLIS, (long) maxTimeInMillisField.get(pauseResumeAudioRecorder));
+    }
     @Test(expected=IllegalStateException.class)
     public void testSetMaxTimeInMillisBadState()throws IllegalAccessException{
         PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
@@ -206,6 +303,513 @@ public class PauseResumeAudioRecorderTest {
         pauseResumeAudioRecorder.setMaxTimeInMillis(1000);
     }
     @Test
+    public void testSetSegmentDurationInMillis()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        Assert.assertEquals("Segments should be disabled by default", 0L, (long) segmentDurationInMillisField.get(pauseResumeAudioRecorder));
+
+        pauseResumeAudioRecorder.setSegmentDurationInMillis(60000L);
+        Assert.assertEquals("segmentDuration incorrect", 60000L, (long) segmentDurationInMillisField.get(pauseResumeAudioRecorder));
+
+        pauseResumeAudioRecorder.setSegmentDurationInMillis(0L);
+        Assert.assertEquals("segmentDuration not disabled", 0L, (long) segmentDurationInMillisField.get(pauseResumeAudioRecorder));
+    }
+    @Test(expected=IllegalArgumentException.class)
+    public void testSetSegmentDurationInMillisMin(){new PauseResumeAudioRecorder().setSegmentDurationInMillis(999);}
+    @Test(expected=IllegalArgumentException.class)
+    public void testSetSegmentDurationInMillisMax(){new PauseResumeAudioRecorder().setSegmentDurationInMillis(PcmWavConverter.MAX_TIME_WAV_FILE_MILLIS+1);}
+    @Test(expected=IllegalStateException.class)
+    public void testSetSegmentDurationInMillisBadState()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        currentAudioStateField.set(pauseResumeAudioRecorder, new AtomicInteger(PauseResumeAudioRecorder.RECORDING_STATE));
+        pauseResumeAudioRecorder.setSegmentDurationInMillis(1000);
+    }
+    @Test
+    public void testSetSegmentSizeInBytes()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        Assert.assertEquals("Segments should be disabled by default", 0L, (long) segmentSizeInBytesField.get(pauseResumeAudioRecorder));
+
+        pauseResumeAudioRecorder.setSegmentSizeInBytes(2000L);
+        Assert.assertEquals("segmentSize incorrect", 2000L, (long) segmentSizeInBytesField.get(pauseResumeAudioRecorder));
+    }
+    @Test(expected=IllegalArgumentException.class)
+    public void testSetSegmentSizeInBytesMin(){new PauseResumeAudioRecorder().setSegmentSizeInBytes(999);}
+    @Test(expected=IllegalArgumentException.class)
+    public void testSetSegmentSizeInBytesMax(){new PauseResumeAudioRecorder().setSegmentSizeInBytes(PcmWavConverter.MAX_SIZE_WAV_FILE_BYTES+1);}
+    @Test(expected=IllegalStateException.class)
+    public void testSetSegmentSizeInBytesBadState()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        currentAudioStateField.set(pauseResumeAudioRecorder, new AtomicInteger(PauseResumeAudioRecorder.PAUSED_STATE));
+        pauseResumeAudioRecorder.setSegmentSizeInBytes(1000);
+    }
+    @Test
+    public void testSetOnSegmentCompletedListener()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        final OnSegmentCompletedListener onSegmentCompletedListener=new OnSegmentCompletedListener();
+        pauseResumeAudioRecorder.setOnSegmentCompletedListener(onSegmentCompletedListener);
+
+        Assert.assertEquals("Listener incorrect", onSegmentCompletedListener, onSegmentCompletedListenerField.get(pauseResumeAudioRecorder));
+
+        pauseResumeAudioRecorder.setOnSegmentCompletedListener(null);
+
+        Assert.assertEquals("Listener incorrect null case", null, onSegmentCompletedListenerField.get(pauseResumeAudioRecorder));
+    }
+    @Test(expected = IllegalStateException.class)
+    public void testSetOnSegmentCompletedListenerInvalidState()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        currentAudioStateField.set(pauseResumeAudioRecorder, new AtomicInteger(PauseResumeAudioRecorder.RECORDING_STATE));
+        pauseResumeAudioRecorder.setOnSegmentCompletedListener(null);
+    }
+    @Test
+    public void testSegmentedRecording()throws InterruptedException,IOException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        //The max file size stops the recording on its own after a few segments.
+        pauseResumeAudioRecorder.setMaxFileSizeInBytes(5000L);
+        pauseResumeAudioRecorder.setSegmentSizeInBytes(2000L);
+        final OnSegmentCompletedListener onSegmentCompletedListener=new OnSegmentCompletedListener();
+        pauseResumeAudioRecorder.setOnSegmentCompletedListener(onSegmentCompletedListener);
+        pauseResumeAudioRecorder.startRecording();
+        Thread.sleep(1000);
+
+        Assert.assertEquals("Recording did not stop", PauseResumeAudioRecorder.STOPPED_STATE, pauseResumeAudioRecorder.getCurrentState());
+        Assert.assertFalse("Unsegmented file was written", new File(Environment.getExternalStorageDirectory() + "/recording.wav").exists());
+        final int segmentDataSize=(2000-PcmWavConverter.WAV_HEADER_SIZE_BYTES)/2*2;
+        int segmentCount=0;
+        File segmentFile=new File(Environment.getExternalStorageDirectory() + "/recording_000.wav");
+        while (segmentFile.exists()){
+            final RandomAccessFile randomAccessFile=new RandomAccessFile(segmentFile,"r");
+            try {
+                final long dataSize=segmentFile.length()-PcmWavConverter.WAV_HEADER_SIZE_BYTES;
+                randomAccessFile.seek(40);
+                Assert.assertEquals("Data size is incorrect", dataSize, Integer.reverseBytes(randomAccessFile.readInt()));
+                Assert.assertTrue("Segment is too big", dataSize <= segmentDataSize);
+                Assert.assertEquals("Segment does not start on a sample", 1, randomAccessFile.readByte());
+                Assert.assertEquals("Segment does not start on a sample", 0, randomAccessFile.readByte());
+            }
+            finally {
+                randomAccessFile.close();
+                segmentFile.delete();
+            }
+            segmentCount++;
+            segmentFile=new File(Environment.getExternalStorageDirectory() + String.format("/recording_%03d.wav",segmentCount));
+        }
+        Assert.assertTrue("Recording was not split", segmentCount > 1);
+        Assert.assertEquals("Not every segment was handed to the listener", segmentCount, onSegmentCompletedListener.segmentIndexes.size());
+        for (int i=0;i<segmentCount;i++){
+            Assert.assertTrue("Segment "+i+" was not handed to the listener", onSegmentCompletedListener.segmentIndexes.contains(i));
+        }
+    }
+    @Test
+    public void testSetOnRecordingCompletedListener()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        final OnRecordingCompletedListener onRecordingCompletedListener=new OnRecordingCompletedListener(null);
+        pauseResumeAudioRecorder.setOnRecordingCompletedListener(onRecordingCompletedListener);
+
+        Assert.assertEquals("Listener incorrect", onRecordingCompletedListener, onRecordingCompletedListenerField.get(pauseResumeAudioRecorder));
+
+        pauseResumeAudioRecorder.setOnRecordingCompletedListener(null);
+
+        Assert.assertEquals("Listener incorrect null case", null, onRecordingCompletedListenerField.get(pauseResumeAudioRecorder));
+    }
+    @Test(expected = IllegalStateException.class)
+    public void testSetOnRecordingCompletedListenerInvalidState()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        currentAudioStateField.set(pauseResumeAudioRecorder, new AtomicInteger(PauseResumeAudioRecorder.RECORDING_STATE));
+        pauseResumeAudioRecorder.setOnRecordingCompletedListener(null);
+    }
+    @Test
+    public void testOnRecordingCompletedListener()throws InterruptedException,IOException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        final List<String> events=Collections.synchronizedList(new ArrayList<String>());
+        pauseResumeAudioRecorder.setOnRecordingCompletedListener(new OnRecordingCompletedListener(events));
+        pauseResumeAudioRecorder.startRecording();
+        Thread.sleep(200);
+        pauseResumeAudioRecorder.stopRecording();
+        Thread.sleep(500);
+
+        Assert.assertEquals("Listener was not called once", 1, events.size());
+        Assert.assertEquals("Wrong file handed to the listener", Environment.getExternalStorageDirectory() + "/recording.wav", events.get(0));
+        Assert.assertTrue("Recording is empty", readAndDeleteRecording().length>PcmWavConverter.WAV_HEADER_SIZE_BYTES);
+    }
+    @Test
+    public void testSetHeaderCheckpointIntervalInMillis()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        Assert.assertEquals("Checkpoints should be disabled by default", 0L, (long) headerCheckpointIntervalInMillisField.get(pauseResumeAudioRecorder));
+
+        pauseResumeAudioRecorder.setHeaderCheckpointIntervalInMillis(5000L);
+        Assert.assertEquals("headerCheckpointInterval incorrect", 5000L, (long) headerCheckpointIntervalInMillisField.get(pauseResumeAudioRecorder));
+    }
+    @Test(expected=IllegalArgumentException.class)
+    public void testSetHeaderCheckpointIntervalInMillisMin(){new PauseResumeAudioRecorder().setHeaderCheckpointIntervalInMillis(99);}
+    @Test(expected=IllegalStateException.class)
+    public void testSetHeaderCheckpointIntervalInMillisBadState()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        currentAudioStateField.set(pauseResumeAudioRecorder, new AtomicInteger(PauseResumeAudioRecorder.RECORDING_STATE));
+        pauseResumeAudioRecorder.setHeaderCheckpointIntervalInMillis(1000);
+    }
+    @Test
+    public void testHeaderCheckpoint()throws InterruptedException,IOException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        pauseResumeAudioRecorder.setHeaderCheckpointIntervalInMillis(100);
+        pauseResumeAudioRecorder.startRecording();
+        Thread.sleep(100);
+        pauseResumeAudioRecorder.pauseRecording();
+        Thread.sleep(500);
+
+        //The recording is still going on, yet its .temp file already describes all of its data.
+        final File tempFile=new File(Environment.getExternalStorageDirectory() + "/recording.temp");
+        final RandomAccessFile randomAccessFile=new RandomAccessFile(tempFile,"r");
+        try {
+            final long dataSize=tempFile.length()-PcmWavConverter.WAV_HEADER_SIZE_BYTES;
+            Assert.assertTrue("No data was written", dataSize > 0);
+            randomAccessFile.seek(4);
+            Assert.assertEquals("RIFF size was not checkpointed", dataSize + 36, Integer.reverseBytes(randomAccessFile.readInt()));
+            randomAccessFile.seek(40);
+            Assert.assertEquals("Data size was not checkpointed", dataSize, Integer.reverseBytes(randomAccessFile.readInt()));
+        }
+        finally {
+            randomAccessFile.close();
+            pauseResumeAudioRecorder.stopRecording();
+            Thread.sleep(500);
+            new File(Environment.getExternalStorageDirectory() + "/recording.wav").delete();
+        }
+    }
+    @Test
+    public void testSetOutputFormat()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        Assert.assertEquals("WAV should be the default output format", PauseResumeAudioRecorder.OUTPUT_FORMAT_WAV, (int) outputFormatField.get(pauseResumeAudioRecorder));
+
+        pauseResumeAudioRecorder.setOutputFormat(PauseResumeAudioRecorder.OUTPUT_FORMAT_FLAC);
+        Assert.assertEquals("outputFormat incorrect", PauseResumeAudioRecorder.OUTPUT_FORMAT_FLAC, (int) outputFormatField.get(pauseResumeAudioRecorder));
+
+        pauseResumeAudioRecorder.setOutputFormat(PauseResumeAudioRecorder.OUTPUT_FORMAT_WAV_PCM_24BIT);
+        Assert.assertEquals("outputFormat incorrect", PauseResumeAudioRecorder.OUTPUT_FORMAT_WAV_PCM_24BIT, (int) outputFormatField.get(pauseResumeAudioRecorder));
+    }
+    @Test(expected=IllegalArgumentException.class)
+    public void testSetOutputFormatInvalid(){new PauseResumeAudioRecorder().setOutputFormat(-1);}
+    @Test(expected=IllegalStateException.class)
+    public void testSetOutputFormatBadState()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        currentAudioStateField.set(pauseResumeAudioRecorder, new AtomicInteger(PauseResumeAudioRecorder.RECORDING_STATE));
+        pauseResumeAudioRecorder.setOutputFormat(PauseResumeAudioRecorder.OUTPUT_FORMAT_FLAC);
+    }
+    @Test
+    public void testFlacRecording()throws InterruptedException,IOException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        pauseResumeAudioRecorder.setOutputFormat(PauseResumeAudioRecorder.OUTPUT_FORMAT_FLAC);
+        pauseResumeAudioRecorder.setMaxFileSizeInBytes(20000L);
+        pauseResumeAudioRecorder.startRecording();
+        Thread.sleep(1000);
+
+        Assert.assertEquals("Recording did not stop", PauseResumeAudioRecorder.STOPPED_STATE, pauseResumeAudioRecorder.getCurrentState());
+        Assert.assertFalse("Wav file was written", new File(Environment.getExternalStorageDirectory() + "/recording.wav").exists());
+        final File flacFile=new File(Environment.getExternalStorageDirectory() + "/recording.flac");
+        final RandomAccessFile randomAccessFile=new RandomAccessFile(flacFile,"r");
+        try {
+            final byte[] streamMarker=new byte[4];
+            randomAccessFile.readFully(streamMarker);
+            Assert.assertEquals("Not a flac file", "fLaC", new String(streamMarker, "US-ASCII"));
+            //The low 36 bits of the 8 bytes after the block sizes and frame sizes hold the sample count.
+            randomAccessFile.seek(18);
+            Assert.assertTrue("Sample count was not written", (randomAccessFile.readLong() & 0xFFFFFFFFFL) > 0);
+            Assert.assertTrue("Flac file is bigger than its audio", flacFile.length() < 20000L);
+        }
+        finally {
+            randomAccessFile.close();
+            flacFile.delete();
+        }
+    }
+    @Test
+    public void testMulawRecording()throws InterruptedException,IOException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        pauseResumeAudioRecorder.setAudioEncoding(AudioFormat.ENCODING_PCM_8BIT);
+        pauseResumeAudioRecorder.setOutputFormat(PauseResumeAudioRecorder.OUTPUT_FORMAT_WAV_MULAW);
+        pauseResumeAudioRecorder.setMaxFileSizeInBytes(20000L);
+        pauseResumeAudioRecorder.startRecording();
+        Thread.sleep(1000);
+
+        Assert.assertEquals("Recording did not stop", PauseResumeAudioRecorder.STOPPED_STATE, pauseResumeAudioRecorder.getCurrentState());
+        final File wavFile=new File(Environment.getExternalStorageDirectory() + "/recording.wav");
+        final RandomAccessFile randomAccessFile=new RandomAccessFile(wavFile,"r");
+        try {
+            final byte[] header=new byte[58];
+            randomAccessFile.readFully(header);
+            final ByteBuffer headerBuffer=ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+            Assert.assertEquals("Format tag incorrect", PcmWavConverter.WAVE_FORMAT_MULAW, headerBuffer.getShort(20));
+            //Captured as 16 bit samples, whatever the audio encoding says, and written as 8 bit mu-law ones.
+            Assert.assertEquals("Bits per sample incorrect", 8, headerBuffer.getShort(34));
+            Assert.assertEquals("Fact chunk missing", "fact", new String(header, 38, 4, "US-ASCII"));
+            final int dataSize=headerBuffer.getInt(54);
+            Assert.assertTrue("No data was written", dataSize > 0);
+            Assert.assertEquals("Sample count does not match the data", dataSize, headerBuffer.getInt(46));
+            //Mono mu-law data can end on an odd byte, which is followed by a pad byte.
+            Assert.assertEquals("Data size does not match the file", wavFile.length()-58-(dataSize%2), (long) dataSize);
+        }
+        finally {
+            randomAccessFile.close();
+            wavFile.delete();
+        }
+    }
+    @Test
+    public void testSetEightBitDitheringEnabled()throws NoSuchFieldException, IllegalAccessException{
+        final Field eightBitDitheringEnabledField=PauseResumeAudioRecorder.class.getDeclaredField("eightBitDitheringEnabled");
+        eightBitDitheringEnabledField.setAccessible(true);
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        Assert.assertFalse("Dithering is enabled by default", (boolean) eightBitDitheringEnabledField.get(pauseResumeAudioRecorder));
+
+        pauseResumeAudioRecorder.setEightBitDitheringEnabled(true);
+        Assert.assertTrue("Dithering was not enabled", (boolean) eightBitDitheringEnabledField.get(pauseResumeAudioRecorder));
+    }
+    @Test(expected = IllegalStateException.class)
+    public void testSetEightBitDitheringEnabledBadState()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        currentAudioStateField.set(pauseResumeAudioRecorder, new AtomicInteger(PauseResumeAudioRecorder.RECORDING_STATE));
+        pauseResumeAudioRecorder.setEightBitDitheringEnabled(true);
+    }
+    @Test
+    public void testEightBitRecording()throws InterruptedException,IOException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        pauseResumeAudioRecorder.setAudioEncoding(AudioFormat.ENCODING_PCM_8BIT);
+        pauseResumeAudioRecorder.startRecording();
+        Thread.sleep(100);
+        pauseResumeAudioRecorder.stopRecording();
+        Thread.sleep(1000);//Give it time to convert the file to wav.
+
+        final File wavFile=new File(Environment.getExternalStorageDirectory() + "/recording.wav");
+        final byte[] wavData=new byte[(int) wavFile.length()];
+        final RandomAccessFile randomAccessFile=new RandomAccessFile(wavFile,"r");
+        try {
+            randomAccessFile.readFully(wavData);
+        }
+        finally {
+            randomAccessFile.close();
+            wavFile.delete();
+        }
+        final ByteBuffer wavBuffer=ByteBuffer.wrap(wavData).order(ByteOrder.LITTLE_ENDIAN);
+        Assert.assertEquals("Bits per sample incorrect", 8, wavBuffer.getShort(34));
+        final int dataSize=wavBuffer.getInt(40);
+        Assert.assertTrue("No data was written", dataSize > 0);
+        //Every byte the AudioRecord read is a sample of its own, not half of a 16 bit one.
+        for (int i=44;i<44+dataSize;i++){
+            Assert.assertEquals("Sample incorrect at "+i, 1, wavData[i]);
+        }
+    }
+    @Test
+    public void testDitheredEightBitRecording()throws NoSuchFieldException, IllegalAccessException,InterruptedException,IOException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        pauseResumeAudioRecorder.setAudioEncoding(AudioFormat.ENCODING_PCM_8BIT);
+        pauseResumeAudioRecorder.setEightBitDitheringEnabled(true);
+        pauseResumeAudioRecorder.startRecording();
+        Thread.sleep(100);
+
+        AudioRecord audioRecord=getAudioRecord(pauseResumeAudioRecorder);
+        Assert.assertEquals("AudioRecord does not capture 16 bit audio", AudioFormat.ENCODING_PCM_16BIT, Robolectric.shadowOf_(audioRecord).audioFormat);
+
+        pauseResumeAudioRecorder.stopRecording();
+        Thread.sleep(1000);//Give it time to convert the file to wav.
+        final File wavFile=new File(Environment.getExternalStorageDirectory() + "/recording.wav");
+        final byte[] wavData=new byte[(int) wavFile.length()];
+        final RandomAccessFile randomAccessFile=new RandomAccessFile(wavFile,"r");
+        try {
+            randomAccessFile.readFully(wavData);
+        }
+        finally {
+            randomAccessFile.close();
+            wavFile.delete();
+        }
+        final ByteBuffer wavBuffer=ByteBuffer.wrap(wavData).order(ByteOrder.LITTLE_ENDIAN);
+        Assert.assertEquals("Bits per sample incorrect", 8, wavBuffer.getShort(34));
+        final int dataSize=wavBuffer.getInt(40);
+        Assert.assertTrue("No data was written", dataSize > 0);
+        //The AudioRecord reads samples of 1, far below an 8 bit step, so they come out as silence give or take the dither.
+        for (int i=44;i<44+dataSize;i++){
+            final int sample=wavData[i] & 0xFF;
+            Assert.assertTrue("Sample incorrect at "+i, sample==127 || sample==128);
+        }
+    }
+    @Test
+    public void testFloatRecordingBeforeMarshmallow()throws NoSuchFieldException, IllegalAccessException,InterruptedException,IOException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        pauseResumeAudioRecorder.setAudioEncoding(AudioFormat.ENCODING_PCM_FLOAT);
+        pauseResumeAudioRecorder.startRecording();
+        Thread.sleep(100);
+
+        AudioRecord audioRecord=getAudioRecord(pauseResumeAudioRecorder);
+        Assert.assertEquals("Float capture is not available, so 16 bit audio should be captured", AudioFormat.ENCODING_PCM_16BIT, Robolectric.shadowOf_(audioRecord).audioFormat);
+
+        pauseResumeAudioRecorder.stopRecording();
+        Thread.sleep(1000);//Give it time to convert the file to wav.
+        final ByteBuffer wavBuffer=ByteBuffer.wrap(readAndDeleteRecording()).order(ByteOrder.LITTLE_ENDIAN);
+        Assert.assertEquals("Format tag incorrect", PcmWavConverter.WAVE_FORMAT_EXTENSIBLE, wavBuffer.getShort(20));
+        Assert.assertEquals("Bits per sample incorrect", 32, wavBuffer.getShort(34));
+        Assert.assertEquals("Sub format incorrect", PcmWavConverter.WAVE_FORMAT_IEEE_FLOAT, wavBuffer.getShort(44));
+        final int dataSize=wavBuffer.getInt(76);
+        Assert.assertTrue("No data was written", dataSize > 0);
+        for (int i=80;i<80+dataSize;i+=4){
+            Assert.assertEquals("Sample incorrect at "+i, 1f/32768f, wavBuffer.getFloat(i), 0f);
+        }
+    }
+    @Test
+    public void testTwentyFourBitRecording()throws InterruptedException,IOException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        pauseResumeAudioRecorder.setOutputFormat(PauseResumeAudioRecorder.OUTPUT_FORMAT_WAV_PCM_24BIT);
+        pauseResumeAudioRecorder.startRecording();
+        Thread.sleep(100);
+        pauseResumeAudioRecorder.stopRecording();
+        Thread.sleep(1000);//Give it time to convert the file to wav.
+
+        final byte[] wavData=readAndDeleteRecording();
+        final ByteBuffer wavBuffer=ByteBuffer.wrap(wavData).order(ByteOrder.LITTLE_ENDIAN);
+        Assert.assertEquals("Format tag incorrect", PcmWavConverter.WAVE_FORMAT_EXTENSIBLE, wavBuffer.getShort(20));
+        Assert.assertEquals("Block align incorrect", 3, wavBuffer.getShort(32));
+        Assert.assertEquals("Bits per sample incorrect", 24, wavBuffer.getShort(34));
+        Assert.assertEquals("Sub format incorrect", PcmWavConverter.WAVE_FORMAT_PCM, wavBuffer.getShort(44));
+        final int dataSize=wavBuffer.getInt(64);
+        Assert.assertTrue("No data was written", dataSize > 0);
+        Assert.assertEquals("Partial sample written", 0, dataSize%3);
+        //The 16 bit samples of 1 the AudioRecord reads become the upper 2 bytes of each 24 bit one.
+        for (int i=68;i<68+dataSize;i+=3){
+            Assert.assertEquals("Low byte incorrect at "+i, 0, wavData[i]);
+            Assert.assertEquals("Sample incorrect at "+i, 1, wavData[i+1]);
+            Assert.assertEquals("High byte incorrect at "+i, 0, wavData[i+2]);
+        }
+    }
+    @Test
+    public void testResampledRecording()throws NoSuchFieldException, IllegalAccessException,InterruptedException,IOException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        pauseResumeAudioRecorder.setSampleRate(8000);
+        pauseResumeAudioRecorder.setCaptureSampleRate(48000);
+        pauseResumeAudioRecorder.startRecording();
+        Thread.sleep(100);
+
+        AudioRecord audioRecord=getAudioRecord(pauseResumeAudioRecorder);
+        Assert.assertEquals("AudioRecord has wrong sample rate", 48000, Robolectric.shadowOf_(audioRecord).sampleRateInHz);
+
+        pauseResumeAudioRecorder.stopRecording();
+        Thread.sleep(1000);//Give it time to convert the file to wav.
+        final File wavFile=new File(Environment.getExternalStorageDirectory() + "/recording.wav");
+        final RandomAccessFile randomAccessFile=new RandomAccessFile(wavFile,"r");
+        try {
+            final byte[] header=new byte[44];
+            randomAccessFile.readFully(header);
+            final ByteBuffer headerBuffer=ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+            Assert.assertEquals("Header has the capture rate", 8000, headerBuffer.getInt(24));
+            Assert.assertEquals("Byte rate incorrect", 8000*2, headerBuffer.getInt(28));
+        }
+        finally {
+            randomAccessFile.close();
+            wavFile.delete();
+        }
+    }
+    @Test(expected=IllegalArgumentException.class)
+    public void testRecoverTempFilesNotADirectory(){PauseResumeAudioRecorder.recoverTempFiles(Environment.getExternalStorageDirectory() + "/Missing");}
+    @Test
+    public void testRecoverTempFiles()throws IOException{
+        final File directory=new File(Environment.getExternalStorageDirectory() + "/Recovery");
+        directory.mkdirs();
+        final File tempFile=new File(directory,"recording.temp");
+        final File wavFile=new File(directory,"recording.wav");
+        final File notAWavFile=new File(directory,"broken.temp");
+        try {
+            final RandomAccessFile randomAccessFile=new RandomAccessFile(tempFile,"rw");
+            try {
+                //What a recorder leaves behind when it dies: the place holder header and the data written so far.
+                randomAccessFile.getChannel().write(PcmWavConverter.createWavHeader(new PcmWavConverter.WaveHeader(44100,(short)1,(short)16), 0));
+                randomAccessFile.write(new byte[]{1, 0, 1, 0, 1});
+            }
+            finally {
+                randomAccessFile.close();
+            }
+            final RandomAccessFile notAWavRandomAccessFile=new RandomAccessFile(notAWavFile,"rw");
+            try {
+                notAWavRandomAccessFile.write(new byte[10]);
+            }
+            finally {
+                notAWavRandomAccessFile.close();
+            }
+
+            final List<String> recoveredFilePaths=PauseResumeAudioRecorder.recoverTempFiles(directory.getAbsolutePath());
+
+            Assert.assertEquals("Wrong files recovered", Collections.singletonList(wavFile.getAbsolutePath()), recoveredFilePaths);
+            Assert.assertFalse("Temp file was not renamed", tempFile.exists());
+            Assert.assertTrue("Broken file was touched", notAWavFile.exists());
+            final RandomAccessFile wavRandomAccessFile=new RandomAccessFile(wavFile,"r");
+            try {
+                Assert.assertEquals("Partial sample was not cut off", PcmWavConverter.WAV_HEADER_SIZE_BYTES + 4, wavFile.length());
+                wavRandomAccessFile.seek(40);
+                Assert.assertEquals("Data size was not repaired", 4, Integer.reverseBytes(wavRandomAccessFile.readInt()));
+            }
+            finally {
+                wavRandomAccessFile.close();
+            }
+        }
+        finally {
+            tempFile.delete();
+            wavFile.delete();
+            notAWavFile.delete();
+            directory.delete();
+        }
+    }
+    @Test
+    public void testAddAndRemoveOnAudioChunkListener()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        final OnAudioChunkListener firstListener=new OnAudioChunkListener();
+        final OnAudioChunkListener secondListener=new OnAudioChunkListener();
+        pauseResumeAudioRecorder.addOnAudioChunkListener(firstListener);
+        pauseResumeAudioRecorder.addOnAudioChunkListener(secondListener);
+
+        Assert.assertEquals("Listeners incorrect", Arrays.asList(firstListener, secondListener), onAudioChunkListenersField.get(pauseResumeAudioRecorder));
+
+        pauseResumeAudioRecorder.removeOnAudioChunkListener(firstListener);
+
+        Assert.assertEquals("Listener was not removed", Collections.singletonList(secondListener), onAudioChunkListenersField.get(pauseResumeAudioRecorder));
+    }
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddOnAudioChunkListenerNull(){new PauseResumeAudioRecorder().addOnAudioChunkListener(null);}
+    @Test(expected = IllegalStateException.class)
+    public void testAddOnAudioChunkListenerInvalidState()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        currentAudioStateField.set(pauseResumeAudioRecorder, new AtomicInteger(PauseResumeAudioRecorder.RECORDING_STATE));
+        pauseResumeAudioRecorder.addOnAudioChunkListener(new OnAudioChunkListener());
+    }
+    @Test(expected = IllegalStateException.class)
+    public void testRemoveOnAudioChunkListenerInvalidState()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        currentAudioStateField.set(pauseResumeAudioRecorder, new AtomicInteger(PauseResumeAudioRecorder.PAUSED_STATE));
+        pauseResumeAudioRecorder.removeOnAudioChunkListener(new OnAudioChunkListener());
+    }
+    @Test
+    public void testOnAudioChunkListeners()throws InterruptedException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        pauseResumeAudioRecorder.setMaxFileSizeInBytes(5000L);
+        final OnAudioChunkListener firstListener=new OnAudioChunkListener();
+        final OnAudioChunkListener secondListener=new OnAudioChunkListener();
+        pauseResumeAudioRecorder.addOnAudioChunkListener(firstListener);
+        pauseResumeAudioRecorder.addOnAudioChunkListener(secondListener);
+        pauseResumeAudioRecorder.startRecording();
+        Thread.sleep(1000);
+
+        final long dataSize=new File(Environment.getExternalStorageDirectory() + "/recording.wav").length()-PcmWavConverter.WAV_HEADER_SIZE_BYTES;
+        for (final OnAudioChunkListener listener:Arrays.asList(firstListener,secondListener)){
+            Assert.assertFalse("Listener got bad data", listener.badChunk);
+            Assert.assertTrue("Listener got no data", listener.chunkCount > 0);
+            //Every block reaches every listener, unless it was lapped.
+            Assert.assertTrue("Blocks went missing", listener.chunkCount + listener.missedChunkCount >= listener.nextSequenceNumber);
+            Assert.assertTrue("Listener got more than was recorded", listener.byteCount <= dataSize);
+        }
+        new File(Environment.getExternalStorageDirectory() + "/recording.wav").delete();
+    }
+    @Test
     public void testSetAudioFile()throws IllegalAccessException{
         pauseResumeAudioRecorder.setAudioFile("/recording.wav");
 
@@ -242,9 +846,17 @@ public class PauseResumeAudioRecorderTest {
 
         pauseResumeAudioRecorder.setSampleRate(44100);
         Assert.assertEquals("Sample rate is incorrect 44100", 44100, sampleRateInHertzField.get(pauseResumeAudioRecorder));
+
+        pauseResumeAudioRecorder.setSampleRate(8000);
+        Assert.assertEquals("Sample rate is incorrect 8000", 8000, sampleRateInHertzField.get(pauseResumeAudioRecorder));
+
+        pauseResumeAudioRecorder.setSampleRate(48000);
+        Assert.assertEquals("Sample rate is incorrect 48000", 48000, sampleRateInHertzField.get(pauseResumeAudioRecorder));
     }
     @Test(expected = IllegalArgumentException.class)
     public void testSetSampleRateBadInput(){pauseResumeAudioRecorder.setSampleRate(0);}
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetSampleRateTooHigh(){pauseResumeAudioRecorder.setSampleRate(192001);}
     @Test(expected = IllegalStateException.class)
     public void testSetSampleRateBadState()throws IllegalAccessException{
         PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
@@ -252,6 +864,205 @@ public class PauseResumeAudioRecorderTest {
         pauseResumeAudioRecorder.setSampleRate(44100);
     }
     @Test
+    public void testSetCaptureSampleRate()throws NoSuchFieldException, IllegalAccessException{
+        final Field captureSampleRateInHertzField=PauseResumeAudioRecorder.class.getDeclaredField("captureSampleRateInHertz");
+        captureSampleRateInHertzField.setAccessible(true);
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        Assert.assertEquals("Default capture sample rate is incorrect", 0, captureSampleRateInHertzField.get(pauseResumeAudioRecorder));
+
+        pauseResumeAudioRecorder.setCaptureSampleRate(48000);
+        Assert.assertEquals("Capture sample rate is incorrect 48000", 48000, captureSampleRateInHertzField.get(pauseResumeAudioRecorder));
+
+        pauseResumeAudioRecorder.setCaptureSampleRate(0);
+        Assert.assertEquals("Capture sample rate is incorrect 0", 0, captureSampleRateInHertzField.get(pauseResumeAudioRecorder));
+    }
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetCaptureSampleRateBadInput(){pauseResumeAudioRecorder.setCaptureSampleRate(3999);}
+    @Test(expected = IllegalStateException.class)
+    public void testSetCaptureSampleRateBadState()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        currentAudioStateField.set(pauseResumeAudioRecorder, new AtomicInteger(PauseResumeAudioRecorder.RECORDING_STATE));
+        pauseResumeAudioRecorder.setCaptureSampleRate(48000);
+    }
+    @Test
+    public void testSetAudioSource()throws NoSuchFieldException, IllegalAccessException{
+        final Field audioSourceField=PauseResumeAudioRecorder.class.getDeclaredField("audioSource");
+        audioSourceField.setAccessible(true);
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        Assert.assertNull("Default audio source is not null", audioSourceField.get(pauseResumeAudioRecorder));
+
+        final ToneAudioSource toneAudioSource=new ToneAudioSource(1000,0.5f,false);
+        pauseResumeAudioRecorder.setAudioSource(toneAudioSource);
+        Assert.assertSame("Audio source is incorrect", toneAudioSource, audioSourceField.get(pauseResumeAudioRecorder));
+
+        pauseResumeAudioRecorder.setAudioSource(null);
+        Assert.assertNull("Audio source is not null", audioSourceField.get(pauseResumeAudioRecorder));
+    }
+    @Test(expected = IllegalStateException.class)
+    public void testSetAudioSourceBadState()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        currentAudioStateField.set(pauseResumeAudioRecorder, new AtomicInteger(PauseResumeAudioRecorder.RECORDING_STATE));
+        pauseResumeAudioRecorder.setAudioSource(new ToneAudioSource(1000,0.5f,false));
+    }
+    @Test
+    public void testSetRecorderIoPool()throws NoSuchFieldException, IllegalAccessException{
+        final Field recorderIoPoolField=PauseResumeAudioRecorder.class.getDeclaredField("recorderIoPool");
+        recorderIoPoolField.setAccessible(true);
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        Assert.assertNull("Default io pool is not null", recorderIoPoolField.get(pauseResumeAudioRecorder));
+
+        final RecorderIoPool recorderIoPool=new RecorderIoPool(1);
+        pauseResumeAudioRecorder.setRecorderIoPool(recorderIoPool);
+        Assert.assertSame("Io pool is incorrect", recorderIoPool, recorderIoPoolField.get(pauseResumeAudioRecorder));
+
+        pauseResumeAudioRecorder.setRecorderIoPool(null);
+        Assert.assertNull("Io pool is not null", recorderIoPoolField.get(pauseResumeAudioRecorder));
+    }
+    @Test
+    public void testSetListenerExecutor()throws NoSuchFieldException, IllegalAccessException{
+        final Field listenerExecutorField=PauseResumeAudioRecorder.class.getDeclaredField("listenerExecutor");
+        listenerExecutorField.setAccessible(true);
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        Assert.assertNull("Default listener executor is not null", listenerExecutorField.get(pauseResumeAudioRecorder));
+
+        final Executor listenerExecutor=new RecordingExecutor();
+        pauseResumeAudioRecorder.setListenerExecutor(listenerExecutor);
+        Assert.assertSame("Listener executor is incorrect", listenerExecutor, listenerExecutorField.get(pauseResumeAudioRecorder));
+
+        pauseResumeAudioRecorder.setListenerExecutor(null);
+        Assert.assertNull("Listener executor is not null", listenerExecutorField.get(pauseResumeAudioRecorder));
+    }
+    @Test(expected = IllegalStateException.class)
+    public void testSetListenerExecutorBadState()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        currentAudioStateField.set(pauseResumeAudioRecorder, new AtomicInteger(PauseResumeAudioRecorder.RECORDING_STATE));
+        pauseResumeAudioRecorder.setListenerExecutor(null);
+    }
+    @Test
+    public void testListenersAreCalledOnTheListenerExecutor()throws InterruptedException,IOException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        pauseResumeAudioRecorder.setMaxTimeInMillis(1000);
+        pauseResumeAudioRecorder.setAudioSource(new ToneAudioSource(1000,0.5f,false));
+        final RecordingExecutor recordingExecutor=new RecordingExecutor();
+        pauseResumeAudioRecorder.setListenerExecutor(recordingExecutor);
+        final List<String> events=Collections.synchronizedList(new ArrayList<String>());
+        pauseResumeAudioRecorder.setOnTimeCompletionListener(new PauseResumeAudioRecorder.OnTimeCompletionListener() {
+            @Override
+            public void onTimeCompleted(PauseResumeAudioRecorder pauseResumeAudioRecorder) {
+                events.add("time");
+            }
+        });
+        pauseResumeAudioRecorder.setOnRecordingCompletedListener(new OnRecordingCompletedListener(events));
+        pauseResumeAudioRecorder.startRecording();
+        Thread.sleep(500);
+
+        Assert.assertTrue("Listeners were called before they were run", events.isEmpty());
+        Assert.assertEquals("Listeners were not handed to the executor", 2, recordingExecutor.runnables.size());
+        //A slow listener does not hold up the file.
+        Assert.assertTrue("Recording is empty", readAndDeleteRecording().length>PcmWavConverter.WAV_HEADER_SIZE_BYTES);
+
+        for (final Runnable runnable:recordingExecutor.runnables){
+            runnable.run();
+        }
+        Assert.assertEquals("Listeners were called out of order", Arrays.asList("time", Environment.getExternalStorageDirectory() + "/recording.wav"), events);
+    }
+    @Test
+    public void testRejectedListenersAreDropped()throws InterruptedException,IOException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        pauseResumeAudioRecorder.setMaxTimeInMillis(1000);
+        pauseResumeAudioRecorder.setAudioSource(new ToneAudioSource(1000,0.5f,false));
+        pauseResumeAudioRecorder.setOnTimeCompletionListener(new OnMaxTimeCompletionListener());
+        pauseResumeAudioRecorder.setListenerExecutor(new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                throw new RejectedExecutionException("Shut down");
+            }
+        });
+        pauseResumeAudioRecorder.startRecording();
+        Thread.sleep(500);
+
+        Assert.assertEquals("Recording did not stop", PauseResumeAudioRecorder.STOPPED_STATE, pauseResumeAudioRecorder.getCurrentState());
+        Assert.assertTrue("Listener was called", failTest);
+        Assert.assertTrue("Recording is empty", readAndDeleteRecording().length>PcmWavConverter.WAV_HEADER_SIZE_BYTES);
+    }
+    @Test(expected = IllegalStateException.class)
+    public void testSetRecorderIoPoolBadState()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        currentAudioStateField.set(pauseResumeAudioRecorder, new AtomicInteger(PauseResumeAudioRecorder.RECORDING_STATE));
+        pauseResumeAudioRecorder.setRecorderIoPool(new RecorderIoPool(1));
+    }
+    @Test
+    public void testStartRecordingShutDownRecorderIoPool(){
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        final RecorderIoPool recorderIoPool=new RecorderIoPool(1);
+        recorderIoPool.shutdown();
+        pauseResumeAudioRecorder.setRecorderIoPool(recorderIoPool);
+        try {
+            pauseResumeAudioRecorder.startRecording();
+            Assert.fail("Recording started with a shut down pool");
+        }
+        catch (IllegalStateException ex){
+            Assert.assertEquals("Recorder left the prepared state", PauseResumeAudioRecorder.PREPARED_STATE, pauseResumeAudioRecorder.getCurrentState());
+        }
+    }
+    @Test
+    public void testPooledRecordings()throws InterruptedException{
+        final RecorderIoPool recorderIoPool=new RecorderIoPool(1);
+        final PauseResumeAudioRecorder[] pauseResumeAudioRecorders=new PauseResumeAudioRecorder[3];
+        for (int i=0;i<pauseResumeAudioRecorders.length;i++){
+            pauseResumeAudioRecorders[i]=new PauseResumeAudioRecorder();
+            pauseResumeAudioRecorders[i].setAudioFile(Environment.getExternalStorageDirectory() + "/recording"+i+".wav");
+            pauseResumeAudioRecorders[i].setSampleRate(8000);
+            pauseResumeAudioRecorders[i].setAudioSource(new ToneAudioSource(1000,0.5f,true));
+            pauseResumeAudioRecorders[i].setRecorderIoPool(recorderIoPool);
+            pauseResumeAudioRecorders[i].startRecording();
+        }
+        Thread.sleep(100);
+        pauseResumeAudioRecorders[0].pauseRecording();
+        Thread.sleep(100);
+        pauseResumeAudioRecorders[0].resumeRecording();
+        Thread.sleep(100);
+        for (final PauseResumeAudioRecorder pauseResumeAudioRecorder:pauseResumeAudioRecorders){
+            pauseResumeAudioRecorder.stopRecording();
+        }
+        Thread.sleep(1000);//Give it time to convert the files to wav.
+
+        for (int i=0;i<pauseResumeAudioRecorders.length;i++){
+            final File wavFile=new File(Environment.getExternalStorageDirectory() + "/recording"+i+".wav");
+            Assert.assertTrue("Wav file was not written on the pool: "+i, wavFile.exists());
+            Assert.assertEquals("Data written does not match the file: "+i, wavFile.length()-44, pauseResumeAudioRecorders[i].getRecorderStats().getBytesWritten());
+            Assert.assertEquals("Recording ended in an error: "+i, PauseResumeAudioRecorder.STOPPED_STATE, pauseResumeAudioRecorders[i].getCurrentState());
+            wavFile.delete();
+        }
+        recorderIoPool.shutdown();
+    }
+    @Test
+    public void testToneRecording()throws InterruptedException,IOException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        pauseResumeAudioRecorder.setSampleRate(8000);
+        pauseResumeAudioRecorder.setAudioSource(new ToneAudioSource(1000,0.5f,false));
+        pauseResumeAudioRecorder.startRecording();
+        Thread.sleep(100);
+        pauseResumeAudioRecorder.pauseRecording();
+        pauseResumeAudioRecorder.resumeRecording();
+        Thread.sleep(100);
+        pauseResumeAudioRecorder.stopRecording();
+        Thread.sleep(1000);//Give it time to convert the file to wav.
+
+        final ByteBuffer wavBuffer=ByteBuffer.wrap(readAndDeleteRecording()).order(ByteOrder.LITTLE_ENDIAN);
+        final int dataSize=wavBuffer.getInt(40);
+        //The tone is delivered as fast as it is read, so far more than the 200ms that went by is recorded.
+        Assert.assertTrue("Tone was not recorded faster than real time: "+dataSize, dataSize > 8000*2);
+        //8 samples per cycle: 0, 0.35, 0.5, 0.35, 0, ... at half scale.
+        for (int i=44;i<44+16;i+=2){
+            Assert.assertTrue("Sample incorrect at "+i, Math.abs(wavBuffer.getShort(i)-Math.round(16384*Math.sin(Math.PI*(i-44)/8)))<=1);
+        }
+    }
+    @Test
     public void testSetChannel()throws IllegalAccessException{
         PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
 
@@ -299,16 +1110,11 @@ public class PauseResumeAudioRecorderTest {
 
         Assert.assertNotNull("Recording thread is not created", currentAudioRecordingThreadField.get(pauseResumeAudioRecorder));
         Assert.assertEquals("Correct state not set", PauseResumeAudioRecorder.RECORDING_STATE, pauseResumeAudioRecorder.getCurrentState());
-        Assert.assertNotNull("Timer is null", onTimeCompletedTimerField.get(pauseResumeAudioRecorder));
-        Assert.assertNotNull("TimerTask is null",onTimeCompletionTimerTaskField.get(pauseResumeAudioRecorder));
-        Assert.assertTrue("start time not set",((long)recordingStartTimeMillisField.get(pauseResumeAudioRecorder))>=0);
 
         Thread.sleep(100);//Give it some time to create the file.
 
         //Thread's fields
-        audioRecordThreadField=currentAudioRecordingThreadField.get(pauseResumeAudioRecorder).getClass().getDeclaredField("currentAudioRecording");
-        audioRecordThreadField.setAccessible(true);
-        AudioRecord audioRecord=(AudioRecord)audioRecordThreadField.get(currentAudioRecordingThreadField.get(pauseResumeAudioRecorder));
+        AudioRecord audioRecord=getAudioRecord(pauseResumeAudioRecorder);
         ShadowAudioRecord shadowAudioRecord=Robolectric.shadowOf_(audioRecord);
 
         Assert.assertTrue("AudioRecord is not recording", shadowAudioRecord.isRecording);
@@ -322,6 +1128,176 @@ public class PauseResumeAudioRecorderTest {
         pcmFile.delete();
     }
     @Test
+    public void testOverrunIsReportedOnceDespiteClockDrift()throws InterruptedException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        pauseResumeAudioRecorder.setSampleRate(8000);
+        //A clock 500 ppm slow that loses 300ms of audio half a second in.
+        pauseResumeAudioRecorder.setAudioSource(new DriftingAudioSource(500,500,300));
+        pauseResumeAudioRecorder.startRecording();
+        Thread.sleep(4000);
+        pauseResumeAudioRecorder.stopRecording();
+        Thread.sleep(300);
+
+        final RecorderStats recorderStats=pauseResumeAudioRecorder.getRecorderStats();
+        Assert.assertEquals("The gap was not reported exactly once", 1, recorderStats.getOverrunCount());
+        //2400 frames were lost, less what the tolerance of a read and the source's buffer hides.
+        Assert.assertTrue("Dropped frames incorrect: "+recorderStats.getDroppedFrameCount(), recorderStats.getDroppedFrameCount()>1500 && recorderStats.getDroppedFrameCount()<=2400);
+        new File(Environment.getExternalStorageDirectory() + "/recording.wav").delete();
+    }
+    @Test
+    public void testGetRecorderStatsBeforeRecording(){
+        final RecorderStats recorderStats=new PauseResumeAudioRecorder().getRecorderStats();
+
+        Assert.assertEquals("Reads were counted", 0, recorderStats.getReadCount());
+        Assert.assertEquals("Frames were counted", 0, recorderStats.getFramesRead());
+        Assert.assertEquals("Errors were counted", 0, recorderStats.getReadErrorCount());
+        Assert.assertEquals("Overruns were counted", 0, recorderStats.getOverrunCount());
+        Assert.assertEquals("Bytes were counted", 0, recorderStats.getBytesWritten());
+        Assert.assertEquals("Read latencies were counted", 0, recorderStats.getReadLatencyHistogram().getCallCount());
+        Assert.assertEquals("Recording was finalized", -1, recorderStats.getFinalizationTimeInMillis());
+    }
+    @Test
+    public void testGetRecorderStats()throws InterruptedException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        pauseResumeAudioRecorder.setChannel(AudioFormat.CHANNEL_IN_STEREO);
+        pauseResumeAudioRecorder.startRecording();
+        Thread.sleep(100);
+        pauseResumeAudioRecorder.stopRecording();
+        Thread.sleep(1000);
+
+        final RecorderStats recorderStats=pauseResumeAudioRecorder.getRecorderStats();
+        Assert.assertTrue("Reads were not counted", recorderStats.getReadCount() > 0);
+        //The shadow fills every read completely, 100 samples are 50 stereo frames.
+        Assert.assertEquals("Frames were not counted", recorderStats.getReadCount() * 50, recorderStats.getFramesRead());
+        Assert.assertEquals("Short reads were counted", 0, recorderStats.getShortReadCount());
+        Assert.assertEquals("Errors were counted", 0, recorderStats.getReadErrorCount());
+        Assert.assertEquals("Read latencies were not counted", recorderStats.getReadCount(), recorderStats.getReadLatencyHistogram().getCallCount());
+        //Every read is written, 50 stereo 16 bit frames at a time.
+        Assert.assertEquals("Frames written incorrect", recorderStats.getFramesRead(), recorderStats.getFramesWritten());
+        Assert.assertEquals("Bytes written incorrect", recorderStats.getFramesWritten() * 4, recorderStats.getBytesWritten());
+        Assert.assertEquals("Write latencies were not counted", recorderStats.getReadCount(), recorderStats.getWriteLatencyHistogram().getCallCount());
+        Assert.assertTrue("Ring buffer depth was not counted", recorderStats.getMaxRingBufferDepth() > 0);
+        Assert.assertTrue("Recording was not finalized", recorderStats.getFinalizationTimeInMillis() >= 0);
+        Assert.assertEquals("Pauses were counted", 0, recorderStats.getPauseResumeCount());
+        new File(Environment.getExternalStorageDirectory() + "/recording.wav").delete();
+    }
+    @Test
+    public void testGetRecorderStatsPauseResume()throws InterruptedException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        pauseResumeAudioRecorder.startRecording();
+        Thread.sleep(100);
+        pauseResumeAudioRecorder.pauseRecording();
+        Thread.sleep(200);
+        pauseResumeAudioRecorder.resumeRecording();
+        Thread.sleep(100);
+        pauseResumeAudioRecorder.stopRecording();
+        Thread.sleep(1000);
+
+        final RecorderStats recorderStats=pauseResumeAudioRecorder.getRecorderStats();
+        Assert.assertEquals("Pause and resume not counted", 1, recorderStats.getPauseResumeCount());
+        Assert.assertTrue("Paused time not counted", recorderStats.getPausedTimeInMillis() >= 100);
+        new File(Environment.getExternalStorageDirectory() + "/recording.wav").delete();
+    }
+    @Test
+    public void testSetLevelMeteringWindowInMillis()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        Assert.assertEquals("Metering should be disabled by default", 0L, (long) levelMeteringWindowInMillisField.get(pauseResumeAudioRecorder));
+
+        pauseResumeAudioRecorder.setLevelMeteringWindowInMillis(50L);
+        Assert.assertEquals("levelMeteringWindow incorrect", 50L, (long) levelMeteringWindowInMillisField.get(pauseResumeAudioRecorder));
+    }
+    @Test(expected=IllegalArgumentException.class)
+    public void testSetLevelMeteringWindowInMillisNegative(){new PauseResumeAudioRecorder().setLevelMeteringWindowInMillis(-1);}
+    @Test(expected=IllegalStateException.class)
+    public void testSetLevelMeteringWindowInMillisBadState()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        currentAudioStateField.set(pauseResumeAudioRecorder, new AtomicInteger(PauseResumeAudioRecorder.RECORDING_STATE));
+        pauseResumeAudioRecorder.setLevelMeteringWindowInMillis(50);
+    }
+    @Test
+    public void testGetLevelsNotMetered()throws InterruptedException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        Assert.assertEquals("Peak level before recording", 0f, pauseResumeAudioRecorder.getPeakLevel(0));
+
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        pauseResumeAudioRecorder.startRecording();
+        Thread.sleep(100);
+        pauseResumeAudioRecorder.stopRecording();
+        Thread.sleep(500);
+
+        Assert.assertEquals("Peak level of a recording that is not metered", 0f, pauseResumeAudioRecorder.getPeakLevel(0));
+        Assert.assertEquals("RMS level of a recording that is not metered", 0f, pauseResumeAudioRecorder.getRmsLevel(0));
+        new File(Environment.getExternalStorageDirectory() + "/recording.wav").delete();
+    }
+    @Test
+    public void testGetLevels()throws InterruptedException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        pauseResumeAudioRecorder.setLevelMeteringWindowInMillis(1);
+        pauseResumeAudioRecorder.startRecording();
+        Thread.sleep(100);
+
+        //The shadow fills every sample with 1.
+        Assert.assertEquals("Peak level incorrect", 1/32768f, pauseResumeAudioRecorder.getPeakLevel(0));
+        Assert.assertEquals("RMS level incorrect", 1/32768f, pauseResumeAudioRecorder.getRmsLevel(0));
+        Assert.assertEquals("Mono recording has a right channel", 0f, pauseResumeAudioRecorder.getPeakLevel(1));
+        pauseResumeAudioRecorder.stopRecording();
+        Thread.sleep(500);
+        new File(Environment.getExternalStorageDirectory() + "/recording.wav").delete();
+    }
+    @Test
+    public void testSetAutoPause()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        Assert.assertEquals("Auto pause should be disabled by default", 0f, (float) autoPauseThresholdLevelField.get(pauseResumeAudioRecorder));
+        Assert.assertEquals("Hangover default incorrect", 500L, (long) autoPauseHangoverInMillisField.get(pauseResumeAudioRecorder));
+        Assert.assertEquals("Pre-roll default incorrect", 250L, (long) autoPausePreRollInMillisField.get(pauseResumeAudioRecorder));
+
+        pauseResumeAudioRecorder.setAutoPauseThresholdLevel(0.02f);
+        pauseResumeAudioRecorder.setAutoPauseHangoverInMillis(0);
+        pauseResumeAudioRecorder.setAutoPausePreRollInMillis(100);
+        Assert.assertEquals("autoPauseThresholdLevel incorrect", 0.02f, (float) autoPauseThresholdLevelField.get(pauseResumeAudioRecorder));
+        Assert.assertEquals("autoPauseHangover incorrect", 0L, (long) autoPauseHangoverInMillisField.get(pauseResumeAudioRecorder));
+        Assert.assertEquals("autoPausePreRoll incorrect", 100L, (long) autoPausePreRollInMillisField.get(pauseResumeAudioRecorder));
+    }
+    @Test(expected=IllegalArgumentException.class)
+    public void testSetAutoPauseThresholdLevelTooBig(){new PauseResumeAudioRecorder().setAutoPauseThresholdLevel(1.5f);}
+    @Test(expected=IllegalArgumentException.class)
+    public void testSetAutoPauseThresholdLevelNaN(){new PauseResumeAudioRecorder().setAutoPauseThresholdLevel(Float.NaN);}
+    @Test(expected=IllegalArgumentException.class)
+    public void testSetAutoPauseHangoverInMillisNegative(){new PauseResumeAudioRecorder().setAutoPauseHangoverInMillis(-1);}
+    @Test(expected=IllegalArgumentException.class)
+    public void testSetAutoPausePreRollInMillisNegative(){new PauseResumeAudioRecorder().setAutoPausePreRollInMillis(-1);}
+    @Test(expected=IllegalStateException.class)
+    public void testSetAutoPauseThresholdLevelBadState()throws IllegalAccessException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        currentAudioStateField.set(pauseResumeAudioRecorder, new AtomicInteger(PauseResumeAudioRecorder.RECORDING_STATE));
+        pauseResumeAudioRecorder.setAutoPauseThresholdLevel(0.01f);
+    }
+    @Test
+    public void testAutoPauseHaltsMaxTime()throws InterruptedException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        //The shadow only ever reads samples of 1, which is silence.
+        pauseResumeAudioRecorder.setAutoPauseThresholdLevel(0.01f);
+        pauseResumeAudioRecorder.setAutoPauseHangoverInMillis(0);
+        pauseResumeAudioRecorder.setMaxTimeInMillis(1000);
+        pauseResumeAudioRecorder.startRecording();
+        Thread.sleep(1500);
+
+        Assert.assertTrue("Silence did not auto pause", pauseResumeAudioRecorder.isAutoPaused());
+        Assert.assertEquals("Max time counted silence", PauseResumeAudioRecorder.RECORDING_STATE, pauseResumeAudioRecorder.getCurrentState());
+        pauseResumeAudioRecorder.stopRecording();
+        Thread.sleep(500);
+
+        Assert.assertFalse("Stopped recorder is auto paused", pauseResumeAudioRecorder.isAutoPaused());
+        final File wavFile=new File(Environment.getExternalStorageDirectory() + "/recording.wav");
+        Assert.assertEquals("Silence was written", PcmWavConverter.WAV_HEADER_SIZE_BYTES, wavFile.length());
+        wavFile.delete();
+    }
+    @Test
     public void testStartRecordingWhileRecording()throws IllegalAccessException{
         PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
         pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
@@ -348,15 +1324,11 @@ public class PauseResumeAudioRecorderTest {
         pauseResumeAudioRecorder.setSampleRate(44100);
         pauseResumeAudioRecorder.setAudioEncoding(AudioFormat.ENCODING_PCM_8BIT);
         pauseResumeAudioRecorder.startRecording();
-        onTimeCompletedTimerField.set(pauseResumeAudioRecorder, mockTimer);
 
         Thread.sleep(100);
         pauseResumeAudioRecorder.pauseRecording();
         Thread.sleep(200);
 
-        long remainingTimeMillis=((long) remainingMaxTimeInMillisField.get(pauseResumeAudioRecorder));
-        Assert.assertTrue("wrong time:"+remainingTimeMillis,(remainingTimeMillis<=(PcmWavConverter.MAX_TIME_WAV_FILE_MILLIS-100)) &&remainingTimeMillis>(PcmWavConverter.MAX_TIME_WAV_FILE_MILLIS-5000));
-        Mockito.verify(mockTimer,Mockito.times(1)).cancel();
         Assert.assertEquals("Correct state not set", PauseResumeAudioRecorder.PAUSED_STATE, pauseResumeAudioRecorder.getCurrentState());
         final File pcmFile=new File(Environment.getExternalStorageDirectory() + "/recording.pcm");
         pcmFile.delete();
@@ -366,6 +1338,30 @@ public class PauseResumeAudioRecorderTest {
         Assert.assertFalse("Thread is not paused", pcmFile.exists());
     }
     @Test
+    public void testPauseRecordingStopsAudioRecord()throws InterruptedException,IllegalAccessException,NoSuchFieldException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        pauseResumeAudioRecorder.startRecording();
+        Thread.sleep(100);
+        ShadowAudioRecord shadowAudioRecord=Robolectric.shadowOf_(getAudioRecord(pauseResumeAudioRecorder));
+
+        pauseResumeAudioRecorder.pauseRecording();
+        Thread.sleep(100);
+
+        Assert.assertFalse("AudioRecord is still recording while paused", shadowAudioRecord.isRecording);
+        final long readCount=pauseResumeAudioRecorder.getRecorderStats().getReadCount();
+        Thread.sleep(100);
+        Assert.assertEquals("Thread kept reading while paused", readCount, pauseResumeAudioRecorder.getRecorderStats().getReadCount());
+
+        pauseResumeAudioRecorder.resumeRecording();
+        Thread.sleep(100);
+
+        Assert.assertTrue("AudioRecord was not restarted on resume", shadowAudioRecord.isRecording);
+        pauseResumeAudioRecorder.stopRecording();
+        Thread.sleep(1000);
+        new File(Environment.getExternalStorageDirectory() + "/recording.wav").delete();
+    }
+    @Test
     public void testPauseRecordingWhilePaused()throws IllegalAccessException{
         //make sure calling pause while paused does not result in a crash.
         PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
@@ -391,9 +1387,7 @@ public class PauseResumeAudioRecorderTest {
         pauseResumeAudioRecorder.setAudioEncoding(AudioFormat.ENCODING_PCM_8BIT);
         pauseResumeAudioRecorder.startRecording();
         Thread.sleep(100);
-        audioRecordThreadField=currentAudioRecordingThreadField.get(pauseResumeAudioRecorder).getClass().getDeclaredField("currentAudioRecording");
-        audioRecordThreadField.setAccessible(true);
-        AudioRecord audioRecord=(AudioRecord)audioRecordThreadField.get(currentAudioRecordingThreadField.get(pauseResumeAudioRecorder));
+        AudioRecord audioRecord=getAudioRecord(pauseResumeAudioRecorder);
         ShadowAudioRecord shadowAudioRecord=Robolectric.shadowOf_(audioRecord);
 
         pauseResumeAudioRecorder.stopRecording();
@@ -409,6 +1403,61 @@ public class PauseResumeAudioRecorderTest {
         new File(Environment.getExternalStorageDirectory() + "/recording.wav").delete();
     }
     @Test
+    public void testStopRecordingFinalizesHeader()throws InterruptedException,IOException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        pauseResumeAudioRecorder.startRecording();
+        Thread.sleep(100);
+        pauseResumeAudioRecorder.stopRecording();
+        Thread.sleep(1000);
+
+        final File wavFile=new File(Environment.getExternalStorageDirectory() + "/recording.wav");
+        final RandomAccessFile randomAccessFile=new RandomAccessFile(wavFile,"r");
+        try {
+            final long dataSize=wavFile.length()-PcmWavConverter.WAV_HEADER_SIZE_BYTES;
+            Assert.assertTrue("No data was written", dataSize > 0);
+            randomAccessFile.seek(4);
+            Assert.assertEquals("RIFF size is incorrect", dataSize + 36, Integer.reverseBytes(randomAccessFile.readInt()));
+            randomAccessFile.seek(40);
+            Assert.assertEquals("Data size is incorrect", dataSize, Integer.reverseBytes(randomAccessFile.readInt()));
+            //The shadow fills every sample with 1, which has to come right after the header in little endian.
+            Assert.assertEquals("Data does not start right after the header", 1, randomAccessFile.readByte());
+        }
+        finally {
+            randomAccessFile.close();
+            wavFile.delete();
+        }
+    }
+    @Test
+    public void testStopRecordingReservesRf64Header()throws InterruptedException,IOException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        pauseResumeAudioRecorder.setMaxFileSizeInBytes(PcmWavConverter.MAX_SIZE_WAV_FILE_BYTES+1);
+        pauseResumeAudioRecorder.startRecording();
+        Thread.sleep(100);
+        pauseResumeAudioRecorder.stopRecording();
+        Thread.sleep(1000);
+
+        final File wavFile=new File(Environment.getExternalStorageDirectory() + "/recording.wav");
+        final RandomAccessFile randomAccessFile=new RandomAccessFile(wavFile,"r");
+        try {
+            final long dataSize=wavFile.length()-PcmWavConverter.RF64_HEADER_SIZE_BYTES;
+            Assert.assertTrue("No data was written", dataSize > 0);
+            //Small enough to stay a plain RIFF file, with the ds64 room held by a JUNK chunk.
+            Assert.assertEquals("Not a RIFF file", 0x52494646, randomAccessFile.readInt());
+            Assert.assertEquals("RIFF size is incorrect", dataSize + PcmWavConverter.RF64_HEADER_SIZE_BYTES - 8, Integer.reverseBytes(randomAccessFile.readInt()));
+            randomAccessFile.seek(12);
+            Assert.assertEquals("No JUNK chunk", 0x4A554E4B, randomAccessFile.readInt());
+            randomAccessFile.seek(PcmWavConverter.RF64_HEADER_SIZE_BYTES - 4);
+            Assert.assertEquals("Data size is incorrect", dataSize, Integer.reverseBytes(randomAccessFile.readInt()));
+            Assert.assertEquals("Data does not start right after the header", 1, randomAccessFile.readByte());
+        }
+        finally {
+            randomAccessFile.close();
+            wavFile.delete();
+        }
+    }
+    @Test
     public void testStopRecordingInvalidState()throws IllegalAccessException{
         PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
         currentAudioStateField.set(pauseResumeAudioRecorder, new AtomicInteger(PauseResumeAudioRecorder.INITIALIZED_STATE));
@@ -464,12 +1513,183 @@ public class PauseResumeAudioRecorderTest {
         Assert.assertFalse("completion listener was not called", failTest);
         new File(Environment.getExternalStorageDirectory() + "/recording.wav").delete();
     }
+    @Test
+    public void testMaxTimeIsSampleAccurate()throws InterruptedException,IOException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        pauseResumeAudioRecorder.setSampleRate(8000);
+        pauseResumeAudioRecorder.setMaxTimeInMillis(1500);
+        pauseResumeAudioRecorder.setOnTimeCompletionListener(new OnMaxTimeCompletionListener());
+        //Delivered as fast as it is read, so the limit is reached long before 1.5 seconds go by on the wall clock.
+        pauseResumeAudioRecorder.setAudioSource(new ToneAudioSource(1000,0.5f,false));
+        pauseResumeAudioRecorder.startRecording();
+        Thread.sleep(1000);
+
+        Assert.assertEquals("Recording did not stop", PauseResumeAudioRecorder.STOPPED_STATE, pauseResumeAudioRecorder.getCurrentState());
+        Assert.assertFalse("completion listener was not called", failTest);
+        final ByteBuffer wavBuffer=ByteBuffer.wrap(readAndDeleteRecording()).order(ByteOrder.LITTLE_ENDIAN);
+        Assert.assertEquals("Recording was not cut at exactly 1.5 seconds", 12000*2, wavBuffer.getInt(40));
+    }
+    @Test
+    public void testMaxFileSizeIsExact()throws InterruptedException,IOException{
+        PauseResumeAudioRecorder pauseResumeAudioRecorder=new PauseResumeAudioRecorder();
+        pauseResumeAudioRecorder.setAudioFile(Environment.getExternalStorageDirectory() + "/recording.wav");
+        pauseResumeAudioRecorder.setChannel(AudioFormat.CHANNEL_IN_STEREO);
+        pauseResumeAudioRecorder.setMaxFileSizeInBytes(5003L);
+        pauseResumeAudioRecorder.setOnFileSizeReachedListener(new OnMaxFileSizeReachedListener());
+        pauseResumeAudioRecorder.setAudioSource(new ToneAudioSource(1000,0.5f,false));
+        pauseResumeAudioRecorder.startRecording();
+        Thread.sleep(1000);
+
+        Assert.assertEquals("Recording did not stop", PauseResumeAudioRecorder.STOPPED_STATE, pauseResumeAudioRecorder.getCurrentState());
+        Assert.assertFalse("size listener was not called", failTest);
+        final ByteBuffer wavBuffer=ByteBuffer.wrap(readAndDeleteRecording()).order(ByteOrder.LITTLE_ENDIAN);
+        //The last whole stereo 16 bit frame that fits.
+        Assert.assertEquals("Recording was not cut at the size limit", 5000, wavBuffer.getInt(40));
+    }
     private class OnMaxTimeCompletionListener implements PauseResumeAudioRecorder.OnTimeCompletionListener{
         @Override
         public void onTimeCompleted(PauseResumeAudioRecorder pauseResumeAudioRecorder) {
             failTest=false;
         }
     }
+    private class OnAudioChunkListener implements PauseResumeAudioRecorder.OnAudioChunkListener{
+        private volatile long chunkCount;
+        private volatile long missedChunkCount;
+        private volatile long byteCount;
+        private volatile long nextSequenceNumber;
+        private volatile boolean badChunk;
+        @Override
+        public void onAudioChunk(PauseResumeAudioRecorder pauseResumeAudioRecorder, ByteBuffer audioChunk, long sequenceNumber) {
+            //The shadow fills every sample with 1.
+            if (sequenceNumber<nextSequenceNumber || !audioChunk.isReadOnly() || audioChunk.getShort(audioChunk.position())!=1){
+                badChunk=true;
+            }
+            chunkCount++;
+            byteCount=byteCount+audioChunk.remaining();
+            nextSequenceNumber=sequenceNumber+1;
+        }
+        @Override
+        public void onAudioChunksMissed(PauseResumeAudioRecorder pauseResumeAudioRecorder, long missedChunkCount) {
+            this.missedChunkCount=this.missedChunkCount+missedChunkCount;
+        }
+    }
+    private AudioRecord getAudioRecord(final PauseResumeAudioRecorder pauseResumeAudioRecorder)throws NoSuchFieldException,IllegalAccessException{
+        audioRecordThreadField=currentAudioRecordingThreadField.get(pauseResumeAudioRecorder).getClass().getDeclaredField("audioSource");
+        audioRecordThreadField.setAccessible(true);
+        final Field audioRecordField=MicAudioSource.class.getDeclaredField("audioRecord");
+        audioRecordField.setAccessible(true);
+        return (AudioRecord)audioRecordField.get(audioRecordThreadField.get(currentAudioRecordingThreadField.get(pauseResumeAudioRecorder)));
+    }
+    private byte[] readAndDeleteRecording()throws IOException{
+        final File wavFile=new File(Environment.getExternalStorageDirectory() + "/recording.wav");
+        final byte[] wavData=new byte[(int) wavFile.length()];
+        final RandomAccessFile randomAccessFile=new RandomAccessFile(wavFile,"r");
+        try {
+            randomAccessFile.readFully(wavData);
+        }
+        finally {
+            randomAccessFile.close();
+            wavFile.delete();
+        }
+        return wavData;
+    }
+    private class OnSegmentCompletedListener implements PauseResumeAudioRecorder.OnSegmentCompletedListener{
+        private final List<Integer> segmentIndexes=Collections.synchronizedList(new ArrayList<Integer>());
+        @Override
+        public void onSegmentCompleted(PauseResumeAudioRecorder pauseResumeAudioRecorder, String segmentFilePath, int segmentIndex) {
+            segmentIndexes.add(segmentIndex);
+        }
+    }
+    private class OnRecordingCompletedListener implements PauseResumeAudioRecorder.OnRecordingCompletedListener{
+        private final List<String> filePaths;
+
+        OnRecordingCompletedListener(final List<String> filePaths){
+            this.filePaths=filePaths;
+        }
+        @Override
+        public void onRecordingCompleted(PauseResumeAudioRecorder pauseResumeAudioRecorder, String filePath) {
+            filePaths.add(filePath);
+        }
+    }
+    /**
+     * Paces a tone in real time by a clock that runs slow by the given parts per million, and loses a stretch of audio once, the way an {@link AudioRecord} does when it is not read in time.
+     */
+    private static class DriftingAudioSource implements AudioSource{
+        private final AudioSource audioSource=new ToneAudioSource(440,0.5f,false);
+        private final long driftPpm;
+        private final long gapAfterMillis;
+        private final long gapMillis;
+        private int sampleRateInHertz;
+        private long startNanos;
+        private long framesDelivered;
+        private boolean gapTaken;
+
+        DriftingAudioSource(final long driftPpm,final long gapAfterMillis,final long gapMillis){
+            this.driftPpm=driftPpm;
+            this.gapAfterMillis=gapAfterMillis;
+            this.gapMillis=gapMillis;
+        }
+        @Override
+        public int open(int sampleRateInHertz, int channelConfig, int audioEncoding) {
+            this.sampleRateInHertz=sampleRateInHertz;
+            return audioSource.open(sampleRateInHertz,channelConfig,audioEncoding);
+        }
+        @Override
+        public void start() {
+            audioSource.start();
+            startNanos=System.nanoTime();
+            framesDelivered=0;
+        }
+        @Override
+        public void stop() {audioSource.stop();}
+        @Override
+        public void release() {audioSource.release();}
+        @Override
+        public int read(short[] audioData, int offsetInShorts, int sizeInShorts) {return pace(audioSource.read(audioData,offsetInShorts,sizeInShorts));}
+        @Override
+        public int read(byte[] audioData, int offsetInBytes, int sizeInBytes) {return pace(audioSource.read(audioData,offsetInBytes,sizeInBytes)/2)*2;}
+        @Override
+        public int read(ByteBuffer audioBuffer, int sizeInBytes) {return pace(audioSource.read(audioBuffer,sizeInBytes)/2)*2;}
+
+        /**
+         * Blocks until the mono 16 bit frames read would have been captured.
+         */
+        private int pace(final int frames){
+            if (frames<0){
+                return frames;
+            }
+            framesDelivered=framesDelivered+frames;
+            if (!gapTaken && framesDelivered*1000/sampleRateInHertz>=gapAfterMillis){
+                gapTaken=true;
+                sleepNanos(gapMillis*1000000L);
+                //The audio of the gap is gone rather than delivered late.
+                startNanos=startNanos+gapMillis*1000000L;
+            }
+            sleepNanos(startNanos+framesDelivered*1000000000L/sampleRateInHertz*(1000000L+driftPpm)/1000000L-System.nanoTime());
+            return frames;
+        }
+        private static void sleepNanos(final long nanos){
+            if (nanos>0){
+                try {
+                    Thread.sleep(nanos/1000000L,(int)(nanos%1000000L));
+                }
+                catch (InterruptedException ex){
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+    /**
+     * Keeps every call instead of running it, so a test decides when the listeners run.
+     */
+    private static class RecordingExecutor implements Executor{
+        private final List<Runnable> runnables=Collections.synchronizedList(new ArrayList<Runnable>());
+        @Override
+        public void execute(Runnable runnable) {
+            runnables.add(runnable);
+        }
+    }
     private class OnMaxFileSizeReachedListener implements PauseResumeAudioRecorder.OnFileSizeReachedListener{
         @Override
         public void onFileSizeReached(PauseResumeAudioRecorder pauseResumeAudioRecorder) {
@@ -0,0 +1,59 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Tests {@link PcmSamples}
+ * @author Gavin(republicofgavin@gmail.com)
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, emulateSdk = 18)
+public class PcmSamplesTest {
+    @Test
+    public void testEightBit(){
+        final ByteBuffer pcmData=ByteBuffer.wrap(new byte[]{(byte)128,(byte)255,0});
+        Assert.assertEquals("Silence incorrect", 0, PcmSamples.get16BitSample(pcmData,0,1));
+        Assert.assertEquals("Maximum incorrect", 127*256, PcmSamples.get16BitSample(pcmData,1,1));
+        Assert.assertEquals("Minimum incorrect", -32768, PcmSamples.get16BitSample(pcmData,2,1));
+    }
+    @Test
+    public void testSixteenBit(){
+        final ByteBuffer pcmData=ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        pcmData.putShort((short)1234).putShort((short)-1234);
+        Assert.assertEquals("Positive sample incorrect", 1234, PcmSamples.get16BitSample(pcmData,0,2));
+        Assert.assertEquals("Negative sample incorrect", -1234, PcmSamples.get16BitSample(pcmData,2,2));
+        Assert.assertEquals("Position was moved", 4, pcmData.position());
+    }
+    @Test
+    public void testTwentyFourBit(){
+        //0x123456 and -0x123456, little endian.
+        final ByteBuffer pcmData=ByteBuffer.wrap(new byte[]{0x56,0x34,0x12,(byte)0xAA,(byte)0xCB,(byte)0xED});
+        Assert.assertEquals("Positive sample incorrect", 0x1234, PcmSamples.get16BitSample(pcmData,0,3));
+        Assert.assertEquals("Negative sample incorrect", -0x1235, PcmSamples.get16BitSample(pcmData,3,3));
+    }
+    @Test
+    public void testFloat(){
+        final ByteBuffer pcmData=ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        pcmData.putFloat(0.5f).putFloat(-1f).putFloat(2f);
+        Assert.assertEquals("Half scale incorrect", 16384, PcmSamples.get16BitSample(pcmData,0,PcmSamples.FLOAT_BYTES_PER_SAMPLE));
+        Assert.assertEquals("Full scale incorrect", -32768, PcmSamples.get16BitSample(pcmData,4,PcmSamples.FLOAT_BYTES_PER_SAMPLE));
+        Assert.assertEquals("Over full scale was not clipped", Short.MAX_VALUE, PcmSamples.get16BitSample(pcmData,8,PcmSamples.FLOAT_BYTES_PER_SAMPLE));
+    }
+    @Test
+    public void testPut16BitSamples(){
+        final byte[] output=new byte[6];
+        Assert.assertEquals("Length incorrect", 4, PcmSamples.put16BitSamples(new short[]{0x1234,-2,7},2,output));
+        Assert.assertEquals("Low byte incorrect", 0x34, output[0]);
+        Assert.assertEquals("High byte incorrect", 0x12, output[1]);
+        Assert.assertEquals("Negative sample incorrect", -2, (short)((output[2] & 0xFF) | (output[3]<<8)));
+        Assert.assertEquals("Sample past the length was written", 0, output[4]);
+    }
+}
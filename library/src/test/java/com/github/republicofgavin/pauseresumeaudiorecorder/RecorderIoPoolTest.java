@@ -0,0 +1,111 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Tests {@link RecorderIoPool}
+ * @author Gavin(republicofgavin@gmail.com)
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, emulateSdk = 18)
+public class RecorderIoPoolTest {
+    @Test(expected=IllegalArgumentException.class)
+    public void testConstructorNoThreads(){new RecorderIoPool(0);}
+    @Test
+    public void testConstructor(){
+        final RecorderIoPool recorderIoPool=new RecorderIoPool(3);
+        Assert.assertEquals("Thread count incorrect", 3, recorderIoPool.getWriterThreadCount());
+        Assert.assertFalse("Pool is shut down", recorderIoPool.isShutdown());
+    }
+    @Test
+    public void testWritersAreDrainedUntilFinished()throws InterruptedException{
+        final RecorderIoPool recorderIoPool=new RecorderIoPool(1);
+        final CountingWriter firstWriter=new CountingWriter(3);
+        final CountingWriter secondWriter=new CountingWriter(5);
+        final Thread firstThread=recorderIoPool.submit(firstWriter);
+        final Thread secondThread=recorderIoPool.submit(secondWriter);
+        Assert.assertSame("Writers of a single thread pool are on different threads", firstThread, secondThread);
+
+        for (int i=0;i<5;i++){
+            LockSupport.unpark(firstThread);
+            Thread.sleep(50);
+        }
+        Assert.assertEquals("First writer was not drained until finished", 3, firstWriter.callCount.get());
+        Assert.assertEquals("Second writer was not drained until finished", 5, secondWriter.callCount.get());
+        Assert.assertTrue("Writer thread died", firstThread.isAlive());
+
+        recorderIoPool.shutdown();
+        firstThread.join(1000);
+        Assert.assertFalse("Writer thread did not die after shutdown", firstThread.isAlive());
+    }
+    @Test
+    public void testWritersAreSpreadOverThreads(){
+        final RecorderIoPool recorderIoPool=new RecorderIoPool(2);
+        final Thread firstThread=recorderIoPool.submit(new CountingWriter(Integer.MAX_VALUE));
+        final Thread secondThread=recorderIoPool.submit(new CountingWriter(Integer.MAX_VALUE));
+        final Thread thirdThread=recorderIoPool.submit(new CountingWriter(Integer.MAX_VALUE));
+
+        Assert.assertNotSame("Second writer not on the idle thread", firstThread, secondThread);
+        Assert.assertTrue("Third writer not on an existing thread", thirdThread==firstThread || thirdThread==secondThread);
+        Assert.assertTrue("Writer threads are not daemon threads", firstThread.isDaemon() && secondThread.isDaemon());
+        recorderIoPool.shutdown();
+    }
+    @Test
+    public void testFailingWriterIsDropped()throws InterruptedException{
+        final RecorderIoPool recorderIoPool=new RecorderIoPool(1);
+        final Thread writerThread=recorderIoPool.submit(new PooledWriter() {
+            @Override
+            public boolean writeAvailable() {
+                throw new IllegalStateException("Failed");
+            }
+        });
+        final CountingWriter countingWriter=new CountingWriter(2);
+        recorderIoPool.submit(countingWriter);
+        LockSupport.unpark(writerThread);
+        Thread.sleep(100);
+
+        Assert.assertTrue("Writer thread died", writerThread.isAlive());
+        Assert.assertEquals("Other writer was not drained", 2, countingWriter.callCount.get());
+        recorderIoPool.shutdown();
+    }
+    @Test
+    public void testDedicatedThread()throws InterruptedException{
+        final CountingWriter countingWriter=new CountingWriter(1);
+        final Thread writerThread=RecorderIoPool.startDedicatedThread(countingWriter);
+        writerThread.join(1000);
+
+        Assert.assertFalse("Dedicated thread did not die with its writer", writerThread.isAlive());
+        Assert.assertEquals("Writer was not drained", 1, countingWriter.callCount.get());
+    }
+    @Test(expected=IllegalStateException.class)
+    public void testSubmitAfterShutdown(){
+        final RecorderIoPool recorderIoPool=new RecorderIoPool(1);
+        recorderIoPool.shutdown();
+        Assert.assertTrue("Pool is not shut down", recorderIoPool.isShutdown());
+        recorderIoPool.submit(new CountingWriter(1));
+    }
+
+    /**
+     * A writer that finishes once it has been drained a given number of times.
+     */
+    private static final class CountingWriter implements PooledWriter {
+        private final int finishedAfterCallCount;
+        private final AtomicInteger callCount=new AtomicInteger();
+
+        CountingWriter(final int finishedAfterCallCount){
+            this.finishedAfterCallCount=finishedAfterCallCount;
+        }
+        @Override
+        public boolean writeAvailable() {
+            return callCount.incrementAndGet()>=finishedAfterCallCount;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Tests {@link VoiceActivityDetector}
+ * @author Gavin(republicofgavin@gmail.com)
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, emulateSdk = 18)
+public class VoiceActivityDetectorTest {
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testConstructorBadChannelCount(){new VoiceActivityDetector(0,44100,0.01f,0);}
+    @Test(expected=IllegalArgumentException.class)
+    public void testConstructorBadThreshold(){new VoiceActivityDetector(1,44100,0f,0);}
+    @Test(expected=IllegalArgumentException.class)
+    public void testConstructorBadHangover(){new VoiceActivityDetector(1,44100,0.01f,-1);}
+    @Test
+    public void testLoudBlockIsActive(){
+        final VoiceActivityDetector voiceActivityDetector=new VoiceActivityDetector(1,44100,0.1f,0);
+        Assert.assertTrue("Loud block is not active", voiceActivityDetector.isActive(block(1,100,10000,0),2));
+        Assert.assertFalse("Quiet block is active", voiceActivityDetector.isActive(block(1,100,100,0),2));
+    }
+    @Test
+    public void testQuietNoisyBlockIsActive(){
+        final VoiceActivityDetector voiceActivityDetector=new VoiceActivityDetector(1,44100,0.1f,0);
+        //A third of the threshold, flipping sign every sample like a fricative.
+        Assert.assertTrue("Fricative block is not active", voiceActivityDetector.isActive(block(1,100,1100,1),2));
+        //Same level, but only crossing zero every 50 samples like hum.
+        Assert.assertFalse("Hum block is active", voiceActivityDetector.isActive(block(1,100,1100,50),2));
+    }
+    @Test
+    public void testStereoCrossingsOnFirstChannel(){
+        final VoiceActivityDetector voiceActivityDetector=new VoiceActivityDetector(2,44100,0.1f,0);
+        //Every frame flips sign, so both channels cross zero on every frame.
+        Assert.assertTrue("Fricative block is not active", voiceActivityDetector.isActive(block(2,100,1100,1),2));
+    }
+    @Test
+    public void testHangover(){
+        final VoiceActivityDetector voiceActivityDetector=new VoiceActivityDetector(1,44100,0.1f,150);
+        Assert.assertTrue("Block within the first hangover is not active", voiceActivityDetector.isActive(block(1,100,0,0),2));
+        Assert.assertTrue("Block within the first hangover is not active", voiceActivityDetector.isActive(block(1,100,0,0),2));
+        Assert.assertFalse("Block after the hangover is active", voiceActivityDetector.isActive(block(1,100,0,0),2));
+
+        Assert.assertTrue("Loud block is not active", voiceActivityDetector.isActive(block(1,100,10000,0),2));
+        Assert.assertTrue("Block within the hangover is not active", voiceActivityDetector.isActive(block(1,100,0,0),2));
+        Assert.assertTrue("Block within the hangover is not active", voiceActivityDetector.isActive(block(1,100,0,0),2));
+        Assert.assertFalse("Block after the hangover is active", voiceActivityDetector.isActive(block(1,100,0,0),2));
+
+        voiceActivityDetector.reset();
+        Assert.assertTrue("Reset did not restart the hangover", voiceActivityDetector.isActive(block(1,100,0,0),2));
+    }
+    @Test
+    public void testEightBitBlock(){
+        final VoiceActivityDetector voiceActivityDetector=new VoiceActivityDetector(1,11025,0.1f,0);
+        final ByteBuffer pcmData=ByteBuffer.wrap(new byte[]{(byte)255,1,(byte)255,1});
+        Assert.assertTrue("Loud 8 bit block is not active", voiceActivityDetector.isActive(pcmData,1));
+        Assert.assertEquals("Position was moved", 0, pcmData.position());
+        Assert.assertFalse("Silent 8 bit block is active", voiceActivityDetector.isActive(ByteBuffer.wrap(new byte[]{(byte)128,(byte)128}),1));
+    }
+
+    /**
+     * @return A block of little endian frames of the given level, whose sign flips every period frames. A period of 0 never flips.
+     */
+    private ByteBuffer block(final int channelCount,final int frameCount,final int level,final int period){
+        final ByteBuffer pcmData=ByteBuffer.allocate(frameCount*channelCount*2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i=0;i<frameCount;i++){
+            final short sample=(short)((period>0 && (i/period)%2==1) ? -level : level);
+            for (int j=0;j<channelCount;j++){
+                pcmData.putShort(sample);
+            }
+        }
+        pcmData.flip();
+        return pcmData;
+    }
+}
@@ -0,0 +1,69 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Tests {@link WideSampleWriter}
+ * @author Gavin(republicofgavin@gmail.com)
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, emulateSdk = 18)
+public class WideSampleWriterTest {
+    @Test(expected=IllegalArgumentException.class)
+    public void testBadBytesPerSample(){new WideSampleWriter(2);}
+    @Test
+    public void testShortsToTwentyFourBit(){
+        final ByteBuffer block=ByteBuffer.allocate(9).order(ByteOrder.LITTLE_ENDIAN);
+        new WideSampleWriter(3).write(new short[]{1,-1,Short.MAX_VALUE,5},3,block);
+
+        Assert.assertEquals("Wrong number of bytes written", 9, block.position());
+        Assert.assertEquals("Low byte should be 0", 0, block.get(0));
+        Assert.assertEquals("Sample incorrect", 1, block.get(1));
+        Assert.assertEquals("Sample incorrect", 0, block.get(2));
+        Assert.assertEquals("Negative sample incorrect", -256, get24BitSample(block,3));
+        Assert.assertEquals("Full scale incorrect", Short.MAX_VALUE<<8, get24BitSample(block,6));
+    }
+    @Test
+    public void testShortsToFloat(){
+        final ByteBuffer block=ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        new WideSampleWriter(PcmSamples.FLOAT_BYTES_PER_SAMPLE).write(new short[]{16384,Short.MIN_VALUE},2,block);
+
+        Assert.assertEquals("Half scale incorrect", 0.5f, block.getFloat(0), 0f);
+        Assert.assertEquals("Full scale incorrect", -1f, block.getFloat(4), 0f);
+    }
+    @Test
+    public void testFloatsToTwentyFourBit(){
+        final ByteBuffer samples=ByteBuffer.allocate(12).order(ByteOrder.nativeOrder());
+        samples.putFloat(0.5f).putFloat(1.5f).putFloat(-1.5f);
+        samples.flip();
+        final ByteBuffer block=ByteBuffer.allocate(9).order(ByteOrder.LITTLE_ENDIAN);
+        new WideSampleWriter(3).write(samples,block);
+
+        Assert.assertFalse("Samples were not consumed", samples.hasRemaining());
+        Assert.assertEquals("Half scale incorrect", 0x400000, get24BitSample(block,0));
+        Assert.assertEquals("Positive overload was not clipped", 0x7FFFFF, get24BitSample(block,3));
+        Assert.assertEquals("Negative overload was not clipped", -0x800000, get24BitSample(block,6));
+    }
+    @Test
+    public void testFloatsAreCopied(){
+        final ByteBuffer samples=ByteBuffer.allocate(8).order(ByteOrder.BIG_ENDIAN);
+        samples.putFloat(0.25f).putFloat(1.5f);
+        samples.flip();
+        final ByteBuffer block=ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        new WideSampleWriter(PcmSamples.FLOAT_BYTES_PER_SAMPLE).write(samples,block);
+
+        Assert.assertEquals("Sample incorrect", 0.25f, block.getFloat(0), 0f);
+        Assert.assertEquals("Floats should not be clipped", 1.5f, block.getFloat(4), 0f);
+    }
+    private static int get24BitSample(final ByteBuffer block,final int index){
+        return (block.get(index) & 0xFF) | (block.get(index+1) & 0xFF)<<8 | block.get(index+2)<<16;
+    }
+}
@@ -0,0 +1,105 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder.conversion;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests {@link CompressedWavEncoder}
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, emulateSdk = 18)
+public class CompressedWavEncoderTest {
+    private ByteArrayOutputStream byteArrayOutputStream;
+    private WritableByteChannel channel;
+
+    @Before
+    public void setup(){
+        byteArrayOutputStream=new ByteArrayOutputStream();
+        channel=Channels.newChannel(byteArrayOutputStream);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testNullWaveHeader(){new CompressedWavEncoder(null);}
+    @Test(expected=IllegalArgumentException.class)
+    public void testPcmWaveHeader(){new CompressedWavEncoder(new PcmWavConverter.WaveHeader(11025,(short)1,(short)16));}
+
+    @Test
+    public void testEncodeMulaw()throws IOException{
+        final CompressedWavEncoder compressedWavEncoder=new CompressedWavEncoder(new PcmWavConverter.WaveHeader(11025,(short)1,(short)8,-1,false,PcmWavConverter.WAVE_FORMAT_MULAW));
+        final ByteBuffer pcmData=littleEndianSamples((short)0,(short)32767,(short)-32768,(short)1000);
+        //Split in the middle of a sample, which has to be carried over to the next call.
+        pcmData.limit(3);
+        Assert.assertEquals("Bytes written incorrect", 1, compressedWavEncoder.encode(pcmData, channel));
+        pcmData.limit(pcmData.capacity());
+        Assert.assertEquals("Bytes written incorrect", 3, compressedWavEncoder.encode(pcmData, channel));
+        Assert.assertEquals("Nothing should be left to finish", 0, compressedWavEncoder.finish(channel));
+        Assert.assertEquals("Frame count incorrect", 4, compressedWavEncoder.getEncodedFrameCount());
+
+        assertArrayEquals("Mu-law codes incorrect", new byte[]{(byte)0xFF,(byte)0x80,0x00,(byte)0xCE}, byteArrayOutputStream.toByteArray());
+    }
+    @Test
+    public void testEncodeAlaw()throws IOException{
+        final CompressedWavEncoder compressedWavEncoder=new CompressedWavEncoder(new PcmWavConverter.WaveHeader(11025,(short)2,(short)8,-1,false,PcmWavConverter.WAVE_FORMAT_ALAW));
+        Assert.assertEquals("Bytes written incorrect", 4, compressedWavEncoder.encode(littleEndianSamples((short)0,(short)32767,(short)-32768,(short)1000), channel));
+
+        assertArrayEquals("A-law codes incorrect", new byte[]{(byte)0xD5,(byte)0xAA,0x2A,(byte)0xFA}, byteArrayOutputStream.toByteArray());
+    }
+    @Test
+    public void testEncodeImaAdpcmBlock()throws IOException{
+        final PcmWavConverter.WaveHeader waveHeader=new PcmWavConverter.WaveHeader(11025,(short)1,(short)4,-1,false,PcmWavConverter.WAVE_FORMAT_IMA_ADPCM);
+        final CompressedWavEncoder compressedWavEncoder=new CompressedWavEncoder(waveHeader);
+        final short[] samples=new short[waveHeader.getSamplesPerBlock()];
+        samples[0]=1234;
+        for (int i=1;i<samples.length;i++){
+            samples[i]=(short)(Math.sin(i/10.0)*8000);
+        }
+        Assert.assertEquals("Only whole blocks should be written", waveHeader.getBlockAlign(), compressedWavEncoder.encode(littleEndianSamples(samples), channel));
+        Assert.assertEquals("Frame count incorrect", waveHeader.getSamplesPerBlock(), compressedWavEncoder.getEncodedFrameCount());
+
+        final ByteBuffer block=ByteBuffer.wrap(byteArrayOutputStream.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        Assert.assertEquals("Block size incorrect", 256, block.remaining());
+        Assert.assertEquals("Block header sample incorrect", 1234, block.getShort(0));
+        Assert.assertEquals("Block header step index incorrect", 0, block.get(2));
+        Assert.assertEquals("Block header reserved byte incorrect", 0, block.get(3));
+    }
+    @Test
+    public void testFinishImaAdpcm()throws IOException{
+        final CompressedWavEncoder compressedWavEncoder=new CompressedWavEncoder(new PcmWavConverter.WaveHeader(11025,(short)2,(short)4,-1,false,PcmWavConverter.WAVE_FORMAT_IMA_ADPCM));
+        //3 stereo frames and half of a fourth one.
+        Assert.assertEquals("Block was written before finishing", 0, compressedWavEncoder.encode(littleEndianSamples((short)1,(short)2,(short)3,(short)4,(short)5,(short)6,(short)7), channel));
+        Assert.assertEquals("Frames of an unwritten block were counted", 0, compressedWavEncoder.getEncodedFrameCount());
+        //A header per channel, then a group of 8 samples per channel padded out from 3.
+        Assert.assertEquals("Short block size incorrect", 16, compressedWavEncoder.finish(channel));
+        Assert.assertEquals("Short block size incorrect", 16, byteArrayOutputStream.size());
+        //The header samples and 2 more per channel, not the 6 padding ones.
+        Assert.assertEquals("Padding was counted", 3, compressedWavEncoder.getEncodedFrameCount());
+
+        compressedWavEncoder.reset();
+        Assert.assertEquals("Frame count was not reset", 0, compressedWavEncoder.getEncodedFrameCount());
+        Assert.assertEquals("Nothing should be left after a reset", 0, compressedWavEncoder.finish(channel));
+    }
+
+    private ByteBuffer littleEndianSamples(final short... samples){
+        final ByteBuffer pcmData=ByteBuffer.allocate(samples.length*2).order(ByteOrder.LITTLE_ENDIAN);
+        for (final short sample:samples){
+            pcmData.putShort(sample);
+        }
+        pcmData.flip();
+        return pcmData;
+    }
+}
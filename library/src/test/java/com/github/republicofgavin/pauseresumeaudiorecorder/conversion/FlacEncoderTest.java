@@ -0,0 +1,447 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder.conversion;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests {@link FlacEncoder}
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, emulateSdk = 18)
+public class FlacEncoderTest {
+    private ByteArrayOutputStream byteArrayOutputStream;
+    private WritableByteChannel channel;
+
+    @Before
+    public void setup(){
+        byteArrayOutputStream=new ByteArrayOutputStream();
+        channel=Channels.newChannel(byteArrayOutputStream);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testNullWaveHeader(){new FlacEncoder(null);}
+    @Test(expected=IllegalArgumentException.class)
+    public void testSampleRateTooHigh(){new FlacEncoder(new PcmWavConverter.WaveHeader(1048576,(short)1,(short)16));}
+    @Test(expected=IllegalArgumentException.class)
+    public void testTwentyFourBit(){new FlacEncoder(new PcmWavConverter.WaveHeader(48000,(short)1,(short)24));}
+
+    @Test
+    public void testCreateStreamHeader(){
+        final ByteBuffer header=new FlacEncoder(new PcmWavConverter.WaveHeader(44100,(short)2,(short)16)).createStreamHeader().order(ByteOrder.BIG_ENDIAN);
+        Assert.assertEquals("Header size incorrect", FlacEncoder.STREAM_HEADER_SIZE_BYTES, header.remaining());
+        Assert.assertEquals("Stream marker incorrect", 0x664C6143, header.getInt(0));
+        Assert.assertEquals("STREAMINFO block header incorrect", 0x80000022, header.getInt(4));
+        Assert.assertEquals("Min block size incorrect", FlacEncoder.BLOCK_SIZE, header.getShort(8));
+        Assert.assertEquals("Max block size incorrect", FlacEncoder.BLOCK_SIZE, header.getShort(10));
+        final long streamInfo=header.getLong(18);
+        Assert.assertEquals("Sample rate incorrect", 44100L, streamInfo>>>44);
+        Assert.assertEquals("Channels incorrect", 1L, (streamInfo>>>41) & 0x7);
+        Assert.assertEquals("Bits per sample incorrect", 15L, (streamInfo>>>36) & 0x1F);
+        Assert.assertEquals("Sample count incorrect", 0L, streamInfo & 0xFFFFFFFFFL);
+        for (int i=26;i<FlacEncoder.STREAM_HEADER_SIZE_BYTES;i++){
+            Assert.assertEquals("MD5 should be unset", 0, header.get(i));
+        }
+    }
+
+    @Test
+    public void testEncodeConstantBlock()throws IOException{
+        final FlacEncoder flacEncoder=new FlacEncoder(new PcmWavConverter.WaveHeader(44100,(short)1,(short)16));
+        final ByteBuffer pcmData=ByteBuffer.allocate(FlacEncoder.BLOCK_SIZE*2).order(ByteOrder.LITTLE_ENDIAN);
+        while (pcmData.hasRemaining()){
+            pcmData.putShort((short)1);
+        }
+        //Split in the middle of a sample, which has to be carried over to the next call.
+        pcmData.flip();
+        pcmData.limit(101);
+        flacEncoder.encode(pcmData, channel);
+        Assert.assertEquals("Frame was written too early", 0, byteArrayOutputStream.size());
+        Assert.assertFalse("Data was not consumed", pcmData.hasRemaining());
+        pcmData.limit(pcmData.capacity());
+        flacEncoder.encode(pcmData, channel);
+
+        final byte[] frame=byteArrayOutputStream.toByteArray();
+        Assert.assertEquals("A constant block should be a single tiny frame", 11, frame.length);
+        //Sync code, 4096 samples at 44100, mono, 16 bits, frame 0.
+        assertArrayEquals("Frame header incorrect", new byte[]{(byte)0xFF,(byte)0xF8,(byte)0xC9,(byte)0x08,0}, Arrays.copyOf(frame, 5));
+        //Constant subframe holding the sample.
+        assertArrayEquals("Subframe incorrect", new byte[]{0,0,1}, Arrays.copyOfRange(frame, 6, 9));
+        Assert.assertEquals("Sample count incorrect", FlacEncoder.BLOCK_SIZE, flacEncoder.getTotalSamples());
+    }
+
+    @Test
+    public void testFinish()throws IOException,NoSuchAlgorithmException{
+        final FlacEncoder flacEncoder=new FlacEncoder(new PcmWavConverter.WaveHeader(22050,(short)2,(short)16));
+        final byte[] pcmData=new byte[]{1,0,2,0, 3,0,-4,-1, 5,0,6,0, 9};
+        flacEncoder.encode(ByteBuffer.wrap(pcmData), channel);
+        Assert.assertEquals("Short block was written before finishing", 0, byteArrayOutputStream.size());
+        flacEncoder.finish(channel);
+
+        final byte[] frame=byteArrayOutputStream.toByteArray();
+        Assert.assertTrue("Short block was not written", frame.length > 0);
+        Assert.assertEquals("Block size should follow the frame header", 0x70, frame[2] & 0xF0);
+        final ByteBuffer header=flacEncoder.createStreamHeader().order(ByteOrder.BIG_ENDIAN);
+        Assert.assertEquals("Partial frame should be dropped", 3L, header.getLong(18) & 0xFFFFFFFFFL);
+        Assert.assertEquals("Frame size incorrect", frame.length, header.getInt(12)>>>8);
+        final byte[] md5=new byte[16];
+        header.position(26);
+        header.get(md5);
+        assertArrayEquals("MD5 incorrect", MessageDigest.getInstance("MD5").digest(Arrays.copyOf(pcmData, 12)), md5);
+    }
+
+    @Test
+    public void testEightBitMd5()throws IOException,NoSuchAlgorithmException{
+        final FlacEncoder flacEncoder=new FlacEncoder(new PcmWavConverter.WaveHeader(11025,(short)1,(short)8));
+        flacEncoder.encode(ByteBuffer.wrap(new byte[]{(byte)128,(byte)255,0,(byte)130}), channel);
+        flacEncoder.finish(channel);
+
+        final ByteBuffer header=flacEncoder.createStreamHeader();
+        final byte[] md5=new byte[16];
+        header.position(26);
+        header.get(md5);
+        //FLAC hashes 8 bit samples as signed values, unlike the unsigned ones in the wav data.
+        assertArrayEquals("MD5 incorrect", MessageDigest.getInstance("MD5").digest(new byte[]{0,127,-128,2}), md5);
+    }
+
+    @Test
+    public void testReset()throws IOException{
+        final FlacEncoder flacEncoder=new FlacEncoder(new PcmWavConverter.WaveHeader(16000,(short)1,(short)16));
+        flacEncoder.encode(ByteBuffer.wrap(new byte[]{1,0,2,0,3}), channel);
+        flacEncoder.finish(channel);
+        Assert.assertEquals("Sample count incorrect", 2L, flacEncoder.getTotalSamples());
+
+        flacEncoder.reset();
+        Assert.assertEquals("Sample count was not reset", 0L, flacEncoder.getTotalSamples());
+        assertArrayEquals("Stream header was not reset", new FlacEncoder(new PcmWavConverter.WaveHeader(16000,(short)1,(short)16)).createStreamHeader().array(), flacEncoder.createStreamHeader().array());
+    }
+
+    @Test
+    public void testRoundTripNoisyStereo()throws IOException{
+        final Random random=new Random(1);
+        final int[][] samples=new int[2][FlacEncoder.BLOCK_SIZE*2+1000];
+        for (int i=0;i<samples[0].length;i++){
+            samples[0][i]=random.nextInt(65536)-32768;
+            samples[1][i]=random.nextInt(65536)-32768;
+        }
+        final FlacTestDecoder decoder=roundTrip(new PcmWavConverter.WaveHeader(44100,(short)2,(short)16), samples);
+        //Full scale noise has no usable correlation, and its side channel would need an extra bit.
+        Assert.assertTrue("Full blocks of noise should be coded as independent channels", decoder.channelAssignmentCounts[1]>=2);
+        Assert.assertTrue("Noise should be stored verbatim", decoder.subframeTypeCounts[1]>=4);
+    }
+
+    @Test
+    public void testRoundTripCorrelatedStereo()throws IOException{
+        final Random random=new Random(2);
+        final int blockCount=6;
+        final int[][] samples=new int[2][FlacEncoder.BLOCK_SIZE*blockCount+77];
+        for (int i=0;i<samples[0].length;i++){
+            final int tone=(int)(20000*Math.sin(2*Math.PI*440*i/48000.0));
+            final int noise=random.nextInt(201)-100;
+            //Blocks alternate between a clean left, a clean right and a clean average, so each of the side layouts wins somewhere.
+            switch ((i/FlacEncoder.BLOCK_SIZE)%3){
+                case 0:
+                    samples[0][i]=tone;
+                    samples[1][i]=tone+noise;
+                    break;
+                case 1:
+                    samples[0][i]=tone+noise;
+                    samples[1][i]=tone;
+                    break;
+                default:
+                    samples[0][i]=tone+noise;
+                    samples[1][i]=tone-noise;
+            }
+        }
+        final FlacTestDecoder decoder=roundTrip(new PcmWavConverter.WaveHeader(48000,(short)2,(short)16), samples);
+        Assert.assertTrue("Left/side was never used", decoder.channelAssignmentCounts[8]>=blockCount/3);
+        Assert.assertTrue("Right/side was never used", decoder.channelAssignmentCounts[9]>=blockCount/3);
+        Assert.assertTrue("Mid/side was never used", decoder.channelAssignmentCounts[10]>=blockCount/3);
+    }
+
+    @Test
+    public void testRoundTripSine()throws IOException{
+        final int[][] samples=new int[1][FlacEncoder.BLOCK_SIZE*3+500];
+        for (int i=0;i<samples[0].length;i++){
+            //A block of silence in the middle gets a constant subframe.
+            if (i/FlacEncoder.BLOCK_SIZE!=1){
+                samples[0][i]=(int) Math.round(127*Math.sin(2*Math.PI*300*i/11025.0));
+            }
+        }
+        final FlacTestDecoder decoder=roundTrip(new PcmWavConverter.WaveHeader(11025,(short)1,(short)8), samples);
+        Assert.assertEquals("Frame count incorrect", 4, decoder.frameCount);
+        Assert.assertEquals("Silence should be a constant subframe", 1, decoder.subframeTypeCounts[0]);
+        Assert.assertTrue("Sine should use a fixed predictor", decoder.subframeTypeCounts[8]+decoder.subframeTypeCounts[9]+decoder.subframeTypeCounts[10]+decoder.subframeTypeCounts[11]+decoder.subframeTypeCounts[12]>=3);
+    }
+
+    @Test
+    public void testRoundTripManyFrames()throws IOException{
+        final Random random=new Random(3);
+        final int frameCount=200;
+        final int[][] samples=new int[1][FlacEncoder.BLOCK_SIZE*(frameCount-1)+123];
+        for (int i=0;i<samples[0].length;i++){
+            samples[0][i]=(int)(8000*Math.sin(2*Math.PI*1000*i/16000.0))+random.nextInt(64)-32;
+        }
+        //Frame numbers from 128 on take more than one byte.
+        final FlacTestDecoder decoder=roundTrip(new PcmWavConverter.WaveHeader(16000,(short)1,(short)16), samples);
+        Assert.assertEquals("Frame count incorrect", frameCount, decoder.frameCount);
+    }
+
+    /**
+     * Encodes the samples, fed in pieces that split PCM frames, decodes the stream and checks the samples and the MD5 survived.
+     */
+    private FlacTestDecoder roundTrip(final PcmWavConverter.WaveHeader waveHeader,final int[][] samples)throws IOException{
+        final int bytesPerSample=waveHeader.getBitRate()/8;
+        final ByteBuffer pcmData=ByteBuffer.allocate(samples.length*samples[0].length*bytesPerSample).order(ByteOrder.LITTLE_ENDIAN);
+        final ByteBuffer md5Data=ByteBuffer.allocate(pcmData.capacity()).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i=0;i<samples[0].length;i++){
+            for (final int[] channelSamples : samples){
+                if (bytesPerSample==1){
+                    pcmData.put((byte)(channelSamples[i]+128));
+                    md5Data.put((byte) channelSamples[i]);
+                }
+                else {
+                    pcmData.putShort((short) channelSamples[i]);
+                    md5Data.putShort((short) channelSamples[i]);
+                }
+            }
+        }
+        pcmData.flip();
+        final FlacEncoder flacEncoder=new FlacEncoder(waveHeader);
+        while (pcmData.hasRemaining()){
+            final ByteBuffer piece=pcmData.slice();
+            piece.limit(Math.min(piece.remaining(),1001));
+            flacEncoder.encode(piece, channel);
+            pcmData.position(pcmData.position()+piece.limit());
+        }
+        flacEncoder.finish(channel);
+
+        final ByteArrayOutputStream stream=new ByteArrayOutputStream();
+        stream.write(flacEncoder.createStreamHeader().array());
+        stream.write(byteArrayOutputStream.toByteArray());
+        final FlacTestDecoder decoder=new FlacTestDecoder(stream.toByteArray());
+        final int[][] decoded=decoder.decode();
+        Assert.assertEquals("Channel count incorrect", samples.length, decoded.length);
+        for (int channel=0;channel<samples.length;channel++){
+            assertArrayEquals("Samples of channel "+channel+" incorrect", samples[channel], decoded[channel]);
+        }
+        try {
+            assertArrayEquals("MD5 incorrect", MessageDigest.getInstance("MD5").digest(md5Data.array()), decoder.md5);
+        }
+        catch (NoSuchAlgorithmException ex){
+            throw new IllegalStateException(ex);
+        }
+        return decoder;
+    }
+
+    /**
+     * A minimal FLAC decoder, covering just what {@link FlacEncoder} writes: fixed block sizes, constant, verbatim and fixed subframes with partitioned Rice residuals, and the 4 stereo layouts.
+     * Every header CRC-8 and frame CRC-16 is checked along the way, with CRCs computed bit by bit rather than from the encoder's tables.
+     */
+    private static final class FlacTestDecoder {
+        private static final int[][] FIXED_COEFFICIENTS={{},{1},{2,-1},{3,-3,1},{4,-6,4,-1}};
+        private final byte[] data;
+        private int bitPosition;
+        private int bitsPerSample;
+        final int[] channelAssignmentCounts=new int[16];
+        final int[] subframeTypeCounts=new int[64];
+        final byte[] md5=new byte[16];
+        int frameCount;
+
+        FlacTestDecoder(final byte[] data){
+            this.data=data;
+        }
+
+        int[][] decode(){
+            Assert.assertEquals("Stream marker incorrect", 0x664C6143L, readBits(32));
+            Assert.assertEquals("STREAMINFO block header incorrect", 0x80000022L, readBits(32));
+            final int blockSize=(int) readBits(16);
+            Assert.assertEquals("Min and max block size should match", blockSize, readBits(16));
+            final long minFrameSize=readBits(24);
+            final long maxFrameSize=readBits(24);
+            readBits(20);
+            final int channelNum=(int) readBits(3)+1;
+            bitsPerSample=(int) readBits(5)+1;
+            final int[][] samples=new int[channelNum][(int) readBits(36)];
+            for (int i=0;i<md5.length;i++){
+                md5[i]=(byte) readBits(8);
+            }
+
+            int sampleCount=0;
+            long smallestFrame=Long.MAX_VALUE;
+            long biggestFrame=0;
+            while (bitPosition/8<data.length){
+                final int frameStart=bitPosition/8;
+                Assert.assertEquals("Sync code incorrect", 0xFFF8L, readBits(16));
+                final int blockSizeCode=(int) readBits(4);
+                Assert.assertTrue("Sample rate code should not need extra bytes", readBits(4)<12);
+                final int channelAssignment=(int) readBits(4);
+                final int sampleSizeCode=(int) readBits(3);
+                Assert.assertEquals("Sample size code incorrect", bitsPerSample==8 ? 1 : 4, sampleSizeCode);
+                Assert.assertEquals("Reserved bit set", 0L, readBits(1));
+                Assert.assertEquals("Frame number incorrect", frameCount, readFrameNumber());
+                int frameBlockSize=blockSize;
+                if (blockSizeCode==7){
+                    frameBlockSize=(int) readBits(16)+1;
+                }
+                else {
+                    Assert.assertEquals("Block size code incorrect", 12, blockSizeCode);
+                }
+                Assert.assertEquals("Header CRC-8 incorrect", crc8(frameStart,bitPosition/8), readBits(8));
+
+                channelAssignmentCounts[channelAssignment]++;
+                final int[][] subframes=new int[channelNum][];
+                for (int channel=0;channel<channelNum;channel++){
+                    final boolean side=(channelAssignment==8 && channel==1) || (channelAssignment==9 && channel==0) || (channelAssignment==10 && channel==1);
+                    subframes[channel]=readSubframe(frameBlockSize,side ? bitsPerSample+1 : bitsPerSample);
+                }
+                for (int i=0;i<frameBlockSize;i++){
+                    if (channelAssignment==8){
+                        subframes[1][i]=subframes[0][i]-subframes[1][i];
+                    }
+                    else if (channelAssignment==9){
+                        subframes[0][i]=subframes[0][i]+subframes[1][i];
+                    }
+                    else if (channelAssignment==10){
+                        final int mid=(subframes[0][i]<<1) | (subframes[1][i] & 1);
+                        final int side=subframes[1][i];
+                        subframes[0][i]=(mid+side)>>1;
+                        subframes[1][i]=(mid-side)>>1;
+                    }
+                    else {
+                        Assert.assertEquals("Channel assignment incorrect", channelNum-1, channelAssignment);
+                    }
+                }
+                bitPosition=(bitPosition+7)/8*8;
+                final int crc16=crc16(frameStart,bitPosition/8);
+                Assert.assertEquals("Frame CRC-16 incorrect", crc16, readBits(16));
+
+                for (int channel=0;channel<channelNum;channel++){
+                    System.arraycopy(subframes[channel],0,samples[channel],sampleCount,frameBlockSize);
+                }
+                sampleCount=sampleCount+frameBlockSize;
+                smallestFrame=Math.min(smallestFrame,bitPosition/8-frameStart);
+                biggestFrame=Math.max(biggestFrame,bitPosition/8-frameStart);
+                frameCount++;
+            }
+            Assert.assertEquals("Sample count incorrect", samples[0].length, sampleCount);
+            Assert.assertEquals("Min frame size incorrect", smallestFrame, minFrameSize);
+            Assert.assertEquals("Max frame size incorrect", biggestFrame, maxFrameSize);
+            return samples;
+        }
+
+        private int[] readSubframe(final int blockSize,final int sampleSizeInBits){
+            Assert.assertEquals("Subframe padding bit set", 0L, readBits(1));
+            final int type=(int) readBits(6);
+            Assert.assertEquals("Wasted bits flag set", 0L, readBits(1));
+            subframeTypeCounts[type]++;
+            final int[] subframe=new int[blockSize];
+            if (type==0){
+                Arrays.fill(subframe, readSigned(sampleSizeInBits));
+            }
+            else if (type==1){
+                for (int i=0;i<blockSize;i++){
+                    subframe[i]=readSigned(sampleSizeInBits);
+                }
+            }
+            else {
+                Assert.assertTrue("Unexpected subframe type "+type, type>=8 && type<=12);
+                final int order=type-8;
+                for (int i=0;i<order;i++){
+                    subframe[i]=readSigned(sampleSizeInBits);
+                }
+                Assert.assertEquals("Residual coding method incorrect", 0L, readBits(2));
+                final int partitionOrder=(int) readBits(4);
+                final int partitionSize=blockSize>>partitionOrder;
+                int i=order;
+                for (int partition=0;partition<(1<<partitionOrder);partition++){
+                    final int riceParameter=(int) readBits(4);
+                    Assert.assertTrue("Escaped partitions are never written", riceParameter<15);
+                    for (final int end=(partition+1)*partitionSize;i<end;i++){
+                        long quotient=0;
+                        while (readBits(1)==0){
+                            quotient++;
+                        }
+                        final long folded=(quotient<<riceParameter) | readBits(riceParameter);
+                        long prediction=0;
+                        for (int tap=0;tap<order;tap++){
+                            prediction=prediction+(long) FIXED_COEFFICIENTS[order][tap]*subframe[i-tap-1];
+                        }
+                        subframe[i]=(int)((folded>>>1) ^ -(folded & 1))+(int) prediction;
+                    }
+                }
+            }
+            return subframe;
+        }
+
+        private long readFrameNumber(){
+            final int first=(int) readBits(8);
+            int extraByteCount=0;
+            while (extraByteCount<6 && (first & (0x40>>extraByteCount))!=0){
+                extraByteCount++;
+            }
+            if ((first & 0x80)==0){
+                return first;
+            }
+            long number=first & (0x3F>>extraByteCount);
+            for (int i=0;i<extraByteCount;i++){
+                final int next=(int) readBits(8);
+                Assert.assertEquals("Frame number continuation byte incorrect", 0x80, next & 0xC0);
+                number=(number<<6) | (next & 0x3F);
+            }
+            return number;
+        }
+
+        private long readBits(final int bits){
+            long value=0;
+            for (int i=0;i<bits;i++){
+                value=(value<<1) | ((data[bitPosition>>3]>>(7-(bitPosition & 7))) & 1);
+                bitPosition++;
+            }
+            return value;
+        }
+
+        private int readSigned(final int bits){
+            return (int)(readBits(bits)<<(64-bits)>>(64-bits));
+        }
+
+        private int crc8(final int start,final int end){
+            int crc=0;
+            for (int i=start;i<end;i++){
+                crc=crc ^ (data[i] & 0xFF);
+                for (int bit=0;bit<8;bit++){
+                    crc=((crc & 0x80)!=0) ? ((crc<<1) ^ 0x07) & 0xFF : (crc<<1) & 0xFF;
+                }
+            }
+            return crc;
+        }
+
+        private int crc16(final int start,final int end){
+            int crc=0;
+            for (int i=start;i<end;i++){
+                crc=crc ^ ((data[i] & 0xFF)<<8);
+                for (int bit=0;bit<8;bit++){
+                    crc=((crc & 0x8000)!=0) ? ((crc<<1) ^ 0x8005) & 0xFFFF : (crc<<1) & 0xFFFF;
+                }
+            }
+            return crc;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder.conversion;
+
+import android.os.Environment;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests {@link PcmFlacConverter}
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, emulateSdk = 18)
+public class PcmFlacConverterTest {
+    private PcmWavConverter.WaveHeader waveHeader;
+    private static final String TEST_DIRECTORY_PATH=Environment.getExternalStorageDirectory().getAbsolutePath()+File.separator+"FlacTest";
+    private static final String PCM_FILE_PATH=TEST_DIRECTORY_PATH+File.separator+"Test.pcm";
+    private static final String FLAC_FILE_PATH=TEST_DIRECTORY_PATH+File.separator+"Test.flac";
+
+    @Before
+    public void setup(){
+        waveHeader=new PcmWavConverter.WaveHeader(44100,(short)2,(short)16);
+        new File(TEST_DIRECTORY_PATH).mkdirs();
+    }
+    @After
+    public void tearDown(){
+        new File(PCM_FILE_PATH).delete();
+        new File(FLAC_FILE_PATH).delete();
+        new File(TEST_DIRECTORY_PATH).delete();
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testNullWaveHeader()throws IOException{PcmFlacConverter.convertPCMToFlac(null, "/x/something/x/Gavin.pcm", "/x/something/x/Gavin.flac");}
+    @Test(expected=IllegalArgumentException.class)
+    public void testNullPCMPath()throws IOException{PcmFlacConverter.convertPCMToFlac(waveHeader, null, "/x/something/x/Gavin.flac");}
+    @Test(expected=IllegalArgumentException.class)
+    public void testBlankPCMPath()throws IOException{PcmFlacConverter.convertPCMToFlac(waveHeader, " ", "/x/something/x/Gavin.flac");}
+    @Test(expected=IllegalArgumentException.class)
+    public void testNullFlacPath()throws IOException{PcmFlacConverter.convertPCMToFlac(waveHeader, "/x/something/x/Gavin.pcm", null);}
+    @Test(expected=IllegalArgumentException.class)
+    public void testEmptyFlacPath()throws IOException{PcmFlacConverter.convertPCMToFlac(waveHeader, "/x/something/x/Gavin.pcm", "");}
+    @Test(expected=IllegalArgumentException.class)
+    public void testNullByteOrder()throws IOException{PcmFlacConverter.convertPCMToFlac(waveHeader, "/x/something/x/Gavin.pcm", "/x/something/x/Gavin.flac", null);}
+    @Test(expected=IOException.class)
+    public void testMissingPCMFile()throws IOException{PcmFlacConverter.convertPCMToFlac(waveHeader, PCM_FILE_PATH, FLAC_FILE_PATH);}
+
+    @Test
+    public void testPcmFlacConversion()throws IOException,NoSuchAlgorithmException{
+        //Enough for a full block and a short one, in Big Endian words.
+        final int frameCount=FlacEncoder.BLOCK_SIZE+100;
+        final ByteBuffer littleEndianData=ByteBuffer.allocate(frameCount*4).order(ByteOrder.LITTLE_ENDIAN);
+        final ByteBuffer bigEndianData=ByteBuffer.allocate(frameCount*4).order(ByteOrder.BIG_ENDIAN);
+        for (int i=0;i<frameCount*2;i++){
+            final short sample=(short)(Math.sin(i/20.0)*10000);
+            littleEndianData.putShort(sample);
+            bigEndianData.putShort(sample);
+        }
+        final FileOutputStream fileOutputStream=new FileOutputStream(PCM_FILE_PATH);
+        try {
+            fileOutputStream.write(bigEndianData.array());
+        }
+        finally {
+            fileOutputStream.close();
+        }
+
+        PcmFlacConverter.convertPCMToFlac(waveHeader, PCM_FILE_PATH, FLAC_FILE_PATH);
+
+        final File flacFile=new File(FLAC_FILE_PATH);
+        Assert.assertTrue("Flac file is not compressed", flacFile.length() < frameCount*4);
+        final RandomAccessFile randomAccessFile=new RandomAccessFile(flacFile,"r");
+        try {
+            Assert.assertEquals("Not a flac file", 0x664C6143, randomAccessFile.readInt());
+            randomAccessFile.seek(18);
+            Assert.assertEquals("Sample count incorrect", (long) frameCount, randomAccessFile.readLong() & 0xFFFFFFFFFL);
+            final byte[] md5=new byte[16];
+            randomAccessFile.readFully(md5);
+            assertArrayEquals("MD5 does not match the swapped data", MessageDigest.getInstance("MD5").digest(littleEndianData.array()), md5);
+            Assert.assertEquals("First frame does not follow the stream header", 0xFFF8, randomAccessFile.readUnsignedShort());
+        }
+        finally {
+            randomAccessFile.close();
+        }
+    }
+}
@@ -19,8 +19,12 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.Assert.assertArrayEquals;
 
@@ -37,7 +41,7 @@ public class PcmWavConverterTest {
     private static final String TEST_DIRECTORY_PATH=Environment.getExternalStorageDirectory().getAbsolutePath()+File.separator+"Test";
     @Before
     public void setup(){
-        waveHeader=new PcmWavConverter.WaveHeader(11025,(short)1,(short)8,-1);
+        waveHeader=new PcmWavConverter.WaveHeader(11025,(short)1,(short)16,-1);
         File file=new File(TEST_DIRECTORY_PATH);
         file.mkdirs();
     }
@@ -110,6 +114,439 @@ public class PcmWavConverterTest {
             Assert.assertEquals(pcmDataSample[i++],bb.getShort(0));
         }
     }
+    @Test(expected=IllegalArgumentException.class)
+    public void testNullByteOrder()throws IOException{PcmWavConverter.convertPCMToWav(waveHeader,"/x/something/x/Gavin.pcm","/x/something/x/Gavin.wav",null);}
+    @Test(expected=IllegalArgumentException.class)
+    public void testBigEndian24BitConversion()throws IOException{PcmWavConverter.convertPCMToWav(new PcmWavConverter.WaveHeader(48000,(short)1,(short)24),"/x/something/x/Gavin.pcm","/x/something/x/Gavin.wav",ByteOrder.BIG_ENDIAN);}
+    @Test
+    public void testPcmWavConversionLittleEndian()throws IOException{
+        final byte[] pcmData=new byte[]{1,2,3,4,5,6};
+        final byte[] wavData=convert(pcmData, ByteOrder.LITTLE_ENDIAN);
+
+        Assert.assertEquals("Wrong file size", PcmWavConverter.WAV_HEADER_SIZE_BYTES + pcmData.length, wavData.length);
+        for (int i=0;i<pcmData.length;i++){
+            Assert.assertEquals("Little endian data was changed at: "+i, pcmData[i], wavData[PcmWavConverter.WAV_HEADER_SIZE_BYTES + i]);
+        }
+    }
+    @Test
+    public void testPcmWavConversionOddByteCount()throws IOException{
+        final byte[] wavData=convert(new byte[]{1,2,3}, ByteOrder.BIG_ENDIAN);
+        final ByteBuffer wavBuffer=ByteBuffer.wrap(wavData).order(ByteOrder.LITTLE_ENDIAN);
+
+        Assert.assertEquals("Pad byte is missing", PcmWavConverter.WAV_HEADER_SIZE_BYTES + 4, wavData.length);
+        Assert.assertEquals("RIFF size does not include the pad byte", 40, wavBuffer.getInt(4));
+        Assert.assertEquals("Data size is incorrect", 3, wavBuffer.getInt(40));
+        Assert.assertEquals("Word was not swapped", 2, wavData[44]);
+        Assert.assertEquals("Word was not swapped", 1, wavData[45]);
+        Assert.assertEquals("Trailing byte was changed", 3, wavData[46]);
+        Assert.assertEquals("Pad byte is not 0", 0, wavData[47]);
+    }
+    @Test
+    public void testPcmWavConversionMultipleChunks()throws IOException{
+        //Bigger than the conversion buffer and not a multiple of 8, so words get split between reads.
+        final byte[] pcmData=new byte[300*1024+6];
+        for (int i=0;i<pcmData.length;i++){
+            pcmData[i]=(byte)i;
+        }
+        final byte[] wavData=convert(pcmData, ByteOrder.BIG_ENDIAN);
+
+        Assert.assertEquals("Wrong file size", PcmWavConverter.WAV_HEADER_SIZE_BYTES + pcmData.length, wavData.length);
+        for (int i=0;i<pcmData.length;i=i+2){
+            Assert.assertEquals("Word was not swapped at: "+i, pcmData[i+1], wavData[PcmWavConverter.WAV_HEADER_SIZE_BYTES + i]);
+            Assert.assertEquals("Word was not swapped at: "+i, pcmData[i], wavData[PcmWavConverter.WAV_HEADER_SIZE_BYTES + i + 1]);
+        }
+    }
+    @Test
+    public void testPcmWavConversionEightBitIsNotSwapped()throws IOException{
+        final byte[] pcmData=new byte[]{1,2,3,4,5};
+        //8 bit samples have no byte order, so Big Endian (the default) must not swap neighbouring samples.
+        final byte[] wavData=convert(new PcmWavConverter.WaveHeader(11025,(short)1,(short)8,-1), pcmData, ByteOrder.BIG_ENDIAN);
+
+        Assert.assertEquals("Wrong file size", PcmWavConverter.WAV_HEADER_SIZE_BYTES + pcmData.length + 1, wavData.length);
+        assertArrayEquals("8 bit data was changed", pcmData, Arrays.copyOfRange(wavData, PcmWavConverter.WAV_HEADER_SIZE_BYTES, PcmWavConverter.WAV_HEADER_SIZE_BYTES + pcmData.length));
+    }
+    @Test
+    public void testPcmWavConversionMulaw()throws IOException{
+        final String pcmFilePath=TEST_DIRECTORY_PATH+File.separator+"Test.pcm";
+        final String wavFilePath=TEST_DIRECTORY_PATH+File.separator+"Test.wav";
+        final FileOutputStream fileOutputStream=new FileOutputStream(pcmFilePath);
+        try {
+            //0, 32767 and -32768 as Big Endian words, then a trailing byte.
+            fileOutputStream.write(new byte[]{0,0,127,-1,-128,0,5});
+        }
+        finally {
+            fileOutputStream.close();
+        }
+        PcmWavConverter.convertPCMToWav(new PcmWavConverter.WaveHeader(11025,(short)1,(short)8,-1,false,PcmWavConverter.WAVE_FORMAT_MULAW), pcmFilePath, wavFilePath);
+
+        final RandomAccessFile randomAccessFile=new RandomAccessFile(wavFilePath,"r");
+        try {
+            final int headerSize=PcmWavConverter.WAV_HEADER_SIZE_BYTES+14;
+            Assert.assertEquals("Wrong file size", headerSize + 4, randomAccessFile.length());
+            randomAccessFile.seek(headerSize-4);
+            Assert.assertEquals("Data size is incorrect", 3, Integer.reverseBytes(randomAccessFile.readInt()));
+            Assert.assertEquals("Mu-law code incorrect", (byte)0xFF, randomAccessFile.readByte());
+            Assert.assertEquals("Mu-law code incorrect", (byte)0x80, randomAccessFile.readByte());
+            Assert.assertEquals("Mu-law code incorrect", 0x00, randomAccessFile.readByte());
+            Assert.assertEquals("Pad byte is not 0", 0, randomAccessFile.readByte());
+        }
+        finally {
+            randomAccessFile.close();
+        }
+    }
+    @Test
+    public void testPcmWavConversionImaAdpcmFactChunk()throws IOException{
+        //Neither ends on a whole block or a whole group of 8, so the last block is padded.
+        Assert.assertEquals("Mono sample count is incorrect", 10000, convertToImaAdpcmSampleCount((short)1,10000));
+        Assert.assertEquals("Stereo sample count is incorrect", 1019, convertToImaAdpcmSampleCount((short)2,1019));
+    }
+    @Test(expected=IllegalArgumentException.class)
+    public void testBatchNullPaths()throws InterruptedException{PcmWavConverter.convertPCMToWav(waveHeader,(List<String>)null,ByteOrder.BIG_ENDIAN,2);}
+    @Test(expected=IllegalArgumentException.class)
+    public void testBatchBlankPath()throws InterruptedException{PcmWavConverter.convertPCMToWav(waveHeader,Arrays.asList(" "),ByteOrder.BIG_ENDIAN,2);}
+    @Test(expected=IllegalArgumentException.class)
+    public void testBatchCompressedFormat()throws InterruptedException{PcmWavConverter.convertPCMToWav(new PcmWavConverter.WaveHeader(11025,(short)1,(short)8,-1,false,PcmWavConverter.WAVE_FORMAT_ALAW),new ArrayList<String>(),ByteOrder.BIG_ENDIAN,2);}
+    @Test(expected=IllegalArgumentException.class)
+    public void testBatchBadThreadCount()throws InterruptedException{PcmWavConverter.convertPCMToWav(waveHeader,new ArrayList<String>(),ByteOrder.BIG_ENDIAN,0);}
+    @Test(expected=IllegalArgumentException.class)
+    public void testBatchDirectoryNotADirectory()throws InterruptedException{PcmWavConverter.convertPCMDirectoryToWav(waveHeader,TEST_DIRECTORY_PATH+File.separator+"Missing",ByteOrder.BIG_ENDIAN,2);}
+    @Test
+    public void testBatchConversion()throws IOException,InterruptedException{
+        final List<String> pcmFilePaths=new ArrayList<String>();
+        for (int i=0;i<3;i++){
+            final String pcmFilePath=TEST_DIRECTORY_PATH+File.separator+"Test"+i+".pcm";
+            createPCMFile(pcmFilePath);
+            pcmFilePaths.add(pcmFilePath);
+        }
+        pcmFilePaths.add(TEST_DIRECTORY_PATH+File.separator+"Missing.pcm");
+
+        final List<PcmWavConverter.ConversionResult> results=PcmWavConverter.convertPCMToWav(waveHeader,pcmFilePaths,ByteOrder.BIG_ENDIAN,2);
+
+        Assert.assertEquals("Wrong number of results", 4, results.size());
+        for (int i=0;i<3;i++){
+            final PcmWavConverter.ConversionResult result=results.get(i);
+            Assert.assertTrue("Conversion failed: "+result.getError(), result.isSuccessful());
+            Assert.assertEquals("Results are out of order", pcmFilePaths.get(i), result.getPcmFilePath());
+            Assert.assertEquals("Wrong WAV file path", TEST_DIRECTORY_PATH+File.separator+"Test"+i+".wav", result.getWavFilePath());
+            Assert.assertEquals("Wrong WAV file size", PcmWavConverter.WAV_HEADER_SIZE_BYTES + pcmDataSample.length * 2, new File(result.getWavFilePath()).length());
+        }
+        Assert.assertFalse("Missing file was converted", results.get(3).isSuccessful());
+        Assert.assertTrue("Wrong error", results.get(3).getError() instanceof IOException);
+    }
+    @Test
+    public void testBatchConversionSplitsBigFiles()throws IOException,InterruptedException{
+        final String pcmFilePath=TEST_DIRECTORY_PATH+File.separator+"Big.pcm";
+        final byte[] pcmData=new byte[(int)PcmWavConverter.PARALLEL_RANGE_SIZE_BYTES*2+3];
+        for (int i=0;i<pcmData.length;i++){
+            pcmData[i]=(byte)i;
+        }
+        final FileOutputStream fileOutputStream=new FileOutputStream(pcmFilePath);
+        try {
+            fileOutputStream.write(pcmData);
+        }
+        finally {
+            fileOutputStream.close();
+        }
+
+        final List<PcmWavConverter.ConversionResult> results=PcmWavConverter.convertPCMDirectoryToWav(waveHeader,TEST_DIRECTORY_PATH,ByteOrder.BIG_ENDIAN,4);
+
+        Assert.assertEquals("Wrong number of results", 1, results.size());
+        Assert.assertTrue("Conversion failed: "+results.get(0).getError(), results.get(0).isSuccessful());
+        final DataInputStream dataInputStream=new DataInputStream(new BufferedInputStream(new FileInputStream(results.get(0).getWavFilePath())));
+        try {
+            dataInputStream.skipBytes(PcmWavConverter.WAV_HEADER_SIZE_BYTES);
+            for (int i=0;i<pcmData.length-1;i=i+2){
+                Assert.assertEquals("Word was not swapped at: "+i, pcmData[i+1], dataInputStream.readByte());
+                Assert.assertEquals("Word was not swapped at: "+i, pcmData[i], dataInputStream.readByte());
+            }
+            Assert.assertEquals("Trailing byte was changed", pcmData[pcmData.length-1], dataInputStream.readByte());
+            Assert.assertEquals("Pad byte is not 0", 0, dataInputStream.readByte());
+        }
+        finally {
+            dataInputStream.close();
+        }
+    }
+    @Test
+    public void testBatchConversionEightBitBigFileIsNotSwapped()throws IOException,InterruptedException{
+        final String pcmFilePath=TEST_DIRECTORY_PATH+File.separator+"Big.pcm";
+        final byte[] pcmData=new byte[(int)PcmWavConverter.PARALLEL_RANGE_SIZE_BYTES+3];
+        for (int i=0;i<pcmData.length;i++){
+            pcmData[i]=(byte)i;
+        }
+        final FileOutputStream fileOutputStream=new FileOutputStream(pcmFilePath);
+        try {
+            fileOutputStream.write(pcmData);
+        }
+        finally {
+            fileOutputStream.close();
+        }
+
+        final List<PcmWavConverter.ConversionResult> results=PcmWavConverter.convertPCMDirectoryToWav(new PcmWavConverter.WaveHeader(11025,(short)1,(short)8,-1),TEST_DIRECTORY_PATH,ByteOrder.BIG_ENDIAN,4);
+
+        Assert.assertTrue("Conversion failed: "+results.get(0).getError(), results.get(0).isSuccessful());
+        final byte[] wavData=readFile(results.get(0).getWavFilePath());
+        Assert.assertEquals("Wrong file size", PcmWavConverter.WAV_HEADER_SIZE_BYTES + pcmData.length + 1, wavData.length);
+        for (int i=0;i<pcmData.length;i++){
+            Assert.assertEquals("8 bit data was changed at: "+i, pcmData[i], wavData[PcmWavConverter.WAV_HEADER_SIZE_BYTES + i]);
+        }
+    }
+    @Test(expected=IllegalArgumentException.class)
+    public void testCreateWavHeaderNullWaveHeader(){PcmWavConverter.createWavHeader(null, 0);}
+    @Test(expected=IllegalArgumentException.class)
+    public void testCreateWavHeaderBadDataSize(){PcmWavConverter.createWavHeader(waveHeader, -1);}
+    @Test
+    public void testCreateWavHeader(){
+        final ByteBuffer header=PcmWavConverter.createWavHeader(new PcmWavConverter.WaveHeader(44100,(short)2,(short)16),1000);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+
+        Assert.assertEquals("Header has the wrong size", PcmWavConverter.WAV_HEADER_SIZE_BYTES, header.remaining());
+        Assert.assertEquals("RIFF size is incorrect", 1036, header.getInt(4));
+        Assert.assertEquals("Channel num is incorrect", 2, header.getShort(22));
+        Assert.assertEquals("Sample rate is incorrect", 44100, header.getInt(24));
+        Assert.assertEquals("Byte rate is incorrect", 44100*4, header.getInt(28));
+        Assert.assertEquals("Block align is incorrect", 4, header.getShort(32));
+        Assert.assertEquals("Bit rate is incorrect", 16, header.getShort(34));
+        Assert.assertEquals("Data size is incorrect", 1000, header.getInt(40));
+    }
+    @Test
+    public void testCreateWavHeaderImaAdpcm(){
+        final ByteBuffer header=PcmWavConverter.createWavHeader(new PcmWavConverter.WaveHeader(11025,(short)1,(short)4,-1,false,PcmWavConverter.WAVE_FORMAT_IMA_ADPCM),256+8);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+
+        Assert.assertEquals("Header has the wrong size", PcmWavConverter.WAV_HEADER_SIZE_BYTES+16, header.remaining());
+        Assert.assertEquals("fmt size is incorrect", 20, header.getInt(16));
+        Assert.assertEquals("Format tag is incorrect", PcmWavConverter.WAVE_FORMAT_IMA_ADPCM, header.getShort(20));
+        Assert.assertEquals("Byte rate is incorrect", 11025*256/505, header.getInt(28));
+        Assert.assertEquals("Block align is incorrect", 256, header.getShort(32));
+        Assert.assertEquals("Bit rate is incorrect", 4, header.getShort(34));
+        Assert.assertEquals("Extra size is incorrect", 2, header.getShort(36));
+        Assert.assertEquals("Samples per block is incorrect", 505, header.getShort(38));
+        //A full block, then a short one holding its header sample and a group of 8.
+        Assert.assertEquals("Sample count is incorrect", 505+9, header.getInt(48));
+        Assert.assertEquals("Data size is incorrect", 256+8, header.getInt(56));
+    }
+    @Test
+    public void testCreateWavHeaderWithSampleCount(){
+        final ByteBuffer header=PcmWavConverter.createWavHeader(new PcmWavConverter.WaveHeader(11025,(short)1,(short)4,-1,false,PcmWavConverter.WAVE_FORMAT_IMA_ADPCM),256+8,505+3);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+
+        Assert.assertEquals("Sample count is incorrect", 505+3, header.getInt(48));
+        Assert.assertEquals("Data size is incorrect", 256+8, header.getInt(56));
+    }
+    @Test(expected=IllegalArgumentException.class)
+    public void testCreateWavHeaderNegativeSampleCount(){PcmWavConverter.createWavHeader(new PcmWavConverter.WaveHeader(11025,(short)1,(short)4,-1,false,PcmWavConverter.WAVE_FORMAT_IMA_ADPCM),0,-1);}
+    @Test
+    public void testCreateWavHeader24Bit(){
+        final ByteBuffer header=PcmWavConverter.createWavHeader(new PcmWavConverter.WaveHeader(48000,(short)2,(short)24),600);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+
+        Assert.assertEquals("Header has the wrong size", PcmWavConverter.WAV_HEADER_SIZE_BYTES+24, header.remaining());
+        Assert.assertEquals("fmt size is incorrect", 40, header.getInt(16));
+        Assert.assertEquals("Format tag is incorrect", PcmWavConverter.WAVE_FORMAT_EXTENSIBLE, header.getShort(20));
+        Assert.assertEquals("Byte rate is incorrect", 48000*6, header.getInt(28));
+        Assert.assertEquals("Block align is incorrect", 6, header.getShort(32));
+        Assert.assertEquals("Bit rate is incorrect", 24, header.getShort(34));
+        Assert.assertEquals("Extra size is incorrect", 22, header.getShort(36));
+        Assert.assertEquals("Valid bits are incorrect", 24, header.getShort(38));
+        Assert.assertEquals("Channel mask is incorrect", 3, header.getInt(40));
+        Assert.assertEquals("Sub format is incorrect", PcmWavConverter.WAVE_FORMAT_PCM, header.getShort(44));
+        Assert.assertEquals("Data chunk is missing", 0x61746164, header.getInt(60));
+        Assert.assertEquals("Data size is incorrect", 600, header.getInt(64));
+    }
+    @Test
+    public void testCreateWavHeaderIeeeFloat(){
+        final ByteBuffer header=PcmWavConverter.createWavHeader(new PcmWavConverter.WaveHeader(48000,(short)1,(short)32,-1,false,PcmWavConverter.WAVE_FORMAT_IEEE_FLOAT),400);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+
+        Assert.assertEquals("Header has the wrong size", PcmWavConverter.WAV_HEADER_SIZE_BYTES+36, header.remaining());
+        Assert.assertEquals("Format tag is incorrect", PcmWavConverter.WAVE_FORMAT_EXTENSIBLE, header.getShort(20));
+        Assert.assertEquals("Channel mask is incorrect", 4, header.getInt(40));
+        Assert.assertEquals("Sub format is incorrect", PcmWavConverter.WAVE_FORMAT_IEEE_FLOAT, header.getShort(44));
+        Assert.assertEquals("Sample count is incorrect", 100, header.getInt(68));
+        Assert.assertEquals("Data size is incorrect", 400, header.getInt(76));
+    }
+    @Test(expected=IllegalArgumentException.class)
+    public void testCreateWavHeaderTooBigWithoutRf64(){PcmWavConverter.createWavHeader(waveHeader, 0xFFFFFFFFL);}
+    @Test
+    public void testCreateWavHeaderRf64Reserved(){
+        final ByteBuffer header=PcmWavConverter.createWavHeader(new PcmWavConverter.WaveHeader(44100,(short)2,(short)16,-1,true),1000);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+
+        Assert.assertEquals("Header has the wrong size", PcmWavConverter.RF64_HEADER_SIZE_BYTES, header.remaining());
+        Assert.assertEquals("Not a RIFF header", 0x46464952, header.getInt(0));
+        Assert.assertEquals("RIFF size is incorrect", 1000+PcmWavConverter.RF64_HEADER_SIZE_BYTES-8, header.getInt(4));
+        Assert.assertEquals("No JUNK chunk", 0x4B4E554A, header.getInt(12));
+        Assert.assertEquals("JUNK chunk size is incorrect", 28, header.getInt(16));
+        Assert.assertEquals("Channel num is incorrect", 2, header.getShort(58));
+        Assert.assertEquals("Data size is incorrect", 1000, header.getInt(76));
+    }
+    @Test
+    public void testCreateWavHeaderRf64(){
+        final long dataSize=5L*1073741824L;
+        final ByteBuffer header=PcmWavConverter.createWavHeader(new PcmWavConverter.WaveHeader(44100,(short)2,(short)16,-1,true),dataSize);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+
+        Assert.assertEquals("Header has the wrong size", PcmWavConverter.RF64_HEADER_SIZE_BYTES, header.remaining());
+        Assert.assertEquals("Not an RF64 header", 0x34364652, header.getInt(0));
+        Assert.assertEquals("RIFF size should be unset", -1, header.getInt(4));
+        Assert.assertEquals("No ds64 chunk", 0x34367364, header.getInt(12));
+        Assert.assertEquals("ds64 RIFF size is incorrect", dataSize+PcmWavConverter.RF64_HEADER_SIZE_BYTES-8, header.getLong(20));
+        Assert.assertEquals("ds64 data size is incorrect", dataSize, header.getLong(28));
+        Assert.assertEquals("ds64 sample count is incorrect", dataSize/4, header.getLong(36));
+        Assert.assertEquals("ds64 table length is incorrect", 0, header.getInt(44));
+        Assert.assertEquals("Data size should be unset", -1, header.getInt(76));
+    }
+    @Test(expected=IllegalArgumentException.class)
+    public void testUpdateWavHeaderNullChannel()throws IOException{PcmWavConverter.updateWavHeader(null, 0);}
+    @Test
+    public void testUpdateWavHeader()throws IOException{
+        final String wavFilePath=TEST_DIRECTORY_PATH+File.separator+"Test.wav";
+        final RandomAccessFile randomAccessFile=new RandomAccessFile(wavFilePath,"rw");
+        try {
+            randomAccessFile.getChannel().write(PcmWavConverter.createWavHeader(waveHeader, 0));
+            randomAccessFile.getChannel().write(ByteBuffer.wrap(new byte[]{1, 2, 3, 4}));
+
+            PcmWavConverter.updateWavHeader(randomAccessFile.getChannel(), 4);
+
+            Assert.assertEquals("Channel position was moved", PcmWavConverter.WAV_HEADER_SIZE_BYTES + 4, randomAccessFile.getChannel().position());
+            randomAccessFile.seek(4);
+            Assert.assertEquals("RIFF size was not updated", 40, Integer.reverseBytes(randomAccessFile.readInt()));
+            randomAccessFile.seek(40);
+            Assert.assertEquals("Data size was not updated", 4, Integer.reverseBytes(randomAccessFile.readInt()));
+            Assert.assertEquals("Data was overwritten", 1, randomAccessFile.readByte());
+        }
+        finally {
+            randomAccessFile.close();
+        }
+    }
+    @Test
+    public void testUpdateWavHeaderRf64()throws IOException{
+        final PcmWavConverter.WaveHeader rf64WaveHeader=new PcmWavConverter.WaveHeader(16000,(short)1,(short)16,-1,true);
+        final String wavFilePath=TEST_DIRECTORY_PATH+File.separator+"Test.wav";
+        final RandomAccessFile randomAccessFile=new RandomAccessFile(wavFilePath,"rw");
+        try {
+            randomAccessFile.getChannel().write(PcmWavConverter.createWavHeader(rf64WaveHeader, 0));
+            randomAccessFile.getChannel().write(ByteBuffer.wrap(new byte[]{1, 2, 3, 4}));
+
+            PcmWavConverter.updateWavHeader(randomAccessFile.getChannel(), rf64WaveHeader, 4);
+
+            Assert.assertEquals("Channel position was moved", PcmWavConverter.RF64_HEADER_SIZE_BYTES + 4, randomAccessFile.getChannel().position());
+            randomAccessFile.seek(4);
+            Assert.assertEquals("RIFF size was not updated", PcmWavConverter.RF64_HEADER_SIZE_BYTES - 4, Integer.reverseBytes(randomAccessFile.readInt()));
+            randomAccessFile.seek(PcmWavConverter.RF64_HEADER_SIZE_BYTES - 4);
+            Assert.assertEquals("Data size was not updated", 4, Integer.reverseBytes(randomAccessFile.readInt()));
+            Assert.assertEquals("Data was overwritten", 1, randomAccessFile.readByte());
+
+            //Past 4GB the same header turns into RF64.
+            PcmWavConverter.updateWavHeader(randomAccessFile.getChannel(), rf64WaveHeader, 0x100000000L);
+            randomAccessFile.seek(0);
+            Assert.assertEquals("Not an RF64 header", 0x52463634, randomAccessFile.readInt());
+            randomAccessFile.seek(28);
+            Assert.assertEquals("ds64 data size was not updated", 0x100000000L, Long.reverseBytes(randomAccessFile.readLong()));
+        }
+        finally {
+            randomAccessFile.close();
+        }
+    }
+    @Test(expected=IllegalArgumentException.class)
+    public void testRepairWavHeaderNullChannel()throws IOException{PcmWavConverter.repairWavHeader(null);}
+    @Test(expected=IOException.class)
+    public void testRepairWavHeaderNotAWavFile()throws IOException{
+        final RandomAccessFile randomAccessFile=new RandomAccessFile(TEST_DIRECTORY_PATH+File.separator+"Test.wav","rw");
+        try {
+            randomAccessFile.write(new byte[100]);
+            PcmWavConverter.repairWavHeader(randomAccessFile.getChannel());
+        }
+        finally {
+            randomAccessFile.close();
+        }
+    }
+    @Test
+    public void testRepairWavHeader()throws IOException{
+        final String wavFilePath=TEST_DIRECTORY_PATH+File.separator+"Test.wav";
+        final RandomAccessFile randomAccessFile=new RandomAccessFile(wavFilePath,"rw");
+        try {
+            //A header that was never finalized, followed by 3 stereo frames and half of a fourth one.
+            randomAccessFile.getChannel().write(PcmWavConverter.createWavHeader(new PcmWavConverter.WaveHeader(22050,(short)2,(short)16), 0));
+            randomAccessFile.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14});
+
+            Assert.assertEquals("Data size is incorrect", 12, PcmWavConverter.repairWavHeader(randomAccessFile.getChannel()));
+
+            Assert.assertEquals("Partial frame was not cut off", PcmWavConverter.WAV_HEADER_SIZE_BYTES + 12, randomAccessFile.length());
+            randomAccessFile.seek(4);
+            Assert.assertEquals("RIFF size was not repaired", 48, Integer.reverseBytes(randomAccessFile.readInt()));
+            randomAccessFile.seek(40);
+            Assert.assertEquals("Data size was not repaired", 12, Integer.reverseBytes(randomAccessFile.readInt()));
+            Assert.assertEquals("Data was overwritten", 1, randomAccessFile.readByte());
+        }
+        finally {
+            randomAccessFile.close();
+        }
+    }
+    @Test
+    public void testRepairWavHeaderAlaw()throws IOException{
+        final String wavFilePath=TEST_DIRECTORY_PATH+File.separator+"Test.wav";
+        final RandomAccessFile randomAccessFile=new RandomAccessFile(wavFilePath,"rw");
+        try {
+            //2 stereo frames and half of a third one.
+            randomAccessFile.getChannel().write(PcmWavConverter.createWavHeader(new PcmWavConverter.WaveHeader(11025,(short)2,(short)8,-1,false,PcmWavConverter.WAVE_FORMAT_ALAW), 0));
+            randomAccessFile.write(new byte[]{1, 2, 3, 4, 5});
+
+            Assert.assertEquals("Data size is incorrect", 4, PcmWavConverter.repairWavHeader(randomAccessFile.getChannel()));
+
+            final int headerSize=PcmWavConverter.WAV_HEADER_SIZE_BYTES+14;
+            Assert.assertEquals("Partial frame was not cut off", headerSize + 4, randomAccessFile.length());
+            randomAccessFile.seek(headerSize-12);
+            Assert.assertEquals("Sample count was not repaired", 2, Integer.reverseBytes(randomAccessFile.readInt()));
+            randomAccessFile.seek(headerSize-4);
+            Assert.assertEquals("Data size was not repaired", 4, Integer.reverseBytes(randomAccessFile.readInt()));
+            Assert.assertEquals("Data was overwritten", 1, randomAccessFile.readByte());
+        }
+        finally {
+            randomAccessFile.close();
+        }
+    }
+    @Test
+    public void testRepairWavHeaderExtensible()throws IOException{
+        final String wavFilePath=TEST_DIRECTORY_PATH+File.separator+"Test.wav";
+        final RandomAccessFile randomAccessFile=new RandomAccessFile(wavFilePath,"rw");
+        try {
+            //2 mono float samples and half of a third one.
+            randomAccessFile.getChannel().write(PcmWavConverter.createWavHeader(new PcmWavConverter.WaveHeader(48000,(short)1,(short)32,-1,false,PcmWavConverter.WAVE_FORMAT_IEEE_FLOAT), 0));
+            randomAccessFile.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10});
+
+            Assert.assertEquals("Data size is incorrect", 8, PcmWavConverter.repairWavHeader(randomAccessFile.getChannel()));
+
+            final int headerSize=PcmWavConverter.WAV_HEADER_SIZE_BYTES+36;
+            Assert.assertEquals("Partial sample was not cut off", headerSize + 8, randomAccessFile.length());
+            randomAccessFile.seek(headerSize-12);
+            Assert.assertEquals("Sample count was not repaired", 2, Integer.reverseBytes(randomAccessFile.readInt()));
+            randomAccessFile.seek(headerSize-4);
+            Assert.assertEquals("Data size was not repaired", 8, Integer.reverseBytes(randomAccessFile.readInt()));
+            Assert.assertEquals("Data was overwritten", 1, randomAccessFile.readByte());
+        }
+        finally {
+            randomAccessFile.close();
+        }
+    }
+    @Test
+    public void testRepairWavHeaderRf64Layout()throws IOException{
+        final String wavFilePath=TEST_DIRECTORY_PATH+File.separator+"Test.wav";
+        final RandomAccessFile randomAccessFile=new RandomAccessFile(wavFilePath,"rw");
+        try {
+            randomAccessFile.getChannel().write(PcmWavConverter.createWavHeader(new PcmWavConverter.WaveHeader(16000,(short)1,(short)16,-1,true), 0));
+            randomAccessFile.write(new byte[]{1, 2, 3, 4});
+
+            Assert.assertEquals("Data size is incorrect", 4, PcmWavConverter.repairWavHeader(randomAccessFile.getChannel()));
+
+            randomAccessFile.seek(PcmWavConverter.RF64_HEADER_SIZE_BYTES - 4);
+            Assert.assertEquals("Data size was not repaired", 4, Integer.reverseBytes(randomAccessFile.readInt()));
+            Assert.assertEquals("Data was overwritten", 1, randomAccessFile.readByte());
+        }
+        finally {
+            randomAccessFile.close();
+        }
+    }
     private void recursiveFileDelete(final File currentFile) throws IOException{
         if (currentFile.isDirectory()){
             for (final File file:currentFile.listFiles()){
@@ -120,6 +557,63 @@ public class PcmWavConverterTest {
             throw new IOException("Unable to delete file:"+currentFile.getName());
         }
     }
+    private byte[] convert(final byte[] pcmData,final ByteOrder byteOrder)throws IOException{
+        return convert(new PcmWavConverter.WaveHeader(44100,(short)1,(short)16), pcmData, byteOrder);
+    }
+    private byte[] convert(final PcmWavConverter.WaveHeader pcmWaveHeader,final byte[] pcmData,final ByteOrder byteOrder)throws IOException{
+        final String pcmFilePath=TEST_DIRECTORY_PATH+File.separator+"Test.pcm";
+        final String wavFilePath=TEST_DIRECTORY_PATH+File.separator+"Test.wav";
+        final FileOutputStream fileOutputStream=new FileOutputStream(pcmFilePath);
+        try {
+            fileOutputStream.write(pcmData);
+        }
+        finally {
+            fileOutputStream.close();
+        }
+        PcmWavConverter.convertPCMToWav(pcmWaveHeader, pcmFilePath, wavFilePath, byteOrder);
+        return readFile(wavFilePath);
+    }
+    private byte[] readFile(final String filePath)throws IOException{
+        final File wavFile=new File(filePath);
+        final byte[] wavData=new byte[(int)wavFile.length()];
+        final DataInputStream dataInputStream=new DataInputStream(new FileInputStream(wavFile));
+        try {
+            dataInputStream.readFully(wavData);
+        }
+        finally {
+            dataInputStream.close();
+        }
+        return wavData;
+    }
+    /**
+     * Converts a little endian sine of the given number of frames to IMA ADPCM.
+     * @return The sample count of the fact chunk of the WAV file.
+     */
+    private int convertToImaAdpcmSampleCount(final short channelNum,final int frameCount)throws IOException{
+        final String pcmFilePath=TEST_DIRECTORY_PATH+File.separator+"Ima"+channelNum+".pcm";
+        final String wavFilePath=TEST_DIRECTORY_PATH+File.separator+"Ima"+channelNum+".wav";
+        final ByteBuffer pcmData=ByteBuffer.allocate(frameCount*channelNum*2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i=0;i<frameCount*channelNum;i++){
+            pcmData.putShort((short)(Math.sin(i/20.0)*10000));
+        }
+        final FileOutputStream fileOutputStream=new FileOutputStream(pcmFilePath);
+        try {
+            fileOutputStream.write(pcmData.array());
+        }
+        finally {
+            fileOutputStream.close();
+        }
+        PcmWavConverter.convertPCMToWav(new PcmWavConverter.WaveHeader(11025,channelNum,(short)4,-1,false,PcmWavConverter.WAVE_FORMAT_IMA_ADPCM), pcmFilePath, wavFilePath, ByteOrder.LITTLE_ENDIAN);
+
+        final RandomAccessFile randomAccessFile=new RandomAccessFile(wavFilePath,"r");
+        try {
+            randomAccessFile.seek(48);
+            return Integer.reverseBytes(randomAccessFile.readInt());
+        }
+        finally {
+            randomAccessFile.close();
+        }
+    }
     private void createPCMFile(final String filePath)throws IOException{
         final DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filePath)));
         try {
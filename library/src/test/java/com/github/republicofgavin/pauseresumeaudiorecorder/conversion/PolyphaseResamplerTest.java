@@ -0,0 +1,194 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder.conversion;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Tests {@link PolyphaseResampler}
+ * @author (Gavin)republicofgavin@gmail.com
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, emulateSdk = 18)
+public class PolyphaseResamplerTest {
+    @Test(expected=IllegalArgumentException.class)
+    public void testBadInputSampleRate(){new PolyphaseResampler(0,44100,1);}
+    @Test(expected=IllegalArgumentException.class)
+    public void testBadOutputSampleRate(){new PolyphaseResampler(44100,-1,1);}
+    @Test(expected=IllegalArgumentException.class)
+    public void testBadChannelCount(){new PolyphaseResampler(48000,44100,0);}
+
+    @Test
+    public void testGetMaxOutputFrames(){
+        Assert.assertEquals("Max output incorrect for downsampling", 3, new PolyphaseResampler(48000,16000,1).getMaxOutputFrames(6));
+        Assert.assertEquals("Max output incorrect for upsampling", 13, new PolyphaseResampler(44100,48000,2).getMaxOutputFrames(11));
+    }
+    @Test
+    public void testOutputFrameCount(){
+        final PolyphaseResampler polyphaseResampler=new PolyphaseResampler(48000,44100,2);
+        final short[] input=new short[961];
+        final short[] output=new short[2*polyphaseResampler.getMaxOutputFrames(481)];
+        int outputLength=0;
+        //Odd sized blocks, so frames are split between calls.
+        for (int i=0;i<100;i++){
+            final int length=polyphaseResampler.process(input,(i%2==0) ? 961 : 959,output);
+            Assert.assertTrue("Output exceeds the maximum", length<=output.length);
+            Assert.assertEquals("Output is not whole frames", 0, length%2);
+            outputLength=outputLength+length;
+        }
+        //100 blocks of 480 frames is a second of input, less the frames still held back by the filter.
+        final int outputFrames=outputLength/2;
+        Assert.assertTrue("Too few frames "+outputFrames, outputFrames>44100-100 && outputFrames<=44100);
+    }
+    @Test
+    public void testDcPassesThrough(){
+        final PolyphaseResampler polyphaseResampler=new PolyphaseResampler(16000,44100,1);
+        final short[] input=new short[1000];
+        for (int i=0;i<input.length;i++){
+            input[i]=12345;
+        }
+        final short[] output=new short[polyphaseResampler.getMaxOutputFrames(input.length)];
+        final int length=polyphaseResampler.process(input,input.length,output);
+        //Past the start, where the filter still reaches back into the silence before the first frame.
+        for (int i=length/2;i<length;i++){
+            Assert.assertEquals("DC level changed at "+i, 12345, output[i]);
+        }
+    }
+    @Test
+    public void testSineKeepsItsLevel(){
+        final PolyphaseResampler polyphaseResampler=new PolyphaseResampler(44100,48000,1);
+        final short[] input=new short[44100];
+        for (int i=0;i<input.length;i++){
+            input[i]=(short)(16384*Math.sin(2*Math.PI*1000*i/44100.0));
+        }
+        final short[] output=new short[polyphaseResampler.getMaxOutputFrames(input.length)];
+        final int length=polyphaseResampler.process(input,input.length,output);
+        int peak=0;
+        for (int i=length/2;i<length;i++){
+            peak=Math.max(peak,Math.abs(output[i]));
+        }
+        Assert.assertTrue("Level changed "+peak, peak>16300 && peak<16450);
+    }
+    @Test
+    public void testCommonRatesUseExactPhases(){
+        //Every pair of common rates gets a phase for each of its output positions, 11025 to 48000 (640/147) and 11025 to 192000 (2560/147) included.
+        final int[] sampleRates={8000,11025,16000,22050,24000,32000,44100,48000,88200,96000,176400,192000};
+        for (final int inputSampleRate:sampleRates){
+            for (final int outputSampleRate:sampleRates){
+                int a=inputSampleRate;
+                int b=outputSampleRate;
+                while (b!=0){
+                    final int remainder=a%b;
+                    a=b;
+                    b=remainder;
+                }
+                Assert.assertTrue("Too many phases for "+inputSampleRate+" to "+outputSampleRate, outputSampleRate/a<=PolyphaseResampler.MAX_PHASES);
+            }
+        }
+        //Rounding the phases off would put this tone tens of steps off the ideal one.
+        final PolyphaseResampler polyphaseResampler=new PolyphaseResampler(11025,48000,1);
+        final short[] input=new short[11025];
+        for (int i=0;i<input.length;i++){
+            input[i]=(short) Math.round(16384*Math.sin(2*Math.PI*3000*i/11025.0));
+        }
+        final short[] output=new short[polyphaseResampler.getMaxOutputFrames(input.length)];
+        final int length=polyphaseResampler.process(input,input.length,output);
+        for (int i=length/4;i<length*3/4;i++){
+            Assert.assertEquals("Sample incorrect at "+i, 16384*Math.sin(2*Math.PI*3000*i/48000.0), output[i], 4);
+        }
+    }
+    @Test
+    public void testAboveNyquistIsRejected(){
+        //10 kHz is above the 8 kHz Nyquist frequency of the output, so it has to be filtered out rather than folded down to 6 kHz.
+        final PolyphaseResampler polyphaseResampler=new PolyphaseResampler(48000,16000,1);
+        final short[] input=new short[48000];
+        for (int i=0;i<input.length;i++){
+            input[i]=(short)(16384*Math.sin(2*Math.PI*10000*i/48000.0));
+        }
+        final short[] output=new short[polyphaseResampler.getMaxOutputFrames(input.length)];
+        final int length=polyphaseResampler.process(input,input.length,output);
+        int peak=0;
+        for (int i=length/2;i<length;i++){
+            peak=Math.max(peak,Math.abs(output[i]));
+        }
+        Assert.assertTrue("Aliasing leaked through "+peak, peak<16);
+    }
+    @Test
+    public void testByteBufferMatchesShorts(){
+        final short[] input=new short[600];
+        for (int i=0;i<input.length;i++){
+            input[i]=(short)(i*97-20000);
+        }
+        final PolyphaseResampler shortResampler=new PolyphaseResampler(22050,11025,2);
+        final short[] expected=new short[2*shortResampler.getMaxOutputFrames(300)];
+        final int expectedLength=shortResampler.process(input,input.length,expected);
+
+        final ByteBuffer pcmData=ByteBuffer.allocate(input.length*2).order(ByteOrder.LITTLE_ENDIAN);
+        pcmData.asShortBuffer().put(input);
+        final ByteBuffer output=ByteBuffer.allocate(expected.length*2).order(ByteOrder.LITTLE_ENDIAN);
+        new PolyphaseResampler(22050,11025,2).process(pcmData,2,output);
+        output.flip();
+
+        Assert.assertFalse("Input was not consumed", pcmData.hasRemaining());
+        Assert.assertEquals("Output size incorrect", expectedLength*2, output.remaining());
+        for (int i=0;i<expectedLength;i++){
+            Assert.assertEquals("Sample incorrect at "+i, expected[i], output.getShort());
+        }
+    }
+    @Test
+    public void testEightBit(){
+        final PolyphaseResampler polyphaseResampler=new PolyphaseResampler(8000,16000,1);
+        final ByteBuffer pcmData=ByteBuffer.allocate(400);
+        while (pcmData.hasRemaining()){
+            pcmData.put((byte) 200);
+        }
+        pcmData.flip();
+        final ByteBuffer output=ByteBuffer.allocate(polyphaseResampler.getMaxOutputFrames(400));
+        polyphaseResampler.process(pcmData,1,output);
+        output.flip();
+
+        Assert.assertTrue("Nothing was written", output.remaining()>700);
+        Assert.assertEquals("8 bit level changed", (byte) 200, output.get(output.limit()-1));
+    }
+    @Test
+    public void testFloat(){
+        final PolyphaseResampler polyphaseResampler=new PolyphaseResampler(48000,16000,1);
+        final ByteBuffer pcmData=ByteBuffer.allocate(4*600).order(ByteOrder.nativeOrder());
+        while (pcmData.hasRemaining()){
+            pcmData.putFloat(1.5f);
+        }
+        pcmData.flip();
+        final ByteBuffer output=ByteBuffer.allocate(4*polyphaseResampler.getMaxOutputFrames(600)).order(ByteOrder.nativeOrder());
+        polyphaseResampler.process(pcmData,4,output);
+        output.flip();
+
+        Assert.assertTrue("Nothing was written", output.remaining()>4*150);
+        //Floats are not clipped to full scale.
+        Assert.assertEquals("Float level changed", 1.5f, output.getFloat(output.limit()-4), 0.001f);
+    }
+    @Test
+    public void testReset(){
+        final PolyphaseResampler polyphaseResampler=new PolyphaseResampler(44100,22050,1);
+        final short[] input=new short[200];
+        for (int i=0;i<input.length;i++){
+            input[i]=(short)(i*100);
+        }
+        final short[] first=new short[polyphaseResampler.getMaxOutputFrames(input.length)];
+        final short[] second=new short[first.length];
+        final int firstLength=polyphaseResampler.process(input,input.length,first);
+        Assert.assertTrue("Nothing was written", firstLength>0);
+        polyphaseResampler.reset();
+        final int secondLength=polyphaseResampler.process(input,input.length,second);
+
+        Assert.assertEquals("Output size differs after reset", firstLength, secondLength);
+        for (int i=0;i<firstLength;i++){
+            Assert.assertEquals("Output differs after reset", first[i], second[i]);
+        }
+    }
+}
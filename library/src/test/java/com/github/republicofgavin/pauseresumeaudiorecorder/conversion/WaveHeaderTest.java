@@ -20,9 +20,11 @@ public class WaveHeaderTest {
     @Test (expected = IllegalArgumentException.class)
     public void testConstructorBadChannelNum(){new PcmWavConverter.WaveHeader(22050,(short)3,(short)8,1000);}
     @Test(expected = IllegalArgumentException.class)
-    public void testConstructorBadSampleRateInHtz(){new PcmWavConverter.WaveHeader(22051,(short)2,(short)16,1000);}
+    public void testConstructorBadSampleRateInHtz(){new PcmWavConverter.WaveHeader(0,(short)2,(short)16,1000);}
     @Test(expected = IllegalArgumentException.class)
-    public void testConstructorBadBitRate(){new PcmWavConverter.WaveHeader(16000,(short)1,(short)32,1000);}
+    public void testConstructorBadBitRate(){new PcmWavConverter.WaveHeader(16000,(short)1,(short)12,1000);}
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorBadFloatBitRate(){new PcmWavConverter.WaveHeader(16000,(short)1,(short)16,-1,false,PcmWavConverter.WAVE_FORMAT_IEEE_FLOAT);}
     @Test
     public void testConstructorAndGetters(){
         PcmWavConverter.WaveHeader waveHeader= new PcmWavConverter.WaveHeader(11025,(short)1,(short)8,1337);
@@ -31,5 +33,68 @@ public class WaveHeaderTest {
         Assert.assertEquals("Incorrect channel number",1,waveHeader.getChannelNum());
         Assert.assertEquals("Incorrect bit rate",8,waveHeader.getBitRate());
         Assert.assertEquals("Incorrect byte number",1337,waveHeader.getByteNumber());
+        Assert.assertFalse("RF64 should be disabled by default",waveHeader.isRf64Enabled());
+        Assert.assertEquals("Incorrect header size",PcmWavConverter.WAV_HEADER_SIZE_BYTES,waveHeader.getHeaderSizeInBytes());
+    }
+    @Test
+    public void testConstructorRf64Enabled(){
+        PcmWavConverter.WaveHeader waveHeader= new PcmWavConverter.WaveHeader(44100,(short)2,(short)16,-1,true);
+
+        Assert.assertTrue("RF64 should be enabled",waveHeader.isRf64Enabled());
+        Assert.assertEquals("Incorrect header size",PcmWavConverter.RF64_HEADER_SIZE_BYTES,waveHeader.getHeaderSizeInBytes());
+    }
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorBadFormatTag(){new PcmWavConverter.WaveHeader(11025,(short)1,(short)8,-1,false,(short)2);}
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorBadCompressedBitRate(){new PcmWavConverter.WaveHeader(11025,(short)1,(short)16,-1,false,PcmWavConverter.WAVE_FORMAT_MULAW);}
+    @Test
+    public void testConstructorPcmByDefault(){
+        PcmWavConverter.WaveHeader waveHeader= new PcmWavConverter.WaveHeader(44100,(short)2,(short)16);
+
+        Assert.assertEquals("Incorrect format tag",PcmWavConverter.WAVE_FORMAT_PCM,waveHeader.getFormatTag());
+        Assert.assertEquals("Incorrect block align",4,waveHeader.getBlockAlign());
+        Assert.assertEquals("Incorrect samples per block",1,waveHeader.getSamplesPerBlock());
+    }
+    @Test
+    public void testConstructorG711(){
+        PcmWavConverter.WaveHeader waveHeader= new PcmWavConverter.WaveHeader(11025,(short)2,(short)8,-1,false,PcmWavConverter.WAVE_FORMAT_ALAW);
+
+        Assert.assertEquals("Incorrect format tag",PcmWavConverter.WAVE_FORMAT_ALAW,waveHeader.getFormatTag());
+        Assert.assertEquals("Incorrect block align",2,waveHeader.getBlockAlign());
+        Assert.assertEquals("Incorrect samples per block",1,waveHeader.getSamplesPerBlock());
+        Assert.assertEquals("Incorrect header size",PcmWavConverter.WAV_HEADER_SIZE_BYTES+14,waveHeader.getHeaderSizeInBytes());
+    }
+    @Test
+    public void testConstructorImaAdpcm(){
+        PcmWavConverter.WaveHeader waveHeader= new PcmWavConverter.WaveHeader(22050,(short)2,(short)4,-1,false,PcmWavConverter.WAVE_FORMAT_IMA_ADPCM);
+
+        Assert.assertEquals("Incorrect format tag",PcmWavConverter.WAVE_FORMAT_IMA_ADPCM,waveHeader.getFormatTag());
+        Assert.assertEquals("Incorrect block align",1024,waveHeader.getBlockAlign());
+        Assert.assertEquals("Incorrect samples per block",1017,waveHeader.getSamplesPerBlock());
+        Assert.assertEquals("Incorrect header size",PcmWavConverter.WAV_HEADER_SIZE_BYTES+16,waveHeader.getHeaderSizeInBytes());
+    }
+    @Test
+    public void testConstructor24BitPcm(){
+        PcmWavConverter.WaveHeader waveHeader= new PcmWavConverter.WaveHeader(48000,(short)2,(short)24);
+
+        Assert.assertTrue("24 bit PCM should be extensible",waveHeader.isExtensible());
+        Assert.assertFalse("PCM is not compressed",waveHeader.isCompressed());
+        Assert.assertEquals("Incorrect block align",6,waveHeader.getBlockAlign());
+        Assert.assertEquals("Incorrect header size",PcmWavConverter.WAV_HEADER_SIZE_BYTES+24,waveHeader.getHeaderSizeInBytes());
+    }
+    @Test
+    public void testConstructorIeeeFloat(){
+        PcmWavConverter.WaveHeader waveHeader= new PcmWavConverter.WaveHeader(48000,(short)1,(short)32,-1,false,PcmWavConverter.WAVE_FORMAT_IEEE_FLOAT);
+
+        Assert.assertEquals("Incorrect format tag",PcmWavConverter.WAVE_FORMAT_IEEE_FLOAT,waveHeader.getFormatTag());
+        Assert.assertTrue("Float should be extensible",waveHeader.isExtensible());
+        Assert.assertFalse("Float is not compressed",waveHeader.isCompressed());
+        Assert.assertEquals("Incorrect block align",4,waveHeader.getBlockAlign());
+        Assert.assertEquals("Incorrect header size",PcmWavConverter.WAV_HEADER_SIZE_BYTES+36,waveHeader.getHeaderSizeInBytes());
+    }
+    @Test
+    public void testConstructor16BitNotExtensible(){
+        Assert.assertFalse("16 bit PCM should not be extensible",new PcmWavConverter.WaveHeader(44100,(short)2,(short)16).isExtensible());
+        Assert.assertTrue("mu-law is compressed",new PcmWavConverter.WaveHeader(8000,(short)1,(short)8,-1,false,PcmWavConverter.WAVE_FORMAT_MULAW).isCompressed());
     }
 }
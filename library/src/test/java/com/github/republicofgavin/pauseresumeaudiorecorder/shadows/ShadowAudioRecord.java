@@ -2,6 +2,8 @@ package com.github.republicofgavin.pauseresumeaudiorecorder.shadows;
 
 import android.media.AudioRecord;
 
+import java.nio.ByteBuffer;
+
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
 
@@ -47,6 +49,20 @@ public class ShadowAudioRecord {
         }
         return sizeInShorts;
     }
+    @Implementation
+    public int read(final byte[] audioData,final int offsetInBytes,final int sizeInBytes){
+        for (int count=offsetInBytes; count<offsetInBytes+sizeInBytes; count++){
+            audioData[count]=(byte)1;
+        }
+        return sizeInBytes;
+    }
+    @Implementation
+    public int read(final ByteBuffer audioBuffer,final int sizeInBytes){
+        for (int count=0; count<sizeInBytes; count++){
+            audioBuffer.put(count,(byte)1);
+        }
+        return sizeInBytes;
+    }
     public void setMinBufferSize(final int minBufferSize){
         this.minBufferSize=minBufferSize;
     }
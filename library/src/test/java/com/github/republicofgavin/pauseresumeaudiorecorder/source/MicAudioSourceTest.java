@@ -0,0 +1,70 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder.source;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+
+import com.github.republicofgavin.pauseresumeaudiorecorder.shadows.ShadowAudioRecord;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.reflect.Field;
+
+/**
+ * Tests {@link MicAudioSource}
+ * @author Gavin(republicofgavin@gmail.com)
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE,shadows=ShadowAudioRecord.class, emulateSdk = 18)
+public class MicAudioSourceTest {
+    @Test
+    public void testOpen()throws NoSuchFieldException,IllegalAccessException{
+        final MicAudioSource micAudioSource=new MicAudioSource(MediaRecorder.AudioSource.VOICE_RECOGNITION);
+        Assert.assertEquals("Buffer size should be the minimum buffer size", 100, micAudioSource.open(22050,AudioFormat.CHANNEL_IN_STEREO,AudioFormat.ENCODING_PCM_8BIT));
+
+        final ShadowAudioRecord shadowAudioRecord=Robolectric.shadowOf_(getAudioRecord(micAudioSource));
+        Assert.assertEquals("AudioRecord has wrong audio source", MediaRecorder.AudioSource.VOICE_RECOGNITION, shadowAudioRecord.audioSource);
+        Assert.assertEquals("AudioRecord has wrong sample rate", 22050, shadowAudioRecord.sampleRateInHz);
+        Assert.assertEquals("AudioRecord has wrong channel config", AudioFormat.CHANNEL_IN_STEREO, shadowAudioRecord.channelConfig);
+        Assert.assertEquals("AudioRecord has wrong audio encoding", AudioFormat.ENCODING_PCM_8BIT, shadowAudioRecord.audioFormat);
+        Assert.assertEquals("AudioRecord has wrong buffer size", 100, shadowAudioRecord.bufferSizeInBytes);
+    }
+    @Test
+    public void testMicByDefault()throws NoSuchFieldException,IllegalAccessException{
+        final MicAudioSource micAudioSource=new MicAudioSource();
+        micAudioSource.open(44100,AudioFormat.CHANNEL_IN_MONO,AudioFormat.ENCODING_PCM_16BIT);
+        Assert.assertEquals("AudioRecord has wrong audio source", MediaRecorder.AudioSource.MIC, ((ShadowAudioRecord) Robolectric.shadowOf_(getAudioRecord(micAudioSource))).audioSource);
+    }
+    @Test(expected=IllegalStateException.class)
+    public void testOpenTwice(){
+        final MicAudioSource micAudioSource=new MicAudioSource();
+        micAudioSource.open(44100,AudioFormat.CHANNEL_IN_MONO,AudioFormat.ENCODING_PCM_16BIT);
+        micAudioSource.open(44100,AudioFormat.CHANNEL_IN_MONO,AudioFormat.ENCODING_PCM_16BIT);
+    }
+    @Test
+    public void testStartStopAndRead()throws NoSuchFieldException,IllegalAccessException{
+        final MicAudioSource micAudioSource=new MicAudioSource();
+        micAudioSource.open(44100,AudioFormat.CHANNEL_IN_MONO,AudioFormat.ENCODING_PCM_16BIT);
+        final ShadowAudioRecord shadowAudioRecord=Robolectric.shadowOf_(getAudioRecord(micAudioSource));
+
+        micAudioSource.start();
+        Assert.assertTrue("AudioRecord is not recording", shadowAudioRecord.isRecording);
+        final short[] samples=new short[4];
+        Assert.assertEquals("Read was not passed through", 4, micAudioSource.read(samples,0,4));
+        Assert.assertEquals("Samples were not read", 1, samples[3]);
+        micAudioSource.stop();
+        Assert.assertFalse("AudioRecord is still recording", shadowAudioRecord.isRecording);
+        micAudioSource.release();
+    }
+    private static AudioRecord getAudioRecord(final MicAudioSource micAudioSource)throws NoSuchFieldException,IllegalAccessException{
+        final Field audioRecordField=MicAudioSource.class.getDeclaredField("audioRecord");
+        audioRecordField.setAccessible(true);
+        return (AudioRecord)audioRecordField.get(micAudioSource);
+    }
+}
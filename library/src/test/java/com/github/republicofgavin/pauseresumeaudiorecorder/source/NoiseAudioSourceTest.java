@@ -0,0 +1,55 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder.source;
+
+import android.media.AudioFormat;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Tests {@link NoiseAudioSource}
+ * @author Gavin(republicofgavin@gmail.com)
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, emulateSdk = 18)
+public class NoiseAudioSourceTest {
+    @Test(expected=IllegalArgumentException.class)
+    public void testBadAmplitude(){new NoiseAudioSource(-0.1f,1,false);}
+    @Test
+    public void testLevelAndSpread(){
+        final short[] samples=read(new NoiseAudioSource(0.25f,1,false),20000);
+        long sum=0;
+        int peak=0;
+        for (final short sample:samples){
+            sum=sum+sample;
+            peak=Math.max(peak,Math.abs(sample));
+        }
+        Assert.assertTrue("Noise is over its amplitude: "+peak, peak<=8192);
+        Assert.assertTrue("Noise does not reach its amplitude: "+peak, peak>8000);
+        Assert.assertTrue("Noise is not centered: "+sum/samples.length, Math.abs(sum/samples.length)<200);
+    }
+    @Test
+    public void testSeed(){
+        final short[] first=read(new NoiseAudioSource(0.5f,7,false),100);
+        final short[] second=read(new NoiseAudioSource(0.5f,7,false),100);
+        final short[] other=read(new NoiseAudioSource(0.5f,8,false),100);
+        boolean differs=false;
+        for (int i=0;i<first.length;i++){
+            Assert.assertEquals("Same seed gave different noise at "+i, first[i], second[i]);
+            differs=differs || first[i]!=other[i];
+        }
+        Assert.assertTrue("Different seeds gave the same noise", differs);
+    }
+    private static short[] read(final NoiseAudioSource noiseAudioSource,final int sampleCount){
+        noiseAudioSource.open(16000,AudioFormat.CHANNEL_IN_STEREO,AudioFormat.ENCODING_PCM_16BIT);
+        noiseAudioSource.start();
+        final short[] samples=new short[sampleCount];
+        noiseAudioSource.read(samples,0,sampleCount);
+        noiseAudioSource.stop();
+        noiseAudioSource.release();
+        return samples;
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder.source;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Tests {@link ToneAudioSource} and the conversions and pacing of {@link SyntheticAudioSource}
+ * @author Gavin(republicofgavin@gmail.com)
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, emulateSdk = 18)
+public class ToneAudioSourceTest {
+    @Test(expected=IllegalArgumentException.class)
+    public void testBadFrequency(){new ToneAudioSource(0,0.5f,false);}
+    @Test(expected=IllegalArgumentException.class)
+    public void testBadAmplitude(){new ToneAudioSource(1000,1.5f,false);}
+    @Test(expected=IllegalArgumentException.class)
+    public void testOpenBadEncoding(){new ToneAudioSource(1000,0.5f,false).open(8000,AudioFormat.CHANNEL_IN_MONO,0);}
+    @Test(expected=IllegalArgumentException.class)
+    public void testOpenBadChannel(){new ToneAudioSource(1000,0.5f,false).open(8000,0,AudioFormat.ENCODING_PCM_16BIT);}
+    @Test(expected=IllegalStateException.class)
+    public void testOpenTwice(){
+        final ToneAudioSource toneAudioSource=new ToneAudioSource(1000,0.5f,false);
+        toneAudioSource.open(8000,AudioFormat.CHANNEL_IN_MONO,AudioFormat.ENCODING_PCM_16BIT);
+        toneAudioSource.open(8000,AudioFormat.CHANNEL_IN_MONO,AudioFormat.ENCODING_PCM_16BIT);
+    }
+    @Test
+    public void testOpenBufferSize(){
+        //20ms of stereo 16 bit audio.
+        Assert.assertEquals("Buffer size incorrect", 160*2*2, new ToneAudioSource(1000,0.5f,false).open(8000,AudioFormat.CHANNEL_IN_STEREO,AudioFormat.ENCODING_PCM_16BIT));
+    }
+    @Test
+    public void testReadShorts(){
+        final ToneAudioSource toneAudioSource=new ToneAudioSource(1000,0.5f,false);
+        toneAudioSource.open(8000,AudioFormat.CHANNEL_IN_STEREO,AudioFormat.ENCODING_PCM_16BIT);
+        toneAudioSource.start();
+        //More than a read is sized for, and not a whole number of frames.
+        final short[] samples=new short[1001];
+        Assert.assertEquals("Only whole frames should be read", 1000, toneAudioSource.read(samples,0,samples.length));
+        for (int i=0;i<1000;i++){
+            final long expected=Math.round(16384*Math.sin(Math.PI*(i/2)/4));
+            Assert.assertTrue("Sample incorrect at "+i+": "+samples[i], Math.abs(samples[i]-expected)<=1);
+        }
+        Assert.assertEquals("Sample past the frames read was written", 0, samples[1000]);
+    }
+    @Test
+    public void testReadEightBitBytes(){
+        final ToneAudioSource toneAudioSource=new ToneAudioSource(2000,1f,false);
+        toneAudioSource.open(8000,AudioFormat.CHANNEL_IN_MONO,AudioFormat.ENCODING_PCM_8BIT);
+        toneAudioSource.start();
+        final byte[] samples=new byte[6];
+        Assert.assertEquals("Size incorrect", 4, toneAudioSource.read(samples,2,4));
+        //0, full scale (clipped), 0, minus full scale.
+        Assert.assertEquals("Sample incorrect", (byte) 128, samples[2]);
+        Assert.assertEquals("Sample incorrect", (byte) 255, samples[3]);
+        Assert.assertEquals("Sample incorrect", (byte) 128, samples[4]);
+        Assert.assertEquals("Sample incorrect", (byte) 0, samples[5]);
+    }
+    @Test
+    public void testReadSixteenBitBytes(){
+        final ToneAudioSource toneAudioSource=new ToneAudioSource(2000,0.5f,false);
+        toneAudioSource.open(8000,AudioFormat.CHANNEL_IN_MONO,AudioFormat.ENCODING_PCM_16BIT);
+        toneAudioSource.start();
+        final byte[] samples=new byte[4];
+        Assert.assertEquals("Size incorrect", 4, toneAudioSource.read(samples,0,4));
+        Assert.assertEquals("Sample incorrect", 16384, ByteBuffer.wrap(samples).order(ByteOrder.nativeOrder()).getShort(2));
+    }
+    @Test
+    public void testReadFloats(){
+        final ToneAudioSource toneAudioSource=new ToneAudioSource(2000,0.5f,false);
+        toneAudioSource.open(8000,AudioFormat.CHANNEL_IN_MONO,AudioFormat.ENCODING_PCM_FLOAT);
+        toneAudioSource.start();
+        //The order of the buffer does not matter, the samples are in native order.
+        final ByteBuffer samples=ByteBuffer.allocateDirect(16).order(ByteOrder.nativeOrder()==ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        Assert.assertEquals("Size incorrect", 16, toneAudioSource.read(samples,16));
+        Assert.assertEquals("Position was moved", 0, samples.position());
+        samples.order(ByteOrder.nativeOrder());
+        Assert.assertEquals("Sample incorrect", 0.5f, samples.getFloat(4), 0.0001f);
+        Assert.assertEquals("Sample incorrect", -0.5f, samples.getFloat(12), 0.0001f);
+        Assert.assertEquals("Floats cannot be read as bytes", AudioRecord.ERROR_INVALID_OPERATION, toneAudioSource.read(new byte[4],0,4));
+        Assert.assertEquals("Floats cannot be read as shorts", AudioRecord.ERROR_INVALID_OPERATION, toneAudioSource.read(new short[4],0,4));
+    }
+    @Test
+    public void testReadBadSize(){
+        final ToneAudioSource toneAudioSource=new ToneAudioSource(1000,0.5f,false);
+        toneAudioSource.open(8000,AudioFormat.CHANNEL_IN_MONO,AudioFormat.ENCODING_PCM_16BIT);
+        Assert.assertEquals("Read past the array was allowed", AudioRecord.ERROR_BAD_VALUE, toneAudioSource.read(new short[4],2,4));
+    }
+    @Test
+    public void testRealTimePaced(){
+        final ToneAudioSource toneAudioSource=new ToneAudioSource(1000,0.5f,true);
+        Assert.assertTrue("Source should be paced", toneAudioSource.isRealTimePaced());
+        toneAudioSource.open(8000,AudioFormat.CHANNEL_IN_MONO,AudioFormat.ENCODING_PCM_16BIT);
+        toneAudioSource.start();
+        final long startNanos=System.nanoTime();
+        //Two reads of 100ms each.
+        toneAudioSource.read(new short[800],0,800);
+        toneAudioSource.read(new short[800],0,800);
+        Assert.assertTrue("Reads were not paced", System.nanoTime()-startNanos>=190L*1000000L);
+    }
+    @Test
+    public void testNotPaced(){
+        final ToneAudioSource toneAudioSource=new ToneAudioSource(1000,0.5f,false);
+        toneAudioSource.open(8000,AudioFormat.CHANNEL_IN_MONO,AudioFormat.ENCODING_PCM_16BIT);
+        toneAudioSource.start();
+        final long startNanos=System.nanoTime();
+        //10 seconds of audio.
+        toneAudioSource.read(new short[80000],0,80000);
+        Assert.assertTrue("Reads were paced", System.nanoTime()-startNanos<1000L*1000000L);
+    }
+}
@@ -0,0 +1,159 @@
+package com.github.republicofgavin.pauseresumeaudiorecorder.source;
+
+import android.media.AudioFormat;
+import android.os.Environment;
+
+import com.github.republicofgavin.pauseresumeaudiorecorder.conversion.PcmWavConverter;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Tests {@link WavFileAudioSource}
+ * @author Gavin(republicofgavin@gmail.com)
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, emulateSdk = 18)
+public class WavFileAudioSourceTest {
+    private static final String WAV_FILE_PATH=Environment.getExternalStorageDirectory().getAbsolutePath()+File.separator+"Source.wav";
+
+    @After
+    public void tearDown(){
+        new File(WAV_FILE_PATH).delete();
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testBlankPath(){new WavFileAudioSource(" ",false,false);}
+    @Test(expected=IllegalArgumentException.class)
+    public void testMissingFile(){new WavFileAudioSource(WAV_FILE_PATH,false,false).open(8000,AudioFormat.CHANNEL_IN_MONO,AudioFormat.ENCODING_PCM_16BIT);}
+    @Test(expected=IllegalArgumentException.class)
+    public void testNotAWavFile()throws IOException{
+        writeFile(ByteBuffer.wrap(new byte[64]),new byte[0]);
+        new WavFileAudioSource(WAV_FILE_PATH,false,false).open(8000,AudioFormat.CHANNEL_IN_MONO,AudioFormat.ENCODING_PCM_16BIT);
+    }
+    @Test(expected=IllegalArgumentException.class)
+    public void testWrongSampleRate()throws IOException{
+        writeWavFile(new PcmWavConverter.WaveHeader(16000,(short)1,(short)16),new short[]{1,2});
+        new WavFileAudioSource(WAV_FILE_PATH,false,false).open(8000,AudioFormat.CHANNEL_IN_MONO,AudioFormat.ENCODING_PCM_16BIT);
+    }
+    @Test(expected=IllegalArgumentException.class)
+    public void testCompressedFile()throws IOException{
+        writeFile(PcmWavConverter.createWavHeader(new PcmWavConverter.WaveHeader(8000,(short)1,(short)8,-1,false,PcmWavConverter.WAVE_FORMAT_MULAW),2),new byte[]{1,2});
+        new WavFileAudioSource(WAV_FILE_PATH,false,false).open(8000,AudioFormat.CHANNEL_IN_MONO,AudioFormat.ENCODING_PCM_16BIT);
+    }
+    @Test
+    public void testPlayOnceThenSilence()throws IOException{
+        writeWavFile(new PcmWavConverter.WaveHeader(8000,(short)1,(short)16),new short[]{100,-200,300});
+        final WavFileAudioSource wavFileAudioSource=new WavFileAudioSource(WAV_FILE_PATH,false,false);
+        wavFileAudioSource.open(8000,AudioFormat.CHANNEL_IN_MONO,AudioFormat.ENCODING_PCM_16BIT);
+        wavFileAudioSource.start();
+        final short[] samples=new short[5];
+        Assert.assertEquals("Size incorrect", 5, wavFileAudioSource.read(samples,0,5));
+        assertSamples(new short[]{100,-200,300,0,0},samples);
+        Assert.assertTrue("Playback should be finished", wavFileAudioSource.isFinished());
+        wavFileAudioSource.release();
+    }
+    @Test
+    public void testLooping()throws IOException{
+        writeWavFile(new PcmWavConverter.WaveHeader(8000,(short)1,(short)16),new short[]{100,-200,300});
+        final WavFileAudioSource wavFileAudioSource=new WavFileAudioSource(WAV_FILE_PATH,true,false);
+        wavFileAudioSource.open(8000,AudioFormat.CHANNEL_IN_MONO,AudioFormat.ENCODING_PCM_16BIT);
+        wavFileAudioSource.start();
+        final short[] samples=new short[7];
+        wavFileAudioSource.read(samples,0,7);
+        assertSamples(new short[]{100,-200,300,100,-200,300,100},samples);
+        Assert.assertFalse("Looping playback never finishes", wavFileAudioSource.isFinished());
+        wavFileAudioSource.release();
+    }
+    @Test
+    public void testStereoToMono()throws IOException{
+        writeWavFile(new PcmWavConverter.WaveHeader(8000,(short)2,(short)16),new short[]{100,300,-1000,0});
+        final WavFileAudioSource wavFileAudioSource=new WavFileAudioSource(WAV_FILE_PATH,false,false);
+        wavFileAudioSource.open(8000,AudioFormat.CHANNEL_IN_MONO,AudioFormat.ENCODING_PCM_16BIT);
+        wavFileAudioSource.start();
+        final short[] samples=new short[2];
+        wavFileAudioSource.read(samples,0,2);
+        assertSamples(new short[]{200,-500},samples);
+        wavFileAudioSource.release();
+    }
+    @Test
+    public void testMonoToStereo()throws IOException{
+        writeWavFile(new PcmWavConverter.WaveHeader(8000,(short)1,(short)16),new short[]{100,-200});
+        final WavFileAudioSource wavFileAudioSource=new WavFileAudioSource(WAV_FILE_PATH,false,false);
+        wavFileAudioSource.open(8000,AudioFormat.CHANNEL_IN_STEREO,AudioFormat.ENCODING_PCM_16BIT);
+        wavFileAudioSource.start();
+        final short[] samples=new short[4];
+        wavFileAudioSource.read(samples,0,4);
+        assertSamples(new short[]{100,100,-200,-200},samples);
+        wavFileAudioSource.release();
+    }
+    @Test
+    public void testTwentyFourBitFile()throws IOException{
+        //0x123456 and the most negative sample.
+        writeFile(PcmWavConverter.createWavHeader(new PcmWavConverter.WaveHeader(8000,(short)1,(short)24),6),new byte[]{0x56,0x34,0x12,0,0,(byte)0x80});
+        final WavFileAudioSource wavFileAudioSource=new WavFileAudioSource(WAV_FILE_PATH,false,false);
+        wavFileAudioSource.open(8000,AudioFormat.CHANNEL_IN_MONO,AudioFormat.ENCODING_PCM_16BIT);
+        wavFileAudioSource.start();
+        final short[] samples=new short[2];
+        wavFileAudioSource.read(samples,0,2);
+        assertSamples(new short[]{0x1234,-32768},samples);
+        wavFileAudioSource.release();
+    }
+    @Test
+    public void testFloatFile()throws IOException{
+        final ByteBuffer data=ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        data.putFloat(0.5f).putFloat(-0.25f);
+        writeFile(PcmWavConverter.createWavHeader(new PcmWavConverter.WaveHeader(8000,(short)1,(short)32,-1,false,PcmWavConverter.WAVE_FORMAT_IEEE_FLOAT),8),data.array());
+        final WavFileAudioSource wavFileAudioSource=new WavFileAudioSource(WAV_FILE_PATH,false,false);
+        wavFileAudioSource.open(8000,AudioFormat.CHANNEL_IN_MONO,AudioFormat.ENCODING_PCM_16BIT);
+        wavFileAudioSource.start();
+        final short[] samples=new short[2];
+        wavFileAudioSource.read(samples,0,2);
+        assertSamples(new short[]{16384,-8192},samples);
+        wavFileAudioSource.release();
+    }
+    @Test
+    public void testUnfinishedDataChunk()throws IOException{
+        //A .temp file that was never finished has a data size of 0, so the data runs to the end of the file.
+        writeFile(PcmWavConverter.createWavHeader(new PcmWavConverter.WaveHeader(8000,(short)1,(short)8),0),new byte[]{(byte)192,64});
+        final WavFileAudioSource wavFileAudioSource=new WavFileAudioSource(WAV_FILE_PATH,false,false);
+        wavFileAudioSource.open(8000,AudioFormat.CHANNEL_IN_MONO,AudioFormat.ENCODING_PCM_16BIT);
+        wavFileAudioSource.start();
+        final short[] samples=new short[2];
+        wavFileAudioSource.read(samples,0,2);
+        assertSamples(new short[]{16384,-16384},samples);
+        wavFileAudioSource.release();
+    }
+    private static void assertSamples(final short[] expected,final short[] samples){
+        for (int i=0;i<expected.length;i++){
+            Assert.assertEquals("Sample incorrect at "+i, expected[i], samples[i]);
+        }
+    }
+    private static void writeWavFile(final PcmWavConverter.WaveHeader waveHeader,final short[] samples)throws IOException{
+        final ByteBuffer data=ByteBuffer.allocate(samples.length*2).order(ByteOrder.LITTLE_ENDIAN);
+        data.asShortBuffer().put(samples);
+        writeFile(PcmWavConverter.createWavHeader(waveHeader,samples.length*2),data.array());
+    }
+    private static void writeFile(final ByteBuffer header,final byte[] data)throws IOException{
+        final RandomAccessFile randomAccessFile=new RandomAccessFile(WAV_FILE_PATH,"rw");
+        try {
+            randomAccessFile.setLength(0);
+            randomAccessFile.getChannel().write(header);
+            randomAccessFile.write(data);
+        }
+        finally {
+            randomAccessFile.close();
+        }
+    }
+}